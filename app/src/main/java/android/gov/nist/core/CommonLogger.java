@@ -8,26 +8,52 @@ import org.apache.log4j.Logger;
  * legacyLogger is the old-school one logger per stack reference
  * otherLogger is multiinstance logger
  * 
+ * When the legacy logger is a LogWriter its enabled level is cached here, so
+ * the isLoggingEnabled guards on the hot paths are a static field read. The
+ * cached level is only used while it belongs to the current legacyLogger, so
+ * assigning the field directly rather than through setLegacyLogger falls back
+ * to asking the logger instead of reading a stale level.
+ * 
  * @author Vladimir Ralev
  *
  */
-public class CommonLogger implements StackLogger{
+public class CommonLogger implements StackLoggerExt{
 	private String name;
 	private StackLogger otherLogger;
 	
 	public static boolean useLegacyLogger = true;
 	public static StackLogger legacyLogger;
 	
+	// enabled level of the legacy logger, null until the logger reports it
+	private static volatile LegacyLevel legacyLevel;
+	
+	/**
+	 * The enabled level of a legacy logger, -1 when disabled.
+	 */
+	private static final class LegacyLevel {
+		final StackLogger stackLogger;
+		final int enabledLevel;
+		
+		LegacyLevel(StackLogger stackLogger, int enabledLevel) {
+			this.stackLogger = stackLogger;
+			this.enabledLevel = enabledLevel;
+		}
+	}
+	
 	public CommonLogger(String name) {
 		this.name = name;
 	}
 	
 	private StackLogger logger() {
 		if(useLegacyLogger) {
-			if(legacyLogger == null) {
-				return new CommonLoggerLog4j(Logger.getLogger(name));
+			StackLogger stackLogger = legacyLogger;
+			if(stackLogger == null) {
+				if(otherLogger == null) {
+					otherLogger = new CommonLoggerLog4j(Logger.getLogger(name));
+				}
+				return otherLogger;
 			}
-			return legacyLogger;
+			return stackLogger;
 		} else {
 			if(otherLogger == null) {
 				otherLogger = new CommonLoggerLog4j(Logger.getLogger(name));
@@ -36,10 +62,10 @@ public class CommonLogger implements StackLogger{
 		}
 	}
 	
-	public static StackLogger getLogger(String name) {
+	public static StackLoggerExt getLogger(String name) {
 		return new CommonLogger(name);
 	}
-	public static StackLogger getLogger(Class clazz) {
+	public static StackLoggerExt getLogger(Class clazz) {
 		return getLogger(clazz.getName());
 	}
 	
@@ -47,6 +73,33 @@ public class CommonLogger implements StackLogger{
 		
 	}
 	
+	public static void setLegacyLogger(StackLogger stackLogger) {
+		legacyLevel = null;
+		legacyLogger = stackLogger;
+	}
+	
+	/**
+	 * Called by the LogWriter when its level changes.
+	 * 
+	 * @param enabledLevel the trace level, -1 when logging is disabled
+	 */
+	static void legacyLevelChanged(StackLogger stackLogger, int enabledLevel) {
+		if(stackLogger == legacyLogger) {
+			legacyLevel = new LegacyLevel(stackLogger, enabledLevel);
+		}
+	}
+	
+	/**
+	 * @return the cached level of the current legacy logger, null if unknown.
+	 */
+	private static LegacyLevel legacyLevel() {
+		LegacyLevel level = legacyLevel;
+		if(level != null && useLegacyLogger && level.stackLogger == legacyLogger) {
+			return level;
+		}
+		return null;
+	}
+	
 	public void disableLogging() {
 		logger().disableLogging();
 	}
@@ -67,12 +120,18 @@ public class CommonLogger implements StackLogger{
 	}
 	
 	public boolean isLoggingEnabled() {
-		
+		LegacyLevel level = legacyLevel();
+		if(level != null) {
+			return level.enabledLevel >= 0;
+		}
 		return logger().isLoggingEnabled();
 	}
 	
 	public boolean isLoggingEnabled(int logLevel) {
-		
+		LegacyLevel level = legacyLevel();
+		if(level != null) {
+			return logLevel <= level.enabledLevel;
+		}
 		return logger().isLoggingEnabled(logLevel);
 	}
 	
@@ -140,4 +199,76 @@ public class CommonLogger implements StackLogger{
 		
 		legacyLogger.setStackProperties(stackProperties);
 	}
+	
+	public void logDebug(String format, Object arg) {
+		if(isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
+			logger().logDebug(format(format, 1, arg, null, null));
+		}
+	}
+	
+	public void logDebug(String format, Object arg1, Object arg2) {
+		if(isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
+			logger().logDebug(format(format, 2, arg1, arg2, null));
+		}
+	}
+	
+	public void logDebug(String format, Object arg1, Object arg2, Object arg3) {
+		if(isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
+			logger().logDebug(format(format, 3, arg1, arg2, arg3));
+		}
+	}
+	
+	public void logDebug(MessageSupplier supplier) {
+		if(isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
+			logger().logDebug(supplier.getMessage());
+		}
+	}
+	
+	public void logInfo(String format, Object arg) {
+		if(isLoggingEnabled(LogLevels.TRACE_INFO)) {
+			logger().logInfo(format(format, 1, arg, null, null));
+		}
+	}
+	
+	public void logInfo(String format, Object arg1, Object arg2) {
+		if(isLoggingEnabled(LogLevels.TRACE_INFO)) {
+			logger().logInfo(format(format, 2, arg1, arg2, null));
+		}
+	}
+	
+	public void logInfo(MessageSupplier supplier) {
+		if(isLoggingEnabled(LogLevels.TRACE_INFO)) {
+			logger().logInfo(supplier.getMessage());
+		}
+	}
+	
+	public void logWarning(String format, Object arg) {
+		if(isLoggingEnabled(LogLevels.TRACE_WARN)) {
+			logger().logWarning(format(format, 1, arg, null, null));
+		}
+	}
+	
+	public void logWarning(String format, Object arg1, Object arg2) {
+		if(isLoggingEnabled(LogLevels.TRACE_WARN)) {
+			logger().logWarning(format(format, 2, arg1, arg2, null));
+		}
+	}
+	
+	/**
+	 * Replaces the {} of the format by the arguments, in order. The {} left
+	 * once the arguments are used up are kept as they are.
+	 */
+	static String format(String format, int argCount, Object arg1, Object arg2, Object arg3) {
+		StringBuilder sb = new StringBuilder(format.length() + 32);
+		int start = 0;
+		for(int i = 0; i < argCount; i++) {
+			int index = format.indexOf("{}", start);
+			if(index < 0) {
+				break;
+			}
+			sb.append(format, start, index).append(i == 0 ? arg1 : i == 1 ? arg2 : arg3);
+			start = index + 2;
+		}
+		return sb.append(format, start, format.length()).toString();
+	}
 }
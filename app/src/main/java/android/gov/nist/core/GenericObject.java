@@ -481,6 +481,28 @@ public abstract class GenericObject implements Serializable, Cloneable {
         return true;
     }
 
+    /**
+     * Null safe case insensitive comparison of two strings, for the
+     * structural equals of the subclasses.
+     */
+    protected static boolean equalsIgnoreCase(String s1, String s2) {
+        return s1 == null ? s2 == null : s1.equalsIgnoreCase(s2);
+    }
+
+    /**
+     * Hash code of a string that is consistent with String.equalsIgnoreCase,
+     * computed without making a lower case copy of the string.
+     */
+    protected static int hashCodeIgnoreCase(String s) {
+        if (s == null)
+            return 0;
+        int hash = 0;
+        for (int i = 0; i < s.length(); i++) {
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+        return hash;
+    }
+
     /** An introspection based predicate matching using a template
      * object. Allows for partial match of two protocl Objects.
      *@param other the match pattern to test against. The match object
@@ -95,21 +95,18 @@ public class LogWriter implements StackLogger {
 
     public void logStackTrace(int traceLevel) {
         if (needsLogging) {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            StackTraceElement[] ste = new Exception().getStackTrace();
-            // Skip the log writer frame and log all the other stack frames.
-            for (int i = 1; i < ste.length; i++) {
-                String callFrame = "[" + ste[i].getFileName() + ":"
-                        + ste[i].getLineNumber() + "]";
-                pw.print(callFrame);
-            }
-            pw.close();
-            String stackTrace = sw.getBuffer().toString();
             Level level = this.getLevel(traceLevel);
             Priority priority = this.getLogPriority();
+            // Walking the stack is expensive, only do it if the trace gets logged
             if ( level.isGreaterOrEqual(priority)) {
-                logger.log(level,stackTrace);
+                StringBuilder stackTrace = new StringBuilder();
+                StackTraceElement[] ste = new Exception().getStackTrace();
+                // Skip the log writer frame and log all the other stack frames.
+                for (int i = 1; i < ste.length; i++) {
+                    stackTrace.append('[').append(ste[i].getFileName()).append(':')
+                            .append(ste[i].getLineNumber()).append(']');
+                }
+                logger.log(level,stackTrace.toString());
             }
 
         }
@@ -206,7 +203,7 @@ public class LogWriter implements StackLogger {
      *            message to log into the log file.
      */
     public void logDebug(String message) {
-        if (needsLogging) {
+        if (needsLogging && getLogger().isDebugEnabled()) {
             String newMessage = this.enhanceMessage(message);
             if ( this.lineCount == 0) {
                 getLogger().debug("BUILD TIMESTAMP = " + this.buildTimeStamp);
@@ -223,7 +220,7 @@ public class LogWriter implements StackLogger {
      * @see android.gov.nist.core.StackLogger#logDebug(java.lang.String, java.lang.Exception)
      */
     public void logDebug(String message, Exception ex) {
-    	if (needsLogging) {
+    	if (needsLogging && getLogger().isDebugEnabled()) {
             String newMessage = this.enhanceMessage(message);
             if ( this.lineCount == 0) {
                 getLogger().debug("BUILD TIMESTAMP = " + this.buildTimeStamp);
@@ -241,7 +238,7 @@ public class LogWriter implements StackLogger {
      *            message to log into the log file.
      */
     public void logTrace(String message) {
-        if (needsLogging) {
+        if (needsLogging && getLogger().isTraceEnabled()) {
             String newMessage = this.enhanceMessage(message);
             if ( this.lineCount == 0) {
                 getLogger().debug("BUILD TIMESTAMP = " + this.buildTimeStamp);
@@ -260,6 +257,14 @@ public class LogWriter implements StackLogger {
         traceLevel = level;
     }
 
+    /**
+     * Lets CommonLogger cache the enabled level, so the isLoggingEnabled
+     * checks of the stack do not have to go through this logger.
+     */
+    private void levelChanged() {
+        CommonLogger.legacyLevelChanged(this, needsLogging ? traceLevel : -1);
+    }
+
     /**
      * Get the trace level for the stack.
      */
@@ -408,7 +413,7 @@ public class LogWriter implements StackLogger {
             this.needsLogging = false;
 
         }
-
+        levelChanged();
         
     }
 
@@ -467,6 +472,7 @@ public class LogWriter implements StackLogger {
      */
     public void disableLogging() {
         this.needsLogging = false;
+        levelChanged();
     }
 
     /**
@@ -474,6 +480,7 @@ public class LogWriter implements StackLogger {
      */
     public void enableLogging() {
         this.needsLogging = true;
+        levelChanged();
 
     }
 
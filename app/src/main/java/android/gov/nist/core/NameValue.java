@@ -293,6 +293,11 @@ public class NameValue extends GenericObject implements Entry<String,String> {
     
     @Override
     public int hashCode() {
-        return this.encode().toLowerCase().hashCode();
+        int hash = hashCodeIgnoreCase(this.name);
+        if (this.value instanceof String)
+            hash = 31 * hash + hashCodeIgnoreCase((String) this.value);
+        else if (this.value != null)
+            hash = 31 * hash + this.value.hashCode();
+        return hash;
     }
 }
@@ -29,11 +29,14 @@
 package android.gov.nist.core;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -42,6 +45,12 @@ import java.util.concurrent.ConcurrentHashMap;
  * hash map) the default behavior for this class is not thread safe.
  * specify a constructor with boolean true to make this thread safe.
  *
+ * Most lists hold a handful of parameters (branch, received, rport, lr, tag...)
+ * so up to COMPACT_SIZE of them are kept in two arrays, in insertion order, and
+ * looked up by a linear scan; the list moves to a map when it grows beyond that
+ * or when one of the Map views (keySet, values, entrySet) is asked for. Thread
+ * safe lists always use a map.
+ *
  * @version 1.2
  *
  * @author M. Ranganathan <br/>
@@ -55,6 +64,16 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
 
     private static final long serialVersionUID = -6998271876574260243L;
 
+    /**
+     * Number of entries kept in the arrays before moving to a map.
+     */
+    private static final int COMPACT_SIZE = 8;
+
+    // keys and values of the compact form, null once the list uses hmap
+    private String[] names;
+    private NameValue[] nameValues;
+    private int count;
+
     private Map<String,NameValue> hmap;
 
     private String separator;
@@ -95,6 +114,14 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
     }
 
     public StringBuilder encode(StringBuilder buffer) {
+        if (hmap == null) {
+            for (int i = 0; i < count; i++) {
+                if (i > 0)
+                    buffer.append(separator);
+                nameValues[i].encode(buffer);
+            }
+            return buffer;
+        }
         if (!this.isEmpty()) {
             Iterator<NameValue> iterator = this.iterator();
             if (iterator.hasNext()) {
@@ -153,18 +180,25 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
         }
         NameValueList other = (NameValueList) otherObject;
 
-        if (this.size() != this.size()) {
+        if (this.size() != other.size()) {
             return false;
         }
-	        Iterator<String> li = this.getNames();
-	
-        while (li.hasNext()) {
-            String key = (String) li.next();
-            NameValue nv1 = this.getNameValue(key);
-            NameValue nv2 = (NameValue) other.get(key);
+        // the keys are lower case already, look them up directly
+        if (this.hmap == null) {
+            for (int i = 0; i < count; i++) {
+                NameValue nv2 = other.lookup(names[i]);
+                if (nv2 == null)
+                    return false;
+                else if (!nv2.equals(nameValues[i]))
+                    return false;
+            }
+            return true;
+        }
+        for (Map.Entry<String,NameValue> entry : this.hmap.entrySet()) {
+            NameValue nv2 = other.lookup(entry.getKey());
             if (nv2 == null)
                 return false;
-            else if (!nv2.equals(nv1))
+            else if (!nv2.equals(entry.getValue()))
                 return false;
         }
         return true;
@@ -194,10 +228,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @since 1.0
      */
     public NameValue getNameValue(String name) {
-    	if(hmap == null) {
-    		return null;
-    	}
-        return (NameValue) hmap.get(name.toLowerCase());
+        return lookup(name.toLowerCase());
     }
 
     /**
@@ -229,7 +260,16 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
     public Object clone() {
         NameValueList retval = new NameValueList();
         retval.setSeparator(this.separator);
-        if(hmap != null) {
+        if (hmap == null) {
+            if (count > 0) {
+                retval.names = Arrays.copyOf(names, names.length);
+                retval.nameValues = new NameValue[nameValues.length];
+                for (int i = 0; i < count; i++) {
+                    retval.nameValues[i] = (NameValue) nameValues[i].clone();
+                }
+                retval.count = count;
+            }
+        } else {
 	        Iterator<NameValue> it = this.iterator();
 	        while (it.hasNext()) {
 	            retval.set((NameValue) ((NameValue) it.next()).clone());
@@ -243,7 +283,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public int size() {
     	if(hmap == null) {
-    		return 0;
+    		return count;
     	}
         return hmap.size();
     }
@@ -253,7 +293,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public boolean isEmpty() {
     	if(hmap == null) {
-    		return true;
+    		return count == 0;
     	}
         return hmap.isEmpty();
     }
@@ -264,7 +304,10 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @return the iterator.
      */
     public Iterator<NameValue> iterator() {
-        return this.getMap().values().iterator();
+        if (hmap == null) {
+            return new CompactIterator<NameValue>(false);
+        }
+        return this.hmap.values().iterator();
     }
 
     /**
@@ -273,7 +316,10 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @return a list iterator that has the names of the parameters.
      */
     public Iterator<String> getNames() {
-        return this.getMap().keySet().iterator();
+        if (hmap == null) {
+            return new CompactIterator<String>(true);
+        }
+        return this.hmap.keySet().iterator();
 
     }
 
@@ -309,6 +355,10 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
     public void clear() {
     	if(hmap != null) {
     		hmap.clear();
+    	} else if (count > 0) {
+    		Arrays.fill(names, 0, count, null);
+    		Arrays.fill(nameValues, 0, count, null);
+    		count = 0;
     	}
     }
 
@@ -318,7 +368,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public boolean containsKey(Object key) {
     	if(hmap == null) {
-    		return false;
+    		return indexOf(key.toString().toLowerCase()) >= 0;
     	}
         return hmap.containsKey(key.toString().toLowerCase());
     }
@@ -329,6 +379,11 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public boolean containsValue(Object value) {
     	if(hmap == null) {
+    		for (int i = 0; i < count; i++) {
+    			if (nameValues[i].equals(value)) {
+    				return true;
+    			}
+    		}
     		return false;
     	}
         return hmap.containsValue(value);
@@ -339,10 +394,10 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#entrySet()
      */
     public Set<java.util.Map.Entry<String, NameValue>> entrySet() {
-    	if(hmap == null) {
+    	if(hmap == null && count == 0) {
     		return new HashSet<Entry<String,NameValue>>();
     	}
-        return hmap.entrySet();
+        return this.getMap().entrySet();
     }
 
     /*
@@ -350,10 +405,7 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#get(java.lang.Object)
      */
     public NameValue get(Object key) {
-    	if(hmap == null) {
-    		return null;
-    	}
-        return hmap.get(key.toString().toLowerCase());
+        return lookup(key.toString().toLowerCase());
     }
 
     /*
@@ -361,10 +413,10 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#keySet()
      */
     public Set<String> keySet() {
-    	if(hmap == null) {
+    	if(hmap == null && count == 0) {
     		return new HashSet<String>();
     	}
-        return hmap.keySet();
+        return this.getMap().keySet();
     }
 
     /*
@@ -372,11 +424,34 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      * @see java.util.Map#put(java.lang.Object, java.lang.Object)
      */
     public NameValue put(String name, NameValue nameValue) {
-        return this.getMap().put(name, nameValue);
+        if (hmap != null || sync) {
+            return this.getMap().put(name, nameValue);
+        }
+        int index = indexOf(name);
+        if (index >= 0) {
+            NameValue previous = nameValues[index];
+            nameValues[index] = nameValue;
+            return previous;
+        }
+        if (count == COMPACT_SIZE) {
+            return this.getMap().put(name, nameValue);
+        }
+        if (names == null) {
+            names = new String[4];
+            nameValues = new NameValue[4];
+        } else if (count == names.length) {
+            names = Arrays.copyOf(names, COMPACT_SIZE);
+            nameValues = Arrays.copyOf(nameValues, COMPACT_SIZE);
+        }
+        names[count] = name;
+        nameValues[count++] = nameValue;
+        return null;
     }
 
     public void putAll(Map<? extends String, ? extends NameValue> map) {
-        this.getMap().putAll(map);
+        for (Map.Entry<? extends String, ? extends NameValue> entry : map.entrySet()) {
+            this.put(entry.getKey(), entry.getValue());
+        }
     }
 
     /*
@@ -385,9 +460,15 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
      */
     public NameValue remove(Object key) {
     	if(hmap == null) {
-    		return null;
+    		int index = indexOf(key.toString().toLowerCase());
+    		if (index < 0) {
+    			return null;
+    		}
+    		NameValue previous = nameValues[index];
+    		removeAt(index);
+    		return previous;
     	}
-        return this.getMap().remove(key.toString().toLowerCase());
+        return this.hmap.remove(key.toString().toLowerCase());
     }
 
     /*
@@ -400,20 +481,109 @@ public class NameValueList implements Serializable, Cloneable, Map<String,NameVa
     
     @Override
     public int hashCode() {
-        return this.getMap().keySet().hashCode();
+        if (this.hmap != null) {
+            return this.hmap.keySet().hashCode();
+        }
+        // same as the hash code of the key set
+        int hash = 0;
+        for (int i = 0; i < count; i++) {
+            hash += names[i].hashCode();
+        }
+        return hash;
+    }
+
+    /**
+     * Looks up an entry by its key, the name in lower case.
+     */
+    private NameValue lookup(String key) {
+        if (hmap != null) {
+            return hmap.get(key);
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : nameValues[index];
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < count; i++) {
+            if (key.equals(names[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        int moved = count - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(nameValues, index + 1, nameValues, index, moved);
+        }
+        count--;
+        names[count] = null;
+        nameValues[count] = null;
     }
 
 	/**
+	 * Returns the map of the entries, moving the list from its compact form to
+	 * the map if need be.
+	 * 
 	 * @return the hmap
 	 */
     protected Map<String,NameValue> getMap() {
 		if(this.hmap == null) {
+			Map<String,NameValue> map;
 			if (sync) {
-				this.hmap = new ConcurrentHashMap<String,NameValue>(0);
+				map = new ConcurrentHashMap<String,NameValue>(0);
 			} else {
-				this.hmap = new LinkedHashMap<String,NameValue>(0);
+				map = new LinkedHashMap<String,NameValue>(count == 0 ? 0 : 2 * count);
 			}
+			for (int i = 0; i < count; i++) {
+				map.put(names[i], nameValues[i]);
+			}
+			this.names = null;
+			this.nameValues = null;
+			this.count = 0;
+			this.hmap = map;
 		}
 		return hmap;
 	}
+
+    /**
+     * Iterates over the names or the values of the compact form, in insertion
+     * order.
+     */
+    private class CompactIterator<T> implements Iterator<T> {
+        private final boolean overNames;
+        private int next;
+        private int last = -1;
+
+        CompactIterator(boolean overNames) {
+            this.overNames = overNames;
+        }
+
+        public boolean hasNext() {
+            // once moved to the map, next() fails as the map iterators do
+            return hmap != null || next < count;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (hmap != null)
+                throw new ConcurrentModificationException();
+            if (next >= count)
+                throw new NoSuchElementException();
+            last = next++;
+            return (T) (overNames ? names[last] : nameValues[last]);
+        }
+
+        public void remove() {
+            if (last < 0)
+                throw new IllegalStateException();
+            if (hmap != null)
+                throw new ConcurrentModificationException();
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
 }
@@ -0,0 +1,43 @@
+package android.gov.nist.core;
+
+/**
+ * Extension of the StackLogger with methods that cost nothing when the level
+ * is disabled: the message is only built once the level check passed. The
+ * parameterised methods replace each {} of the format by the next argument,
+ * as SLF4J does; as the arguments are only converted to strings when the
+ * message is logged, the call does not allocate unless an argument is a
+ * primitive that needs boxing. The supplier methods are for the messages
+ * that are expensive to compute in themselves.
+ *
+ * Note that logDebug(String, Exception) keeps its meaning: an Exception as
+ * single argument is logged with its stack trace rather than formatted.
+ *
+ * @since 2.0
+ */
+public interface StackLoggerExt extends StackLogger {
+
+    /**
+     * Builds a log message on demand.
+     */
+    public interface MessageSupplier {
+        String getMessage();
+    }
+
+    public void logDebug(String format, Object arg);
+
+    public void logDebug(String format, Object arg1, Object arg2);
+
+    public void logDebug(String format, Object arg1, Object arg2, Object arg3);
+
+    public void logDebug(MessageSupplier supplier);
+
+    public void logInfo(String format, Object arg);
+
+    public void logInfo(String format, Object arg1, Object arg2);
+
+    public void logInfo(MessageSupplier supplier);
+
+    public void logWarning(String format, Object arg);
+
+    public void logWarning(String format, Object arg1, Object arg2);
+}
@@ -769,9 +769,9 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     logger.logDebug(
                             "Dropping out of sequence BYE "
                                     + dialog.getRemoteSeqNumber() + " "
-                                    + sipRequest.getCSeq().getSeqNumber());
+                                    + sipRequest.peekCSeq().getSeqNumber());
 
-                if (dialog.getRemoteSeqNumber() > sipRequest.getCSeq()
+                if (dialog.getRemoteSeqNumber() > sipRequest.peekCSeq()
                         .getSeqNumber()) {
                     this.sendServerInternalErrorResponse(sipRequest,
                             transaction);
@@ -947,7 +947,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
             if (dialog != null
                     && transaction != null
                     && lastTransaction != null
-                    && sipRequest.getCSeq().getSeqNumber() > lastTransaction.getCSeq()
+                    && sipRequest.peekCSeq().getSeqNumber() > lastTransaction.getCSeq()
                     && lastTransaction instanceof SIPServerTransaction
                     && sipProvider.isDialogErrorsAutomaticallyHandled()
                     && dialog.isSequenceNumberValidation()
@@ -995,7 +995,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     && sipProvider.isDialogErrorsAutomaticallyHandled()
                     && lastTransaction.isInviteTransaction()
                     && lastTransaction instanceof ServerTransaction
-                    && sipRequest.getCSeq().getSeqNumber() > lastTransaction.getCSeq()
+                    && sipRequest.peekCSeq().getSeqNumber() > lastTransaction.getCSeq()
                     // Handle Pseudo State Trying on Server Transaction
                     && (lastTransaction.getInternalState() == TransactionState._PROCEEDING
                                     || lastTransaction.getInternalState() == TransactionState._TRYING)) {
@@ -1047,7 +1047,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     logger.logDebug(
                             "Dropping out of sequence message "
                                     + dialog.getRemoteSeqNumber() + " "
-                                    + sipRequest.getCSeq());
+                                    + sipRequest.peekCSeq());
                 }
 
                 // send error when stricly higher, ignore when ==
@@ -1057,7 +1057,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                  * transaction .getState() == TransactionState.PROCEEDING)
                  */
 
-                if (dialog.getRemoteSeqNumber() > sipRequest.getCSeq()
+                if (dialog.getRemoteSeqNumber() > sipRequest.peekCSeq()
                         .getSeqNumber()
                         && sipProvider.isDialogErrorsAutomaticallyHandled()) {
                     this.sendServerInternalErrorResponse(sipRequest,
@@ -1411,14 +1411,14 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     if (dialog.isAckSeen() && dialog.isAckSent()) {
                         if (dialog.isLastAckPresent() && 
                         		dialog.getLastAckSentCSeq().getSeqNumber() == response
-                                .getCSeq().getSeqNumber()) {
+                                .peekCSeq().getSeqNumber()) {
                             // the last ack sent corresponded to this 200
                             ackAlreadySent = true;
                         }
                     }
                     // 200 retransmission for the final response.
                     if (ackAlreadySent
-                            && response.getCSeq().getMethod().equals(
+                            && response.peekCSeq().getMethod().equals(
                                     dialog.getMethod())) {
                         try {
                             // Found the dialog - resend the ACK and
@@ -1451,7 +1451,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     transaction, dialog, (Response) response);
                 
             if (sipStack.getMaxForkTime() != 0
-                    && SIPTransactionStack.isDialogCreated(response.getCSeqHeader().getMethod())) {
+                    && SIPTransactionStack.isDialogCreated(response.peekCSeq().getMethod())) {
             	if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
                     logger.logDebug("Trying to find forked Transaction for forked id " + response.getForkId());
                 }
@@ -1491,7 +1491,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         ResponseEventExt responseEvent = new ResponseEventExt(sipProvider,
                 (ClientTransactionExt) transaction, dialog, (Response) response);
         if (sipStack.getMaxForkTime() != 0
-                && SIPTransactionStack.isDialogCreated(response.getCSeqHeader().getMethod())) {
+                && SIPTransactionStack.isDialogCreated(response.peekCSeq().getMethod())) {
             SIPClientTransaction forked = this.sipStack
                     .getForkedTransaction(response.getForkId());            
             if(dialog != null && forked != null) {
@@ -1544,7 +1544,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         String dialogID = sipResponse.getDialogId(false);
         SIPDialog sipDialog = this.sipStack.getDialog(dialogID);
 
-        String method = sipResponse.getCSeq().getMethod();
+        String method = sipResponse.peekCSeq().getMethod();
         if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
             logger.logDebug(
                     "PROCESSING INCOMING RESPONSE: "
@@ -1606,14 +1606,14 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         if (this.transactionChannel != null) {
             String originalFrom = ((SIPRequest) this.transactionChannel
                     .getRequest()).getFromTag();
-            if (originalFrom == null ^ sipResponse.getFrom().getTag() == null) {
+            if (originalFrom == null ^ sipResponse.peekFrom().getTag() == null) {
                 if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG))
                     logger.logDebug(
                             "From tag mismatch -- dropping response");
                 return;
             }
             if (originalFrom != null
-                    && !originalFrom.equalsIgnoreCase(sipResponse.getFrom()
+                    && !originalFrom.equalsIgnoreCase(sipResponse.peekFrom()
                             .getTag())) {
                 if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG))
                     logger.logDebug(
@@ -1625,8 +1625,8 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         boolean createDialog = false;
         if (SIPTransactionStack.isDialogCreated(method)
                 && sipResponse.getStatusCode() != 100
-                && sipResponse.getFrom().getTag() != null
-                && sipResponse.getTo().getTag() != null && sipDialog == null) {
+                && sipResponse.peekFrom().getTag() != null
+                && sipResponse.peekTo().getTag() != null && sipDialog == null) {
             // Issue 317 : for forked response even if automatic dialog support is not enabled
             // a dialog should be created in the case where the original Tx already have a default dialog
             // and the current dialog is null. This is also avoiding creating dialog automatically if the flag is not set            
@@ -1686,11 +1686,11 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     // an ACK for the OK.
                     // It could be late arriving.
                     if (sipResponse.getStatusCode() / 100 == 2
-                            && sipResponse.getCSeq().getMethod().equals(
+                            && sipResponse.peekCSeq().getMethod().equals(
                                     Request.INVITE)) {
                         try {
                             Request ackRequest = sipDialog
-                                    .createAck(sipResponse.getCSeq()
+                                    .createAck(sipResponse.peekCSeq()
                                             .getSeqNumber());
                             sipDialog.sendAck(ackRequest);
                         } catch (Exception ex) {
@@ -1705,7 +1705,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                             && */ sipDialog.isAckSent()) {
                         if (sipDialog.isLastAckPresent() &&
                         		sipDialog.getLastAckSentCSeq().getSeqNumber() == sipResponse
-                                .getCSeq().getSeqNumber()
+                                .peekCSeq().getSeqNumber()
                                 && sipResponse.getDialogId(false).equals(
                                         sipDialog.getLastAckSentDialogId())) {
                             // the last ack sent corresponded to this 200
@@ -1714,7 +1714,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
                     }
                     // 200 retransmission for the final response.
                     if (ackAlreadySent
-                            && sipResponse.getCSeq().getMethod().equals(
+                            && sipResponse.peekCSeq().getMethod().equals(
                                     sipDialog.getMethod())) {
                         try {
                             // Found the dialog - resend the ACK and
@@ -1747,7 +1747,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
         responseEvent.setRemotePort(sipResponse.getRemotePort());
 
         if (sipStack.getMaxForkTime() != 0
-        		&& SIPTransactionStack.isDialogCreated(sipResponse.getCSeqHeader().getMethod())) {
+        		&& SIPTransactionStack.isDialogCreated(sipResponse.peekCSeq().getMethod())) {
             ClientTransactionExt originalTx = this.sipStack
                     .getForkedTransaction(sipResponse.getForkId());
             if(sipDialog != null && originalTx != null) {
@@ -1763,7 +1763,7 @@ class DialogFilter implements ServerRequestInterface, ServerResponseInterface {
             }
         }
         
-        if(sipDialog != null && sipResponse.getStatusCode() != 100 && sipResponse.getTo().getTag() != null) {
+        if(sipDialog != null && sipResponse.getStatusCode() != 100 && sipResponse.peekTo().getTag() != null) {
             sipDialog.setLastResponse(transaction, sipResponse);
         }
         responseEvent.setRetransmission(sipResponse.isRetransmission());
@@ -40,7 +40,9 @@ import android.gov.nist.javax.sip.stack.SIPTransaction;
 import java.util.EventObject;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import android.javax.sip.DialogState;
 import android.javax.sip.DialogTerminatedEvent;
@@ -69,42 +71,156 @@ public class EventScanner implements Runnable {
 	
 	private static StackLogger logger = CommonLogger.getLogger(EventScanner.class);
 
-    private boolean isStopped;
+	// Wakes up the scanner threads blocked on an empty queue when stopping
+	private static final EventWrapper WAKE_UP = new EventWrapper(null, null);
+
+    private volatile boolean isStopped;
+
+    private final Partition[] partitions;
 
-    private BlockingQueue<EventWrapper> pendingEvents;
-    
     private AtomicInteger refCount;
 
     private SipStackImpl sipStack;
 
+    /**
+     * A queue of pending events and the thread delivering them to the
+     * listener. When the stack is configured with more than one partition
+     * (android.gov.nist.javax.sip.EVENT_SCANNER_PARTITIONS) the events are
+     * spread across the partitions by Call-ID, so the events of a given call
+     * or dialog are still delivered in order, by a single thread, while
+     * different calls are delivered concurrently.
+     */
+    public class Partition implements Runnable {
+        private final int index;
+        private final BlockingQueue<EventWrapper> pendingEvents = new LinkedBlockingQueue<EventWrapper>();
+        private final AtomicInteger peakQueueDepth = new AtomicInteger();
+        private final AtomicLong deliveredEvents = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong maxLatency = new AtomicLong();
+
+        private Partition(int index) {
+            this.index = index;
+        }
+
+        public void run() {
+            scan(this);
+        }
+
+        /**
+         * @return the index of the partition
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the number of events waiting to be delivered
+         */
+        public int getQueueDepth() {
+            return pendingEvents.size();
+        }
+
+        /**
+         * @return the largest number of events that have been waiting to be
+         *         delivered at the same time
+         */
+        public int getPeakQueueDepth() {
+            return peakQueueDepth.get();
+        }
+
+        /**
+         * @return the number of events delivered to the listener
+         */
+        public long getDeliveredEvents() {
+            return deliveredEvents.get();
+        }
+
+        /**
+         * @return the mean time in microseconds the delivered events waited in
+         *         the queue
+         */
+        public long getAverageLatencyMicros() {
+            long delivered = deliveredEvents.get();
+            return delivered == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatency.get() / delivered);
+        }
+
+        /**
+         * @return the longest time in microseconds a delivered event waited in
+         *         the queue
+         */
+        public long getMaxLatencyMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxLatency.get());
+        }
+
+        private void offer(EventWrapper eventWrapper) {
+            eventWrapper.enqueueTime = System.nanoTime();
+            boolean added = pendingEvents.offer(eventWrapper);
+            if (!added) {
+                logger.logWarning("reached queue capacity limit couldn't addEvent " + eventWrapper);
+                return;
+            }
+            int depth = pendingEvents.size();
+            int peak;
+            while (depth > (peak = peakQueueDepth.get()) && !peakQueueDepth.compareAndSet(peak, depth))
+                ;
+        }
+
+        private void delivered(EventWrapper eventWrapper) {
+            long latency = System.nanoTime() - eventWrapper.enqueueTime;
+            deliveredEvents.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            long max;
+            while (latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency))
+                ;
+        }
+    }
+
     public void incrementRefcount() {
         this.refCount.incrementAndGet();
     }
 
     public EventScanner(SipStackImpl sipStackImpl) {
     	refCount = new AtomicInteger(0);
-        this.pendingEvents = new LinkedBlockingQueue<EventWrapper>();
-        Thread myThread = new Thread(this);
-        // This needs to be set to false else the
-        // main thread mysteriously exits.
-        myThread.setDaemon(false);
-
         this.sipStack = sipStackImpl;
-
-        myThread.setName("EventScannerThread");
-
-        myThread.start();
+        int count = sipStackImpl.isReEntrantListener() ? 1 : Math.max(1, sipStackImpl.getEventScannerPartitions());
+        this.partitions = new Partition[count];
+        for (int i = 0; i < count; i++) {
+            partitions[i] = new Partition(i);
+            // The first partition keeps running the scanner itself
+            Thread myThread = new Thread(i == 0 ? this : partitions[i]);
+            // This needs to be set to false else the
+            // main thread mysteriously exits.
+            myThread.setDaemon(false);
+
+            myThread.setName(count == 1 ? "EventScannerThread" : "EventScannerThread-" + i);
+
+            myThread.start();
+        }
 
     }
 
     public void addEvent(EventWrapper eventWrapper) {
     	if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG))
     		logger.logDebug("addEvent " + eventWrapper);
-    		// Add the event into the pending events list
-            boolean added = pendingEvents.offer(eventWrapper);
+    		// Add the event into the pending events list of its partition
+            getPartition(eventWrapper).offer(eventWrapper);
+    }
 
-            if (!added)
-        		logger.logWarning("reached queue capacity limit couldn't addEvent " + eventWrapper);
+    private Partition getPartition(EventWrapper eventWrapper) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+        Object hash = eventWrapper.getThreadHash();
+        return partitions[hash == null ? 0 : Math.abs(hash.hashCode() % partitions.length)];
+    }
+
+    /**
+     * @return the partitions of the event scanner, a single one unless
+     *         android.gov.nist.javax.sip.EVENT_SCANNER_PARTITIONS is set for a
+     *         non re-entrant listener.
+     */
+    public Partition[] getPartitions() {
+        return partitions.clone();
     }
 
     /**
@@ -115,6 +231,7 @@ public class EventScanner implements Runnable {
     public void stop() {
             if (refCount.get() == 0) {
                 isStopped = true;
+                wakeUp();
             }
     }
 
@@ -126,6 +243,13 @@ public class EventScanner implements Runnable {
     public void forceStop() {
             this.isStopped = true;
             this.refCount.set(0);
+            wakeUp();
+    }
+
+    private void wakeUp() {
+        for (Partition partition : partitions) {
+            partition.pendingEvents.offer(WAKE_UP);
+        }
     }
 
     public void deliverEvent(EventWrapper eventWrapper) {
@@ -246,8 +370,11 @@ public class EventScanner implements Runnable {
                     logger.logDebug(
                             "Calling listener " + eventWrapper.transaction);
                 }
-                if (sipListener != null)
+                if (sipListener != null) {
+                    long listenerStart = System.nanoTime();
                     sipListener.processRequest((RequestEvent) sipEvent);
+                    sipStack.getMetrics().recordListenerTime(System.nanoTime() - listenerStart);
+                }
 
                 if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
                     logger.logDebug(
@@ -314,7 +441,9 @@ public class EventScanner implements Runnable {
                     if (tx != null) {
                         tx.setPassToListener();
                     }
+                    long listenerStart = System.nanoTime();
                     sipListener.processResponse(responseEvent);
+                    sipStack.getMetrics().recordListenerTime(System.nanoTime() - listenerStart);
                 }
 
                 /*
@@ -350,7 +479,7 @@ public class EventScanner implements Runnable {
                  * This garbage collects unacknowledged dialogs.
                  *
                  */
-                if (sipResponse.getCSeq().getMethod()
+                if (sipResponse.peekCSeq().getMethod()
                         .equals(Request.INVITE)
                         && sipDialog != null
                         && sipResponse.getStatusCode() == 200) {
@@ -361,7 +490,7 @@ public class EventScanner implements Runnable {
                     /*
                      * If we dont see an ACK in 32 seconds, we want to tear down the dialog.
                      */
-                    sipDialog.doDeferredDeleteIfNoAckSent(sipResponse.getCSeq().getSeqNumber());
+                    sipDialog.doDeferredDeleteIfNoAckSent(sipResponse.peekCSeq().getSeqNumber());
                 }
             } catch (Exception ex) {
                 // We cannot let this thread die under any
@@ -475,6 +604,10 @@ public class EventScanner implements Runnable {
      * calls the deliverEvent method above.
      */
     public void run() {
+        scan(partitions[0]);
+    }
+
+    private void scan(Partition partition) {
         try {
             // Ask the auditor to monitor this thread
         	ThreadAuditor.ThreadHandle threadHandle = null;
@@ -509,8 +642,12 @@ public class EventScanner implements Runnable {
                 // tap-dancing is to avoid deadlocks and also to ensure that
                 // the list is not modified while we are iterating over it.
             	try {
-					eventWrapper = (EventWrapper) pendingEvents.take();
+					eventWrapper = partition.pendingEvents.take();
+					if (eventWrapper == WAKE_UP) {
+						continue;
+					}
 					deliverEvent(eventWrapper);
+					partition.delivered(eventWrapper);
             	} catch (InterruptedException ex) {
             		// Let the thread die a normal death
             		if (logger.isLoggingEnabled(LogLevels.TRACE_ERROR))
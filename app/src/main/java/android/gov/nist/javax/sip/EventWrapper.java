@@ -25,20 +25,80 @@
 */
 package android.gov.nist.javax.sip;
 
+import  android.gov.nist.javax.sip.header.CallID;
+import  android.gov.nist.javax.sip.message.*;
 import  android.gov.nist.javax.sip.stack.*;
 import  java.util.*;
 
+import android.javax.sip.Dialog;
+import android.javax.sip.DialogTerminatedEvent;
+import android.javax.sip.RequestEvent;
+import android.javax.sip.ResponseEvent;
+import android.javax.sip.TimeoutEvent;
+import android.javax.sip.Transaction;
+import android.javax.sip.TransactionTerminatedEvent;
+
 /**
  * @version 1.2 $Revision: 1.6 $ $Date: 2009-07-17 18:57:19 $
  */
-public class EventWrapper {
+public class EventWrapper implements ThreadAffinityIdentifier {
 
     protected EventObject sipEvent;
     protected SIPTransaction transaction;
+    // When the event was queued to the event scanner, in nanoseconds
+    protected long enqueueTime;
 
     public EventWrapper(EventObject sipEvent, SIPTransaction transaction) {
         this.sipEvent = sipEvent;
         this.transaction = transaction;
     }
-}
 
+    /**
+     * The Call-ID of the event so that all the events of a call are
+     * delivered by the same event scanner partition, in order.
+     *
+     * @return the Call-ID of the event or null if the event is not
+     *         related to a call (IOExceptionEvent).
+     */
+    public Object getThreadHash() {
+        if (sipEvent instanceof RequestEvent) {
+            return callIdOf(((RequestEvent) sipEvent).getRequest());
+        } else if (sipEvent instanceof ResponseEvent) {
+            return callIdOf(((ResponseEvent) sipEvent).getResponse());
+        } else if (sipEvent instanceof DialogTimeoutEvent) {
+            return callIdOf(((DialogTimeoutEvent) sipEvent).getDialog());
+        } else if (sipEvent instanceof DialogTerminatedEvent) {
+            return callIdOf(((DialogTerminatedEvent) sipEvent).getDialog());
+        } else if (transaction != null) {
+            return callIdOf(transaction.getRequest());
+        } else if (sipEvent instanceof TimeoutEvent) {
+            TimeoutEvent timeoutEvent = (TimeoutEvent) sipEvent;
+            return callIdOf(timeoutEvent.isServerTransaction() ? timeoutEvent.getServerTransaction()
+                    : timeoutEvent.getClientTransaction());
+        } else if (sipEvent instanceof TransactionTerminatedEvent) {
+            TransactionTerminatedEvent terminatedEvent = (TransactionTerminatedEvent) sipEvent;
+            return callIdOf(terminatedEvent.isServerTransaction() ? terminatedEvent.getServerTransaction()
+                    : terminatedEvent.getClientTransaction());
+        }
+        return null;
+    }
+
+    private static String callIdOf(Object message) {
+        if (message instanceof SIPMessage) {
+            CallID callId = ((SIPMessage) message).peekCallId();
+            return callId == null ? null : callId.getCallId();
+        }
+        return null;
+    }
+
+    private static String callIdOf(Dialog dialog) {
+        if (dialog != null && dialog.getCallId() != null) {
+            return dialog.getCallId().getCallId();
+        }
+        return null;
+    }
+
+    private static String callIdOf(Transaction transaction) {
+        return transaction == null ? null : callIdOf(transaction.getRequest());
+    }
+}
@@ -248,7 +248,7 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
      * @see android.javax.sip.SipProvider#getNewCallId()
      */
     public CallIdHeader getNewCallId() {
-        String callId = Utils.getInstance().generateCallIdentifier(this.getListeningPoint()
+        String callId = sipStack.getIdGenerator().generateCallIdentifier(this.getListeningPoint()
                 .getIPAddress());
         CallID callid = new CallID();
         try {
@@ -308,8 +308,8 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
        * User decided to give us his own via header branch. Lets see if it
        * results in a clash. If so reject the request.
        */
-      if (sipRequest.getTopmostVia().getBranch() != null
-        && sipRequest.getTopmostVia().getBranch().startsWith(
+      if (sipRequest.peekTopmostVia().getBranch() != null
+        && sipRequest.peekTopmostVia().getBranch().startsWith(
                                                              SIPConstants.BRANCH_MAGIC_COOKIE)
                                                              && sipStack.findTransaction((SIPRequest) sipRequest, false) != null) {
         throw new TransactionUnavailableException(
@@ -356,13 +356,13 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
       // https://github.com/RestComm/jain-sip/issues/114
       if(listeningPoint == null) {
     	  listeningPoint = (ListeningPointImpl) this
-    		        .getListeningPoint(sipRequest.getTopmostVia().getTransport());
+    		        .getListeningPoint(sipRequest.peekTopmostVia().getTransport());
     	  if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG))
               logger.logDebug(
                               "Listenig point was null using new one from Via header " 
                                 //+ sipRequest.getFirstLine()
               				  + listeningPoint
-                                + " for transport " + sipRequest.getTopmostVia().getTransport());
+                                + " for transport " + sipRequest.peekTopmostVia().getTransport());
       }
       
       
@@ -387,11 +387,11 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
         // otherwise, generate one. If branch ID checking has 
         // been requested, set the branch ID.
         String branchId = null;
-        if (sipRequest.getTopmostVia().getBranch() == null
-          || !sipRequest.getTopmostVia().getBranch().startsWith(
+        if (sipRequest.peekTopmostVia().getBranch() == null
+          || !sipRequest.peekTopmostVia().getBranch().startsWith(
                                                                 SIPConstants.BRANCH_MAGIC_COOKIE)
                                                                 || sipStack.checkBranchId() ) {
-          branchId = Utils.getInstance().generateBranchId();
+          branchId = sipStack.getIdGenerator().generateBranchId();
           
           sipRequest.getTopmostVia().setBranch(branchId);
         }
@@ -403,7 +403,7 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
         
         if(topmostVia.getPort() == -1)
           topmostVia.setPort(listeningPoint.getPort());
-        branchId = sipRequest.getTopmostVia().getBranch();
+        branchId = sipRequest.peekTopmostVia().getBranch();
         
          MessageChannel messageChannel = sipStack
             .createMessageChannel(sipRequest, listeningPoint
@@ -703,8 +703,7 @@ public class SipProviderImpl implements android.javax.sip.SipProvider, android.g
         // message.
         if (((SIPRequest) request).getRequestLine() != null
                 && request.getMethod().equals(Request.ACK)) {
-            Dialog dialog = sipStack.getDialog(((SIPRequest) request)
-                    .getDialogId(false));
+            Dialog dialog = sipStack.getDialog((SIPRequest) request, false);
             if (dialog != null && dialog.getState() != null) {
             	if (logger.isLoggingEnabled())
             		logger.logWarning(
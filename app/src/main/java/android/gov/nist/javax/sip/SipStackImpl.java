@@ -180,7 +180,9 @@ import android.javax.sip.message.Request;
  * a no arg constructor. This allows to use different logging implementations
  * than the ones provided by default to log sent/received messages by the sip
  * stack. If this property is not defined, the default sip stack ServerLog will
- * be used for logging</li>
+ * be used for logging. android.gov.nist.javax.sip.stack.BinaryServerLog writes
+ * the trace from a background thread in a binary form instead, for tracing
+ * under load.</li>
  *
  * <li><b>android.gov.nist.javax.sip.AUTOMATIC_DIALOG_ERROR_HANDLING = [true|false] </b>
  * <br/>
@@ -268,6 +270,28 @@ import android.javax.sip.message.Request;
  * multithreaded machine write your listener to be re-entrant and set this
  * property to be true </b></li>
  *
+ * <li><b>android.gov.nist.javax.sip.THREAD_POOL_QUEUE_SIZE = integer </b> <br/>
+ * Default is <it>0</it>, no limit. Number of messages each thread of the pool
+ * processing the NIO and self routed messages holds before rejecting the
+ * following ones. The messages of a Call-ID are processed in order by one
+ * thread at a time, an idle thread taking over the Call-IDs queued on a busy
+ * one. From 80% of this size, the CongestionControlMessageValve answers the new
+ * requests with its DROP_RESPONSE_STATUS.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.THREAD_POOL_REJECTION_POLICY = [ABORT|DISCARD] </b> <br/>
+ * Default is <it>ABORT</it>. What happens to a message once the queue of its
+ * thread is full (see THREAD_POOL_QUEUE_SIZE): ABORT logs and drops an incoming
+ * message and fails the sending of a self routed one, DISCARD silently drops
+ * it.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.EVENT_SCANNER_PARTITIONS = integer </b> <br/>
+ * Default is <it>1</it>. Number of threads delivering the events to a listener
+ * that is not re-entrant. Each event goes to the thread its Call-ID hashes to,
+ * so the events of a call or dialog are still delivered one at a time and in
+ * order, while the events of different calls are delivered concurrently. The
+ * listener has to be written with this in mind when this is more than 1. Ignored
+ * when android.gov.nist.javax.sip.REENTRANT_LISTENER is true.</li>
+ *
  * <li><b>android.gov.nist.javax.sip.MAX_CONNECTIONS = integer </b> <br/>
  * Max number of simultaneous TCP connections handled by stack.</li>
  *
@@ -372,6 +396,18 @@ import android.javax.sip.message.Request;
  * remain disabled. An example of how to use this property is in
  * src/examples/threadaudit.</li>
  *
+ * <li><b>android.gov.nist.javax.sip.METRICS_ENABLED = [true|false] </b> <br/>
+ * Default is <it>true</it>. Records the runtime metrics of the stack: parse,
+ * queue and listener times, table sizes, retransmissions, requests per method,
+ * responses per status and bytes per transport. They are read with
+ * getMetrics(), see SipStackMetrics. Recording is cheap enough to be left on
+ * under load.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.METRICS_JMX_NAME = String </b> <br/>
+ * Default is none. If set, the metrics of the stack are registered with this
+ * ObjectName in the platform MBean server, on the JVMs providing JMX, and
+ * unregistered when the stack stops.</li>
+ *
  * <li><b>android.gov.nist.javax.sip.NIO_MAX_SOCKET_IDLE_TIME = long </b> <br/>
  * Defines the number of milliseconds a NIO TCP socket will be kept alive after the
  * last IO operation on that socket. This allows to clean up after high initial load
@@ -385,6 +421,23 @@ import android.javax.sip.message.Request;
  * as "BLOCKING". Set to "NONBLOCKING" for nonBlocking connect behavior
  * </li> *
  *
+ * <li><b>android.gov.nist.javax.sip.VIRTUAL_THREAD_CHANNELS = [true|false] </b> <br/>
+ * Default is <it>false</it>. With the blocking TCP and TLS transport, read and
+ * parse each connection from virtual threads instead of two dedicated platform
+ * threads, so a large number of mostly idle connections does not need as many OS
+ * threads and stacks. Requires Java 21 or later; elsewhere the readers and parsers
+ * run on a pool of platform threads, which still needs two threads per open
+ * connection.
+ * </li>
+ *
+ * <li><b>android.gov.nist.javax.sip.NIO_SELECTOR_THREADS = int </b> <br/>
+ * Default is <it>1</it>. Number of selector threads of each NIO TCP, TLS and WebSocket
+ * listening point. The first one accepts the incoming connections, then each connection
+ * is served by the thread its socket hashes to, which reads and parses its messages and
+ * writes its pending data. Raise it when a single selector thread is saturated by a
+ * large number of connections.
+ * </li>
+ *
  * <li><b>android.gov.nist.javax.sip.stack.USE_DIRECT_BUFFERS = [true|false]</b> <br/>
  * Default is <it>true</it> If set to <it>false</it>, the NIO stack won't use direct buffers.
  * As Direct buffers reside outside of the heap memory, they can lead to unforeseen out of memory exceptions
@@ -440,6 +493,33 @@ import android.javax.sip.message.Request;
  * causing even more retransmissions. Good values to this property for servers
  * is a big number in the order of 8*8*1024 or higher.</li>
  *
+ * <li><b>android.gov.nist.javax.sip.UDP_BUFFER_POOL_SIZE = int </b> <br/>
+ * Default is <it>0</it> (disabled). Number of receive buffers of
+ * MAX_MESSAGE_SIZE bytes kept per UDP listening point. Datagrams are received
+ * into a pooled buffer, parsed in place and the buffer is recycled once parsing
+ * completes, instead of allocating and copying a new buffer for every packet.
+ * When all buffers are in use, extra ones are allocated and later discarded.
+ * A value close to THREAD_POOL_SIZE plus the expected queue depth is a good
+ * start.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.UDP_USE_DATAGRAM_CHANNEL = [true|false] </b> <br/>
+ * Default is <it>false</it>. Read incoming UDP datagrams through a
+ * java.nio.channels.DatagramChannel. The socket is created directly and not
+ * through the NETWORK_LAYER. Best combined with UDP_BUFFER_POOL_SIZE. When the
+ * thread auditor is enabled the socket is still read with a timeout so the
+ * auditor keeps being pinged.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.UDP_READER_THREADS = int </b> <br/>
+ * Default is <it>1</it>. Number of sockets bound to the port of each UDP
+ * listening point, using SO_REUSEPORT so the kernel spreads the incoming
+ * datagrams across them, each read by its own thread. When THREAD_POOL_SIZE is
+ * set, every UDP message channel thread also gets its own queue and datagrams
+ * are assigned to a queue by the hash of their Call-ID, so messages of one call
+ * are processed in order by a single thread. SO_REUSEPORT needs Java 9 or a
+ * recent Android release; elsewhere, and when a custom NETWORK_LAYER is
+ * configured, a single socket is used (the Call-ID partitioning still
+ * applies).</li>
+ *
  * <li><b>android.gov.nist.javax.sip.CONGESTION_CONTROL_TIMEOUT = int </b> How
  * much time messages are allowed to wait in queue before being dropped due to
  * stack being too slow to respond. Default value is 8000 ms. The value is in
@@ -512,15 +592,51 @@ import android.javax.sip.message.Request;
  *
  * <li><b>android.gov.nist.javax.sip.MESSAGE_PARSER_FACTORY =  name of the class implementing android.gov.nist.javax.sip.parser.MessageParserFactory</b>
  * This factory allows pluggable implementations of the MessageParser that will take care of parsing the incoming messages.
- * By example one could plug a lazy parser through this factory.</li>
+ * By example one could plug a lazy parser through this factory.
+ * Default is <it>android.gov.nist.javax.sip.parser.StringMsgParserFactory</it>. Setting it to
+ * <it>android.gov.nist.javax.sip.parser.ByteMsgParserFactory</it> selects a parser that scans the
+ * received bytes in place and builds a single String per header.</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.LAZY_HEADER_PARSING = [true|false] </b> <br/>
+ * Default is <it>false</it>. Only honoured by the ByteMsgParserFactory message
+ * parser factory. When true, the headers of incoming messages are kept as raw
+ * bytes and parsed the first time they are accessed, except the Via, From, To,
+ * Call-ID, CSeq, Content-Length, Content-Type and Max-Forwards headers (and
+ * headers in compact form) which the stack always needs. Headers never accessed
+ * are encoded back verbatim when the message is forwarded. A lazy header that
+ * fails to parse is reported to the ParseExceptionListener when it is first
+ * accessed rather than while the message is parsed, so the listener can no
+ * longer reject the message for it (the headers the stack rejects messages
+ * for are never parsed lazily).</li>
  *
  * <li><b>android.gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY =  name of the class implementing android.gov.nist.javax.sip.parser.MessageProcessorFactory</b>
  * This factory allows pluggable implementations of the MessageProcessor that will take care of incoming messages.
  * By example one could plug a NIO Processor through this factory.</li>
  *
+ * <li><b>android.gov.nist.javax.sip.ID_GENERATOR = name of the class implementing android.gov.nist.javax.sip.UtilsExt</b>
+ * The generator of the Call-IDs, tags and branch identifiers. Default is android.gov.nist.javax.sip.Utils, which
+ * hashes a random number with a pool of shared MD5 digesters. android.gov.nist.javax.sip.ThreadLocalIdGenerator
+ * takes no lock and does no hashing, each thread drawing from an AES keystream of its own, for stacks
+ * creating many transactions from many threads. The branch
+ * identifiers must start with the magic cookie and the signature of Utils for the stack to recognize the
+ * responses to its requests.</li>
+ *
  * <li><b>android.gov.nist.javax.sip.TIMER_CLASS_NAME =  name of the class implementing android.gov.nist.javax.sip.stack.timers.SipTimer</b> interface
  * This allows pluggable implementations of the Timer that will take care of scheduling the various SIP Timers.
- * By example one could plug a regular timer, a scheduled thread pool executor.</li>
+ * By example one could plug a regular timer, a scheduled thread pool executor.
+ * android.gov.nist.javax.sip.stack.timers.HashedWheelSipTimer is a hashed timing wheel with O(1) schedule and cancel,
+ * suited to stacks holding a large number of transactions. Its tasks fire at their deadline
+ * like those of the other timers, the tick only sets how they are spread over the wheel. The
+ * tick and the size of the wheel are set with
+ * android.gov.nist.javax.sip.timers.WHEEL_TICK_DURATION (milliseconds, default 1) and
+ * android.gov.nist.javax.sip.timers.WHEEL_SIZE (number of buckets, default 4096).</li>
+ *
+ * <li><b>android.gov.nist.javax.sip.EVENT_DRIVEN_TRANSACTION_TIMERS = [true|false] </b> <br/>
+ * Default is <it>false</it>. By default each transaction runs a timer task every 500 ms
+ * for its whole life to count down its retransmission and timeout timers. When true,
+ * the transaction instead schedules a one shot task at the next deadline of the RFC 3261
+ * timers it has armed (A, B, E, F, G, H, I...) and once more when it terminates, so an
+ * idle transaction does not wake up the timer thread.</li>
  *
  * <li><b>android.gov.nist.javax.sip.DELIVER_RETRANSMITTED_ACK_TO_LISTENER=boolean</b> A testing property
  * that allows application to see the ACK for retransmitted 200 OK requests. <b>Note that this is for test
@@ -667,6 +783,10 @@ public class SipStackImpl extends SIPTransactionStack implements
 	// Use this flag with caution.
 	private boolean reEntrantListener;
 
+	// Number of threads delivering the events to a non re-entrant listener,
+	// partitioned by Call-ID
+	private int eventScannerPartitions = 1;
+
 	SipListener sipListener;
 	TlsSecurityPolicy tlsSecurityPolicy;
 
@@ -802,7 +922,7 @@ public class SipStackImpl extends SIPTransactionStack implements
 						.getConstructor(constructorArgs);
 				Object[] args = new Object[0];
 				StackLogger stackLogger = (StackLogger) cons.newInstance(args);
-				CommonLogger.legacyLogger = stackLogger;
+				CommonLogger.setLegacyLogger(stackLogger);
 				stackLogger.setStackProperties(configurationProperties);
 			} catch (InvocationTargetException ex1) {
 				throw new IllegalArgumentException(
@@ -1302,6 +1422,14 @@ public class SipStackImpl extends SIPTransactionStack implements
 				.getProperty("android.gov.nist.javax.sip.REENTRANT_LISTENER");
 		this.reEntrantListener = (rel != null && "true".equalsIgnoreCase(rel));
 
+		this.eventScannerPartitions = Integer.parseInt(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.EVENT_SCANNER_PARTITIONS", "1"));
+		if (this.eventScannerPartitions > 1 && !this.reEntrantListener) {
+			// the default event scanner was started before the configuration was read
+			this.eventScanner.forceStop();
+			this.eventScanner = new EventScanner(this);
+		}
+
 		// Check if a thread audit interval is specified
 		String interval = configurationProperties
 				.getProperty("android.gov.nist.javax.sip.THREAD_AUDIT_INTERVAL_IN_MILLISECS");
@@ -1458,6 +1586,12 @@ public class SipStackImpl extends SIPTransactionStack implements
 						.toString());
 		bufferSizeInteger = new Integer(bufferSize).intValue();
 		super.setSendUdpBufferSize(bufferSizeInteger);
+		super.setUdpBufferPoolSize(Integer.parseInt(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.UDP_BUFFER_POOL_SIZE", "0")));
+		super.setUdpDatagramChannelEnabled(Boolean.parseBoolean(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.UDP_USE_DATAGRAM_CHANNEL", "false")));
+		super.setUdpReaderThreads(Integer.parseInt(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.UDP_READER_THREADS", "1")));
 		// Contribution for https://github.com/Mobicents/jain-sip/issues/40
 		super.setConnectionLingerTimer(Integer.parseInt(configurationProperties.getProperty(
 				"android.gov.nist.javax.sip.LINGER_TIMER", "8")));
@@ -1487,6 +1621,12 @@ public class SipStackImpl extends SIPTransactionStack implements
 
 		super.dialogTimeoutFactor = Integer.parseInt(configurationProperties.getProperty("android.gov.nist.javax.sip.DIALOG_TIMEOUT_FACTOR","64"));
 
+		super.setLazyHeaderParsing(Boolean.parseBoolean(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.LAZY_HEADER_PARSING", "false")));
+
+		super.setEventDrivenTransactionTimers(Boolean.parseBoolean(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.EVENT_DRIVEN_TRANSACTION_TIMERS", "false")));
+
 		String messageParserFactoryName = configurationProperties.getProperty("android.gov.nist.javax.sip.MESSAGE_PARSER_FACTORY",StringMsgParserFactory.class.getName());
 		try {
 			super.messageParserFactory = (MessageParserFactory) Class.forName(messageParserFactoryName).newInstance();
@@ -1505,6 +1645,17 @@ public class SipStackImpl extends SIPTransactionStack implements
 						"Bad configuration value for android.gov.nist.javax.sip.MESSAGE_PROCESSOR_FACTORY", e);
 		}
 
+		String idGeneratorName = configurationProperties.getProperty("android.gov.nist.javax.sip.ID_GENERATOR");
+		if (idGeneratorName != null) {
+			try {
+				super.idGenerator = (UtilsExt) Class.forName(idGeneratorName).newInstance();
+			} catch (Exception e) {
+				logger
+					.logError(
+							"Bad configuration value for android.gov.nist.javax.sip.ID_GENERATOR", e);
+			}
+		}
+
 		String maxIdleTimeString = configurationProperties.getProperty("android.gov.nist.javax.sip.NIO_MAX_SOCKET_IDLE_TIME", "7200000");
 		try {
 			super.nioSocketMaxIdleTime = Long.parseLong(maxIdleTimeString);
@@ -1523,6 +1674,33 @@ public class SipStackImpl extends SIPTransactionStack implements
 						"Bad configuration value for android.gov.nist.javax.sip.NIO_BLOCKING_MODE=" + nioMode, e);
 		}
 
+		super.setNioSelectorThreads(Integer.parseInt(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.NIO_SELECTOR_THREADS", "1")));
+
+		super.setVirtualThreadChannels(Boolean.parseBoolean(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.VIRTUAL_THREAD_CHANNELS", "false")));
+
+		super.getMetrics().setEnabled(Boolean.parseBoolean(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.METRICS_ENABLED", "true")));
+
+		String metricsJmxName = configurationProperties.getProperty("android.gov.nist.javax.sip.METRICS_JMX_NAME");
+		if (metricsJmxName != null) {
+			super.getMetrics().registerMBean(metricsJmxName);
+		}
+
+		super.setThreadPoolQueueSize(Integer.parseInt(configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.THREAD_POOL_QUEUE_SIZE", "0")));
+
+		String rejectionPolicy = configurationProperties.getProperty(
+				"android.gov.nist.javax.sip.THREAD_POOL_REJECTION_POLICY", "ABORT");
+		try {
+			super.setThreadPoolRejectionPolicy(ThreadAffinityExecutor.RejectionPolicy.valueOf(rejectionPolicy));
+		} catch (Exception e) {
+			logger
+				.logError(
+						"Bad configuration value for android.gov.nist.javax.sip.THREAD_POOL_REJECTION_POLICY=" + rejectionPolicy, e);
+		}
+
 
 
 		String defaultTimerName = configurationProperties.getProperty("android.gov.nist.javax.sip.TIMER_CLASS_NAME",DefaultSipTimer.class.getName());
@@ -2079,6 +2257,13 @@ public class SipStackImpl extends SIPTransactionStack implements
 		return reEntrantListener;
 	}
 
+	/**
+	 * @return the eventScannerPartitions
+	 */
+	public int getEventScannerPartitions() {
+		return eventScannerPartitions;
+	}
+
 
 
 
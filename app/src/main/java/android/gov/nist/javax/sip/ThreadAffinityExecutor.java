@@ -3,70 +3,596 @@ package android.gov.nist.javax.sip;
 import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.NamingThreadFactory;
 import android.gov.nist.core.StackLogger;
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.log4j.MDC;
 
+/**
+ * Executor keeping the tasks of a same affinity object (the Call-ID of the
+ * messages, see {@link ThreadAffinityIdentifier}) in order and one at a time.
+ *
+ * The tasks are queued in lanes, the affinity object picking the lane. Each
+ * lane belongs to a shard served by one worker thread, but a worker with
+ * nothing to do in its own shard steals whole lanes from the other shards, so
+ * a busy Call-ID doesn't hold back the other lanes of its shard while other
+ * workers idle. A lane is run by a single worker at a time, which keeps the
+ * tasks of an affinity object in order.
+ *
+ * The number of tasks waiting in a shard can be bounded: once the bound is
+ * reached, further tasks with an affinity object are rejected according to
+ * the {@link RejectionPolicy}. Tasks without affinity object (connection
+ * events...) and timers are never rejected. The shard is reported overloaded
+ * from 80% of the bound, for a SIPMessageValve to shed new requests before
+ * they are rejected.
+ *
+ * Delayed tasks are kept by a single scheduler thread and queued in their lane
+ * when they expire. A task scheduled with a fixed delay is scheduled again
+ * once its run in the lane is over.
+ */
 public class ThreadAffinityExecutor implements ScheduledExecutorService {
 
     private static StackLogger logger = CommonLogger.getLogger(ThreadAffinityExecutor.class);
 
-    private final List<MDCScheduledTHExecutor> executors;
-    private final AtomicInteger nextThread = new AtomicInteger(0);
+    private static final String AFFINITY_THREAD_VAR = "AffTh";
+
+    // Lanes per shard, the more lanes, the less Call-IDs share a lane.
+    private static final int LANES_PER_SHARD = 16;
+
+    // Tasks a worker runs from a lane before letting the other lanes run.
+    private static final int LANE_BATCH_SIZE = 64;
+
+    /**
+     * What to do with a task when the queue of its shard is full.
+     */
+    public enum RejectionPolicy {
+        /** Throw a RejectedExecutionException to the caller. */
+        ABORT,
+        /** Drop the task. */
+        DISCARD
+    }
+
+    /**
+     * A worker thread and the lanes it serves, with its queueing metrics.
+     */
+    public class Shard {
+        private final int index;
+        private final ConcurrentLinkedQueue<Lane> readyLanes = new ConcurrentLinkedQueue<Lane>();
+        private final AtomicInteger queueDepth = new AtomicInteger();
+        private final AtomicInteger peakQueueDepth = new AtomicInteger();
+        private final AtomicLong executedTasks = new AtomicLong();
+        private final AtomicLong rejectedTasks = new AtomicLong();
+        private final AtomicLong stolenLanes = new AtomicLong();
+        private final AtomicLong totalWait = new AtomicLong();
+        private final AtomicLong maxWait = new AtomicLong();
+        private Thread worker;
+        private volatile boolean idle;
+
+        private Shard(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return the index of the shard
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the number of tasks waiting in the lanes of the shard
+         */
+        public int getQueueDepth() {
+            return queueDepth.get();
+        }
+
+        /**
+         * @return the largest number of tasks that have been waiting in the
+         *         lanes of the shard at the same time
+         */
+        public int getPeakQueueDepth() {
+            return peakQueueDepth.get();
+        }
+
+        /**
+         * @return the number of tasks of the shard that have been run, by its
+         *         worker or by another one
+         */
+        public long getExecutedTasks() {
+            return executedTasks.get();
+        }
+
+        /**
+         * @return the number of tasks rejected because the shard was full
+         */
+        public long getRejectedTasks() {
+            return rejectedTasks.get();
+        }
+
+        /**
+         * @return the number of times the worker of this shard took a lane of
+         *         another shard
+         */
+        public long getStolenLanes() {
+            return stolenLanes.get();
+        }
+
+        /**
+         * @return the mean time in microseconds the tasks waited before being
+         *         run
+         */
+        public long getAverageWaitMicros() {
+            long executed = executedTasks.get();
+            return executed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalWait.get() / executed);
+        }
+
+        /**
+         * @return the longest time in microseconds a task waited before being
+         *         run
+         */
+        public long getMaxWaitMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(maxWait.get());
+        }
+
+        /**
+         * @return true if the shard holds 80% or more of the tasks it accepts,
+         *         always false when the shards are not bounded
+         */
+        public boolean isOverloaded() {
+            return highWaterMark > 0 && queueDepth.get() >= highWaterMark;
+        }
+
+        private void queued() {
+            int depth = queueDepth.incrementAndGet();
+            int peak;
+            while (depth > (peak = peakQueueDepth.get()) && !peakQueueDepth.compareAndSet(peak, depth))
+                ;
+        }
+
+        private void executing(Task task) {
+            queueDepth.decrementAndGet();
+            long wait = System.nanoTime() - task.enqueueTime;
+            executedTasks.incrementAndGet();
+            totalWait.addAndGet(wait);
+            long max;
+            while (wait > (max = maxWait.get()) && !maxWait.compareAndSet(max, wait))
+                ;
+        }
+    }
+
+    /**
+     * The ordered tasks of the affinity objects hashing to it. The lane is in
+     * the ready queue of its shard, or being run, while it holds tasks.
+     */
+    private static class Lane {
+        private final Shard shard;
+        private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Lane(Shard shard) {
+            this.shard = shard;
+        }
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final long enqueueTime;
+
+        private Task(Runnable runnable) {
+            this.runnable = runnable;
+            this.enqueueTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * A task repeated with a fixed delay between the end of a run in its lane
+     * and the start of the next one. As with the JDK executors, a run throwing
+     * an exception suppresses the next ones.
+     */
+    private class FixedDelayTask implements ScheduledFuture<Object>, Runnable {
+        private final Runnable command;
+        private final Lane lane;
+        private final long delay;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Runnable expired = new Runnable() {
+            public void run() {
+                if (!cancelled) {
+                    enqueue(lane, FixedDelayTask.this);
+                }
+            }
+        };
+        private volatile ScheduledFuture<?> next;
+        private volatile boolean cancelled;
+        private volatile Throwable failure;
+
+        private FixedDelayTask(Runnable command, Lane lane, long delay) {
+            this.command = command;
+            this.lane = lane;
+            this.delay = delay;
+        }
+
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            try {
+                command.run();
+            } catch (RuntimeException ex) {
+                failure = ex;
+                finish();
+                throw ex;
+            } catch (Error ex) {
+                failure = ex;
+                finish();
+                throw ex;
+            }
+            scheduleNext(delay);
+        }
+
+        private void scheduleNext(long delayNanos) {
+            if (shutdown) {
+                cancel(false);
+                return;
+            }
+            try {
+                next = scheduler.schedule(expired, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                cancel(false);
+                return;
+            }
+            if (cancelled) {
+                // cancelled while being scheduled
+                next.cancel(false);
+            }
+        }
+
+        private void finish() {
+            repeatingTasks.remove(this);
+            finished.countDown();
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (cancelled || finished.getCount() == 0) {
+                return false;
+            }
+            cancelled = true;
+            ScheduledFuture<?> pending = next;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+            finish();
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public boolean isDone() {
+            return finished.getCount() == 0;
+        }
+
+        public Object get() throws InterruptedException, ExecutionException {
+            finished.await();
+            return result();
+        }
+
+        public Object get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!finished.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return result();
+        }
+
+        private Object result() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            throw new CancellationException();
+        }
+
+        public long getDelay(TimeUnit unit) {
+            ScheduledFuture<?> pending = next;
+            return pending == null ? 0 : pending.getDelay(unit);
+        }
+
+        public int compareTo(Delayed other) {
+            long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+            return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final Shard shard;
+
+        private Worker(Shard shard) {
+            this.shard = shard;
+        }
+
+        public void run() {
+            try {
+                while (true) {
+                    Lane lane = nextLane(shard);
+                    if (lane == null) {
+                        shard.idle = true;
+                        idleWorkers.incrementAndGet();
+                        // look again now that producers see this worker idle
+                        lane = nextLane(shard);
+                        if (lane == null) {
+                            if (schedulerTerminated) {
+                                return;
+                            }
+                            LockSupport.park(this);
+                        }
+                        shard.idle = false;
+                        idleWorkers.decrementAndGet();
+                        if (lane == null) {
+                            continue;
+                        }
+                    }
+                    runLane(lane);
+                }
+            } finally {
+                shard.idle = false;
+                terminated.countDown();
+            }
+        }
+    }
+
+    private final Shard[] shards;
+    private final Lane[] lanes;
+    private final int queueSize;
+    private final int highWaterMark;
+    private final RejectionPolicy rejectionPolicy;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger nextLane = new AtomicInteger(0);
+    private final AtomicInteger idleWorkers = new AtomicInteger(0);
+    private final CountDownLatch terminated;
+    // Fixed delay tasks not cancelled yet, cancelled on shutdown
+    private final Set<FixedDelayTask> repeatingTasks =
+            Collections.newSetFromMap(new ConcurrentHashMap<FixedDelayTask, Boolean>());
+    private volatile boolean shutdown;
+    private volatile boolean schedulerTerminated;
 
     public ThreadAffinityExecutor(int corePoolSize) {
-        executors = new ArrayList();
+        this(corePoolSize, 0, RejectionPolicy.ABORT);
+    }
+
+    /**
+     * @param corePoolSize the number of shards and worker threads.
+     * @param queueSize the number of tasks a shard holds before rejecting
+     *            tasks, 0 for no limit.
+     * @param rejectionPolicy what to do with the tasks rejected.
+     */
+    public ThreadAffinityExecutor(int corePoolSize, int queueSize, RejectionPolicy rejectionPolicy) {
+        this.queueSize = queueSize;
+        this.highWaterMark = queueSize > 0 ? Math.max(1, queueSize * 8 / 10) : 0;
+        this.rejectionPolicy = rejectionPolicy;
         NamingThreadFactory namingThreadFactory = new NamingThreadFactory("AffinityJAIN");
+        this.scheduler = new ScheduledThreadPoolExecutor(1, namingThreadFactory) {
+            protected void terminated() {
+                super.terminated();
+                // isTerminated() only turns true once this hook returns
+                schedulerTerminated = true;
+                // the workers waited for the last delayed tasks
+                for (Shard shard : shards) {
+                    LockSupport.unpark(shard.worker);
+                }
+            }
+        };
+        this.terminated = new CountDownLatch(corePoolSize);
+        shards = new Shard[corePoolSize];
+        lanes = new Lane[corePoolSize * LANES_PER_SHARD];
         for (int i = 0; i < corePoolSize; i++) {
-            executors.add(new MDCScheduledTHExecutor(1, namingThreadFactory));
+            shards[i] = new Shard(i);
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(shards[i % corePoolSize]);
+        }
+        for (Shard shard : shards) {
+            shard.worker = namingThreadFactory.newThread(new Worker(shard));
         }
-        schedulePurgeTaskIfNeeded();
+        for (Shard shard : shards) {
+            shard.worker.start();
+        }
+    }
+
+    /**
+     * @return the shards of the executor, one per thread.
+     */
+    public Shard[] getShards() {
+        return shards.clone();
+    }
+
+    /**
+     * @return true if the shard the affinity object hashes to holds 80% or
+     *         more of the tasks it accepts.
+     */
+    public boolean isOverloaded(Object threadHash) {
+        return threadHash != null && laneOf(threadHash).shard.isOverloaded();
+    }
+
+    private static Object threadHashOf(Runnable runnable) {
+        if (runnable instanceof ThreadAffinityIdentifier) {
+            return ((ThreadAffinityIdentifier) runnable).getThreadHash();
+        }
+        return null;
     }
 
-    private synchronized int retrieveNextThread() {
-        int nThread;
-        nThread = nextThread.incrementAndGet();
-        if (nThread >= executors.size()) {
-            nThread = 0;
-            nextThread.set(0);
+    private Lane laneOf(Object threadHash) {
+        int hash = threadHash.hashCode();
+        hash ^= (hash >>> 16);
+        return lanes[(hash & 0x7fffffff) % lanes.length];
+    }
+
+    private Lane laneFor(Runnable runnable, Object threadHash) {
+        if (threadHash != null) {
+            Lane lane = laneOf(threadHash);
+            if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+                logger.logDebug("Runnable assigned to shard (" + threadHash + "," + lane.shard.index + ")");
+            }
+            return lane;
         }
-        if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
-            logger.logDebug("Next thread id=" + nThread);
+        return lanes[(nextLane.getAndIncrement() & 0x7fffffff) % lanes.length];
+    }
+
+    /**
+     * Queue a task, unless its shard is full.
+     *
+     * @return false if the task was discarded.
+     */
+    private boolean offer(Runnable runnable, Object threadHash, Lane lane) {
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
         }
-        return nThread;
+        if (threadHash != null && queueSize > 0 && lane.shard.queueDepth.get() >= queueSize) {
+            lane.shard.rejectedTasks.incrementAndGet();
+            if (rejectionPolicy == RejectionPolicy.ABORT) {
+                throw new RejectedExecutionException("Shard " + lane.shard.index + " of the executor is full ("
+                        + queueSize + " tasks), rejecting task for " + threadHash);
+            }
+            if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+                logger.logDebug("Shard " + lane.shard.index + " is full, discarding task for " + threadHash);
+            }
+            return false;
+        }
+        enqueue(lane, runnable);
+        return true;
     }
 
-    private int calculateAffinityThread(Runnable runnable) {
-        int affThreadIndex = 0;
-        if (runnable instanceof ThreadAffinityIdentifier) {
-            ThreadAffinityIdentifier tTask = (ThreadAffinityIdentifier) runnable;
-            Object tHash = tTask.getThreadHash();
-            if (tHash != null) {
-                affThreadIndex = Math.abs(tHash.hashCode() % executors.size());
-                if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
-                    logger.logDebug("Runnable assigned to thread (" + tHash + "," + affThreadIndex + ")");
+    private void enqueue(Lane lane, Runnable runnable) {
+        Shard shard = lane.shard;
+        shard.queued();
+        lane.tasks.offer(new Task(runnable));
+        if (lane.scheduled.compareAndSet(false, true)) {
+            shard.readyLanes.offer(lane);
+            signal(shard);
+        }
+    }
+
+    /**
+     * Wake up the worker of the shard, or an idle worker to steal the lane if
+     * that one is busy.
+     */
+    private void signal(Shard shard) {
+        if (shard.idle) {
+            LockSupport.unpark(shard.worker);
+        } else if (idleWorkers.get() > 0) {
+            for (Shard other : shards) {
+                if (other.idle) {
+                    LockSupport.unpark(other.worker);
+                    return;
                 }
-            } else {
-                affThreadIndex = retrieveNextThread();
             }
-        } else {
-            affThreadIndex = retrieveNextThread();
         }
-        return affThreadIndex;
+    }
+
+    private Lane nextLane(Shard shard) {
+        Lane lane = shard.readyLanes.poll();
+        if (lane == null) {
+            for (int i = 1; i < shards.length && lane == null; i++) {
+                lane = shards[(shard.index + i) % shards.length].readyLanes.poll();
+            }
+            if (lane != null) {
+                shard.stolenLanes.incrementAndGet();
+            }
+        }
+        return lane;
+    }
+
+    private void runLane(Lane lane) {
+        Shard shard = lane.shard;
+        Task task;
+        try {
+            for (int i = 0; i < LANE_BATCH_SIZE && (task = lane.tasks.poll()) != null; i++) {
+                shard.executing(task);
+                run(task.runnable);
+            }
+        } finally {
+            lane.scheduled.set(false);
+            // tasks queued while the lane was running, or left by the batch limit
+            if (!lane.tasks.isEmpty() && lane.scheduled.compareAndSet(false, true)) {
+                shard.readyLanes.offer(lane);
+                signal(shard);
+            }
+        }
+    }
+
+    private void run(Runnable runnable) {
+        boolean mdc = logger.isLoggingEnabled(StackLogger.TRACE_INFO) && runnable instanceof MDCTask;
+        if (mdc) {
+            MDCTask mTask = (MDCTask) runnable;
+            Map<String, String> mdcVars = mTask.getMDCVars();
+            if (mdcVars != null) {
+                for (String varKey : mdcVars.keySet()) {
+                    MDC.put(varKey, mdcVars.get(varKey));
+                }
+            } else if (mTask.getThreadHash() != null) {
+                MDC.put(AFFINITY_THREAD_VAR, mTask.getThreadHash());
+            }
+        }
+        try {
+            runnable.run();
+        } catch (Exception ex) {
+            logger.logError("Task " + runnable + " failed", ex);
+        } catch (Throwable ex) {
+            // keep the worker alive for the other lanes
+            logger.logError("Task " + runnable + " failed: " + ex);
+        } finally {
+            if (mdc) {
+                Map<String, String> mdcVars = ((MDCTask) runnable).getMDCVars();
+                if (mdcVars != null) {
+                    for (String varKey : mdcVars.keySet()) {
+                        MDC.remove(varKey);
+                    }
+                } else {
+                    MDC.remove(AFFINITY_THREAD_VAR);
+                }
+            }
+        }
+    }
+
+    /**
+     * The delayed tasks are queued in their lane when they expire, whatever the
+     * depth of the shard.
+     */
+    private Runnable delayed(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        final Lane lane = laneFor(command, threadHashOf(command));
+        return new Runnable() {
+            public void run() {
+                enqueue(lane, command);
+            }
+        };
     }
 
     @Override
     public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
-        int affThread = calculateAffinityThread(command);
-        return executors.get(affThread).schedule(command, delay, unit);
+        return scheduler.schedule(delayed(command), delay, unit);
     }
 
     @Override
@@ -76,20 +602,37 @@ public class ThreadAffinityExecutor implements ScheduledExecutorService {
 
     @Override
     public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
-        int affThread = calculateAffinityThread(command);
-        return executors.get(affThread).scheduleAtFixedRate(command, initialDelay, period, unit);
+        return scheduler.scheduleAtFixedRate(delayed(command), initialDelay, period, unit);
     }
 
     @Override
     public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
-        int affThread = calculateAffinityThread(command);
-        return executors.get(affThread).scheduleWithFixedDelay(command, initialDelay, delay, unit);
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        if (delay <= 0) {
+            throw new IllegalArgumentException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("The executor has been shut down");
+        }
+        FixedDelayTask task = new FixedDelayTask(command, laneFor(command, threadHashOf(command)),
+                unit.toNanos(delay));
+        repeatingTasks.add(task);
+        task.scheduleNext(unit.toNanos(initialDelay));
+        return task;
     }
 
     @Override
     public void shutdown() {
-        for (ScheduledExecutorService serv : executors) {
-            serv.shutdown();
+        shutdown = true;
+        // like the periodic tasks of the scheduler, they don't run after shutdown
+        for (FixedDelayTask task : repeatingTasks) {
+            task.cancel(false);
+        }
+        scheduler.shutdown();
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.worker);
         }
     }
 
@@ -100,17 +643,17 @@ public class ThreadAffinityExecutor implements ScheduledExecutorService {
 
     @Override
     public boolean isShutdown() {
-        return executors.get(0).isShutdown();
+        return shutdown;
     }
 
     @Override
     public boolean isTerminated() {
-        return executors.get(0).isTerminated();
+        return terminated.getCount() == 0;
     }
 
     @Override
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        return executors.get(0).awaitTermination(timeout, unit);
+        return terminated.await(timeout, unit);
     }
 
     @Override
@@ -120,14 +663,17 @@ public class ThreadAffinityExecutor implements ScheduledExecutorService {
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        int affThread = calculateAffinityThread(task);
-        return executors.get(affThread).submit(task, result);
+        Object threadHash = threadHashOf(task);
+        FutureTask<T> future = new FutureTask<T>(task, result);
+        if (!offer(future, threadHash, laneFor(task, threadHash))) {
+            future.cancel(false);
+        }
+        return future;
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        int affThread = calculateAffinityThread(task);
-        return executors.get(affThread).submit(task);
+        return submit(task, null);
     }
 
     @Override
@@ -152,32 +698,10 @@ public class ThreadAffinityExecutor implements ScheduledExecutorService {
 
     @Override
     public void execute(Runnable command) {
-        int affThread = calculateAffinityThread(command);
-        executors.get(affThread).execute(command);
-    }
-
-    private void schedulePurgeTaskIfNeeded() {
-        //TODO
-        /*int purgePeriod = Integer.parseInt(sipStackImpl.getConfigurationProperties().getProperty("android.gov.nist.javax.sip.timers.SCHEDULED_EXECUTOR_PURGE_DELAY", "1"));
-        if (purgePeriod > 0) {
-            Runnable r = new Runnable() {
-                public void run() {
-                    try {
-                        if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
-                            logger.logDebug("Purging canceled timer tasks...");
-                        }
-                        for (MDCScheduledTHExecutor serv : executors) {
-                            serv.purge();
-                        }
-                        if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
-                            logger.logDebug("Purging canceled timer tasks completed.");
-                        }
-                    } catch (Exception e) {
-                        logger.logError("failed to execute purge", e);
-                    }
-                }
-            };
-            scheduleWithFixedDelay(r, purgePeriod, purgePeriod, TimeUnit.MINUTES);
-        }*/
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        Object threadHash = threadHashOf(command);
+        offer(command, threadHash, laneFor(command, threadHash));
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ *
+ */
+package android.gov.nist.javax.sip;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Generates the Call-IDs, tags and branch identifiers without locks nor
+ * hashing. Each thread draws from its own AES generator in counter mode, keyed
+ * from a SecureRandom, and encodes the bits in hexadecimal straight into a
+ * char buffer of its own.
+ *
+ * The identifiers have the same shape as the ones of Utils: a Call-ID is 128
+ * random bits followed by the address, a tag 32 random bits, and a branch the
+ * RFC 3261 magic cookie, the signature of the stack (so that
+ * Utils.responseBelongsToUs still recognizes them) and 128 random bits.
+ * RFC 3261 section 19.3 asks for cryptographically random tags: the output of
+ * AES under a secret key does not give away the key, so the identifiers seen
+ * on the wire tell nothing of the ones a thread generates next, nor of the
+ * ones of the other threads, which have keys of their own. The keystream is
+ * produced a block of BATCH_SIZE bytes at a time, so the cipher is only called
+ * once every few identifiers.
+ *
+ * To use it for a stack, set the property
+ * android.gov.nist.javax.sip.ID_GENERATOR=android.gov.nist.javax.sip.ThreadLocalIdGenerator
+ *
+ * @since 2.0
+ */
+public class ThreadLocalIdGenerator implements UtilsExt {
+
+    // bytes of keystream generated at once, a multiple of the AES block size
+    private static final int BATCH_SIZE = 512;
+
+    private static final char[] toHex = { '0', '1', '2', '3', '4', '5', '6',
+            '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
+
+    private static final String BRANCH_PREFIX = SIPConstants.BRANCH_MAGIC_COOKIE
+            + "-" + Utils.getSignature() + "-";
+
+    // Draws the keys and initial counters of the per thread generators
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private static final ThreadLocal<Generator> generators = new ThreadLocal<Generator>() {
+        protected Generator initialValue() {
+            byte[] key = new byte[16];
+            byte[] counter = new byte[16];
+            synchronized (secureRandom) {
+                secureRandom.nextBytes(key);
+                secureRandom.nextBytes(counter);
+            }
+            return new Generator(key, counter);
+        }
+    };
+
+    private static final ThreadLocalIdGenerator instance = new ThreadLocalIdGenerator();
+
+    public static ThreadLocalIdGenerator getInstance() {
+        return instance;
+    }
+
+    /**
+     * State of the generator of one thread: AES in counter mode, built on the
+     * ECB mode every Java platform provides.
+     */
+    static final class Generator {
+        private final Cipher cipher;
+        private final byte[] counter;
+        private final byte[] counterBlocks = new byte[BATCH_SIZE];
+        private final byte[] keystream = new byte[BATCH_SIZE];
+        // next byte of keystream to use
+        private int position = BATCH_SIZE;
+        private final char[] buffer = new char[BRANCH_PREFIX.length() + 32];
+
+        Generator(byte[] key, byte[] counter) {
+            try {
+                cipher = Cipher.getInstance("AES/ECB/NoPadding");
+                cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+            } catch (GeneralSecurityException ex) {
+                throw new RuntimeException("Could not initialize the identifier generator", ex);
+            }
+            this.counter = counter;
+        }
+
+        long nextLong() {
+            if (position == BATCH_SIZE) {
+                refill();
+            }
+            long value = 0;
+            for (int i = position; i < position + 8; i++) {
+                value = (value << 8) | (keystream[i] & 0xFF);
+            }
+            position += 8;
+            return value;
+        }
+
+        private void refill() {
+            for (int offset = 0; offset < BATCH_SIZE; offset += 16) {
+                System.arraycopy(counter, 0, counterBlocks, offset, 16);
+                // increment the 128 bit counter
+                for (int i = 15; i >= 0 && ++counter[i] == 0; i--) {
+                }
+            }
+            try {
+                cipher.doFinal(counterBlocks, 0, BATCH_SIZE, keystream, 0);
+            } catch (GeneralSecurityException ex) {
+                throw new RuntimeException("Could not generate an identifier", ex);
+            }
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes the 16 hex digits of value into buffer at offset.
+     */
+    private static void putHex(char[] buffer, int offset, long value) {
+        for (int i = offset + 15; i >= offset; i--) {
+            buffer[i] = toHex[(int) value & 0x0F];
+            value >>>= 4;
+        }
+    }
+
+    public String generateCallIdentifier(String address) {
+        Generator generator = generators.get();
+        char[] buffer = new char[33 + address.length()];
+        putHex(buffer, 0, generator.nextLong());
+        putHex(buffer, 16, generator.nextLong());
+        buffer[32] = '@';
+        address.getChars(0, address.length(), buffer, 33);
+        return new String(buffer);
+    }
+
+    public String generateTag() {
+        Generator generator = generators.get();
+        char[] buffer = generator.buffer;
+        long value = generator.nextLong();
+        for (int i = 7; i >= 0; i--) {
+            buffer[i] = toHex[(int) value & 0x0F];
+            value >>>= 4;
+        }
+        return new String(buffer, 0, 8);
+    }
+
+    public String generateBranchId() {
+        Generator generator = generators.get();
+        char[] buffer = generator.buffer;
+        int length = BRANCH_PREFIX.length();
+        BRANCH_PREFIX.getChars(0, length, buffer, 0);
+        putHex(buffer, length, generator.nextLong());
+        putHex(buffer, length + 16, generator.nextLong());
+        return new String(buffer, 0, length + 32);
+    }
+}
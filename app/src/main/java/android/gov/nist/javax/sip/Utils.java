@@ -203,6 +203,17 @@ public class Utils implements UtilsExt {
     	}
     }
 
+    /**
+     * Return true if the branch starts with the RFC 3261 magic cookie,
+     * ignoring the case, without building a lower or upper cased copy of it.
+     *
+     * @param branch the branch parameter of a Via header.
+     */
+    public static boolean isRFC3261Branch(String branch) {
+        return branch.regionMatches(true, 0, SIPConstants.BRANCH_MAGIC_COOKIE, 0,
+                SIPConstants.BRANCH_MAGIC_COOKIE.length());
+    }
+
     public boolean responseBelongsToUs(SIPResponse response) {
         Via topmostVia = response.getTopmostVia();
         String branch = topmostVia.getBranch();
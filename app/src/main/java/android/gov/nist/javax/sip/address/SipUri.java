@@ -170,8 +170,11 @@ public class SipUri extends GenericURI implements android.javax.sip.address.SipU
 
             if (a.getUser()!=null && !UriDecoder.decode(a.getUser()).equals(UriDecoder.decode(b.getUser()))) return false;
             if (a.getUserPassword()!=null && !UriDecoder.decode(a.getUserPassword()).equals(UriDecoder.decode(b.getUserPassword()))) return false;
-            if (a.getHost() == null ^ b.getHost() == null) return false;
-            if (a.getHost() != null && !a.getHost().equalsIgnoreCase(b.getHost())) return false;
+            // getHost encodes the host, do it once
+            final String aHost = a.getHost();
+            final String bHost = b.getHost();
+            if (aHost == null ^ bHost == null) return false;
+            if (aHost != null && !aHost.equalsIgnoreCase(bHost)) return false;
             if (a.getPort() != b.getPort()) return false;
 
             // URI parameters
@@ -232,6 +235,19 @@ public class SipUri extends GenericURI implements android.javax.sip.address.SipU
         return false;
     }
 
+    /**
+     * Hash code consistent with equals: only the components that equal URIs
+     * always have in common (scheme, user, host and port) are hashed.
+     */
+    @Override
+    public int hashCode() {
+        int hash = hashCodeIgnoreCase(this.getHost()) * 31 + this.getPort();
+        String user = this.getUser();
+        if (user != null)
+            hash = hash * 31 + UriDecoder.decode(user).hashCode();
+        return this.isSecure() ? hash * 31 + 1 : hash;
+    }
+
     /**
      * Construct a URL from the parsed structure.
      * @return String
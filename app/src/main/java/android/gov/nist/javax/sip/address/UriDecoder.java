@@ -58,6 +58,8 @@ public class UriDecoder {
     	// if there is no % we just return the same uri
     	String uriToWorkOn = uri;
         int indexOfNextPercent = uriToWorkOn.indexOf("%");
+        if (indexOfNextPercent == -1)
+            return uri;
         StringBuilder decodedUri = new StringBuilder();
              
         while(indexOfNextPercent != -1) {
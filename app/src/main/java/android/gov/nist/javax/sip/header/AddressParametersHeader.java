@@ -103,4 +103,11 @@ public abstract class AddressParametersHeader extends ParametersHeader implement
         return false;
     }
 
+    /**
+     * Hash code of the address, consistent with equals.
+     */
+    public int hashCode() {
+        return this.address == null ? super.hashCode() : this.address.hashCode();
+    }
+
 }
@@ -28,6 +28,8 @@ package android.gov.nist.javax.sip.header;
 
 import java.text.ParseException;
 
+import android.javax.sip.header.AllowHeader;
+
 /**
  * Allow SIPHeader.
  *
@@ -88,4 +90,12 @@ public final class Allow extends
     protected StringBuilder encodeBody(StringBuilder buffer) {
         return buffer.append(method);
     }
+
+    public boolean equals(Object other) {
+        if (other instanceof AllowHeader) {
+            final AllowHeader o = (AllowHeader) other;
+            return this.method.equals(o.getMethod());
+        }
+        return false;
+    }
 }
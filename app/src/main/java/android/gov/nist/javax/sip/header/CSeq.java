@@ -95,6 +95,10 @@ public class CSeq extends SIPHeader implements android.javax.sip.header.CSeqHead
         return false;
     }
 
+    public int hashCode() {
+        return (seqno == null ? 0 : seqno.hashCode()) * 31 + (method == null ? 0 : method.hashCode());
+    }
+
     /**
      * Return canonical encoded header.
      * @return String with canonical encoded header.
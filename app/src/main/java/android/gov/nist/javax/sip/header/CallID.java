@@ -77,6 +77,15 @@ public class CallID
         return false;
     }
 
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     *
+     * Consistent with equals, case-insensitive as well
+     */
+    public int hashCode() {
+        return hashCodeIgnoreCase( this.getCallId() );
+    }
+
 
     /**
      * Encode the body part of this header (i.e. leave out the hdrName).
@@ -95,11 +104,14 @@ public class CallID
 
     /**
      * get the CallId field. This does the same thing as
-     * encodeBody
+     * encodeBody, except that the String is kept by the call identifier
+     * and returned again by the following calls.
      * @return String the encoded body part of the
      */
     public String getCallId() {
-        return encodeBody();
+        if (callIdentifier == null)
+            return "";
+        return callIdentifier.encode();
     }
 
     /**
@@ -54,6 +54,9 @@ public final class CallIdentifier extends SIPObject {
      */
     protected String host;
 
+    // Encoded id, built on the first encode() and dropped by the setters.
+    private transient String encoded;
+
     /**
      * Default constructor
      */
@@ -85,7 +88,12 @@ public final class CallIdentifier extends SIPObject {
      * @return String to set
      */
     public String encode() {
-        return encode(new StringBuilder()).toString();
+        String encoded = this.encoded;
+        if (encoded == null) {
+            encoded = encode(new StringBuilder()).toString();
+            this.encoded = encoded;
+        }
+        return encoded;
     }
 
     public StringBuilder encode(StringBuilder buffer) {
@@ -150,6 +158,7 @@ public final class CallIdentifier extends SIPObject {
      */
     public void setLocalId(String localId) {
         this.localId = localId;
+        this.encoded = null;
     }
 
     /** set the callId field
@@ -160,6 +169,7 @@ public final class CallIdentifier extends SIPObject {
     public void setCallID(String cid) throws IllegalArgumentException {
         if (cid == null)
             throw new IllegalArgumentException("NULL!");
+        this.encoded = null;
         int index = cid.indexOf('@');
         if (index == -1) {
             localId = cid;
@@ -179,5 +189,6 @@ public final class CallIdentifier extends SIPObject {
      */
     public void setHost(String host) {
         this.host = host;
+        this.encoded = null;
     }
 }
@@ -29,6 +29,7 @@
 package android.gov.nist.javax.sip.header;
 
 import android.javax.sip.*;
+import android.javax.sip.header.ExpiresHeader;
 
 /**
  * Expires SIP Header.
@@ -102,4 +103,12 @@ public class Expires
             throw new InvalidArgumentException("bad argument " + expires);
         this.expires = expires;
     }
+
+    public boolean equals(Object other) {
+        if (other instanceof ExpiresHeader) {
+            final ExpiresHeader o = (ExpiresHeader) other;
+            return this.getExpires() == o.getExpires();
+        }
+        return false;
+    }
 }
@@ -57,19 +57,16 @@ public abstract class ParametersHeader
     
     protected ParametersHeader() {
         this.parameters = new NameValueList();
-        this.duplicates = new DuplicateNameValueList();
     }
 
     protected ParametersHeader(String hdrName) {
         super(hdrName);
         this.parameters = new NameValueList();
-        this.duplicates = new DuplicateNameValueList();
     }
 
     protected ParametersHeader(String hdrName, boolean sync) {
         super(hdrName);
         this.parameters = new NameValueList(sync);
-        this.duplicates = new DuplicateNameValueList();
     }
 
     /*
@@ -488,7 +485,7 @@ public abstract class ParametersHeader
     	NameValue nv = new NameValue();
     	nv.setName(name);
     	nv.setValue(value);
-    	duplicates.set(nv);
+    	getMultiParameters().set(nv);
     }
     
     /** Set the parameter given a name and value.
@@ -496,7 +493,7 @@ public abstract class ParametersHeader
     * @param nameValue - the name value of the parameter to set.
     */
    public void setMultiParameter(NameValue nameValue) {
-       this.duplicates.set(nameValue);
+       getMultiParameters().set(nameValue);
    }
     
     /**
@@ -505,12 +502,17 @@ public abstract class ParametersHeader
      * @return
      */
     public String getMultiParameter(String name) {
+        if (this.duplicates == null)
+            return null;
         return this.duplicates.getParameter(name);
 
     }
     
 
     public DuplicateNameValueList getMultiParameters() {
+        // created on first use, few headers have multi parameters
+        if (duplicates == null)
+            duplicates = new DuplicateNameValueList();
         return duplicates;
     }
     
@@ -522,6 +524,8 @@ public abstract class ParametersHeader
      * @return the object associated with the name.
      */
     public Object getMultiParameterValue(String name) {
+        if (this.duplicates == null)
+            return null;
         return this.duplicates.getValue(name);
     }
 
@@ -533,7 +537,7 @@ public abstract class ParametersHeader
      */
 
     public Iterator<String> getMultiParameterNames() {
-        return duplicates.getNames();
+        return getMultiParameters().getNames();
     }
 
     /** Return true if you have a parameter and false otherwise.
@@ -554,7 +558,8 @@ public abstract class ParametersHeader
     */
 
     public void removeMultiParameter(String name) {
-        this.duplicates.delete(name);
+        if (this.duplicates != null)
+            this.duplicates.delete(name);
     }
     
     /**
@@ -565,14 +570,14 @@ public abstract class ParametersHeader
      * @return true if the parameter exists and false if not.
      */
     public boolean hasMultiParameter(String parameterName) {
-        return this.duplicates.hasNameValue(parameterName);
+        return this.duplicates != null && this.duplicates.hasNameValue(parameterName);
     }
 
     /**
      *Remove all parameters.
      */
     public void removeMultiParameters() {
-        this.duplicates = new DuplicateNameValueList();
+        this.duplicates = null;
     }
 
     //-------------------------------
@@ -150,6 +150,25 @@ public class Protocol extends SIPObject {
         protocolVersion = "2.0";
         transport = "UDP";
     }
+
+    /**
+     * Compare for equality, the protocol and transport tokens being case
+     * insensitive.
+     */
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other instanceof Protocol) {
+            final Protocol o = (Protocol) other;
+            return equalsIgnoreCase(this.protocolName, o.protocolName)
+                && equalsIgnoreCase(this.protocolVersion, o.protocolVersion)
+                && equalsIgnoreCase(this.transport, o.transport);
+        }
+        return false;
+    }
+
+    public int hashCode() {
+        return hashCodeIgnoreCase(this.transport);
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -85,6 +85,11 @@ public class RSeq extends SIPHeader implements android.javax.sip.header.RSeqHead
 
     }
 
-
-
+    public boolean equals(Object other) {
+        if (other instanceof RSeq) {
+            final RSeq o = (RSeq) other;
+            return this.getSeqNumber() == o.getSeqNumber();
+        }
+        return false;
+    }
 }
@@ -98,6 +98,15 @@ public class Require extends SIPHeader implements RequireHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    public boolean equals(Object other) {
+        if (other instanceof RequireHeader) {
+            final RequireHeader o = (RequireHeader) other;
+            return this.optionTag == null ? o.getOptionTag() == null
+                : this.optionTag.equals(o.getOptionTag());
+        }
+        return false;
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -70,10 +70,10 @@ public class Route
     /**
      * Hashcode so this header can be inserted into a set.
      *
-     *@return the hashcode of the encoded address.
+     *@return the hashcode of the address.
      */
     public int hashCode() {
-        return this.address.getHostPort().encode().toLowerCase().hashCode();
+        return this.address.hashCode();
     }
 
     /**
@@ -44,6 +44,11 @@ public abstract class SIPHeader
      */
     protected String headerName;
 
+    // Set once a message handed out a reference to this header, or was given it by a caller:
+    // the holder of the reference may modify it, so messages derived from the message don't
+    // share it (see SIPMessage.shareHeader). Private, so that equals and match ignore it.
+    private transient volatile boolean exposed;
+
     /** Value of the header.
     */
 
@@ -59,6 +64,34 @@ public abstract class SIPHeader
     public SIPHeader() {
     }
 
+    /**
+     * Record that a reference to this header was handed out by a message, or given to a message
+     * by a caller that keeps it.
+     *
+     * @since 2.0
+     */
+    public final void setExposed() {
+        if (!exposed) {
+            exposed = true;
+        }
+    }
+
+    /**
+     * @return true if a caller may hold a reference to this header, see setExposed.
+     * @since 2.0
+     */
+    public final boolean isExposed() {
+        return exposed;
+    }
+
+    /** Clones this header, the clone is not exposed.
+     */
+    public Object clone() {
+        SIPHeader retval = (SIPHeader) super.clone();
+        retval.exposed = false;
+        return retval;
+    }
+
     /**
      * Name of the SIPHeader
      * @return String
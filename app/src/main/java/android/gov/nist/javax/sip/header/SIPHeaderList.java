@@ -62,7 +62,8 @@ public abstract class SIPHeaderList<HDR extends SIPHeader> extends SIPHeader imp
 
 
     private SIPHeaderList() {
-        hlist = new LinkedList<HDR>();
+        // most lists hold one or two headers
+        hlist = new ArrayList<HDR>(2);
     }
 
     /**
@@ -205,6 +205,22 @@ public final class StatusLine extends SIPObject implements SipStatusLine {
         }
         return minor;
     }
+
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other instanceof StatusLine) {
+            final StatusLine o = (StatusLine) other;
+            return this.statusCode == o.statusCode
+                && this.matchStatusClass == o.matchStatusClass
+                && (this.sipVersion == null ? o.sipVersion == null : this.sipVersion.equals(o.sipVersion))
+                && (this.reasonPhrase == null ? o.reasonPhrase == null : this.reasonPhrase.equals(o.reasonPhrase));
+        }
+        return false;
+    }
+
+    public int hashCode() {
+        return this.statusCode;
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -113,6 +113,15 @@ public class Supported extends SIPHeader implements SupportedHeader {
     public String getOptionTag() {
         return optionTag;
     }
+
+    public boolean equals(Object other) {
+        if (other instanceof SupportedHeader) {
+            final SupportedHeader o = (SupportedHeader) other;
+            return this.optionTag == null ? o.getOptionTag() == null
+                : this.optionTag.equals(o.getOptionTag());
+        }
+        return false;
+    }
 }
 /*
  * $Log: not supported by cvs2svn $
@@ -107,6 +107,14 @@ public class Via
 
         if (other==this) return true;
 
+        if (other instanceof Via) {
+            // same as below without building the protocol string
+            final Via o = (Via) other;
+            return this.sentProtocol.equals( o.sentProtocol )
+                && equalsIgnoreCase( getHost(), o.getHost() )
+                && getPort() == o.getPort()
+                && equalParameters( o );
+        }
         if (other instanceof ViaHeader) {
             final ViaHeader o = (ViaHeader) other;
             return getProtocol().equalsIgnoreCase( o.getProtocol() )
@@ -118,6 +126,10 @@ public class Via
         return false;
     }
 
+    public int hashCode() {
+        return hashCodeIgnoreCase( getHost() ) * 31 + getPort();
+    }
+
 
     /** get the Protocol Version
      * @return String
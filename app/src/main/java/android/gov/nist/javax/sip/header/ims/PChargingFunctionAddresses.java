@@ -91,7 +91,7 @@ public class PChargingFunctionAddresses
 //        StringBuilder encoding = new StringBuilder();
 
         // issued by Miguel Freitas
-        if (!duplicates.isEmpty())
+        if (hasMultiParameters())
         {
             duplicates.encode(encoding);
         }
@@ -0,0 +1,207 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement.
+ *
+ */
+package android.gov.nist.javax.sip.message;
+
+import android.gov.nist.core.CommonLogger;
+import android.gov.nist.core.StackLogger;
+import android.gov.nist.javax.sip.header.ExtensionHeaderImpl;
+import android.gov.nist.javax.sip.header.NameMap;
+import android.gov.nist.javax.sip.header.SIPHeader;
+import android.gov.nist.javax.sip.header.SIPHeaderList;
+import android.gov.nist.javax.sip.parser.ParseExceptionListener;
+import android.gov.nist.javax.sip.parser.ParserFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+
+/**
+ * Place holder for a header received on the wire and not parsed yet. It keeps
+ * a copy of the raw (unfolded) header lines, encodes them back verbatim and is
+ * replaced in its message by the parsed header the first time the header is
+ * accessed.
+ * <p>
+ * A line that fails to parse is reported then to the ParseExceptionListener
+ * the message was parsed with, like it would have been by an eager parse. The
+ * listener can no longer reject the message at that point: if it throws, the
+ * line is dropped and the error logged. This is why the headers that the
+ * message channels reject a message for are never parsed lazily.
+ *
+ * @see SIPMessage#attachLazyHeader(String, byte[], int, int, ParseExceptionListener)
+ * @since 2.0
+ */
+final class LazyHeader extends SIPHeader {
+
+    private static final long serialVersionUID = 1L;
+
+    private static StackLogger logger = CommonLogger.getLogger(LazyHeader.class);
+
+    private final String lowerCaseName;
+
+    private byte[][] lines;
+
+    private int lineCount;
+
+    private transient ParseExceptionListener parseExceptionListener;
+
+    LazyHeader(String lowerCaseName, byte[] buffer, int start, int end,
+            ParseExceptionListener parseExceptionListener) {
+        super(nameOf(buffer, start, end));
+        this.lowerCaseName = lowerCaseName;
+        this.parseExceptionListener = parseExceptionListener;
+        this.lines = new byte[1][];
+        addLine(buffer, start, end);
+    }
+
+    /**
+     * Name of the header as it appears on the line.
+     */
+    private static String nameOf(byte[] buffer, int start, int end) {
+        int nameEnd = start;
+        while (nameEnd < end && buffer[nameEnd] != ':')
+            nameEnd++;
+        while (nameEnd > start && (buffer[nameEnd - 1] == ' ' || buffer[nameEnd - 1] == '\t'))
+            nameEnd--;
+        return decode(buffer, start, nameEnd - start);
+    }
+
+    String getLowerCaseName() {
+        return lowerCaseName;
+    }
+
+    /**
+     * Add another occurrence of this header.
+     */
+    void addLine(byte[] buffer, int start, int end) {
+        if (lineCount == lines.length) {
+            byte[][] grown = new byte[lineCount * 2][];
+            System.arraycopy(lines, 0, grown, 0, lineCount);
+            lines = grown;
+        }
+        byte[] line = new byte[end - start];
+        System.arraycopy(buffer, start, line, 0, line.length);
+        lines[lineCount++] = line;
+    }
+
+    /**
+     * Parse the header lines. Occurrences of a list header are concatenated,
+     * extra occurrences of a singleton header are ignored as they are when a
+     * message is parsed eagerly, lines that do not parse are reported to the
+     * parse exception listener and left out.
+     *
+     * @param message the message holding this header.
+     * @return the parsed header or null if none of the lines could be parsed.
+     */
+    @SuppressWarnings("unchecked")
+    SIPHeader parse(SIPMessage message) {
+        SIPHeader result = null;
+        for (int i = 0; i < lineCount; i++) {
+            String line = decode(lines[i], 0, lines[i].length);
+            SIPHeader sipHeader;
+            try {
+                sipHeader = ParserFactory.createParser(lowerCaseName, line + "\n").parse();
+            } catch (ParseException ex) {
+                handleParseException(ex, message, line);
+                continue;
+            }
+            if (ListMap.hasList(sipHeader) && !(sipHeader instanceof SIPHeaderList)) {
+                SIPHeaderList<SIPHeader> hdrList = ListMap.getList(sipHeader);
+                hdrList.add(sipHeader);
+                sipHeader = hdrList;
+            }
+            if (result == null) {
+                result = sipHeader;
+            } else if (result instanceof SIPHeaderList && sipHeader instanceof SIPHeaderList) {
+                ((SIPHeaderList<SIPHeader>) result).concatenate((SIPHeaderList<SIPHeader>) sipHeader, false);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Report a line that failed to parse the way the parser does for a header
+     * parsed eagerly, except that the whole message text is not available any
+     * more (null is passed instead).
+     */
+    private void handleParseException(ParseException ex, SIPMessage message, String line) {
+        if (parseExceptionListener == null) {
+            if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+                logger.logDebug("Dropping header that failed to parse " + line + " : " + ex.getMessage());
+            }
+            return;
+        }
+        Class<?> headerClass = NameMap.getClassFromName(getHeaderName());
+        if (headerClass == null) {
+            headerClass = ExtensionHeaderImpl.class;
+        }
+        try {
+            parseExceptionListener.handleException(ex, message, headerClass, line, null);
+        } catch (ParseException rejected) {
+            if (logger.isLoggingEnabled(StackLogger.TRACE_WARN)) {
+                logger.logWarning("Dropping header that failed to parse, the message was already accepted "
+                        + line + " : " + rejected.getMessage());
+            }
+        }
+    }
+
+    public StringBuilder encode(StringBuilder buffer) {
+        for (int i = 0; i < lineCount; i++) {
+            buffer.append(decode(lines[i], 0, lines[i].length)).append(NEWLINE);
+        }
+        return buffer;
+    }
+
+    protected StringBuilder encodeBody(StringBuilder buffer) {
+        for (int i = 0; i < lineCount; i++) {
+            byte[] line = lines[i];
+            int valueStart = 0;
+            while (valueStart < line.length && line[valueStart] != ':')
+                valueStart++;
+            valueStart++;
+            while (valueStart < line.length && (line[valueStart] == ' ' || line[valueStart] == '\t'))
+                valueStart++;
+            if (i > 0) {
+                buffer.append(COMMA);
+            }
+            if (valueStart < line.length) {
+                buffer.append(decode(line, valueStart, line.length - valueStart));
+            }
+        }
+        return buffer;
+    }
+
+    public Object clone() {
+        LazyHeader retval = (LazyHeader) super.clone();
+        // The lines themselves are never modified, only the array holding them.
+        retval.lines = this.lines.clone();
+        return retval;
+    }
+
+    private static String decode(byte[] buffer, int offset, int length) {
+        try {
+            return new String(buffer, offset, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ *
+ */
+package android.gov.nist.javax.sip.message;
+
+import java.io.Serializable;
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.gov.nist.javax.sip.header.SIPHeader;
+
+/**
+ * The headers of a SIPMessage in the order they were added, held in an array
+ * rather than in a node per header.
+ *
+ * A message is mostly built and read by one thread, but the stack may encode
+ * it while the application still modifies it, so the iterators are weakly
+ * consistent as the ones of the ConcurrentLinkedQueue this replaces: they
+ * never throw ConcurrentModificationException and they go through the headers
+ * present when they were created. Headers are appended in the spare room of
+ * the array, that no iterator reads, while removing or replacing a header
+ * copies the array; the part of an array that an iterator reads is therefore
+ * never written again.
+ *
+ * @since 2.0
+ */
+public final class SIPHeaderArray extends AbstractCollection<SIPHeader> implements Serializable {
+
+    private static final long serialVersionUID = 3620574413938516785L;
+
+    private static final SIPHeader[] EMPTY = new SIPHeader[0];
+
+    private SIPHeader[] elements = EMPTY;
+
+    private int size;
+
+    public synchronized boolean add(SIPHeader header) {
+        if (header == null)
+            throw new NullPointerException("null header");
+        SIPHeader[] array = this.elements;
+        if (size == array.length) {
+            array = Arrays.copyOf(array, size == 0 ? 12 : size + (size >> 1));
+            this.elements = array;
+        }
+        array[size++] = header;
+        return true;
+    }
+
+    /**
+     * Put a header in place of another, keeping its position.
+     *
+     * @param header the header to replace, compared by identity.
+     * @param replacement the new header, null to remove the header.
+     * @return false if the header is not in this collection.
+     */
+    public synchronized boolean replace(SIPHeader header, SIPHeader replacement) {
+        int index = indexOf(header);
+        if (index < 0)
+            return false;
+        if (replacement == null) {
+            removeAt(index);
+        } else {
+            SIPHeader[] array = Arrays.copyOf(this.elements, this.elements.length);
+            array[index] = replacement;
+            this.elements = array;
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized void clear() {
+        this.elements = EMPTY;
+        this.size = 0;
+    }
+
+    public synchronized Object[] toArray() {
+        return Arrays.copyOf(this.elements, size, Object[].class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T[] toArray(T[] array) {
+        if (array.length < size)
+            return (T[]) Arrays.copyOf(this.elements, size, array.getClass());
+        System.arraycopy(this.elements, 0, array, 0, size);
+        if (array.length > size)
+            array[size] = null;
+        return array;
+    }
+
+    public synchronized Iterator<SIPHeader> iterator() {
+        return new Itr(this.elements, size);
+    }
+
+    private int indexOf(SIPHeader header) {
+        for (int i = 0; i < size; i++) {
+            if (this.elements[i] == header)
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        SIPHeader[] array = new SIPHeader[this.elements.length];
+        System.arraycopy(this.elements, 0, array, 0, index);
+        System.arraycopy(this.elements, index + 1, array, index, size - index - 1);
+        this.elements = array;
+        size--;
+    }
+
+    private synchronized void remove(SIPHeader header) {
+        int index = indexOf(header);
+        if (index >= 0)
+            removeAt(index);
+    }
+
+    /**
+     * Iterates over the array and size seen when it was created.
+     */
+    private final class Itr implements Iterator<SIPHeader> {
+        private final SIPHeader[] array;
+        private final int end;
+        private int next;
+        private SIPHeader last;
+
+        Itr(SIPHeader[] array, int end) {
+            this.array = array;
+            this.end = end;
+        }
+
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        public SIPHeader next() {
+            if (next >= end)
+                throw new NoSuchElementException();
+            return last = array[next++];
+        }
+
+        public void remove() {
+            if (last == null)
+                throw new IllegalStateException();
+            SIPHeaderArray.this.remove(last);
+            last = null;
+        }
+    }
+}
@@ -71,6 +71,7 @@ import android.gov.nist.javax.sip.header.WWWAuthenticate;
 import android.gov.nist.javax.sip.header.Warning;
 import android.gov.nist.javax.sip.parser.HeaderParser;
 import android.gov.nist.javax.sip.parser.ParserFactory;
+import android.gov.nist.javax.sip.parser.ParseExceptionListener;
 import android.gov.nist.javax.sip.parser.PipelinedMsgParser;
 import android.gov.nist.javax.sip.parser.StringMsgParser;
 
@@ -85,7 +86,6 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 import android.javax.sip.InvalidArgumentException;
 import android.javax.sip.SipException;
@@ -150,7 +150,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     /**
      * List of parsed headers (in the order they were added)
      */
-    protected ConcurrentLinkedQueue<SIPHeader> headers;
+    protected SIPHeaderArray headers;
 
     /**
      * Direct accessors for frequently accessed headers
@@ -180,6 +180,36 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     // Table of headers indexed by name.
     protected Map<String, SIPHeader> headerTable;
 
+    // True while some headers are still held unparsed (see attachLazyHeader).
+    protected boolean hasLazyHeaders;
+
+    // Headers shared with the messages derived from this one, or with the message this one was
+    // derived from (see shareHeader), guarded by the headers list. Null when nothing is shared.
+    private transient volatile SIPHeader[] sharedHeaders;
+
+    private transient int sharedHeadersCount;
+
+    // True once getHeaders handed out all the headers of this message, none is shared then.
+    private transient volatile boolean allHeadersExposed;
+
+    // Bytes produced by the last encodeAsBytes call and the transport they were encoded for.
+    private transient volatile byte[] encodedBytes;
+
+    private transient String encodedBytesTransport;
+
+    private transient volatile boolean reuseEncodedBytes;
+
+    // Bytes of the first line and headers this message was parsed from, see setReceivedBytes.
+    private transient volatile byte[] receivedBytes;
+
+    private static final int MAX_ENCODING_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> encodingBuffer = new ThreadLocal<StringBuilder>() {
+        protected StringBuilder initialValue() {
+            return new StringBuilder(1024);
+        }
+    };
+
     /**
      * The application data pointer. This is un-interpreted by the stack. This is provided as a
      * convenient way of keeping book-keeping data for applications.
@@ -188,6 +218,13 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
 
     protected String forkId;
 
+    // Memoised transaction and dialog identifiers (see MessageId).
+    private transient volatile MessageId transactionId;
+
+    private transient volatile MessageId serverDialogId;
+
+    private transient volatile MessageId clientDialogId;
+
     /**
      * The remote address that this message is bound to or received from.
      */
@@ -251,6 +288,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public LinkedList<String> getMessageAsEncodedStrings() {
         LinkedList<String> retval = new LinkedList<String>();
+        materializeHeaders();
         Iterator<SIPHeader> li = headers.iterator();
         while (li.hasNext()) {
             SIPHeader sipHeader = (SIPHeader) li.next();
@@ -288,6 +326,46 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public abstract StringBuilder encodeMessage(StringBuilder retval);
 
+    /**
+     * An identifier computed from header values, kept together with the values it was computed
+     * from. Headers can be changed in place without the message knowing (To.setTag(), a new
+     * Via branch...), so a memoised identifier is only reused while the values read from the
+     * current headers are the very same String instances: any header change invalidates it,
+     * and checking costs no allocation.
+     */
+    private static final class MessageId {
+        private final String id;
+        private final String first;
+        private final String second;
+        private final String third;
+
+        MessageId(String id, String first, String second, String third) {
+            this.id = id;
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        boolean isFor(String first, String second, String third) {
+            return this.first == first && this.second == second && this.third == third;
+        }
+    }
+
+    /**
+     * Append the lower cased characters of a String.
+     */
+    private static StringBuilder appendLowerCase(StringBuilder buffer, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                buffer.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else {
+                buffer.append(Character.toLowerCase(c));
+            }
+        }
+        return buffer;
+    }
+
     /**
      * Get A dialog identifier constructed from this messsage. This is an id that can be used to
      * identify dialogs.
@@ -295,41 +373,38 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param isServerTransaction is a flag that indicates whether this is a server transaction.
      */
     public final String getDialogId(boolean isServer) {
-        To to = (To) this.getTo();
-        return this.getDialogId( isServer, to.getTag() );
+        return this.getDialogId( isServer, toHeader.getTag() );
     }
 
     /**
      * Get a dialog id given the remote tag.
      */
     public final String getDialogId(boolean isServer, String toTag) {
-        From from = (From) this.getFrom();
-        CallID cid = (CallID) this.getCallId();
-        StringBuffer retval = new StringBuffer(cid.getCallId());
-        if (!isServer) {
-            // retval.append(COLON).append(from.getUserAtHostPort());
-            if (from.getTag() != null) {
-                retval.append(COLON);
-                retval.append(from.getTag());
-            }
-            // retval.append(COLON).append(to.getUserAtHostPort());
-            if (toTag != null) {
-                retval.append(COLON);
-                retval.append(toTag);
-            }
+        String callId = callIdHeader.getCallId();
+        String fromTag = fromHeader.getTag();
+        MessageId dialogId = isServer ? serverDialogId : clientDialogId;
+        if (dialogId != null && dialogId.isFor(callId, fromTag, toTag)) {
+            return dialogId.id;
+        }
+        String firstTag = isServer ? toTag : fromTag;
+        String secondTag = isServer ? fromTag : toTag;
+        StringBuilder retval = new StringBuilder(callId.length()
+                + (firstTag != null ? firstTag.length() + 1 : 0)
+                + (secondTag != null ? secondTag.length() + 1 : 0));
+        appendLowerCase(retval, callId);
+        if (firstTag != null) {
+            appendLowerCase(retval.append(COLON), firstTag);
+        }
+        if (secondTag != null) {
+            appendLowerCase(retval.append(COLON), secondTag);
+        }
+        dialogId = new MessageId(retval.toString(), callId, fromTag, toTag);
+        if (isServer) {
+            serverDialogId = dialogId;
         } else {
-            // retval.append(COLON).append(to.getUserAtHostPort());
-            if (toTag != null) {
-                retval.append(COLON);
-                retval.append(toTag);
-            }
-            // retval.append(COLON).append(from.getUserAtHostPort());
-            if (from.getTag() != null) {
-                retval.append(COLON);
-                retval.append(from.getTag());
-            }
+            clientDialogId = dialogId;
         }
-        return retval.toString().toLowerCase();
+        return dialogId.id;
     }
 
     /**
@@ -403,10 +478,12 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         if (!template.getClass().equals(this.getClass()))
             throw new IllegalArgumentException("Bad class " + template.getClass());
         SIPMessage templateMessage = (SIPMessage) template;
+        templateMessage.materializeHeaders();
         Object[] templateHeaders = templateMessage.headers.toArray();
         for (int i = 0; i < templateHeaders.length; i++) {
             SIPHeader hdr = (SIPHeader) templateHeaders[i];
             String hdrName = hdr.getHeaderName();
+            unshare(headerTable.get(SIPHeaderNamesCache.toLowerCase(hdrName)));
             List<SIPHeader> myHdrs = this.getHeaderList(hdrName);
             if (myHdrs == null) {
                 this.attachHeader(hdr);
@@ -483,16 +560,42 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         if (this instanceof SIPRequest && ((SIPRequest) this).isNullRequest()) {
             return "\r\n\r\n".getBytes();
         }
+        return encodeAsBytes(transport, null);
+    }
+
+    /**
+     * Encode the message as a byte array, starting with the given first line (request or
+     * status line). The headers are encoded in a per thread buffer and converted to bytes
+     * directly when the message is pure ASCII. The result is kept: while reuse of the encoded
+     * bytes is enabled (see setReuseEncodedBytes) and the message has not been modified
+     * through its setters since, the same bytes are returned again.
+     *
+     * @param firstLine the encoded first line, always converted as UTF-8, or null.
+     */
+    protected byte[] encodeAsBytes(String transport, String firstLine) {
+        byte[] cached = this.encodedBytes;
+        if (reuseEncodedBytes && cached != null && transport.equals(encodedBytesTransport)) {
+            return cached;
+        }
         // JvB: added to fix case where application provides the wrong transport
         // in the topmost Via header
-        ViaHeader topVia = (ViaHeader) this.getHeader(ViaHeader.NAME);
-        try {
-            topVia.setTransport(transport);
-        } catch (ParseException e) {
-            InternalErrorHandler.handleException(e);
+        // read the header first, so that a Via shared with another message is only copied when
+        // its transport actually changes
+        if (!transport.equals(peekTopmostVia().getTransport())) {
+            try {
+                getTopmostViaForUpdate().setTransport(transport);
+            } catch (ParseException e) {
+                InternalErrorHandler.handleException(e);
+            }
         }
 
-        StringBuilder encoding = new StringBuilder();
+        StringBuilder encoding = encodingBuffer.get();
+        encoding.setLength(0);
+        int firstLineLength = 0;
+        if (firstLine != null) {
+            encoding.append(firstLine);
+            firstLineLength = encoding.length();
+        }
         synchronized (this.headers) {
             Iterator<SIPHeader> it = this.headers.iterator();
 
@@ -506,33 +609,107 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         contentLengthHeader.encode(encoding);
         encoding.append(NEWLINE);
 
-        byte[] retval = null;
-        byte[] content = this.getRawContent();
-        if (content != null) {
-            // Append the content
+        byte[] retval = toBytes(encoding, firstLineLength, this.getRawContent());
+        if (encoding.capacity() > MAX_ENCODING_BUFFER_SIZE) {
+            // Do not hold on to the buffer of an unusually large message.
+            encodingBuffer.remove();
+        }
+        this.encodedBytesTransport = transport;
+        this.encodedBytes = retval;
+        return retval;
+    }
 
-            byte[] msgarray = null;
-            try {
-                msgarray = encoding.toString().getBytes( getCharset() );
-            } catch (UnsupportedEncodingException ex) {
-                InternalErrorHandler.handleException(ex);
+    /**
+     * Convert the encoded first line and headers to bytes and append the content.
+     */
+    private byte[] toBytes(StringBuilder encoding, int firstLineLength, byte[] content) {
+        int length = encoding.length();
+        int contentLength = content == null ? 0 : content.length;
+        String charset = getCharset();
+        if ("UTF-8".equalsIgnoreCase(charset) || "US-ASCII".equalsIgnoreCase(charset)
+                || "ISO-8859-1".equalsIgnoreCase(charset)) {
+            // Same bytes in all these charsets as long as the text is ASCII.
+            byte[] retval = new byte[length + contentLength];
+            int i = 0;
+            while (i < length) {
+                char c = encoding.charAt(i);
+                if (c >= 0x80)
+                    break;
+                retval[i++] = (byte) c;
             }
-
-            retval = new byte[msgarray.length + content.length];
-            System.arraycopy(msgarray, 0, retval, 0, msgarray.length);
-            System.arraycopy(content, 0, retval, msgarray.length, content.length);
-        } else {
-            // Message content does not exist.
-
-            try {
-                retval = encoding.toString().getBytes( getCharset() );
-            } catch (UnsupportedEncodingException ex) {
-                InternalErrorHandler.handleException(ex);
+            if (i == length) {
+                if (content != null)
+                    System.arraycopy(content, 0, retval, length, contentLength);
+                return retval;
             }
         }
+
+        byte[] firstLineBytes = null;
+        byte[] msgarray = null;
+        try {
+            firstLineBytes = encoding.substring(0, firstLineLength).getBytes("UTF-8");
+            msgarray = encoding.substring(firstLineLength).getBytes( charset );
+        } catch (UnsupportedEncodingException ex) {
+            InternalErrorHandler.handleException(ex);
+        }
+        byte[] retval = new byte[firstLineBytes.length + msgarray.length + contentLength];
+        System.arraycopy(firstLineBytes, 0, retval, 0, firstLineBytes.length);
+        System.arraycopy(msgarray, 0, retval, firstLineBytes.length, msgarray.length);
+        if (content != null)
+            System.arraycopy(content, 0, retval, firstLineBytes.length + msgarray.length, contentLength);
         return retval;
     }
 
+    /**
+     * Allow encodeAsBytes to hand back the bytes of its previous call for the same transport,
+     * as long as the message has not been modified through its setters since. Used by the
+     * transactions around retransmissions, which must be copies of the message as first sent:
+     * changes made in place to header objects are not tracked.
+     */
+    public void setReuseEncodedBytes(boolean reuseEncodedBytes) {
+        this.reuseEncodedBytes = reuseEncodedBytes;
+    }
+
+    /**
+     * Get the bytes of the last encodeAsBytes call, to read them, without encoding the message.
+     * As with setReuseEncodedBytes, changes made in place to header objects are not tracked.
+     *
+     * @return the bytes or null if the message was not encoded or was modified through its
+     *         setters since.
+     * @since 2.0
+     */
+    public byte[] peekEncodedBytes() {
+        return this.encodedBytes;
+    }
+
+    /**
+     * Keep the bytes this message was parsed from, so that a message trace can record the
+     * message as received without encoding it. The array starts with the getSize() bytes of
+     * the first line and headers, and must not be modified afterwards. Set by the message
+     * channels when the stack is configured to keep them, see
+     * SIPTransactionStack.isKeepReceivedBytes.
+     *
+     * @since 2.0
+     */
+    public void setReceivedBytes(byte[] receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    /**
+     * @return the bytes set by setReceivedBytes, null if none.
+     * @since 2.0
+     */
+    public byte[] getReceivedBytes() {
+        return this.receivedBytes;
+    }
+
+    /**
+     * Drop the bytes kept by the last encodeAsBytes call. Called by the setters.
+     */
+    protected void invalidateEncodedBytes() {
+        this.encodedBytes = null;
+    }
+
     /**
      * clone this message (create a new deep physical copy). All headers in the message are
      * cloned. You can modify the cloned copy without affecting the original. The content is
@@ -544,7 +721,36 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return A cloned copy of this object.
      */
     public Object clone() {
+        return copy(false);
+    }
+
+    /**
+     * Copy this message without cloning its headers, for instance to forward a request. The
+     * copy and this message share their headers, a shared header is only cloned by either
+     * message when that message is about to modify it or when one of its getters returns it.
+     * The headers a caller may already hold a reference to (see SIPHeader.isExposed) are cloned
+     * right away. The content is copied as with clone.
+     *
+     * @return a copy of this message sharing its headers.
+     * @since 2.0
+     */
+    public SIPMessage shallowClone() {
+        return copy(true);
+    }
+
+    /**
+     * Copy this message, the subclasses copy their first line here.
+     *
+     * @param shareHeaders true to share the headers with the copy, false to clone them.
+     */
+    protected SIPMessage copy(boolean shareHeaders) {
+        if (shareHeaders) {
+            materializeHeaders();
+        }
         SIPMessage retval = (SIPMessage) super.clone();
+        retval.sharedHeaders = null;
+        retval.sharedHeadersCount = 0;
+        retval.allHeadersExposed = false;
         retval.headerTable = new ConcurrentHashMap<String, SIPHeader>();
         retval.fromHeader = null;
         retval.toHeader = null;
@@ -553,11 +759,21 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         retval.contentLengthHeader = null;
         retval.maxForwardsHeader = null;
         retval.forkId = null;        
+        retval.encodedBytes = null;
+        retval.reuseEncodedBytes = false;
+        retval.receivedBytes = null;
         if (this.headers != null) {
-            retval.headers = new ConcurrentLinkedQueue<SIPHeader>();
+            retval.headers = new SIPHeaderArray();
             for (Iterator<SIPHeader> iter = headers.iterator(); iter.hasNext();) {
                 SIPHeader hdr = (SIPHeader) iter.next();
-                retval.attachHeader((SIPHeader) hdr.clone());
+                // the Content-Length is changed with the content, not worth sharing
+                if (shareHeaders && !(hdr instanceof ContentLength) && canShare(hdr)) {
+                    retval.attachHeader(hdr);
+                    this.markShared(hdr);
+                    retval.markShared(hdr);
+                } else {
+                    retval.attachHeader((SIPHeader) hdr.clone());
+                }
             }
 
         }
@@ -618,7 +834,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public SIPMessage() {
         this.unrecognizedHeaders = new LinkedList<String>();
-        this.headers = new ConcurrentLinkedQueue<SIPHeader>();
+        this.headers = new SIPHeaderArray();
         headerTable = new ConcurrentHashMap<String, SIPHeader>();
         try {
             this.attachHeader(new ContentLength(0), false);
@@ -665,6 +881,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             }
             this.removeHeader(header.getHeaderName());
             attachHeader(header, true, false);
+            exposeHeader(header.getHeaderName());
         } catch (SIPDuplicateHeaderException ex) {
             InternalErrorHandler.handleException(ex);
         }
@@ -681,6 +898,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             SIPHeader sipHeader = (SIPHeader) listIterator.next();
             try {
                 this.attachHeader(sipHeader, false);
+                exposeHeader(sipHeader.getHeaderName());
             } catch (SIPDuplicateHeaderException ex) {
             }
         }
@@ -715,6 +933,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
 
     public void attachHeader(SIPHeader header, boolean replaceFlag, boolean top)
             throws SIPDuplicateHeaderException {
+        invalidateEncodedBytes();
         if (header == null) {
             throw new NullPointerException("null header");
         }
@@ -730,13 +949,16 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         }
 
         String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(h.getName());
+        if (hasLazyHeaders && headerTable.get(headerNameLowerCase) instanceof LazyHeader) {
+            materializeHeader(headerNameLowerCase);
+        }
         if (replaceFlag) {
             headerTable.remove(headerNameLowerCase);
         } else if (headerTable.containsKey(headerNameLowerCase) && !(h instanceof SIPHeaderList)) {
             if (h instanceof ContentLength) {
                 try {
                     ContentLength cl = (ContentLength) h;
-                    contentLengthHeader.setContentLength(cl.getContentLength());
+                    ((ContentLength) unshare(contentLengthHeader)).setContentLength(cl.getContentLength());
                 } catch (InvalidArgumentException e) {
                 }
             }
@@ -762,8 +984,8 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             headers.add(h);
         } else {
             if (h instanceof SIPHeaderList) {
-                SIPHeaderList< ? > hdrlist = (SIPHeaderList< ? >) headerTable
-                        .get(headerNameLowerCase);
+                SIPHeaderList< ? > hdrlist = (SIPHeaderList< ? >) unshare(headerTable
+                        .get(headerNameLowerCase));
                 if (hdrlist != null)
                     hdrlist.concatenate((SIPHeaderList) h, top);
                 else
@@ -798,14 +1020,17 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param top -- flag that indicates which end of header list to process.
      */
     public void removeHeader(String headerName, boolean top) {
+        invalidateEncodedBytes();
 
         String headerNameLowerCase = SIPHeaderNamesCache.toLowerCase(headerName);
         SIPHeader toRemove = (SIPHeader) headerTable.get(headerNameLowerCase);
+        if (toRemove instanceof LazyHeader)
+            toRemove = materializeHeader(headerNameLowerCase);
         // nothing to do then we are done.
         if (toRemove == null)
             return;
         if (toRemove instanceof SIPHeaderList) {
-            SIPHeaderList< ? > hdrList = (SIPHeaderList< ? >) toRemove;
+            SIPHeaderList< ? > hdrList = (SIPHeaderList< ? >) unshare(toRemove);
             if (top)
                 hdrList.removeFirst();
             else
@@ -854,6 +1079,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param headerName is the name of the header to remove.
      */
     public void removeHeader(String headerName) {
+        invalidateEncodedBytes();
 
         if (headerName == null)
             throw new NullPointerException("null arg");
@@ -904,30 +1130,37 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      *         response have the same computed transaction identifier).
      */
     public String getTransactionId() {
-        Via topVia = getTopmostVia();
+        Via topVia = peekTopmostVia();
 //        if (!this.getViaHeaders().isEmpty()) {
 //            topVia = (Via) this.getViaHeaders().getFirst();
 //        }
+        String branch = topVia != null ? topVia.getBranch() : null;
         // Have specified a branch Identifier so we can use it to identify
         // the transaction. BranchId is not case sensitive.
         // Branch Id prefix is not case sensitive.
-        if (topVia != null
-                && topVia.getBranch() != null
-                && topVia.getBranch().toUpperCase().startsWith(
-                        SIPConstants.BRANCH_MAGIC_COOKIE_UPPER_CASE)) {
+        if (branch != null && Utils.isRFC3261Branch(branch)) {
             // Bis 09 compatible branch assignment algorithm.
             // implies that the branch id can be used as a transaction
-            // identifier.
-            if (this.getCSeq().getMethod().equals(Request.CANCEL))
-                return (topVia.getBranch() + ":" + this.getCSeq().getMethod()).toLowerCase();
-            else
-                return topVia.getBranch().toLowerCase();
+            // identifier. It is memoised as long as the branch and
+            // the method are unchanged.
+            String method = this.cSeqHeader.getMethod();
+            MessageId transactionId = this.transactionId;
+            if (transactionId != null && transactionId.isFor(branch, method, null)) {
+                return transactionId.id;
+            }
+            StringBuilder retval = new StringBuilder(branch.length() + 7);
+            appendLowerCase(retval, branch);
+            if (method.equals(Request.CANCEL)) {
+                appendLowerCase(retval.append(COLON), method);
+            }
+            transactionId = new MessageId(retval.toString(), branch, method, null);
+            this.transactionId = transactionId;
+            return transactionId.id;
         } else {
             // Old style client so construct the transaction identifier
             // from various fields of the request.
             StringBuilder retval = new StringBuilder();
-            From from = (From) this.getFrom();
-            To to = (To) this.getTo();
+            From from = this.fromHeader;
             // String hpFrom = from.getUserAtHostPort();
             // retval.append(hpFrom).append(":");
             if (from.hasTag())
@@ -944,7 +1177,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
                     retval.append("-").append(5060);
                 }
             }
-            if (this.getCSeq().getMethod().equals(Request.CANCEL)) {
+            if (this.cSeqHeader.getMethod().equals(Request.CANCEL)) {
                 retval.append(Request.CANCEL);
             }
             return retval.toString().toLowerCase().replace(":", "-").replace("@", "-")
@@ -978,6 +1211,11 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return an Iterator for the headers of this message.
      */
     public Iterator<SIPHeader> getHeaders() {
+        materializeHeaders();
+        if (sharedHeaders != null) {
+            unshareAll();
+        }
+        allHeadersExposed = true;
         return headers.iterator();
     }
 
@@ -994,6 +1232,9 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         if (lowerCaseHeaderName == null)
             throw new NullPointerException("bad name");
         SIPHeader sipHeader = (SIPHeader) headerTable.get(lowerCaseHeaderName);
+        if (sipHeader instanceof LazyHeader)
+            sipHeader = materializeHeader(lowerCaseHeaderName);
+        sipHeader = forAccess(sipHeader);
         if (sipHeader instanceof SIPHeaderList)
             return (Header) ((SIPHeaderList) sipHeader).getFirst();
         else
@@ -1028,7 +1269,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return -- the from header.
      */
     public FromHeader getFrom() {
-        return (FromHeader) fromHeader;
+        return (FromHeader) forAccess(fromHeader);
     }
 
     /**
@@ -1116,13 +1357,104 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             return (Via) (getViaHeaders().getFirst());
     }
 
+    /**
+     * Get the topmost via header to read it. Unlike getTopmostVia, a header shared with another
+     * message (see shallowClone) is not copied first, so it must not be modified.
+     *
+     * @since 2.0
+     */
+    public final Via peekTopmostVia() {
+        SIPHeader viaList = getSIPHeaderListLowerCase(VIA_LOWERCASE, false);
+        if (viaList == null)
+            return null;
+        else
+            return (Via) ((ViaList) viaList).getFirst();
+    }
+
+    /**
+     * Get the topmost via header for the stack to modify it right away, for instance to add the
+     * received and rport parameters on reception. A header shared with another message is copied
+     * first, but unlike getTopmostVia the header is not marked exposed, so it can still be shared
+     * with the messages derived from this one. The reference must therefore not be kept.
+     *
+     * @since 2.0
+     */
+    public final Via getTopmostViaForUpdate() {
+        SIPHeader viaList = getSIPHeaderListLowerCase(VIA_LOWERCASE, false);
+        if (viaList == null)
+            return null;
+        else
+            return (Via) ((ViaList) unshare(viaList)).getFirst();
+    }
+
+    /**
+     * Get the Record-Route headers to read them, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final RecordRouteList peekRecordRouteHeaders() {
+        return (RecordRouteList) getSIPHeaderListLowerCase(RECORDROUTE_LOWERCASE, false);
+    }
+
+    /**
+     * Get the first header of the given name to read it, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final Header peekHeader(String headerName) {
+        String lowerCaseHeaderName = SIPHeaderNamesCache.toLowerCase(headerName);
+        SIPHeader sipHeader = (SIPHeader) headerTable.get(lowerCaseHeaderName);
+        if (sipHeader instanceof LazyHeader)
+            sipHeader = materializeHeader(lowerCaseHeaderName);
+        if (sipHeader instanceof SIPHeaderList)
+            return (Header) ((SIPHeaderList) sipHeader).getFirst();
+        else
+            return (Header) sipHeader;
+    }
+
+    /**
+     * Get the From header to read it, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final From peekFrom() {
+        return fromHeader;
+    }
+
+    /**
+     * Get the To header to read it, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final To peekTo() {
+        return toHeader;
+    }
+
+    /**
+     * Get the CSeq header to read it, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final CSeq peekCSeq() {
+        return cSeqHeader;
+    }
+
+    /**
+     * Get the Call-ID header to read it, see peekTopmostVia.
+     *
+     * @since 2.0
+     */
+    public final CallID peekCallId() {
+        return callIdHeader;
+    }
+
     /**
      * Get the CSeq list of header (null if one does not exist).
      *
      * @return CSeq header
      */
     public CSeqHeader getCSeq() {
-        return (CSeqHeader) cSeqHeader;
+        return (CSeqHeader) forAccess(cSeqHeader);
     }
 
     /**
@@ -1144,7 +1476,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
 
     public MaxForwardsHeader getMaxForwards() {
-        return maxForwardsHeader;
+        return (MaxForwardsHeader) forAccess(maxForwardsHeader);
     }
 
     /**
@@ -1174,7 +1506,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return Call-ID header .
      */
     public CallIdHeader getCallId() {
-        return callIdHeader;
+        return (CallIdHeader) forAccess(callIdHeader);
     }
 
     /**
@@ -1192,10 +1524,11 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param callId -- the call identifier to be assigned to the call id header
      */
     public void setCallId(String callId) throws java.text.ParseException {
+        invalidateEncodedBytes();
         if (callIdHeader == null) {
             this.setHeader(new CallID());
         }
-        callIdHeader.setCallId(callId);
+        ((CallID) unshare(callIdHeader)).setCallId(callId);
     }
 
     /**
@@ -1216,7 +1549,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return To header
      */
     public ToHeader getTo() {
-        return (ToHeader) toHeader;
+        return (ToHeader) forAccess(toHeader);
     }
 
     public void setTo(ToHeader to) {
@@ -1234,7 +1567,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @return content-length header.
      */
     public ContentLengthHeader getContentLength() {
-        return this.contentLengthHeader;
+        return (ContentLengthHeader) forAccess(this.contentLengthHeader);
     }
 
     /**
@@ -1288,6 +1621,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param messageContent is the messge content as a string.
      */
     public void setMessageContent(String type, String subType, String messageContent) {
+        invalidateEncodedBytes();
         if (messageContent == null)
             throw new IllegalArgumentException("messgeContent is null");
         ContentType ct = new ContentType(type, subType);
@@ -1308,6 +1642,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public void setContent(Object content, ContentTypeHeader contentTypeHeader)
             throws ParseException {
+        invalidateEncodedBytes();
         if (content == null)
             throw new NullPointerException("null content");
         this.setHeader(contentTypeHeader);
@@ -1364,6 +1699,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public void setMessageContent(byte[] content, boolean strict, boolean computeContentLength, int givenLength)
             throws ParseException {
+        invalidateEncodedBytes();
         // Note that that this could be a double byte character
         // set - bug report by Masafumi Watanabe
         computeContentLength(content);
@@ -1386,6 +1722,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param content is the content of the message as an array of bytes.
      */
     public void setMessageContent(byte[] content) {
+        invalidateEncodedBytes();
         computeContentLength(content);
 
         messageContentBytes = content;
@@ -1401,6 +1738,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     public void setMessageContent(byte[] content, boolean computeContentLength, int givenLength)
             throws ParseException {
+        invalidateEncodedBytes();
         computeContentLength(content);
         if ((!computeContentLength) && this.contentLengthHeader.getContentLength() < givenLength) {
             // System.out.println("!!!!!!!!!!! MISMATCH !!!!!!!!!!!");
@@ -1444,6 +1782,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * Remove the message content if it exists.
      */
     public void removeContent() {
+        invalidateEncodedBytes();
         messageContent = null;
         messageContentBytes = null;
         messageContentObject = null;
@@ -1463,7 +1802,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     public ListIterator<SIPHeader> getHeaders(String headerName) {
         if (headerName == null)
             throw new NullPointerException("null headerName");
-        SIPHeader sipHeader = (SIPHeader) headerTable.get(SIPHeaderNamesCache
+        SIPHeader sipHeader = getSIPHeaderListLowerCase(SIPHeaderNamesCache
                 .toLowerCase(headerName));
         // empty iterator
         if (sipHeader == null)
@@ -1492,7 +1831,17 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     }
 
     public SIPHeader getSIPHeaderListLowerCase(String lowerCaseHeaderName) {
-        return headerTable.get(lowerCaseHeaderName);
+        return getSIPHeaderListLowerCase(lowerCaseHeaderName, true);
+    }
+
+    /**
+     * @param modifiable false if the header is only read, a shared header is then not copied.
+     */
+    protected SIPHeader getSIPHeaderListLowerCase(String lowerCaseHeaderName, boolean modifiable) {
+        SIPHeader sipHeader = headerTable.get(lowerCaseHeaderName);
+        if (sipHeader instanceof LazyHeader)
+            sipHeader = materializeHeader(lowerCaseHeaderName);
+        return modifiable ? forAccess(sipHeader) : sipHeader;
     }
 
     /**
@@ -1503,7 +1852,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      */
     @SuppressWarnings("unchecked")
     private List<SIPHeader> getHeaderList(String headerName) {
-        SIPHeader sipHeader = (SIPHeader) headerTable.get(SIPHeaderNamesCache
+        SIPHeader sipHeader = getSIPHeaderListLowerCase(SIPHeaderNamesCache
                 .toLowerCase(headerName));
         if (sipHeader == null)
             return null;
@@ -1560,8 +1909,9 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param tag -- tag to set in the from header.
      */
     public void setFromTag(String tag) {
+        invalidateEncodedBytes();
         try {
-            fromHeader.setTag(tag);
+            ((From) unshare(fromHeader)).setTag(tag);
         } catch (ParseException e) {
         }
     }
@@ -1572,8 +1922,9 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param tag -- tag to set.
      */
     public void setToTag(String tag) {
+        invalidateEncodedBytes();
         try {
-            toHeader.setTag(tag);
+            ((To) unshare(toHeader)).setTag(tag);
         } catch (ParseException e) {
         }
     }
@@ -1604,6 +1955,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             } else {
                 attachHeader(sh, false, false);
             }
+            exposeHeader(sh.getHeaderName());
         } catch (SIPDuplicateHeaderException ex) {
             try {
                 if (sipHeader instanceof ContentLength) {
@@ -1624,6 +1976,213 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
         this.getUnrecognizedHeadersList().add(unparsed);
     }
 
+    /**
+     * Add a header received on the wire without parsing it. A copy of the raw
+     * header line is kept and encoded back verbatim, the header is parsed the
+     * first time it is retrieved from the message. Called by the parser, only
+     * for headers that the stack itself does not need (the Via, From, To,
+     * Call-ID, CSeq, Content-Length and Max-Forwards headers must be attached
+     * parsed).
+     *
+     * @param lowerCaseHeaderName -- the (non compact) header name in lower case.
+     * @param buffer -- buffer holding the unfolded header line.
+     * @param start -- index of the first byte of the line.
+     * @param end -- index following the last byte of the line.
+     * @param parseExceptionListener -- listener told about the lines that fail
+     *        to parse when the header is retrieved, may be null.
+     */
+    public void attachLazyHeader(String lowerCaseHeaderName, byte[] buffer, int start, int end,
+            ParseExceptionListener parseExceptionListener) {
+        SIPHeader existing = headerTable.get(lowerCaseHeaderName);
+        if (existing instanceof LazyHeader) {
+            ((LazyHeader) existing).addLine(buffer, start, end);
+        } else if (existing == null) {
+            LazyHeader lazyHeader = new LazyHeader(lowerCaseHeaderName, buffer, start, end,
+                    parseExceptionListener);
+            headerTable.put(lowerCaseHeaderName, lazyHeader);
+            headers.add(lazyHeader);
+            hasLazyHeaders = true;
+        } else {
+            // Already parsed, parse this occurrence too.
+            LazyHeader lazyHeader = new LazyHeader(lowerCaseHeaderName, buffer, start, end,
+                    parseExceptionListener);
+            SIPHeader sipHeader = lazyHeader.parse(this);
+            if (sipHeader != null) {
+                try {
+                    attachHeader(sipHeader, false, false);
+                } catch (SIPDuplicateHeaderException ex) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse the header of the given name if it is still held unparsed and put
+     * it in place of its raw form, keeping its position among the headers.
+     *
+     * @return the header now attached to the message under this name, null if
+     *         the raw header could not be parsed. It is then removed, after its
+     *         lines were reported to the parse exception listener, which as with
+     *         an eager parse normally keeps them as unrecognized headers.
+     */
+    private SIPHeader materializeHeader(String lowerCaseHeaderName) {
+        synchronized (this.headers) {
+            SIPHeader current = headerTable.get(lowerCaseHeaderName);
+            if (!(current instanceof LazyHeader))
+                return current;
+            SIPHeader parsed = ((LazyHeader) current).parse(this);
+            headers.replace(current, parsed);
+            if (parsed != null) {
+                headerTable.put(lowerCaseHeaderName, parsed);
+            } else {
+                headerTable.remove(lowerCaseHeaderName);
+            }
+            return parsed;
+        }
+    }
+
+    /**
+     * Parse all the headers still held unparsed.
+     */
+    protected void materializeHeaders() {
+        if (!hasLazyHeaders)
+            return;
+        for (SIPHeader sipHeader : headers.toArray(new SIPHeader[headers.size()])) {
+            if (sipHeader instanceof LazyHeader) {
+                materializeHeader(((LazyHeader) sipHeader).getLowerCaseName());
+            }
+        }
+        hasLazyHeaders = false;
+    }
+
+    /**
+     * Attach a header of this message to a message derived from it without cloning the header.
+     * Either message clones the header before modifying it or before one of its getters returns
+     * it, so that the caller can modify it. A header a caller may already hold a reference to
+     * (see SIPHeader.isExposed) is cloned right away instead.
+     *
+     * @param header a header of this message, as held in its table of headers.
+     * @param derived the message to attach the header to.
+     */
+    protected void shareHeader(SIPHeader header, SIPMessage derived)
+            throws SIPDuplicateHeaderException {
+        if (!canShare(header)) {
+            derived.attachHeader((SIPHeader) header.clone(), false, false);
+            return;
+        }
+        derived.attachHeader(header, false, false);
+        this.markShared(header);
+        derived.markShared(header);
+    }
+
+    private boolean canShare(SIPHeader header) {
+        return !allHeadersExposed && !header.isExposed();
+    }
+
+    /**
+     * Record that the header now attached under this name may be held by the caller.
+     */
+    private void exposeHeader(String headerName) {
+        SIPHeader sipHeader = headerTable.get(SIPHeaderNamesCache.toLowerCase(headerName));
+        if (sipHeader != null) {
+            sipHeader.setExposed();
+        }
+    }
+
+    private void markShared(SIPHeader header) {
+        synchronized (this.headers) {
+            SIPHeader[] shared = sharedHeaders;
+            if (shared == null) {
+                shared = new SIPHeader[8];
+            } else if (indexOfShared(shared, header) >= 0) {
+                return;
+            } else if (sharedHeadersCount == shared.length) {
+                SIPHeader[] larger = new SIPHeader[shared.length * 2];
+                System.arraycopy(shared, 0, larger, 0, sharedHeadersCount);
+                shared = larger;
+            }
+            shared[sharedHeadersCount++] = header;
+            sharedHeaders = shared;
+        }
+    }
+
+    private int indexOfShared(SIPHeader[] shared, SIPHeader header) {
+        for (int i = 0; i < sharedHeadersCount; i++) {
+            if (shared[i] == header)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Return the header to modify in place of the given header of this message: the header
+     * itself, or a clone of it now attached in its place if it was shared with another message.
+     */
+    protected final SIPHeader unshare(SIPHeader header) {
+        if (sharedHeaders == null || header == null)
+            return header;
+        synchronized (this.headers) {
+            SIPHeader[] shared = sharedHeaders;
+            String lowerCaseHeaderName = SIPHeaderNamesCache.toLowerCase(header.getName());
+            int index = shared == null ? -1 : indexOfShared(shared, header);
+            if (index < 0) {
+                // Another thread may have made the copy meanwhile
+                SIPHeader current = headerTable.get(lowerCaseHeaderName);
+                return current != null ? current : header;
+            }
+            shared[index] = shared[--sharedHeadersCount];
+            shared[sharedHeadersCount] = null;
+            if (sharedHeadersCount == 0) {
+                sharedHeaders = null;
+            }
+            SIPHeader copy = (SIPHeader) header.clone();
+            headers.replace(header, copy);
+            if (headerTable.get(lowerCaseHeaderName) == header) {
+                headerTable.put(lowerCaseHeaderName, copy);
+            }
+            if (header == fromHeader) {
+                fromHeader = (From) copy;
+            } else if (header == toHeader) {
+                toHeader = (To) copy;
+            } else if (header == cSeqHeader) {
+                cSeqHeader = (CSeq) copy;
+            } else if (header == callIdHeader) {
+                callIdHeader = (CallID) copy;
+            } else if (header == maxForwardsHeader) {
+                maxForwardsHeader = (MaxForwards) copy;
+            } else if (header == contentLengthHeader) {
+                contentLengthHeader = (ContentLength) copy;
+            }
+            return copy;
+        }
+    }
+
+    private void unshareAll() {
+        SIPHeader[] all;
+        synchronized (this.headers) {
+            SIPHeader[] shared = sharedHeaders;
+            if (shared == null)
+                return;
+            all = new SIPHeader[sharedHeadersCount];
+            System.arraycopy(shared, 0, all, 0, sharedHeadersCount);
+        }
+        for (SIPHeader sipHeader : all) {
+            unshare(sipHeader);
+        }
+    }
+
+    /**
+     * Return the header a getter hands out, the caller may then modify it.
+     */
+    private SIPHeader forAccess(SIPHeader header) {
+        if (header == null)
+            return null;
+        if (sharedHeaders != null)
+            header = unshare(header);
+        header.setExposed();
+        return header;
+    }
+
     /**
      * Add a SIP header.
      *
@@ -1676,6 +2235,8 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
             return false;
         }
         SIPMessage otherMessage = (SIPMessage) other;
+        this.materializeHeaders();
+        otherMessage.materializeHeaders();
         Collection<SIPHeader> values = this.headerTable.values();
         Iterator<SIPHeader> it = values.iterator();
         if (headerTable.size() != otherMessage.headerTable.size()) {
@@ -1779,6 +2340,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      * @param contentLength -- content length header.
      */
     public void setContentLength(ContentLengthHeader contentLength) {
+        invalidateEncodedBytes();
         try {
             this.contentLengthHeader.setContentLength(contentLength.getContentLength());
         } catch (InvalidArgumentException ex) {
@@ -1810,6 +2372,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
 
         try {
             this.attachHeader((SIPHeader) header, false, false);
+            exposeHeader(header.getName());
         } catch (SIPDuplicateHeaderException ex) {
             throw new SipException("Cannot add header - header already exists");
         }
@@ -1828,6 +2391,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
 
         try {
             this.attachHeader((SIPHeader) header, false, true);
+            exposeHeader(header.getName());
         } catch (SIPDuplicateHeaderException ex) {
             throw new SipException("Cannot add header - header already exists");
         }
@@ -1911,17 +2475,17 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     }
 
     public CallIdHeader getCallIdHeader() {
-        return this.callIdHeader;
+        return this.getCallId();
     }
 
 
     public FromHeader getFromHeader() {
-        return this.fromHeader;
+        return this.getFrom();
     }
 
 
     public ToHeader getToHeader() {
-        return this.toHeader;
+        return this.getTo();
     }
 
 
@@ -1930,7 +2494,7 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
     }
 
     public CSeqHeader getCSeqHeader() {
-        return this.cSeqHeader;
+        return this.getCSeq();
     }
 
     /**
@@ -1958,13 +2522,14 @@ public abstract class SIPMessage extends MessageObject implements android.javax.
      *
      */
     public void setNullRequest() {
+        invalidateEncodedBytes();
         this.nullRequest = true;
     }
     public String getForkId() {
         if ( this.forkId != null ) {
             return forkId;
         } else {
-            String callId =  this.getCallId().getCallId();
+            String callId =  this.callIdHeader.getCallId();
             String fromTag = this.getFromTag();
             if ( fromTag == null ) {
                 throw new IllegalStateException("From tag is not yet set. Cannot compute forkId");
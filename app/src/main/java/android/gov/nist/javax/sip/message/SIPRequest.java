@@ -28,7 +28,6 @@
  *******************************************************************************/
 package android.gov.nist.javax.sip.message;
 
-import android.gov.nist.core.InternalErrorHandler;
 import android.gov.nist.javax.sip.address.GenericURI;
 import android.gov.nist.javax.sip.address.SipUri;
 import android.gov.nist.javax.sip.header.CSeq;
@@ -36,12 +35,12 @@ import android.gov.nist.javax.sip.header.RecordRouteList;
 import android.gov.nist.javax.sip.header.RequestLine;
 import android.gov.nist.javax.sip.header.SIPHeader;
 import android.gov.nist.javax.sip.header.SIPHeaderList;
+import android.gov.nist.javax.sip.header.SIPHeaderNamesCache;
 import android.gov.nist.javax.sip.header.To;
 import android.gov.nist.javax.sip.header.Via;
 import android.gov.nist.javax.sip.header.ViaList;
 import android.gov.nist.javax.sip.stack.SIPTransactionStack;
 
-import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -129,6 +128,9 @@ public class SIPRequest extends SIPMessage implements android.javax.sip.message.
     
     protected static final Set<String> headersToIncludeInResponse = new HashSet<String>(0);
 
+    private static final String ROUTE_LOWERCASE = SIPHeaderNamesCache
+            .toLowerCase(RouteHeader.NAME);
+
     private static void putName(String name) {
         nameTable.put(name, name);
     }
@@ -211,6 +213,7 @@ public class SIPRequest extends SIPMessage implements android.javax.sip.message.
      */
 
     public void setRequestLine(RequestLine requestLine) {
+        invalidateEncodedBytes();
         this.requestLine = requestLine;
     }
 
@@ -251,10 +254,10 @@ public class SIPRequest extends SIPMessage implements android.javax.sip.message.
 
         /* Check for required headers */
 
-        if (getCSeq() == null) {
+        if (cSeqHeader == null) {
             throw new ParseException(prefix + CSeqHeader.NAME, 0);
         }
-        if (getTo() == null) {
+        if (toHeader == null) {
             throw new ParseException(prefix + ToHeader.NAME, 0);
         }
 
@@ -262,17 +265,17 @@ public class SIPRequest extends SIPMessage implements android.javax.sip.message.
                 || callIdHeader.getCallId().equals("")) {
             throw new ParseException(prefix + CallIdHeader.NAME, 0);
         }
-        if (getFrom() == null) {
+        if (fromHeader == null) {
             throw new ParseException(prefix + FromHeader.NAME, 0);
         }
-        if (getViaHeaders() == null) {
+        if (!hasHeader(ViaHeader.NAME)) {
             throw new ParseException(prefix + ViaHeader.NAME, 0);
         }
-        if (getMaxForwards() == null) {
+        if (maxForwardsHeader == null) {
             throw new ParseException(prefix + MaxForwardsHeader.NAME, 0);
         }
 
-        if (getTopmostVia() == null)
+        if (peekTopmostVia() == null)
             throw new ParseException("No via header in request! ", 0);
 
         if (getMethod().equals(Request.NOTIFY)) {
@@ -281,8 +284,8 @@ public class SIPRequest extends SIPMessage implements android.javax.sip.message.
 
             //https://github.com/RestComm/jain-sip/issues/74
             //Event header mandatory just for in-dialog NOTIFY
-            if (getFromHeader().getTag()!=null &&
-                    getToHeader().getTag() != null && getHeader(EventHeader.NAME) == null)
+            if (fromHeader.getTag()!=null &&
+                    toHeader.getTag() != null && getHeader(EventHeader.NAME) == null)
             {
                 throw new ParseException(prefix + EventHeader.NAME, 0);
             }
@@ -364,8 +367,8 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         }*/
 
         if (requestLine != null && method != null
-                && getCSeq().getMethod() != null
-                && method.compareTo(getCSeq().getMethod()) != 0) {
+                && cSeqHeader.getMethod() != null
+                && method.compareTo(cSeqHeader.getMethod()) != 0) {
             throw new ParseException("CSEQ method mismatch with  Request-Line ", 0);
 
         }
@@ -405,7 +408,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
     protected void setRequestLineDefaults() {
         String method = requestLine.getMethod();
         if (method == null) {
-            CSeq cseq = (CSeq) this.getCSeq();
+            CSeq cseq = this.cSeqHeader;
             if (cseq != null) {
                 method = getCannonicalName(cseq.getMethod());
                 requestLine.setMethod(method);
@@ -435,6 +438,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @param uri the new Request URI of this request message
      */
     public void setRequestURI(URI uri) {
+        invalidateEncodedBytes();
         if ( uri == null ) {
             throw new NullPointerException("Null request URI");
         }
@@ -452,6 +456,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @throws IllegalArgumentException if the method is null
      */
     public void setMethod(String method) {
+        invalidateEncodedBytes();
         if (method == null)
             throw new IllegalArgumentException("null method");
         if (this.requestLine == null) {
@@ -467,7 +472,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
 
         if (this.cSeqHeader != null) {
             try {
-                this.cSeqHeader.setMethod(meth);
+                ((CSeq) unshare(this.cSeqHeader)).setMethod(meth);
             } catch (ParseException e) {
             }
         }
@@ -529,14 +534,12 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
     }
 
     /**
-     * Make a clone (deep copy) of this object. You can use this if you want to modify a request
-     * while preserving the original
-     * 
-     * @return a deep copy of this object.
+     * Copy this object, see clone and shallowClone. You can use a copy if you want to modify a
+     * request while preserving the original.
      */
 
-    public Object clone() {
-        SIPRequest retval = (SIPRequest) super.clone();
+    protected SIPMessage copy(boolean shareHeaders) {
+        SIPRequest retval = (SIPRequest) super.copy(shareHeaders);
         // Do not copy over the tx pointer -- this is only for internal
         // tracking.
         retval.transactionPointer = null;
@@ -614,27 +617,15 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
             return new byte[0];
         }
 
-        byte[] rlbytes = null;
-        if (requestLine != null) {
-            try {
-                rlbytes = requestLine.encode().getBytes("UTF-8");
-            } catch (UnsupportedEncodingException ex) {
-                InternalErrorHandler.handleException(ex);
-            }
-        }
-        byte[] superbytes = super.encodeAsBytes(transport);
-        byte[] retval = new byte[rlbytes.length + superbytes.length];
-        System.arraycopy(rlbytes, 0, retval, 0, rlbytes.length);
-        System.arraycopy(superbytes, 0, retval, rlbytes.length, superbytes.length);
-        return retval;
+        return super.encodeAsBytes(transport, requestLine.encode());
     }
 
     /**
      * Creates a default SIPResponse message for this request. Note You must add the necessary
      * tags to outgoing responses if need be. For efficiency, this method does not clone the
-     * incoming request. If you want to modify the outgoing response, be sure to clone the
-     * incoming request as the headers are shared and any modification to the headers of the
-     * outgoing response will result in a modification of the incoming request. Tag fields are
+     * headers of the incoming request: they are shared with the response and copied when
+     * modified through the response (see SIPMessage.shallowClone), so the headers of the
+     * request must not be modified through references obtained before. Tag fields are
      * just copied from the incoming request. Contact headers are removed from the incoming
      * request. Added by Jeff Keyser.
      * 
@@ -654,9 +645,9 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
     /**
      * Creates a default SIPResponse message for this request. Note You must add the necessary
      * tags to outgoing responses if need be. For efficiency, this method does not clone the
-     * incoming request. If you want to modify the outgoing response, be sure to clone the
-     * incoming request as the headers are shared and any modification to the headers of the
-     * outgoing response will result in a modification of the incoming request. Tag fields are
+     * headers of the incoming request: they are shared with the response and copied when
+     * modified through the response (see SIPMessage.shallowClone), so the headers of the
+     * request must not be modified through references obtained before. Tag fields are
      * just copied from the incoming request. Contact headers are removed from the incoming
      * request. Added by Jeff Keyser. Route headers are not added to the response.
      * 
@@ -708,11 +699,11 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         // no need to iterate through all headers to create the response since we know which headers
         // we only want to keep and helps the lazy parsing to avoid going through all headers
         for(String headerName : headersToIncludeInResponse) {                	
-        	SIPHeader nextHeader = headerTable.get(headerName);
+        	SIPHeader nextHeader = getSIPHeaderListLowerCase(headerName, false);
         	if(nextHeader != null) {
         		if(!(nextHeader instanceof RecordRouteList) || (nextHeader instanceof RecordRouteList && mustCopyRR(statusCode))) {
         			try {
-        				newResponse.attachHeader((SIPHeader) nextHeader.clone(), false);
+        				shareHeader(nextHeader, newResponse);
         			} catch (SIPDuplicateHeaderException e) {
                       e.printStackTrace();
                   }
@@ -781,25 +772,31 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         SIPRequest cancel = new SIPRequest();
         cancel.setRequestLine((RequestLine) this.requestLine.clone());
         cancel.setMethod(Request.CANCEL);
-        cancel.setHeader((Header) this.callIdHeader.clone());
-        cancel.setHeader((Header) this.toHeader.clone());
-        cancel.setHeader((Header) cSeqHeader.clone());
+        // The headers are shared with the CANCEL, and copied when modified
         try {
-            cancel.getCSeq().setMethod(Request.CANCEL);
-        } catch (ParseException e) {
-            e.printStackTrace(); // should not happen
-        }
-        cancel.setHeader((Header) this.fromHeader.clone());
+            shareHeader(this.callIdHeader, cancel);
+            shareHeader(this.toHeader, cancel);
+            cancel.setHeader((Header) cSeqHeader.clone());
+            try {
+                cancel.getCSeq().setMethod(Request.CANCEL);
+            } catch (ParseException e) {
+                e.printStackTrace(); // should not happen
+            }
+            shareHeader(this.fromHeader, cancel);
 
-        cancel.addFirst((Header) this.getTopmostVia().clone());
-        cancel.setHeader((Header) this.maxForwardsHeader.clone());
+            cancel.addFirst((Header) this.peekTopmostVia().clone());
+            shareHeader(this.maxForwardsHeader, cancel);
 
-        /*
-         * If the request being cancelled contains a Route header field, the CANCEL request MUST
-         * include that Route header field's values.
-         */
-        if (this.getRouteHeaders() != null) {
-            cancel.setHeader((SIPHeaderList< ? >) this.getRouteHeaders().clone());
+            /*
+             * If the request being cancelled contains a Route header field, the CANCEL request MUST
+             * include that Route header field's values.
+             */
+            SIPHeader routeList = getSIPHeaderListLowerCase(ROUTE_LOWERCASE, false);
+            if (routeList != null) {
+                shareHeader(routeList, cancel);
+            }
+        } catch (SIPDuplicateHeaderException e) {
+            throw new SipException("Could not create CANCEL", e);
         }
         if (MessageFactoryImpl.getDefaultUserAgentHeader() != null) {
             cancel.setHeader(MessageFactoryImpl.getDefaultUserAgentHeader());
@@ -903,13 +900,17 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
         SIPRequest newRequest = new SIPRequest();
         newRequest.setRequestLine((RequestLine) this.requestLine.clone());
         newRequest.setMethod(Request.ACK);
-        newRequest.setHeader((Header) this.callIdHeader.clone());
-        newRequest.setHeader((Header) this.maxForwardsHeader.clone()); // ISSUE
-        // 130
-        // fix
-        newRequest.setHeader((Header) this.fromHeader.clone());
+        try {
+            shareHeader(this.callIdHeader, newRequest);
+            shareHeader(this.maxForwardsHeader, newRequest); // ISSUE
+            // 130
+            // fix
+            shareHeader(this.fromHeader, newRequest);
+        } catch (SIPDuplicateHeaderException e) {
+            throw new SipException("Could not create ACK", e);
+        }
         newRequest.setHeader((Header) responseToHeader.clone());
-        newRequest.addFirst((Header) this.getTopmostVia().clone());
+        newRequest.addFirst((Header) this.peekTopmostVia().clone());
         newRequest.setHeader((Header) cSeqHeader.clone());
         newRequest.getCSeq().setMethod(Request.ACK);
 
@@ -918,8 +919,13 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
          * those header fields MUST appear in the ACK. This is to ensure that the ACK can be
          * routed properly through any downstream stateless proxies.
          */
-        if (this.getRouteHeaders() != null) {
-            newRequest.setHeader((SIPHeaderList) this.getRouteHeaders().clone());
+        SIPHeader routeList = getSIPHeaderListLowerCase(ROUTE_LOWERCASE, false);
+        if (routeList != null) {
+            try {
+                shareHeader(routeList, newRequest);
+            } catch (SIPDuplicateHeaderException e) {
+                throw new SipException("Could not create ACK", e);
+            }
         }
         if (MessageFactoryImpl.getDefaultUserAgentHeader() != null) {
             newRequest.setHeader(MessageFactoryImpl.getDefaultUserAgentHeader());
@@ -934,7 +940,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @return the string representation of the host from the topmost via header.
      */
     public String getViaHost() {
-        Via via = (Via) this.getViaHeaders().getFirst();
+        Via via = peekTopmostVia();
         return via.getHost();
 
     }
@@ -945,7 +951,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @return the port from the topmost via header (5060 if there is no port indicated).
      */
     public int getViaPort() {
-        Via via = (Via) this.getViaHeaders().getFirst();
+        Via via = peekTopmostVia();
         if (via.hasPort())
             return via.getPort();
         else
@@ -970,6 +976,7 @@ Caused by: java.text.ParseException: Scheme for contact should be sips:sip:proxy
      * @param sipVersion the sip version to set.
      */
     public void setSIPVersion(String sipVersion) throws ParseException {
+        invalidateEncodedBytes();
         if (sipVersion == null || !sipVersion.equalsIgnoreCase("SIP/2.0"))
             throw new ParseException("sipVersion", 0);
         this.requestLine.setSipVersion(sipVersion);
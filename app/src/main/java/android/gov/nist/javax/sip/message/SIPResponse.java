@@ -28,7 +28,6 @@
  *******************************************************************************/
 package android.gov.nist.javax.sip.message;
 
-import android.gov.nist.core.InternalErrorHandler;
 import android.gov.nist.javax.sip.header.CSeq;
 import android.gov.nist.javax.sip.header.CallID;
 import android.gov.nist.javax.sip.header.From;
@@ -36,7 +35,6 @@ import android.gov.nist.javax.sip.header.StatusLine;
 import android.gov.nist.javax.sip.header.To;
 import android.gov.nist.javax.sip.header.Via;
 
-import java.io.UnsupportedEncodingException;
 import java.text.ParseException;
 import java.util.LinkedList;
 
@@ -287,6 +285,7 @@ public class SIPResponse
      *@throws IlegalArgumentException if invalid status code.
      */
     public void setStatusCode(int statusCode) throws ParseException {
+        invalidateEncodedBytes();
 
       // RFC3261 defines statuscode as 3DIGIT, 606 is the highest officially
       // defined code but extensions may add others (in theory up to 999,
@@ -318,6 +317,7 @@ public class SIPResponse
      *@throws IllegalArgumentException if null string
      */
     public void setReasonPhrase(String reasonPhrase) {
+        invalidateEncodedBytes();
         if (reasonPhrase == null)
             throw new IllegalArgumentException("Bad reason phrase");
         if (this.statusLine == null)
@@ -355,6 +355,7 @@ public class SIPResponse
      *@param sl Status line to set.
      */
     public void setStatusLine(StatusLine sl) {
+        invalidateEncodedBytes();
         statusLine = sl;
     }
 
@@ -389,19 +390,19 @@ public class SIPResponse
      * headers.
      */
     public void checkHeaders() throws ParseException {
-        if (getCSeq() == null) {
+        if (cSeqHeader == null) {
             throw new ParseException(CSeq.NAME+ " Is missing ", 0);
         }
-        if (getTo() == null) {
+        if (toHeader == null) {
             throw new ParseException(To.NAME+ " Is missing ", 0);
         }
-        if (getFrom() == null) {
+        if (fromHeader == null) {
             throw new ParseException(From.NAME+ " Is missing ", 0);
         }
-        if (getViaHeaders() == null) {
+        if (!hasHeader(Via.NAME)) {
             throw new ParseException(Via.NAME+ " Is missing ", 0);
         }
-        if (getCallId() == null) {
+        if (callIdHeader == null) {
             throw new ParseException(CallID.NAME + " Is missing ", 0);
         }
 
@@ -459,12 +460,11 @@ public class SIPResponse
     }
 
     /**
-     * Make a clone (deep copy) of this object.
-     *@return a deep copy of this object.
+     * Copy this object, see clone and shallowClone.
      */
 
-    public Object clone() {
-        SIPResponse retval = (SIPResponse) super.clone();
+    protected SIPMessage copy(boolean shareHeaders) {
+        SIPResponse retval = (SIPResponse) super.copy(shareHeaders);
         if (this.statusLine != null)
             retval.statusLine = (StatusLine) this.statusLine.clone();
         return retval;
@@ -517,20 +517,7 @@ public class SIPResponse
      */
 
     public byte[] encodeAsBytes( String transport ) {
-        byte[] slbytes = null;
-        if (statusLine != null) {
-            try {
-                slbytes = statusLine.encode().getBytes("UTF-8");
-            } catch (UnsupportedEncodingException ex) {
-                InternalErrorHandler.handleException(ex);
-            }
-        }
-        byte[] superbytes = super.encodeAsBytes( transport );
-        byte[] retval = new byte[slbytes.length + superbytes.length];
-        System.arraycopy(slbytes, 0, retval, 0, slbytes.length);
-        System.arraycopy(superbytes, 0, retval, slbytes.length,
-                superbytes.length);
-        return retval;
+        return super.encodeAsBytes(transport, statusLine != null ? statusLine.encode() : null);
     }
 
     /**
@@ -547,6 +534,7 @@ public class SIPResponse
     }
 
     public void setSIPVersion(String sipVersion) {
+        invalidateEncodedBytes();
         this.statusLine.setSipVersion(sipVersion);
     }
 
@@ -0,0 +1,284 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement.
+ *
+ */
+package android.gov.nist.javax.sip.parser;
+
+import android.gov.nist.core.CommonLogger;
+import android.gov.nist.core.StackLogger;
+import android.gov.nist.javax.sip.message.SIPMessage;
+
+import android.gov.nist.javax.sip.header.SIPHeaderNamesCache;
+import android.javax.sip.header.CSeqHeader;
+import android.javax.sip.header.CallIdHeader;
+import android.javax.sip.header.ContentLengthHeader;
+import android.javax.sip.header.ContentTypeHeader;
+import android.javax.sip.header.FromHeader;
+import android.javax.sip.header.MaxForwardsHeader;
+import android.javax.sip.header.ToHeader;
+import android.javax.sip.header.ViaHeader;
+
+import java.io.UnsupportedEncodingException;
+import java.text.ParseException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Message parser that works directly on the bytes of the received message.
+ *
+ * Where StringMsgParser builds a String for every line, trims it and
+ * concatenates folded lines before handing the header to the ParserFactory
+ * (which extracts and lower cases the header name again), this parser scans
+ * lines and header names on the raw buffer and looks the name up in a byte
+ * trie. A single String is built per header, the one handed to the header
+ * parser. Messages are parsed in place, so pooled receive buffers can be used
+ * as is.
+ *
+ * In lazy mode the headers that the stack does not need to process a message
+ * are not parsed at all: a copy of their bytes is attached to the message,
+ * which parses them on first access and otherwise encodes them back verbatim.
+ *
+ * The parser is stateless and can be shared by all the message channels of a
+ * stack. Select it with the android.gov.nist.javax.sip.MESSAGE_PARSER_FACTORY
+ * property set to ByteMsgParserFactory.
+ *
+ * @see ByteMsgParserFactory
+ * @since 2.0
+ */
+public class ByteMsgParser extends StringMsgParser {
+
+    private static StackLogger logger = CommonLogger.getLogger(ByteMsgParser.class);
+
+    private static final HeaderNameTrie headerNames = new HeaderNameTrie(ParserFactory.getHeaderNames());
+
+    /**
+     * Headers always parsed, even in lazy mode: the stack needs them to match
+     * and route every message.
+     */
+    private static final Set<String> eagerHeaders = new HashSet<String>();
+    static {
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(ViaHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(FromHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(ToHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(CallIdHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(CSeqHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(ContentLengthHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(ContentTypeHeader.NAME));
+        eagerHeaders.add(SIPHeaderNamesCache.toLowerCase(MaxForwardsHeader.NAME));
+    }
+
+    private final boolean lazyHeaders;
+
+    public ByteMsgParser() {
+        this(false);
+    }
+
+    /**
+     * @param lazyHeaders if true, headers the stack does not need are left
+     *            unparsed until accessed.
+     */
+    public ByteMsgParser(boolean lazyHeaders) {
+        super();
+        this.lazyHeaders = lazyHeaders;
+    }
+
+    public SIPMessage parseSIPMessage(byte[] msgBuffer, int offset, int length, boolean readBody, boolean strict, ParseExceptionListener parseExceptionListener) throws ParseException {
+        if (msgBuffer == null || length <= 0)
+            return null;
+
+        final int end = offset + length;
+        int i = offset;
+
+        // Squeeze out any leading control character.
+        while (i < end && msgBuffer[i] < 0x20)
+            i++;
+        if (i == end) {
+            // Array contains only control char, return null.
+            if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
+                logger.logDebug("handled only control char so returning null");
+            }
+            return null;
+        }
+
+        // The header being accumulated: either a single line of msgBuffer or,
+        // once a continuation line has been seen, the unfolded header.
+        int headerStart = -1;
+        int headerEnd = -1;
+        byte[] folded = null;
+        int foldedLength = 0;
+
+        boolean isFirstLine = true;
+        SIPMessage message = null;
+        boolean endOfHeaders;
+        do {
+            int lineStart = i;
+
+            // Find the end of the line.
+            while (i < end && msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
+                i++;
+            if (i == end) {
+                // End of the message.
+                break;
+            }
+
+            // Trim trailing white spaces and control characters.
+            int lineEnd = i;
+            while (lineEnd > lineStart && (msgBuffer[lineEnd - 1] & 0xff) <= 0x20)
+                lineEnd--;
+
+            endOfHeaders = lineEnd == lineStart;
+            if (endOfHeaders) {
+                // Last header line, process the previous buffered header.
+                if (headerStart >= 0 && message != null) {
+                    if (folded != null) {
+                        processHeader(folded, 0, foldedLength, message, parseExceptionListener, msgBuffer, offset, length);
+                    } else {
+                        processHeader(msgBuffer, headerStart, headerEnd, message, parseExceptionListener, msgBuffer, offset, length);
+                    }
+                }
+            } else if (isFirstLine) {
+                message = processFirstLine(toLine(msgBuffer, lineStart, lineEnd, false), parseExceptionListener, msgBuffer, offset, length);
+            } else {
+                byte firstByte = msgBuffer[lineStart];
+                if (firstByte == '\t' || firstByte == ' ') {
+                    if (headerStart < 0)
+                        throw new ParseException("Bad header continuation.", 0);
+
+                    // This is a continuation, append it to the previous line
+                    // without its leading white space.
+                    int needed = (folded == null ? headerEnd - headerStart : foldedLength) + lineEnd - lineStart - 1;
+                    if (folded == null) {
+                        folded = new byte[Math.max(needed, 2 * (headerEnd - headerStart))];
+                        foldedLength = headerEnd - headerStart;
+                        System.arraycopy(msgBuffer, headerStart, folded, 0, foldedLength);
+                    } else if (needed > folded.length) {
+                        byte[] grown = new byte[Math.max(needed, 2 * folded.length)];
+                        System.arraycopy(folded, 0, grown, 0, foldedLength);
+                        folded = grown;
+                    }
+                    System.arraycopy(msgBuffer, lineStart + 1, folded, foldedLength, lineEnd - lineStart - 1);
+                    foldedLength = needed;
+                } else {
+                    if (headerStart >= 0 && message != null) {
+                        if (folded != null) {
+                            processHeader(folded, 0, foldedLength, message, parseExceptionListener, msgBuffer, offset, length);
+                        } else {
+                            processHeader(msgBuffer, headerStart, headerEnd, message, parseExceptionListener, msgBuffer, offset, length);
+                        }
+                    }
+                    headerStart = lineStart;
+                    headerEnd = lineEnd;
+                    folded = null;
+                    foldedLength = 0;
+                }
+            }
+
+            if (msgBuffer[i] == '\r' && end > i + 1 && msgBuffer[i + 1] == '\n')
+                i++;
+
+            i++;
+
+            isFirstLine = false;
+        } while (!endOfHeaders);
+
+        if (message == null) throw new ParseException("Bad message", 0);
+        message.setSize(i - offset);
+
+        if (readBody) {
+            processBody(message, msgBuffer, offset, i, end, strict);
+        }
+
+        return message;
+    }
+
+    /**
+     * Process the header held in header[start, end). The name is resolved
+     * from the bytes, the header line String is built only once.
+     */
+    private void processHeader(byte[] header, int start, int end, SIPMessage message, ParseExceptionListener parseExceptionListener, byte[] rawMessage, int offset, int length) throws ParseException {
+        int colon = start;
+        while (colon < end && header[colon] != ':')
+            colon++;
+        String headerName = null;
+        if (colon < end) {
+            int nameEnd = colon;
+            while (nameEnd > start && (header[nameEnd - 1] == ' ' || header[nameEnd - 1] == '\t'))
+                nameEnd--;
+            headerName = headerNames.lookup(header, start, nameEnd);
+        }
+
+        // Compact names are left out of lazy parsing, the message indexes
+        // headers by their full name.
+        if (lazyHeaders && headerName != null && headerName.length() > 1
+                && !eagerHeaders.contains(headerName)) {
+            message.attachLazyHeader(headerName, header, start, end, parseExceptionListener);
+            return;
+        }
+
+        String line = toLine(header, start, end, true);
+        HeaderParser headerParser = null;
+        try {
+            if (headerName != null) {
+                headerParser = ParserFactory.createParser(headerName, line);
+            } else {
+                // Unknown or malformed header name, let the factory sort it out.
+                headerParser = ParserFactory.createParser(line);
+            }
+        } catch (ParseException ex) {
+            if (parseExceptionListener != null) {
+                parseExceptionListener.handleException(ex, message, null,
+                        line.substring(0, line.length() - 1), null);
+                return;
+            } else {
+                throw ex;
+            }
+        }
+
+        parseHeader(headerParser, line, message, parseExceptionListener, rawMessage, offset, length);
+    }
+
+    /**
+     * Decode buffer[start, end) as a line, optionally terminated by a new line
+     * as the header parsers expect it. Pure ASCII lines, by far the most
+     * common, are widened without going through the UTF-8 decoder.
+     */
+    private static String toLine(byte[] buffer, int start, int end, boolean newLine) throws ParseException {
+        int length = end - start;
+        char[] chars = new char[newLine ? length + 1 : length];
+        for (int j = 0; j < length; j++) {
+            byte b = buffer[start + j];
+            if (b < 0) {
+                try {
+                    String line = new String(buffer, start, length, "UTF-8");
+                    return newLine ? line + "\n" : line;
+                } catch (UnsupportedEncodingException e) {
+                    throw new ParseException("Bad message encoding!", 0);
+                }
+            }
+            chars[j] = (char) b;
+        }
+        if (newLine) {
+            chars[length] = '\n';
+        }
+        return new String(chars);
+    }
+}
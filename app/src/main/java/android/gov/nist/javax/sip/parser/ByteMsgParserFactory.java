@@ -0,0 +1,53 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement.
+ *
+ */
+package android.gov.nist.javax.sip.parser;
+
+import android.gov.nist.javax.sip.stack.SIPTransactionStack;
+
+/**
+ * Message Parser Factory handing out the byte level ByteMsgParser.
+ *
+ * @see ByteMsgParser
+ * @since 2.0
+ */
+public class ByteMsgParserFactory implements MessageParserFactory {
+
+    /**
+     * msg parser is completely stateless, reuse instance for the whole stack
+     */
+    private static ByteMsgParser msgParser = new ByteMsgParser();
+
+    private static ByteMsgParser lazyMsgParser = new ByteMsgParser(true);
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.parser.MessageParserFactory#createMessageParser(android.gov.nist.javax.sip.stack.SIPTransactionStack)
+	 */
+	public MessageParser createMessageParser(SIPTransactionStack stack) {	
+		if (stack != null && stack.isLazyHeaderParsing()) {
+			return lazyMsgParser;
+		}
+		return msgParser;
+	}
+
+}
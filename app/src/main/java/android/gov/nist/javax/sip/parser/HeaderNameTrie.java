@@ -0,0 +1,104 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement.
+ *
+ */
+package android.gov.nist.javax.sip.parser;
+
+import java.util.Collection;
+
+/**
+ * Case insensitive byte trie of header names. Lets the byte level parser map
+ * the name of a header straight from the receive buffer to its canonical lower
+ * case form (the key of the ParserFactory table) without building a String
+ * and lower casing it first.
+ *
+ * Only names made of letters, digits and dashes are indexed, lookups of any
+ * other name just return null. The trie is immutable once built.
+ *
+ * @since 2.0
+ */
+final class HeaderNameTrie {
+
+    private static final int WIDTH = 26 + 10 + 1;
+
+    private static final class Node {
+        final Node[] children = new Node[WIDTH];
+        String name;
+    }
+
+    private final Node root = new Node();
+
+    HeaderNameTrie(Collection<String> names) {
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    private void add(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            int index = c < 0x80 ? indexOf((byte) c) : -1;
+            if (index < 0) {
+                return;
+            }
+            Node child = node.children[index];
+            if (child == null) {
+                child = new Node();
+                node.children[index] = child;
+            }
+            node = child;
+        }
+        node.name = name.toLowerCase();
+    }
+
+    /**
+     * Look up the header name held in buffer[start, end).
+     *
+     * @return the lower case name as registered in the trie, or null if the
+     *         name is unknown.
+     */
+    String lookup(byte[] buffer, int start, int end) {
+        Node node = root;
+        for (int i = start; i < end && node != null; i++) {
+            int index = indexOf(buffer[i]);
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+        }
+        return node == null ? null : node.name;
+    }
+
+    private static int indexOf(byte b) {
+        if (b >= 'a' && b <= 'z') {
+            return b - 'a';
+        } else if (b >= 'A' && b <= 'Z') {
+            return b - 'A';
+        } else if (b >= '0' && b <= '9') {
+            return 26 + b - '0';
+        } else if (b == '-') {
+            return 36;
+        }
+        return -1;
+    }
+}
@@ -32,17 +32,21 @@ import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.LogLevels;
 import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.StackLoggerExt;
 import android.gov.nist.javax.sip.header.CallID;
 import android.gov.nist.javax.sip.header.ContentLength;
 import android.gov.nist.javax.sip.message.SIPMessage;
 import android.gov.nist.javax.sip.stack.ConnectionOrientedMessageChannel;
 import android.gov.nist.javax.sip.stack.QueuedMessageDispatchBase;
 import android.gov.nist.javax.sip.stack.SIPTransactionStack;
+import android.gov.nist.javax.sip.stack.metrics.SipStackMetrics;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * This is a FSM that can parse a single stream of messages with they bodies and 
@@ -50,6 +54,12 @@ import java.text.ParseException;
  * message is detected or some DoS trigger terminates it due to excessive amount
  * of bytes per message or line.
  * 
+ * The message boundaries (the empty line ending the headers and the
+ * Content-Length bytes of body after it) are found in place in the bytes read
+ * from the channel, each complete message is then parsed straight from that
+ * buffer. Only the bytes of a message that is not complete yet are carried over
+ * to the next read.
+ * 
  * Once parsed it will pass the message to the SIPMessageListener
  *
  * @see SIPMessageListener
@@ -57,39 +67,58 @@ import java.text.ParseException;
  */
 public class NioPipelineParser {
 	
-	private static StackLogger logger = CommonLogger.getLogger(NioPipelineParser.class);
+	private static StackLoggerExt logger = CommonLogger.getLogger(NioPipelineParser.class);
 
 	private static final String CRLF = "\r\n";
 
+	private static final byte[] CONTENT_LENGTH_COMPACT = { 'l' };
+
+	private static final byte[] CALL_ID_COMPACT = { 'i' };
+
+	private static final byte[] CONTENT_LENGTH = ContentLength.NAME_LOWER.getBytes();
+
+	private static final byte[] CALL_ID = CallID.NAME_LOWER.getBytes();
+
     /**
      * The message listener that is registered with this parser. (The message
      * listener has methods that can process correct and erroneous messages.)
      */
     protected SIPMessageListener sipMessageListener;
     private int maxMessageSize;
-    private int sizeCounter;
     private SIPTransactionStack sipStack;
     private MessageParser smp = null;
 
-    boolean isRunning = false;
-	boolean currentStreamEnded = false;
-	boolean readingMessageBodyContents = false;
-	boolean readingHeaderLines = true;
-	boolean partialLineRead = false; // if we didn't receive enough bytes for a full line we expect the line to end in the next batch of bytes
-	String partialLine = "";
+	// Start of a message received in a previous read that is not complete yet
+	private byte[] pending = new byte[0];
+	private int pendingLength = 0;
+
+	// Framing state of the current message, offsets are relative to its first byte
+	private int scanned = 0; // bytes already searched for the end of the headers
+	private int headerLength = -1; // length of the headers including the empty line, -1 until found
+	int contentLength = 0;
 	String callId;
-	
+
+	// A CRLF was received between messages, a second one is a keep alive ping
+	private boolean previousLineCRLF = false;
 
 	public static class UnparsedMessage {
 		String lines;
 		byte[] body;
+		byte[] message;
 		public UnparsedMessage(String messageLines, byte[] body) {
 			this.lines = messageLines;
 			this.body = body;
 		}
+
+		/**
+		 * @param message the headers and body of the message, as received
+		 */
+		public UnparsedMessage(byte[] message) {
+			this.message = message;
+		}
 		
 		public String toString() {
-			return super.toString() + "\n" + lines;
+			return super.toString() + "\n" + (message != null ? new String(message) : lines);
 		}
 	}
 	
@@ -97,21 +126,37 @@ public class NioPipelineParser {
     	String callId;
         UnparsedMessage unparsedMessage;
     	long time;
+    	long queuedNanos;
     	public Dispatch(UnparsedMessage unparsedMsg, String callId) {
     		this.unparsedMessage = unparsedMsg;
     		this.callId = callId;
     		time = System.currentTimeMillis();
+    		queuedNanos = System.nanoTime();
     	}
         public void run() {   
-            logger.logInfo("serving msg on call id " + callId);
+            logger.logInfo("serving msg on call id {}", callId);
+            SipStackMetrics metrics = sipStack.getMetrics();
+            metrics.recordQueueWait(System.nanoTime() - queuedNanos);
             SIPMessage parsedSIPMessage = null;
             try {
 
             		if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
             			logger.logDebug( "\nUnparsed message before parser is:\n" + unparsedMessage);
             		}
+            		long parseStart = System.nanoTime();
+            		if(unparsedMessage.message != null) {
+            			parsedSIPMessage = smp.parseSIPMessage(unparsedMessage.message, true, false, null);
+            			metrics.recordParseTime(System.nanoTime() - parseStart);
+            			if (parsedSIPMessage != null && sipStack.isKeepReceivedBytes()) {
+            				parsedSIPMessage.setReceivedBytes(unparsedMessage.message);
+            			}
+            		} else {
                     byte[] lineBytes = unparsedMessage.lines.getBytes("UTF-8");
                     parsedSIPMessage = smp.parseSIPMessage(lineBytes, false, false, null);        		
+                    metrics.recordParseTime(System.nanoTime() - parseStart);
+                    if (parsedSIPMessage != null && sipStack.isKeepReceivedBytes()) {
+                        parsedSIPMessage.setReceivedBytes(lineBytes);
+                    }
         			if(parsedSIPMessage == null) {
         				// https://java.net/jira/browse/JSIP-503
         				if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
@@ -121,6 +166,7 @@ public class NioPipelineParser {
         			} else if(unparsedMessage.body.length > 0) {
         				parsedSIPMessage.setMessageContent(unparsedMessage.body);
         			}
+            		}
 
             	if(sipStack.sipEventInterceptor != null
             			// https://java.net/jira/browse/JSIP-503
@@ -138,7 +184,7 @@ public class NioPipelineParser {
             		logger.logDebug("Problem parsing message " + unparsedMessage + " " + e.getMessage());
             	}
     		}catch (Exception e) {
-            	logger.logError("Error occured processing message " + message, e);
+            	logger.logError("Error occured processing message " + unparsedMessage, e);
                 // We do not break the TCP connection because other calls use the same socket here
             } finally {            
                 if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
@@ -163,138 +209,270 @@ public class NioPipelineParser {
 		
 	}
 	
-	StringBuilder message = new StringBuilder();
-	byte[] messageBody = null;
-	int contentLength = 0;
-	int contentReadSoFar = 0;
-	
 	/*
 	 *  This is where we receive the bytes from the stream and we analyze the through message structure.
-	 *  For TCP the key things to identify are message lines for the headers, parse the Content-Length header
+	 *  For TCP the key things to identify are the end of the message headers, parse the Content-Length header
 	 *  and then read the message body (aka message content). For TCP the Content-Length must be 100% accurate.
 	 */
 	public void readStream(InputStream inputStream) throws IOException {
-		boolean isPreviousLineCRLF = false;
-		while(true) { // We read continiously from the bytes we receive and only break where there are no more bytes in the inputStream passed to us
-			if(currentStreamEnded) break; // The stream ends when we have read all bytes in the chunk NIO passed to us
-			else {
-				if(readingHeaderLines) {// We are in state to read header lines right now
-					isPreviousLineCRLF = readMessageSipHeaderLines(inputStream, isPreviousLineCRLF);
+		byte[] chunk = new byte[4096];
+		int read;
+		while((read = inputStream.read(chunk)) > 0) {
+			addBytes(ByteBuffer.wrap(chunk, 0, read));
+		}
+	}
+
+	/**
+	 * Add the bytes read from the channel, between the position and the limit
+	 * of the buffer. The messages completed by these bytes are parsed and
+	 * passed to the listener, the start of an incomplete message is kept until
+	 * the next call. The buffer is consumed when the call returns and can be
+	 * reused. Both addBytes methods hold the parser lock, which is uncontended
+	 * when the parser is fed by the single thread reading its channel.
+	 */
+	public synchronized void addBytes(ByteBuffer buffer) throws IOException {
+		if(pendingLength == 0 && buffer.hasArray()) {
+			// frame the messages in place, only the incomplete tail is copied
+			byte[] array = buffer.array();
+			int start = buffer.arrayOffset() + buffer.position();
+			int end = buffer.arrayOffset() + buffer.limit();
+			int consumed = frameMessages(array, start, end);
+			buffer.position(buffer.limit());
+			if(consumed < end) {
+				appendPending(array, consumed, end - consumed);
+			}
+		} else {
+			int length = buffer.remaining();
+			ensurePendingCapacity(pendingLength + length);
+			buffer.get(pending, pendingLength, length);
+			pendingLength += length;
+			int consumed = frameMessages(pending, 0, pendingLength);
+			if(consumed > 0) {
+				System.arraycopy(pending, consumed, pending, 0, pendingLength - consumed);
+				pendingLength -= consumed;
+			}
+		}
+	}
+
+	public synchronized void addBytes(byte[] bytes)  throws Exception{
+		addBytes(ByteBuffer.wrap(bytes));
+	}
+
+	private void appendPending(byte[] bytes, int offset, int length) {
+		ensurePendingCapacity(pendingLength + length);
+		System.arraycopy(bytes, offset, pending, pendingLength, length);
+		pendingLength += length;
+	}
+
+	private void ensurePendingCapacity(int capacity) {
+		if(pending.length < capacity) {
+			pending = Arrays.copyOf(pending, Math.max(capacity, Math.max(1024, pending.length * 2)));
+		}
+	}
+
+	/**
+	 * Find the complete messages in buffer[start, end) and process them.
+	 *
+	 * @return the index of the first byte not consumed, the start of the
+	 *         incomplete message if any.
+	 */
+	private int frameMessages(byte[] buffer, int start, int end) throws IOException {
+		int messageStart = start;
+		while(messageStart < end) {
+			if(headerLength < 0) {
+				if(scanned == 0) {
+					// between messages, only CRLFs are expected here
+					byte b = buffer[messageStart];
+					if(b == '\r') {
+						if(messageStart + 1 == end) {
+							return messageStart;
+						}
+						if(buffer[messageStart + 1] == '\n') {
+							crlfReceived();
+							messageStart += 2;
+							continue;
+						}
+					} else if(b == '\n') {
+						messageStart++;
+						continue;
+					}
+					previousLineCRLF = false;
+				}
+				int i = messageStart + Math.max(scanned, 3);
+				while(i < end && !(buffer[i] == '\n' && buffer[i - 1] == '\r'
+						&& buffer[i - 2] == '\n' && buffer[i - 3] == '\r')) {
+					i++;
 				}
-				if(readingMessageBodyContents) { // We've already read the headers an now we are reading the Contents of the SIP message (which doesn't generally have lines)
-					readMessageBody(inputStream);
+				if(i >= end) {
+					scanned = end - messageStart;
+					checkLimits(scanned);
+					return messageStart;
 				}
+				headerLength = i + 1 - messageStart;
+				readFramingHeaders(buffer, messageStart, i - 1);
+				checkLimits(headerLength + contentLength);
+				if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+					logger.logDebug("Content Length parsed is " + contentLength);
+				}
+			}
+			int messageLength = headerLength + contentLength;
+			if(end - messageStart < messageLength) {
+				return messageStart;
 			}
+			String callId = this.callId;
+			scanned = 0;
+			headerLength = -1;
+			contentLength = 0;
+			this.callId = null;
+			processMessageBytes(buffer, messageStart, messageLength, callId);
+			messageStart += messageLength;
 		}
+		return messageStart;
 	}
-	
-	private boolean readMessageSipHeaderLines(InputStream inputStream, boolean isPreviousLineCRLF) throws IOException {
-		boolean crlfReceived = false;
-		String line = readLine(inputStream); // This gives us a full line or if it didn't fit in the byte check it may give us part of the line
-		if(partialLineRead) {
-			partialLine = partialLine + line; // If we are reading partial line again we must concatenate it with the previous partial line to reconstruct the full line
-		} else {
-			line = partialLine + line; // If we reach the end of the line in this chunk we concatenate it with the partial line from the previous buffer to have a full line
-			partialLine = ""; // Reset the partial line so next time we will concatenate empty string instead of the obsolete partial line that we just took care of
-			if(!line.equals(CRLF)) { // CRLF indicates END of message headers by RFC
-				message.append(line); // Collect the line so far in the message buffer (line by line)
-                String lineIgnoreCase = line.toLowerCase();
-                // contribution from Alexander Saveliev compare to lower case as RFC 3261 states (7.3.1 Header Field Format) states that header fields are case-insensitive
-				if(lineIgnoreCase.startsWith(ContentLength.NAME_LOWER)) { // naive Content-Length header parsing to figure out how much bytes of message body must be read after the SIP headers
-					contentLength = Integer.parseInt(line.substring(
-							ContentLength.NAME_LOWER.length()+1).trim());
-				} else if(lineIgnoreCase.startsWith(CallID.NAME_LOWER)) { // naive Content-Length header parsing to figure out how much bytes of message body must be read after the SIP headers
-					callId = line.substring(
-							CallID.NAME_LOWER.length()+1).trim();
-				}
-			} else {				
-				if(isPreviousLineCRLF) {
-            		// Handling keepalive ping (double CRLF) as defined per RFC 5626 Section 4.4.1
-                	// sending pong (single CRLF)
-                	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                        logger.logDebug("KeepAlive Double CRLF received, sending single CRLF as defined per RFC 5626 Section 4.4.1");
-                        logger.logDebug("~~~ setting isPreviousLineCRLF=false");
-                    }
 
-                	crlfReceived = false;
-
-                	try {
-						sipMessageListener.sendSingleCLRF();
-					} catch (Exception e) {						
-						logger.logError("A problem occured while trying to send a single CLRF in response to a double CLRF", e);
-					}                	                	
-            	} else {
-            		crlfReceived = true;
-                	if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
-                    	logger.logDebug("Received CRLF");
-                    }
-                	if(sipMessageListener != null && 
-                			sipMessageListener instanceof ConnectionOrientedMessageChannel) {
-                		((ConnectionOrientedMessageChannel)sipMessageListener).cancelPingKeepAliveTimeoutTaskIfStarted();
-                	}
-            	}
-				if(message.length() > 0) { // if we havent read any headers yet we are between messages and ignore CRLFs
-					readingMessageBodyContents = true;
-					readingHeaderLines = false;
-					partialLineRead = false;
-					message.append(CRLF); // the parser needs CRLF at the end, otherwise fails TODO: Is that a bug?
-					if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-						logger.logDebug("Content Length parsed is " + contentLength);
-					}
+	// Handling keepalive ping (double CRLF) as defined per RFC 5626 Section 4.4.1
+	private void crlfReceived() {
+		if(previousLineCRLF) {
+        	// sending pong (single CRLF)
+        	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+                logger.logDebug("KeepAlive Double CRLF received, sending single CRLF as defined per RFC 5626 Section 4.4.1");
+            }
+        	previousLineCRLF = false;
+        	try {
+				sipMessageListener.sendSingleCLRF();
+			} catch (Exception e) {						
+				logger.logError("A problem occured while trying to send a single CLRF in response to a double CLRF", e);
+			}                	                	
+    	} else {
+    		previousLineCRLF = true;
+        	if (logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
+            	logger.logDebug("Received CRLF");
+            }
+        	if(sipMessageListener != null && 
+        			sipMessageListener instanceof ConnectionOrientedMessageChannel) {
+        		((ConnectionOrientedMessageChannel)sipMessageListener).cancelPingKeepAliveTimeoutTaskIfStarted();
+        	}
+    	}
+	}
 
-					contentReadSoFar = 0;
-					messageBody = new byte[contentLength];
+	/**
+	 * Look for the Content-Length and Call-ID headers in the header lines of
+	 * buffer[start, end), end being the CRLF of the last header.
+	 */
+	private void readFramingHeaders(byte[] buffer, int start, int end) throws IOException {
+		int lineStart = start;
+		while(lineStart < end) {
+			int lineEnd = lineStart;
+			while(lineEnd < end && buffer[lineEnd] != '\n') {
+				lineEnd++;
+			}
+			int valueStart = valueStart(buffer, lineStart, lineEnd, CONTENT_LENGTH);
+			if(valueStart < 0) {
+				valueStart = valueStart(buffer, lineStart, lineEnd, CONTENT_LENGTH_COMPACT);
+			}
+			if(valueStart >= 0) {
+				contentLength = parseContentLength(buffer, valueStart, lineEnd);
+			} else if(sipStack.getSelfRoutingThreadpoolExecutor() != null) {
+				// the Call-ID is only needed to pick the thread the message is processed on
+				valueStart = valueStart(buffer, lineStart, lineEnd, CALL_ID);
+				if(valueStart < 0) {
+					valueStart = valueStart(buffer, lineStart, lineEnd, CALL_ID_COMPACT);
+				}
+				if(valueStart >= 0) {
+					callId = new String(buffer, valueStart, lineEnd - valueStart, "UTF-8").trim();
 				}
-			}			
+			}
+			lineStart = lineEnd + 1;
 		}
-		return crlfReceived;
 	}
 
-	// This method must be called repeatedly until the inputStream returns -1 or some error conditions is triggered
-	private void readMessageBody(InputStream inputStream) throws IOException {
-		int bytesRead = 0;
-		if(contentLength>0) {
-			bytesRead = readChunk(inputStream, messageBody, contentReadSoFar, contentLength-contentReadSoFar);
-			if(bytesRead == -1) {
-				currentStreamEnded = true;
-				bytesRead = 0; // avoid passing by a -1 for a one-off bug when contentReadSoFar gets wrong
+	/**
+	 * @return the index following the colon if buffer[lineStart, lineEnd) is a
+	 *         header named lowerCaseName (compared ignoring case), -1 otherwise.
+	 */
+	private static int valueStart(byte[] buffer, int lineStart, int lineEnd, byte[] lowerCaseName) {
+		if(lineEnd - lineStart <= lowerCaseName.length) {
+			return -1;
+		}
+		for(int i = 0; i < lowerCaseName.length; i++) {
+			int b = buffer[lineStart + i];
+			if(b >= 'A' && b <= 'Z') {
+				b += 'a' - 'A';
 			}
+			if(b != lowerCaseName[i]) {
+				return -1;
+			}
+		}
+		int i = lineStart + lowerCaseName.length;
+		while(i < lineEnd && (buffer[i] == ' ' || buffer[i] == '\t')) {
+			i++;
 		}
-		contentReadSoFar += bytesRead;
-		if(contentReadSoFar == contentLength) { // We have read the full message headers + body
-			sizeCounter = maxMessageSize;
-			readingHeaderLines = true;
-			readingMessageBodyContents = false;
-			final String msgLines = message.toString();
-			message = new StringBuilder();
-			final byte[] msgBodyBytes = messageBody;			
-			
-			if(sipStack.getSelfRoutingThreadpoolExecutor() != null) {
-				final String callId = this.callId;
-				if(callId == null || callId.trim().length() < 1) {
-					// http://code.google.com/p/jain-sip/issues/detail?id=18
-					// NIO Message with no Call-ID throws NPE
-					throw new IOException("received message with no Call-ID");
+		return i < lineEnd && buffer[i] == ':' ? i + 1 : -1;
+	}
+
+	private static int parseContentLength(byte[] buffer, int start, int end) {
+		long value = -1;
+		for(int i = start; i < end; i++) {
+			byte b = buffer[i];
+			if(b >= '0' && b <= '9') {
+				value = (value < 0 ? 0 : value * 10) + b - '0';
+				if(value > Integer.MAX_VALUE) {
+					break;
 				}
-                                                                                
-                sipStack.getSelfRoutingThreadpoolExecutor().execute(new Dispatch(new UnparsedMessage(msgLines, msgBodyBytes), callId)); // run in executor thread
-			} else {
-				SIPMessage sipMessage = null;
-				
-					try {
-                        byte[] msgBytes = msgLines.getBytes("UTF-8");
-                        sipMessage = smp.parseSIPMessage(msgBytes, false, false, null);
-						sipMessage.setMessageContent(msgBodyBytes);
-					} catch (ParseException e) {
-						this.logger.logDebug(
-		                        "Parsing issue !  " + new String(msgLines.getBytes("UTF-8")) + " " + e.getMessage());
-					}
-				
-				this.contentLength = 0;
-				processSIPMessage(sipMessage);
+			} else if(b != ' ' && b != '\t' && b != '\r') {
+				value = -1;
+				break;
 			}
 		}
+		if(value < 0 || value > Integer.MAX_VALUE) {
+			throw new NumberFormatException("Invalid Content-Length " + new String(buffer, start, end - start));
+		}
+		return (int) value;
+	}
 
+	private void checkLimits(int size) {
+		if(maxMessageSize > 0 && size > maxMessageSize) throw new RuntimeException("Max Message Size Exceeded " + maxMessageSize);
+	}
+
+	private void processMessageBytes(byte[] buffer, int offset, int length, String callId) throws IOException {
+		if(sipStack.getSelfRoutingThreadpoolExecutor() != null) {
+			if(callId == null || callId.length() < 1) {
+				// http://code.google.com/p/jain-sip/issues/detail?id=18
+				// NIO Message with no Call-ID throws NPE
+				throw new IOException("received message with no Call-ID");
+			}
+			// the buffer is reused once we return, the executor gets its own copy
+			byte[] message = Arrays.copyOfRange(buffer, offset, offset + length);
+			try {
+				sipStack.getSelfRoutingThreadpoolExecutor().execute(new Dispatch(new UnparsedMessage(message), callId)); // run in executor thread
+			} catch (RejectedExecutionException e) {
+				// the thread of the Call-ID is saturated, the message is lost as if the network dropped it
+				logger.logWarning("Dropping message: " + e.getMessage());
+			}
+		} else {
+			SIPMessage sipMessage = null;
+			try {
+				long parseStart = System.nanoTime();
+				if(smp instanceof MessageParserExt) {
+					sipMessage = ((MessageParserExt) smp).parseSIPMessage(buffer, offset, length, true, false, null);
+				} else {
+					sipMessage = smp.parseSIPMessage(Arrays.copyOfRange(buffer, offset, offset + length), true, false, null);
+				}
+				sipStack.getMetrics().recordParseTime(System.nanoTime() - parseStart);
+				if (sipMessage != null && sipStack.isKeepReceivedBytes()) {
+					// the buffer is reused once we return
+					sipMessage.setReceivedBytes(Arrays.copyOfRange(buffer, offset, offset + sipMessage.getSize()));
+				}
+			} catch (ParseException e) {
+				if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+					logger.logDebug(
+	                        "Parsing issue !  " + new String(buffer, offset, length, "UTF-8") + " " + e.getMessage());
+				}
+			}
+			if(sipMessage != null) {
+				processSIPMessage(sipMessage);
+			}
+		}
 	}
 
 	public void processSIPMessage(SIPMessage message) {
@@ -304,15 +482,8 @@ public class NioPipelineParser {
 			logger.logError("Can't process message", e);
 		}
 	}
-	
-	public synchronized void addBytes(byte[] bytes)  throws Exception{
-		currentStreamEnded = false;
-		ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
-		readStream(inputStream);
-	}
 
 
-    
     /**
      * default constructor.
      */
@@ -339,7 +510,6 @@ public class NioPipelineParser {
         this.smp = sipStack.getMessageParserFactory().createMessageParser(sipStack);
         this.sipMessageListener = sipMessageListener;
         this.maxMessageSize = maxMessageSize;
-        this.sizeCounter = this.maxMessageSize;
 
     }
 
@@ -370,79 +540,4 @@ public class NioPipelineParser {
     public void setMessageListener(SIPMessageListener mlistener) {
         sipMessageListener = mlistener;
     }
-    
-	private int readChunk(InputStream inputStream, byte[] where, int offset, int length) throws IOException {
-		int read =  inputStream.read(where, offset, length);
-		sizeCounter -= read;
-		checkLimits();
-		return read;
-	}
-	
-	private int readSingleByte(InputStream inputStream) throws IOException {
-		sizeCounter --;
-		checkLimits();
-		return inputStream.read();
-	}
-	
-	private void checkLimits() {
-		if(maxMessageSize > 0 && sizeCounter < 0) throw new RuntimeException("Max Message Size Exceeded " + maxMessageSize);
-	}
-
-    /**
-     * read a line of input. Note that we encode the result in UTF-8
-     */
-    private String readLine(InputStream inputStream) throws IOException {
-    	partialLineRead = false;
-        int counter = 0;
-        int increment = 1024;
-        int bufferSize = increment;
-        byte[] lineBuffer = new byte[bufferSize];
-        // handles RFC 5626 CRLF keepalive mechanism
-        byte[] crlfBuffer = new byte[2];
-        int crlfCounter = 0;
-        while (true) {
-            char ch;
-            int i = readSingleByte(inputStream);
-            if (i == -1) {
-                partialLineRead = true;
-                currentStreamEnded = true;
-                break;
-            } else
-                ch = (char) ( i & 0xFF);
-            
-            if (ch != '\r')
-                lineBuffer[counter++] = (byte) (i&0xFF);
-            else if (counter == 0)            	
-            	crlfBuffer[crlfCounter++] = (byte) '\r';
-                       
-            if (ch == '\n') {
-            	if(counter == 1 && crlfCounter > 0) {
-            		crlfBuffer[crlfCounter++] = (byte) '\n';            		
-            	} 
-            	break;            	
-            }
-            
-            if( counter == bufferSize ) {
-                byte[] tempBuffer = new byte[bufferSize + increment];
-                System.arraycopy((Object)lineBuffer,0, (Object)tempBuffer, 0, bufferSize);
-                bufferSize = bufferSize + increment;
-                lineBuffer = tempBuffer;
-                
-            }
-        }
-        if(counter == 1 && crlfCounter > 0) {
-        	return new String(crlfBuffer,0,crlfCounter,"UTF-8");
-        } else {
-        	String lineRead = new String(lineBuffer,0,counter,"UTF-8");
-                //In case \r\n are not in the same chunk, wait for the rest
-                //fixes https://github.com/RestComm/jain-sip/issues/48
-                if (crlfCounter == 1) {
-                    lineRead = lineRead + "\r";
-                }
-                return lineRead;
-        }
-        
-    }
-    
-
-}
\ No newline at end of file
+}
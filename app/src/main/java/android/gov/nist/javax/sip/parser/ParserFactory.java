@@ -82,6 +82,7 @@ import android.gov.nist.javax.sip.parser.ims.ServiceRouteParser;
 import java.lang.reflect.Constructor;
 import java.text.ParseException;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import android.javax.sip.header.AcceptEncodingHeader;
@@ -151,242 +152,634 @@ import android.javax.sip.header.WarningHeader;
  */
 public class ParserFactory {
 	//jeand : moving to concurrent structures to avoid blocking witnessed during profiling
-    private static Map<String,Class<? extends HeaderParser>> parserTable;
-    private static Class[] constructorArgs;
-    private static ConcurrentHashMap<Class, Constructor> parserConstructorCache;
+    private static Map<String,HeaderParserCreator> parserTable;
+
+    // One creator per parser class: a plain constructor call, no reflection.
+    private static final HeaderParserCreator REPLY_TO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReplyToParser(header);
+        }
+    };
+    private static final HeaderParserCreator IN_REPLY_TO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new InReplyToParser(header);
+        }
+    };
+    private static final HeaderParserCreator ACCEPT_ENCODING = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AcceptEncodingParser(header);
+        }
+    };
+    private static final HeaderParserCreator ACCEPT_LANGUAGE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AcceptLanguageParser(header);
+        }
+    };
+    private static final HeaderParserCreator TO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ToParser(header);
+        }
+    };
+    private static final HeaderParserCreator FROM = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new FromParser(header);
+        }
+    };
+    private static final HeaderParserCreator CSEQ = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new CSeqParser(header);
+        }
+    };
+    private static final HeaderParserCreator VIA = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ViaParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTACT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContactParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTENT_TYPE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContentTypeParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTENT_LENGTH = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContentLengthParser(header);
+        }
+    };
+    private static final HeaderParserCreator AUTHORIZATION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AuthorizationParser(header);
+        }
+    };
+    private static final HeaderParserCreator WWW_AUTHENTICATE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new WWWAuthenticateParser(header);
+        }
+    };
+    private static final HeaderParserCreator CALL_ID = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new CallIDParser(header);
+        }
+    };
+    private static final HeaderParserCreator ROUTE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RouteParser(header);
+        }
+    };
+    private static final HeaderParserCreator RECORD_ROUTE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RecordRouteParser(header);
+        }
+    };
+    private static final HeaderParserCreator DATE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new DateParser(header);
+        }
+    };
+    private static final HeaderParserCreator PROXY_AUTHORIZATION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ProxyAuthorizationParser(header);
+        }
+    };
+    private static final HeaderParserCreator PROXY_AUTHENTICATE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ProxyAuthenticateParser(header);
+        }
+    };
+    private static final HeaderParserCreator RETRY_AFTER = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RetryAfterParser(header);
+        }
+    };
+    private static final HeaderParserCreator REQUIRE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RequireParser(header);
+        }
+    };
+    private static final HeaderParserCreator PROXY_REQUIRE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ProxyRequireParser(header);
+        }
+    };
+    private static final HeaderParserCreator TIME_STAMP = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new TimeStampParser(header);
+        }
+    };
+    private static final HeaderParserCreator UNSUPPORTED = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new UnsupportedParser(header);
+        }
+    };
+    private static final HeaderParserCreator USER_AGENT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new UserAgentParser(header);
+        }
+    };
+    private static final HeaderParserCreator SUPPORTED = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SupportedParser(header);
+        }
+    };
+    private static final HeaderParserCreator SERVER = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ServerParser(header);
+        }
+    };
+    private static final HeaderParserCreator SUBJECT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SubjectParser(header);
+        }
+    };
+    private static final HeaderParserCreator SUBSCRIPTION_STATE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SubscriptionStateParser(header);
+        }
+    };
+    private static final HeaderParserCreator MAX_FORWARDS = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new MaxForwardsParser(header);
+        }
+    };
+    private static final HeaderParserCreator MIME_VERSION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new MimeVersionParser(header);
+        }
+    };
+    private static final HeaderParserCreator MIN_EXPIRES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new MinExpiresParser(header);
+        }
+    };
+    private static final HeaderParserCreator ORGANIZATION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new OrganizationParser(header);
+        }
+    };
+    private static final HeaderParserCreator PRIORITY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PriorityParser(header);
+        }
+    };
+    private static final HeaderParserCreator RACK = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RAckParser(header);
+        }
+    };
+    private static final HeaderParserCreator RSEQ = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new RSeqParser(header);
+        }
+    };
+    private static final HeaderParserCreator REASON = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReasonParser(header);
+        }
+    };
+    private static final HeaderParserCreator WARNING = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new WarningParser(header);
+        }
+    };
+    private static final HeaderParserCreator EXPIRES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ExpiresParser(header);
+        }
+    };
+    private static final HeaderParserCreator EVENT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new EventParser(header);
+        }
+    };
+    private static final HeaderParserCreator ERROR_INFO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ErrorInfoParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTENT_LANGUAGE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContentLanguageParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTENT_ENCODING = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContentEncodingParser(header);
+        }
+    };
+    private static final HeaderParserCreator CONTENT_DISPOSITION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ContentDispositionParser(header);
+        }
+    };
+    private static final HeaderParserCreator CALL_INFO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new CallInfoParser(header);
+        }
+    };
+    private static final HeaderParserCreator AUTHENTICATION_INFO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AuthenticationInfoParser(header);
+        }
+    };
+    private static final HeaderParserCreator ALLOW = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AllowParser(header);
+        }
+    };
+    private static final HeaderParserCreator ALLOW_EVENTS = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AllowEventsParser(header);
+        }
+    };
+    private static final HeaderParserCreator ALERT_INFO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AlertInfoParser(header);
+        }
+    };
+    private static final HeaderParserCreator ACCEPT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new AcceptParser(header);
+        }
+    };
+    private static final HeaderParserCreator REFER_TO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReferToParser(header);
+        }
+    };
+    private static final HeaderParserCreator SIP_ETAG = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SIPETagParser(header);
+        }
+    };
+    private static final HeaderParserCreator SIP_IF_MATCH = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SIPIfMatchParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_ACCESS_NETWORK_INFO = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PAccessNetworkInfoParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_ASSERTED_IDENTITY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PAssertedIdentityParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_PREFERRED_IDENTITY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PPreferredIdentityParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_CHARGING_VECTOR = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PChargingVectorParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_CHARGING_FUNCTION_ADDRESSES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PChargingFunctionAddressesParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_MEDIA_AUTHORIZATION = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PMediaAuthorizationParser(header);
+        }
+    };
+    private static final HeaderParserCreator PATH = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PathParser(header);
+        }
+    };
+    private static final HeaderParserCreator PRIVACY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PrivacyParser(header);
+        }
+    };
+    private static final HeaderParserCreator SERVICE_ROUTE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ServiceRouteParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_VISITED_NETWORK_ID = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PVisitedNetworkIDParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_SERVED_USER = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PServedUserParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_PREFERRED_SERVICE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PPreferredServiceParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_ASSERTED_SERVICE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PAssertedServiceParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_PROFILE_KEY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PProfileKeyParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_USER_DATABASE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PUserDatabaseParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_ASSOCIATED_URI = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PAssociatedURIParser(header);
+        }
+    };
+    private static final HeaderParserCreator P_CALLED_PARTY_ID = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new PCalledPartyIDParser(header);
+        }
+    };
+    private static final HeaderParserCreator SECURITY_SERVER = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SecurityServerParser(header);
+        }
+    };
+    private static final HeaderParserCreator SECURITY_CLIENT = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SecurityClientParser(header);
+        }
+    };
+    private static final HeaderParserCreator SECURITY_VERIFY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SecurityVerifyParser(header);
+        }
+    };
+    private static final HeaderParserCreator REFERRED_BY = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReferredByParser(header);
+        }
+    };
+    private static final HeaderParserCreator SESSION_EXPIRES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new SessionExpiresParser(header);
+        }
+    };
+    private static final HeaderParserCreator MIN_SE = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new MinSEParser(header);
+        }
+    };
+    private static final HeaderParserCreator REPLACES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReplacesParser(header);
+        }
+    };
+    private static final HeaderParserCreator JOIN = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new JoinParser(header);
+        }
+    };
+    private static final HeaderParserCreator REFERENCES = new HeaderParserCreator() {
+        public HeaderParser createParser(String header) {
+            return new ReferencesParser(header);
+        }
+    };
 
     static {
-        parserTable = new ConcurrentHashMap<String,Class<? extends HeaderParser>>(90);
-        parserConstructorCache = new ConcurrentHashMap<Class, Constructor>();
-        constructorArgs = new Class[1];
-        constructorArgs[0] = String.class;
-        parserTable.put(ReplyToHeader.NAME.toLowerCase(), ReplyToParser.class);
+        parserTable = new ConcurrentHashMap<String,HeaderParserCreator>(90);
+        parserTable.put(ReplyToHeader.NAME.toLowerCase(), REPLY_TO);
 
         parserTable.put(
             InReplyToHeader.NAME.toLowerCase(),
-            InReplyToParser.class);
+            IN_REPLY_TO);
 
         parserTable.put(
             AcceptEncodingHeader.NAME.toLowerCase(),
-            AcceptEncodingParser.class);
+            ACCEPT_ENCODING);
 
         parserTable.put(
             AcceptLanguageHeader.NAME.toLowerCase(),
-            AcceptLanguageParser.class);
+            ACCEPT_LANGUAGE);
 
-        parserTable.put("t", ToParser.class);
-        parserTable.put(ToHeader.NAME.toLowerCase(), ToParser.class);
+        parserTable.put("t", TO);
+        parserTable.put(ToHeader.NAME.toLowerCase(), TO);
 
-        parserTable.put(FromHeader.NAME.toLowerCase(), FromParser.class);
-        parserTable.put("f", FromParser.class);
+        parserTable.put(FromHeader.NAME.toLowerCase(), FROM);
+        parserTable.put("f", FROM);
 
-        parserTable.put(CSeqHeader.NAME.toLowerCase(), CSeqParser.class);
+        parserTable.put(CSeqHeader.NAME.toLowerCase(), CSEQ);
 
-        parserTable.put(ViaHeader.NAME.toLowerCase(), ViaParser.class);
-        parserTable.put("v", ViaParser.class);
+        parserTable.put(ViaHeader.NAME.toLowerCase(), VIA);
+        parserTable.put("v", VIA);
 
-        parserTable.put(ContactHeader.NAME.toLowerCase(), ContactParser.class);
-        parserTable.put("m", ContactParser.class);
+        parserTable.put(ContactHeader.NAME.toLowerCase(), CONTACT);
+        parserTable.put("m", CONTACT);
 
         parserTable.put(
             ContentTypeHeader.NAME.toLowerCase(),
-            ContentTypeParser.class);
-        parserTable.put("c", ContentTypeParser.class);
+            CONTENT_TYPE);
+        parserTable.put("c", CONTENT_TYPE);
 
         parserTable.put(
             ContentLengthHeader.NAME.toLowerCase(),
-            ContentLengthParser.class);
-        parserTable.put("l", ContentLengthParser.class);
+            CONTENT_LENGTH);
+        parserTable.put("l", CONTENT_LENGTH);
 
         parserTable.put(
             AuthorizationHeader.NAME.toLowerCase(),
-            AuthorizationParser.class);
+            AUTHORIZATION);
 
         parserTable.put(
             WWWAuthenticateHeader.NAME.toLowerCase(),
-            WWWAuthenticateParser.class);
+            WWW_AUTHENTICATE);
 
-        parserTable.put(CallIdHeader.NAME.toLowerCase(), CallIDParser.class);
-        parserTable.put("i", CallIDParser.class);
+        parserTable.put(CallIdHeader.NAME.toLowerCase(), CALL_ID);
+        parserTable.put("i", CALL_ID);
 
-        parserTable.put(RouteHeader.NAME.toLowerCase(), RouteParser.class);
+        parserTable.put(RouteHeader.NAME.toLowerCase(), ROUTE);
 
         parserTable.put(
             RecordRouteHeader.NAME.toLowerCase(),
-            RecordRouteParser.class);
+            RECORD_ROUTE);
 
-        parserTable.put(DateHeader.NAME.toLowerCase(), DateParser.class);
+        parserTable.put(DateHeader.NAME.toLowerCase(), DATE);
 
         parserTable.put(
             ProxyAuthorizationHeader.NAME.toLowerCase(),
-            ProxyAuthorizationParser.class);
+            PROXY_AUTHORIZATION);
 
         parserTable.put(
             ProxyAuthenticateHeader.NAME.toLowerCase(),
-            ProxyAuthenticateParser.class);
+            PROXY_AUTHENTICATE);
 
         parserTable.put(
             RetryAfterHeader.NAME.toLowerCase(),
-            RetryAfterParser.class);
+            RETRY_AFTER);
 
-        parserTable.put(RequireHeader.NAME.toLowerCase(), RequireParser.class);
+        parserTable.put(RequireHeader.NAME.toLowerCase(), REQUIRE);
 
         parserTable.put(
             ProxyRequireHeader.NAME.toLowerCase(),
-            ProxyRequireParser.class);
+            PROXY_REQUIRE);
 
         parserTable.put(
             TimeStampHeader.NAME.toLowerCase(),
-            TimeStampParser.class);
+            TIME_STAMP);
 
         parserTable.put(
             UnsupportedHeader.NAME.toLowerCase(),
-            UnsupportedParser.class);
+            UNSUPPORTED);
 
         parserTable.put(
             UserAgentHeader.NAME.toLowerCase(),
-            UserAgentParser.class);
+            USER_AGENT);
 
         parserTable.put(
             SupportedHeader.NAME.toLowerCase(),
-            SupportedParser.class);
+            SUPPORTED);
         // bug fix by Steve Crosley
-        parserTable.put("k", SupportedParser.class);
+        parserTable.put("k", SUPPORTED);
 
-        parserTable.put(ServerHeader.NAME.toLowerCase(), ServerParser.class);
+        parserTable.put(ServerHeader.NAME.toLowerCase(), SERVER);
 
-        parserTable.put(SubjectHeader.NAME.toLowerCase(), SubjectParser.class);
-        parserTable.put( "s", SubjectParser.class); // JvB: added
+        parserTable.put(SubjectHeader.NAME.toLowerCase(), SUBJECT);
+        parserTable.put( "s", SUBJECT); // JvB: added
 
         parserTable.put(
             SubscriptionStateHeader.NAME.toLowerCase(),
-            SubscriptionStateParser.class);
+            SUBSCRIPTION_STATE);
 
         parserTable.put(
             MaxForwardsHeader.NAME.toLowerCase(),
-            MaxForwardsParser.class);
+            MAX_FORWARDS);
 
         parserTable.put(
             MimeVersionHeader.NAME.toLowerCase(),
-            MimeVersionParser.class);
+            MIME_VERSION);
 
         parserTable.put(
             MinExpiresHeader.NAME.toLowerCase(),
-            MinExpiresParser.class);
+            MIN_EXPIRES);
 
         parserTable.put(
             OrganizationHeader.NAME.toLowerCase(),
-            OrganizationParser.class);
+            ORGANIZATION);
 
         parserTable.put(
             PriorityHeader.NAME.toLowerCase(),
-            PriorityParser.class);
+            PRIORITY);
 
-        parserTable.put(RAckHeader.NAME.toLowerCase(), RAckParser.class);
+        parserTable.put(RAckHeader.NAME.toLowerCase(), RACK);
 
-        parserTable.put(RSeqHeader.NAME.toLowerCase(), RSeqParser.class);
+        parserTable.put(RSeqHeader.NAME.toLowerCase(), RSEQ);
 
-        parserTable.put(ReasonHeader.NAME.toLowerCase(), ReasonParser.class);
+        parserTable.put(ReasonHeader.NAME.toLowerCase(), REASON);
 
-        parserTable.put(WarningHeader.NAME.toLowerCase(), WarningParser.class);
+        parserTable.put(WarningHeader.NAME.toLowerCase(), WARNING);
 
-        parserTable.put(ExpiresHeader.NAME.toLowerCase(), ExpiresParser.class);
+        parserTable.put(ExpiresHeader.NAME.toLowerCase(), EXPIRES);
 
-        parserTable.put(EventHeader.NAME.toLowerCase(), EventParser.class);
-        parserTable.put("o", EventParser.class);
+        parserTable.put(EventHeader.NAME.toLowerCase(), EVENT);
+        parserTable.put("o", EVENT);
 
         parserTable.put(
             ErrorInfoHeader.NAME.toLowerCase(),
-            ErrorInfoParser.class);
+            ERROR_INFO);
 
         parserTable.put(
             ContentLanguageHeader.NAME.toLowerCase(),
-            ContentLanguageParser.class);
+            CONTENT_LANGUAGE);
 
         parserTable.put(
             ContentEncodingHeader.NAME.toLowerCase(),
-            ContentEncodingParser.class);
-        parserTable.put("e", ContentEncodingParser.class);
+            CONTENT_ENCODING);
+        parserTable.put("e", CONTENT_ENCODING);
 
         parserTable.put(
             ContentDispositionHeader.NAME.toLowerCase(),
-            ContentDispositionParser.class);
+            CONTENT_DISPOSITION);
 
         parserTable.put(
             CallInfoHeader.NAME.toLowerCase(),
-            CallInfoParser.class);
+            CALL_INFO);
 
         parserTable.put(
             AuthenticationInfoHeader.NAME.toLowerCase(),
-            AuthenticationInfoParser.class);
+            AUTHENTICATION_INFO);
 
-        parserTable.put(AllowHeader.NAME.toLowerCase(), AllowParser.class);
+        parserTable.put(AllowHeader.NAME.toLowerCase(), ALLOW);
 
         parserTable.put(
             AllowEventsHeader.NAME.toLowerCase(),
-            AllowEventsParser.class);
-        parserTable.put("u", AllowEventsParser.class);
+            ALLOW_EVENTS);
+        parserTable.put("u", ALLOW_EVENTS);
 
         parserTable.put(
             AlertInfoHeader.NAME.toLowerCase(),
-            AlertInfoParser.class);
+            ALERT_INFO);
 
-        parserTable.put(AcceptHeader.NAME.toLowerCase(), AcceptParser.class);
+        parserTable.put(AcceptHeader.NAME.toLowerCase(), ACCEPT);
 
-        parserTable.put(ReferToHeader.NAME.toLowerCase(), ReferToParser.class);
+        parserTable.put(ReferToHeader.NAME.toLowerCase(), REFER_TO);
         // Was missing (bug noticed by Steve Crossley)
-        parserTable.put("r", ReferToParser.class);
+        parserTable.put("r", REFER_TO);
 
         // JvB: added to support RFC3903 PUBLISH
-        parserTable.put(SIPETagHeader.NAME.toLowerCase(), SIPETagParser.class);
-        parserTable.put(SIPIfMatchHeader.NAME.toLowerCase(), SIPIfMatchParser.class);
+        parserTable.put(SIPETagHeader.NAME.toLowerCase(), SIP_ETAG);
+        parserTable.put(SIPIfMatchHeader.NAME.toLowerCase(), SIP_IF_MATCH);
 
         //IMS headers
-        parserTable.put(PAccessNetworkInfoHeader.NAME.toLowerCase(), PAccessNetworkInfoParser.class);
-        parserTable.put(PAssertedIdentityHeader.NAME.toLowerCase(), PAssertedIdentityParser.class);
-        parserTable.put(PPreferredIdentityHeader.NAME.toLowerCase(), PPreferredIdentityParser.class);
-        parserTable.put(PChargingVectorHeader.NAME.toLowerCase(), PChargingVectorParser.class);
-        parserTable.put(PChargingFunctionAddressesHeader.NAME.toLowerCase(), PChargingFunctionAddressesParser.class);
-        parserTable.put(PMediaAuthorizationHeader.NAME.toLowerCase(), PMediaAuthorizationParser.class);
-        parserTable.put(PathHeader.NAME.toLowerCase(), PathParser.class);
-        parserTable.put(PrivacyHeader.NAME.toLowerCase(), PrivacyParser.class);
-        parserTable.put(ServiceRouteHeader.NAME.toLowerCase(), ServiceRouteParser.class);
-        parserTable.put(PVisitedNetworkIDHeader.NAME.toLowerCase(), PVisitedNetworkIDParser.class);
+        parserTable.put(PAccessNetworkInfoHeader.NAME.toLowerCase(), P_ACCESS_NETWORK_INFO);
+        parserTable.put(PAssertedIdentityHeader.NAME.toLowerCase(), P_ASSERTED_IDENTITY);
+        parserTable.put(PPreferredIdentityHeader.NAME.toLowerCase(), P_PREFERRED_IDENTITY);
+        parserTable.put(PChargingVectorHeader.NAME.toLowerCase(), P_CHARGING_VECTOR);
+        parserTable.put(PChargingFunctionAddressesHeader.NAME.toLowerCase(), P_CHARGING_FUNCTION_ADDRESSES);
+        parserTable.put(PMediaAuthorizationHeader.NAME.toLowerCase(), P_MEDIA_AUTHORIZATION);
+        parserTable.put(PathHeader.NAME.toLowerCase(), PATH);
+        parserTable.put(PrivacyHeader.NAME.toLowerCase(), PRIVACY);
+        parserTable.put(ServiceRouteHeader.NAME.toLowerCase(), SERVICE_ROUTE);
+        parserTable.put(PVisitedNetworkIDHeader.NAME.toLowerCase(), P_VISITED_NETWORK_ID);
         
         // added for more P-header extensions for IMS :
-        parserTable.put(PServedUserHeader.NAME.toLowerCase(), PServedUserParser.class);
-        parserTable.put(PPreferredServiceHeader.NAME.toLowerCase(), PPreferredServiceParser.class);
-        parserTable.put(PAssertedServiceHeader.NAME.toLowerCase(), PAssertedServiceParser.class);
-        parserTable.put(PProfileKeyHeader.NAME.toLowerCase(), PProfileKeyParser.class);
-        parserTable.put(PUserDatabaseHeader.NAME.toLowerCase(), PUserDatabaseParser.class);
+        parserTable.put(PServedUserHeader.NAME.toLowerCase(), P_SERVED_USER);
+        parserTable.put(PPreferredServiceHeader.NAME.toLowerCase(), P_PREFERRED_SERVICE);
+        parserTable.put(PAssertedServiceHeader.NAME.toLowerCase(), P_ASSERTED_SERVICE);
+        parserTable.put(PProfileKeyHeader.NAME.toLowerCase(), P_PROFILE_KEY);
+        parserTable.put(PUserDatabaseHeader.NAME.toLowerCase(), P_USER_DATABASE);
         
 
-        parserTable.put(PAssociatedURIHeader.NAME.toLowerCase(), PAssociatedURIParser.class);
-        parserTable.put(PCalledPartyIDHeader.NAME.toLowerCase(), PCalledPartyIDParser.class);
+        parserTable.put(PAssociatedURIHeader.NAME.toLowerCase(), P_ASSOCIATED_URI);
+        parserTable.put(PCalledPartyIDHeader.NAME.toLowerCase(), P_CALLED_PARTY_ID);
 
-        parserTable.put(SecurityServerHeader.NAME.toLowerCase(), SecurityServerParser.class);
-        parserTable.put(SecurityClientHeader.NAME.toLowerCase(), SecurityClientParser.class);
-        parserTable.put(SecurityVerifyHeader.NAME.toLowerCase(), SecurityVerifyParser.class);
+        parserTable.put(SecurityServerHeader.NAME.toLowerCase(), SECURITY_SERVER);
+        parserTable.put(SecurityClientHeader.NAME.toLowerCase(), SECURITY_CLIENT);
+        parserTable.put(SecurityVerifyHeader.NAME.toLowerCase(), SECURITY_VERIFY);
 
 
         // Per RFC 3892 (pmusgrave)
-        parserTable.put(ReferredBy.NAME.toLowerCase(), ReferredByParser.class);
-        parserTable.put("b", ReferToParser.class);
+        parserTable.put(ReferredBy.NAME.toLowerCase(), REFERRED_BY);
+        parserTable.put("b", REFER_TO);
 
         // Per RFC4028 Session Timers (pmusgrave)
-        parserTable.put(SessionExpires.NAME.toLowerCase(), SessionExpiresParser.class);
-        parserTable.put("x", SessionExpiresParser.class);
-        parserTable.put(MinSE.NAME.toLowerCase(), MinSEParser.class);
+        parserTable.put(SessionExpires.NAME.toLowerCase(), SESSION_EXPIRES);
+        parserTable.put("x", SESSION_EXPIRES);
+        parserTable.put(MinSE.NAME.toLowerCase(), MIN_SE);
         // (RFC4028 does not give a short form header for MinSE)
 
         // Per RFC3891 (pmusgrave)
-        parserTable.put(Replaces.NAME.toLowerCase(), ReplacesParser.class);
+        parserTable.put(Replaces.NAME.toLowerCase(), REPLACES);
 
         // Per RFC3911 (jean deruelle)
-        parserTable.put(Join.NAME.toLowerCase(), JoinParser.class);
+        parserTable.put(Join.NAME.toLowerCase(), JOIN);
         
         //http://tools.ietf.org/html/draft-worley-references-05
-        parserTable.put(References.NAME.toLowerCase(), ReferencesParser.class);
+        parserTable.put(References.NAME.toLowerCase(), REFERENCES);
         
     }
 
@@ -394,7 +787,23 @@ public class ParserFactory {
     * This method is added to support parser extensibility.
     */
     public static void addToParserTable(String headerName, Class<? extends HeaderParser> parserClass) {
-       parserTable.put(headerName.toLowerCase(), parserClass);
+       parserTable.put(headerName.toLowerCase(), new ReflectiveParserCreator(parserClass));
+    }
+
+    /**
+     * Register a parser for an extension header. Prefer this to the Class
+     * based variant: the creator is called directly for each header, without
+     * going through reflection.
+     */
+    public static void addToParserTable(String headerName, HeaderParserCreator parserCreator) {
+       parserTable.put(headerName.toLowerCase(), parserCreator);
+    }
+
+    /**
+     * Lower case names of the headers that currently have a registered parser.
+     */
+    static Set<String> getHeaderNames() {
+        return parserTable.keySet();
     }
 
     /**
@@ -407,28 +816,49 @@ public class ParserFactory {
         if (headerName == null || headerValue == null)
             throw new ParseException("The header name or value is null", 0);
 
-        Class parserClass = (Class) parserTable.get(SIPHeaderNamesCache.toLowerCase(headerName));
-        if (parserClass != null) {
+        return createParser(SIPHeaderNamesCache.toLowerCase(headerName), line);
+    }
+
+    /**
+     * create a parser for a header line whose name has already been extracted
+     * by the caller.
+     *
+     * @param lowerCaseHeaderName the header name in lower case
+     * @param line the whole header line, name included, ending with a new line
+     */
+    public static HeaderParser createParser(String lowerCaseHeaderName, String line) {
+        HeaderParserCreator parserCreator = parserTable.get(lowerCaseHeaderName);
+        if (parserCreator != null) {
+            return parserCreator.createParser(line);
+        } else {
+            // Just generate a generic SIPHeader. We define
+            // parsers only for the above.
+            return new HeaderParser(line);
+        }
+    }
+
+    /**
+     * Creator for parsers registered by class, instantiated through their
+     * (String) constructor.
+     */
+    private static class ReflectiveParserCreator implements HeaderParserCreator {
+        private final Constructor<? extends HeaderParser> constructor;
+
+        ReflectiveParserCreator(Class<? extends HeaderParser> parserClass) {
             try {
-                Constructor cons = (Constructor) parserConstructorCache.get(parserClass);
-                if (cons == null) {
-                    cons = parserClass.getConstructor(constructorArgs);
-                    parserConstructorCache.putIfAbsent(parserClass, cons);
-                }
-                Object[] args = new Object[1];
-                args[0] = line;
-                HeaderParser retval = (HeaderParser) cons.newInstance(args);
-                return retval;
+                this.constructor = parserClass.getConstructor(String.class);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalArgumentException(parserClass + " has no (String) constructor");
+            }
+        }
 
+        public HeaderParser createParser(String header) {
+            try {
+                return constructor.newInstance(header);
             } catch (Exception ex) {
                 InternalErrorHandler.handleException(ex);
                 return null; // to placate the compiler.
             }
-
-        } else {
-            // Just generate a generic SIPHeader. We define
-            // parsers only for the above.
-            return new HeaderParser(line);
         }
     }
 }
@@ -33,11 +33,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
 import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Input class for the pipelined parser. Buffer all bytes read from the socket
  * and make them available to the message parser.
  *
+ * The parser waits for bytes on a lock condition rather than on a monitor, so
+ * that a parser run on a virtual thread unmounts from its carrier thread while
+ * the connection is idle.
+ *
  * @author M. Ranganathan (Contains a bug fix contributed by Rob Daugherty (
  *         Lucent Technologies) )
  *
@@ -46,6 +52,11 @@ import java.util.NoSuchElementException;
 public class Pipeline extends InputStream {
     private LinkedList buffList;
 
+    // guards buffList, currentBuffer and isClosed
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
     private Buffer currentBuffer;
 
     private boolean isClosed;
@@ -143,26 +154,33 @@ public class Pipeline extends InputStream {
             throw new IOException("Closed!!");
         Buffer buff = new Buffer(bytes, length);
         buff.ptr = start;
-        synchronized (this.buffList) {
-            buffList.add(buff);
-            buffList.notifyAll();
-        }
+        add(buff);
     }
 
     public void write(byte[] bytes) throws IOException {
         if (this.isClosed)
             throw new IOException("Closed!!");
         Buffer buff = new Buffer(bytes, bytes.length);
-        synchronized (this.buffList) {
+        add(buff);
+    }
+
+    private void add(Buffer buff) {
+        lock.lock();
+        try {
             buffList.add(buff);
-            buffList.notifyAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
     }
 
     public void close() throws IOException {
-        this.isClosed = true;
-        synchronized (this.buffList) {
-            this.buffList.notifyAll();
+        lock.lock();
+        try {
+            this.isClosed = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
         }
 
         // JvB: added
@@ -171,7 +189,8 @@ public class Pipeline extends InputStream {
 
     public int read() throws IOException {
         // if (this.isClosed) return -1;
-        synchronized (this.buffList) {
+        lock.lock();
+        try {
             if (currentBuffer != null
                     && currentBuffer.ptr < currentBuffer.length) {
                 int retval = currentBuffer.getNextByte();
@@ -185,7 +204,7 @@ public class Pipeline extends InputStream {
             try {
                 // wait till something is posted.
                 while (this.buffList.isEmpty()) {
-                    this.buffList.wait();
+                    notEmpty.await();
                     // jeand : Issue 314 : return -1 only is the buffer is empty
                     if (this.buffList.isEmpty() && this.isClosed)
                         return -1;
@@ -201,6 +220,8 @@ public class Pipeline extends InputStream {
                 ex.printStackTrace();
                 throw new IOException(ex.getMessage());
             }
+        } finally {
+            lock.unlock();
         }
     }
 
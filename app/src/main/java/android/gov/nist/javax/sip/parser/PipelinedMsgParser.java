@@ -91,6 +91,9 @@ public final class PipelinedMsgParser implements Runnable {
      */
     protected SIPMessageListener sipMessageListener;
     private Thread mythread; // Preprocessor thread
+    // Thread of the channel executor running the parser, guarded by executorThreadLock
+    private Thread executorThread;
+    private final Object executorThreadLock = new Object();
     //private byte[] messageBody;
     //private boolean errorFlag;
     private Pipeline rawInputStream;
@@ -166,10 +169,34 @@ public final class PipelinedMsgParser implements Runnable {
     }
 
     /**
-     * Start reading and processing input.
+     * Start reading and processing input, on the parser's own thread or as a
+     * task of the stack's channel executor when
+     * android.gov.nist.javax.sip.VIRTUAL_THREAD_CHANNELS is set.
      */
     public void processInput() {
-        mythread.start();
+        ExecutorService channelExecutor = sipStack == null ? null : sipStack.getChannelExecutor();
+        if (channelExecutor == null) {
+            mythread.start();
+            return;
+        }
+        final String threadName = mythread.getName();
+        channelExecutor.execute(new Runnable() {
+            public void run() {
+                Thread.currentThread().setName(threadName);
+                synchronized (executorThreadLock) {
+                    executorThread = Thread.currentThread();
+                }
+                try {
+                    PipelinedMsgParser.this.run();
+                } finally {
+                    synchronized (executorThreadLock) {
+                        executorThread = null;
+                        // don't hand an interrupt from close() over to the next task of the thread
+                        Thread.interrupted();
+                    }
+                }
+            }
+        });
     }
 
     /**
@@ -467,11 +494,16 @@ public final class PipelinedMsgParser implements Runnable {
                         // fall back to default encoding. The lack of UTF8 support has been logged at SIP stack startup
                         inputBufferBytes = inputBuffer.toString().getBytes();
                     }
+                    long parseStart = System.nanoTime();
                     sipMessage = smp.parseSIPMessage(inputBufferBytes, false, false, sipMessageListener);
+                    sipStack.getMetrics().recordParseTime(System.nanoTime() - parseStart);
                     if (sipMessage == null) {
                         this.rawInputStream.stopTimer();
                         continue;
                     }
+                    if (sipStack.isKeepReceivedBytes()) {
+                        sipMessage.setReceivedBytes(inputBufferBytes);
+                    }
                 } catch (ParseException ex) {
                     // Just ignore the parse exception.
                 	if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
@@ -649,6 +681,11 @@ public final class PipelinedMsgParser implements Runnable {
             	// eventually leads to thread leaking and OutOfMemory
             	mythread.interrupt();
     		} 
+        	synchronized (executorThreadLock) {
+        		if (executorThread != null) {
+        			executorThread.interrupt();
+        		}
+        	}
         }         
     }
     
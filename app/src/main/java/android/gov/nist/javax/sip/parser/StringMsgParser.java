@@ -78,7 +78,7 @@ import javax.xml.bind.DatatypeConverter;
  *
   *
  */
-public class StringMsgParser implements MessageParser {
+public class StringMsgParser implements MessageParserExt {
 
     protected static boolean computeContentLengthFromMessage = false;
     
@@ -110,15 +110,40 @@ public class StringMsgParser implements MessageParser {
     public SIPMessage parseSIPMessage(byte[] msgBuffer, boolean readBody, boolean strict, ParseExceptionListener parseExceptionListener) throws ParseException {
         if (msgBuffer == null || msgBuffer.length == 0)
             return null;
+        return parseSIPMessage(msgBuffer, 0, msgBuffer.length, readBody, strict, parseExceptionListener);
+    }
+
+    /**
+     * Parse a region of a buffer containing a single SIP Message. Same as
+     * parseSIPMessage(byte[], boolean, boolean, ParseExceptionListener) but the
+     * message does not need to fill the whole buffer, so pooled receive buffers
+     * can be parsed in place. No reference to msgBuffer is kept once this
+     * method returns (the body, if any, is copied out).
+     *
+     * @param msgBuffer
+     *            a byte buffer containing the message to be parsed.
+     * @param offset
+     *            index of the first byte of the message.
+     * @param length
+     *            number of bytes of the message.
+     * @return a SIPMessage structure (request or response) containing the
+     *         parsed SIP message.
+     * @exception ParseException
+     *                is thrown when an illegal message has been encountered
+     *                (and the rest of the buffer is discarded).
+     * @see ParseExceptionListener
+     */
+    public SIPMessage parseSIPMessage(byte[] msgBuffer, int offset, int length, boolean readBody, boolean strict, ParseExceptionListener parseExceptionListener) throws ParseException {
+        if (msgBuffer == null || length <= 0)
+            return null;
 
-        int i = 0;
+        final int end = offset + length;
+        int i = offset;
 
         // Squeeze out any leading control character.
-        try {
-            while (msgBuffer[i] < 0x20)
-                i++;
-        }
-        catch (ArrayIndexOutOfBoundsException e) {
+        while (i < end && msgBuffer[i] < 0x20)
+            i++;
+        if (i == end) {
             // Array contains only control char, return null.
         	if (logger.isLoggingEnabled(StackLogger.TRACE_DEBUG)) {
             	logger.logDebug("handled only control char so returning null");
@@ -136,11 +161,9 @@ public class StringMsgParser implements MessageParser {
             int lineStart = i;
 
             // Find the length of the line.
-            try {
-                while (msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
-                    i++;
-            }
-            catch (ArrayIndexOutOfBoundsException e) {
+            while (i < end && msgBuffer[i] != '\r' && msgBuffer[i] != '\n')
+                i++;
+            if (i == end) {
                 // End of the message.
                 break;
             }
@@ -158,13 +181,13 @@ public class StringMsgParser implements MessageParser {
             if (currentLine.length() == 0) {
                 // Last header line, process the previous buffered header.
                 if (currentHeader != null && message != null) {
-                     processHeader(currentHeader, message, parseExceptionListener, msgBuffer);
+                     processHeader(currentHeader, message, parseExceptionListener, msgBuffer, offset, length);
                  }
 
             }
             else {
                 if (isFirstLine) {
-                    message = processFirstLine(currentLine, parseExceptionListener, msgBuffer);
+                    message = processFirstLine(currentLine, parseExceptionListener, msgBuffer, offset, length);
                 } else {
                     char firstChar = currentLine.charAt(0);
                     if (firstChar == '\t' || firstChar == ' ') {
@@ -176,14 +199,14 @@ public class StringMsgParser implements MessageParser {
                     }
                     else {
                         if (currentHeader != null && message != null) {
-                             processHeader(currentHeader, message, parseExceptionListener, msgBuffer);
+                             processHeader(currentHeader, message, parseExceptionListener, msgBuffer, offset, length);
                          }
                         currentHeader = currentLine;
                     }
                 }
             }
 
-            if (msgBuffer[i] == '\r' && msgBuffer.length > i+1 && msgBuffer[i+1] == '\n')
+            if (msgBuffer[i] == '\r' && end > i+1 && msgBuffer[i+1] == '\n')
                 i++;
 
             i++;
@@ -192,26 +215,36 @@ public class StringMsgParser implements MessageParser {
         } while (currentLine.length() > 0); // End do - while
 
         if (message == null) throw new ParseException("Bad message", 0);
-        message.setSize(i);
+        message.setSize(i - offset);
 
+        if (readBody) {
+            processBody(message, msgBuffer, offset, i, end, strict);
+        }
+
+        return message;
+    }
+
+    /**
+     * Copy the body found in msgBuffer[bodyStart, end) into the message,
+     * checking it against the Content-Length header.
+     */
+    protected void processBody(SIPMessage message, byte[] msgBuffer, int offset, int bodyStart, int end, boolean strict) throws ParseException {
         // Check for content legth header
-        if (readBody && message.getContentLength() != null ) {
+        if (message.getContentLength() != null ) {
           if ( message.getContentLength().getContentLength() != 0) {
-        	  int bodyLength = msgBuffer.length - i;
+        	  int bodyLength = end - bodyStart;
 
               byte[] body = new byte[bodyLength];
-              System.arraycopy(msgBuffer, i, body, 0, bodyLength);
+              System.arraycopy(msgBuffer, bodyStart, body, 0, bodyLength);
               message.setMessageContent(body,!strict,computeContentLengthFromMessage,message.getContentLength().getContentLength());
            } else if (!computeContentLengthFromMessage && message.getContentLength().getContentLength() == 0 & strict) {
-        	   String last4Chars = new String(msgBuffer, msgBuffer.length - 4, 4);
+        	   String last4Chars = new String(msgBuffer, end - 4, 4);
          	   if(!"\r\n\r\n".equals(last4Chars)) {
-                   throw new ParseException("Extraneous characters at the end of the message ",i);
+                   throw new ParseException("Extraneous characters at the end of the message ",bodyStart - offset);
                }
            } 
 
         }
-
-        return message;
     }
 
     protected static String trimEndOfLine(String line) {
@@ -231,7 +264,7 @@ public class StringMsgParser implements MessageParser {
         return line.substring(0, i+1);
     }
 
-    protected SIPMessage processFirstLine(String firstLine, ParseExceptionListener parseExceptionListener, byte[] msgBuffer) throws ParseException {
+    protected SIPMessage processFirstLine(String firstLine, ParseExceptionListener parseExceptionListener, byte[] msgBuffer, int offset, int length) throws ParseException {
         SIPMessage message;
         if (!firstLine.startsWith(SIPConstants.SIP_VERSION_STRING)) {
             message = new SIPRequest();
@@ -243,7 +276,7 @@ public class StringMsgParser implements MessageParser {
                 if (parseExceptionListener != null)
 					try {
 						parseExceptionListener.handleException(ex, message,
-						        RequestLine.class, firstLine, new String(msgBuffer, "UTF-8"));
+						        RequestLine.class, firstLine, new String(msgBuffer, offset, length, "UTF-8"));
 					} catch (UnsupportedEncodingException e) {
 						e.printStackTrace();
 					}
@@ -260,7 +293,7 @@ public class StringMsgParser implements MessageParser {
                 if (parseExceptionListener != null) {
                     try {
 						parseExceptionListener.handleException(ex, message,
-						        StatusLine.class, firstLine, new String(msgBuffer, "UTF-8"));
+						        StatusLine.class, firstLine, new String(msgBuffer, offset, length, "UTF-8"));
 					} catch (UnsupportedEncodingException e) {
 						e.printStackTrace();
 					}
@@ -272,7 +305,7 @@ public class StringMsgParser implements MessageParser {
         return message;
     }
 
-    protected void processHeader(String header, SIPMessage message, ParseExceptionListener parseExceptionListener, byte[] rawMessage) throws ParseException {
+    protected void processHeader(String header, SIPMessage message, ParseExceptionListener parseExceptionListener, byte[] rawMessage, int offset, int length) throws ParseException {
         if (header == null || header.length() == 0)
             return;
 
@@ -290,11 +323,24 @@ public class StringMsgParser implements MessageParser {
 	    }
         }
 
+        parseHeader(headerParser, header, message, parseExceptionListener, rawMessage, offset, length);
+    }
+
+    /**
+     * Run the given parser on a header line and attach the result to the
+     * message, reporting parse errors to the listener if there is one.
+     *
+     * @param header the header line, a terminating new line is ignored.
+     */
+    protected void parseHeader(HeaderParser headerParser, String header, SIPMessage message, ParseExceptionListener parseExceptionListener, byte[] rawMessage, int offset, int length) throws ParseException {
         try {
             SIPHeader sipHeader = headerParser.parse();
             message.attachHeader(sipHeader, false);
         } catch (ParseException ex) {
             if (parseExceptionListener != null) {
+                if (header.endsWith("\n")) {
+                    header = header.substring(0, header.length() - 1);
+                }
                 String headerName = Lexer.getHeaderName(header);
                 Class headerClass = NameMap.getClassFromName(headerName);
                 if (headerClass == null) {
@@ -303,7 +349,7 @@ public class StringMsgParser implements MessageParser {
                 }
                 try {
 					parseExceptionListener.handleException(ex, message,
-					        headerClass, header, new String(rawMessage, "UTF-8"));
+					        headerClass, header, new String(rawMessage, offset, length, "UTF-8"));
 				} catch (UnsupportedEncodingException e) {
 					e.printStackTrace();
 				}
@@ -0,0 +1,258 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package android.gov.nist.javax.sip.stack;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.gov.nist.core.CommonLogger;
+import android.gov.nist.core.LogWriter;
+import android.gov.nist.core.StackLogger;
+import android.gov.nist.javax.sip.header.RetryAfter;
+import android.gov.nist.javax.sip.message.SIPRequest;
+import android.gov.nist.javax.sip.message.SIPResponse;
+
+import android.javax.sip.InvalidArgumentException;
+import android.javax.sip.SipStack;
+import android.javax.sip.message.Request;
+import android.javax.sip.message.Response;
+
+/**
+ * Congestion control valve that reacts to the latency of the stack rather than to fixed limits.
+ *
+ * The time each UDP message spent in the queue of the UDPMessageProcessor before a thread of
+ * the pool took it (its sojourn time) is sampled. As in CoDel, the stack is considered congested
+ * when even the smallest sojourn time seen during an interval is above the target delay: a
+ * standing queue, not a burst that the pool absorbs. The fraction of new requests admitted is
+ * then adjusted AIMD style, cut by a quarter at the end of every congested interval and raised
+ * by 5% at the end of every good one.
+ *
+ * The requests that free resources (BYE, ACK, PRACK, CANCEL) and the requests inside a dialog
+ * are never shed. New INVITE and REGISTER requests are shed first, the other new requests only
+ * once more than half of the new INVITE and REGISTER are shed. The decision is taken from the
+ * hash of the Call-ID, so the retransmissions of a request get the same answer. Shed requests are
+ * answered with DROP_RESPONSE_STATUS as in CongestionControlMessageValve, with a Retry-After
+ * header growing with the shed rate when the status is 503. The checks of the
+ * CongestionControlMessageValve still apply.
+ *
+ * Only the UDP messages processed by the thread pool (android.gov.nist.javax.sip.THREAD_POOL_SIZE)
+ * give samples, the state computed from them applies to the requests of all the transports.
+ *
+ * To enable this in your application you must specify this property:
+ * android.gov.nist.javax.sip.SIP_MESSAGE_VALVE=android.gov.nist.javax.sip.stack.AdaptiveCongestionControlMessageValve
+ *
+ * It is configured with the following properties:
+ * <ul>
+ * <li><b>android.gov.nist.javax.sip.CONGESTION_TARGET_DELAY = integer</b> The queue sojourn time in
+ * milliseconds above which the stack is congested. Default is 20.</li>
+ * <li><b>android.gov.nist.javax.sip.CONGESTION_INTERVAL = integer</b> The length in milliseconds of
+ * the intervals over which the minimum sojourn time is computed. Default is 100.</li>
+ * <li><b>android.gov.nist.javax.sip.CONGESTION_MAX_RETRY_AFTER = integer</b> The Retry-After in
+ * seconds sent when all the new requests are shed. Default is 32.</li>
+ * </ul>
+ *
+ * @since 2.0
+ *
+ */
+public class AdaptiveCongestionControlMessageValve extends CongestionControlMessageValve {
+	private static StackLogger logger = CommonLogger.getLogger(AdaptiveCongestionControlMessageValve.class);
+
+	private static final double DECREASE_FACTOR = 0.75;
+	private static final double INCREASE_STEP = 0.05;
+	// Never shed everything, some requests are needed to notice the end of the congestion.
+	private static final double MIN_ADMISSION_RATE = 0.01;
+
+	protected long targetDelayNanos;
+	protected long intervalNanos;
+	protected int maxRetryAfter;
+
+	// Smallest sojourn time seen in the current interval, Long.MAX_VALUE without sample.
+	private final AtomicLong intervalMinSojourn = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong intervalEnd = new AtomicLong();
+	private volatile long lastMinSojournNanos;
+	private volatile double admissionRate = 1.0;
+	private volatile boolean congested;
+	private final AtomicLong shedRequests = new AtomicLong();
+
+	public void init(SipStack stack) {
+		super.init(stack);
+		targetDelayNanos = TimeUnit.MILLISECONDS.toNanos(Integer.parseInt(sipStack.getConfigurationProperties()
+				.getProperty("android.gov.nist.javax.sip.CONGESTION_TARGET_DELAY", "20")));
+		intervalNanos = TimeUnit.MILLISECONDS.toNanos(Integer.parseInt(sipStack.getConfigurationProperties()
+				.getProperty("android.gov.nist.javax.sip.CONGESTION_INTERVAL", "100")));
+		maxRetryAfter = Integer.parseInt(sipStack.getConfigurationProperties()
+				.getProperty("android.gov.nist.javax.sip.CONGESTION_MAX_RETRY_AFTER", "32"));
+		intervalEnd.set(System.nanoTime() + intervalNanos);
+		logger.logInfo("Adaptive congestion control target delay " + TimeUnit.NANOSECONDS.toMillis(targetDelayNanos)
+				+ " ms, interval " + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + " ms");
+	}
+
+	public boolean processRequest(SIPRequest request, MessageChannel messageChannel) {
+		sample(messageChannel);
+		if (!super.processRequest(request, messageChannel)) {
+			return false;
+		}
+		String requestMethod = request.getMethod();
+		if (requestMethod.equals(Request.BYE)
+				|| requestMethod.equals(Request.ACK)
+				|| requestMethod.equals(Request.PRACK)
+				|| requestMethod.equals(Request.CANCEL)
+				|| request.getToTag() != null) {
+			return true;
+		}
+		double shedProbability = getShedProbability();
+		if (shedProbability == 0) {
+			return true;
+		}
+		boolean initialRequest = requestMethod.equals(Request.INVITE) || requestMethod.equals(Request.REGISTER);
+		double methodShedProbability = initialRequest ? Math.min(1.0, 2 * shedProbability)
+				: Math.max(0.0, 2 * shedProbability - 1);
+		// Spread the Call-ID hash over [0, 1) so the retransmissions get the same answer
+		double draw = ((request.peekCallId().getCallId().hashCode() * 0x9E3779B9) >>> 8) / (double) (1 << 24);
+		if (draw >= methodShedProbability) {
+			return true;
+		}
+		shedRequests.incrementAndGet();
+		if (dropResponseStatus > 0) {
+			SIPResponse response = request.createResponse(dropResponseStatus);
+			if (dropResponseStatus == Response.SERVICE_UNAVAILABLE) {
+				try {
+					RetryAfter retryAfter = new RetryAfter();
+					retryAfter.setRetryAfter(getRetryAfter());
+					response.setHeader(retryAfter);
+				} catch (InvalidArgumentException e) {
+					logger.logError("Invalid Retry-After " + getRetryAfter(), e);
+				}
+			}
+			try {
+				messageChannel.sendMessage(response);
+			} catch (IOException e) {
+				logger.logError("Failed to send congestion control error response" + response, e);
+			}
+		}
+		return false;
+	}
+
+	public boolean processResponse(Response response, MessageChannel messageChannel) {
+		sample(messageChannel);
+		return super.processResponse(response, messageChannel);
+	}
+
+	/**
+	 * Records the queue sojourn time of the message being processed by the channel, and closes
+	 * the interval if it is over.
+	 */
+	protected void sample(MessageChannel messageChannel) {
+		long now = System.nanoTime();
+		if (messageChannel instanceof UDPMessageChannel) {
+			long sojourn = ((UDPMessageChannel) messageChannel).getQueueSojournNanos();
+			long min = intervalMinSojourn.get();
+			while (sojourn < min && !intervalMinSojourn.compareAndSet(min, sojourn)) {
+				min = intervalMinSojourn.get();
+			}
+		}
+		long end = intervalEnd.get();
+		if (now - end >= 0 && intervalEnd.compareAndSet(end, now + intervalNanos)) {
+			endInterval(intervalMinSojourn.getAndSet(Long.MAX_VALUE), (now - end) / intervalNanos);
+		}
+	}
+
+	/**
+	 * @param minSojourn the minimum sojourn time of the interval, Long.MAX_VALUE without sample
+	 * @param idleIntervals the number of intervals that went by without any message since
+	 */
+	private void endInterval(long minSojourn, long idleIntervals) {
+		// An interval without sample is an idle one
+		boolean wasCongested = congested;
+		congested = minSojourn != Long.MAX_VALUE && minSojourn > targetDelayNanos;
+		lastMinSojournNanos = minSojourn == Long.MAX_VALUE ? 0 : minSojourn;
+		double rate = admissionRate;
+		if (congested) {
+			rate = Math.max(MIN_ADMISSION_RATE, rate * DECREASE_FACTOR);
+		} else {
+			rate += INCREASE_STEP;
+		}
+		admissionRate = Math.min(1.0, rate + INCREASE_STEP * idleIntervals);
+		if (wasCongested != congested && logger.isLoggingEnabled(LogWriter.TRACE_INFO)) {
+			logger.logInfo("Adaptive congestion control " + (congested ? "congested" : "recovering")
+					+ ", min queue sojourn " + TimeUnit.NANOSECONDS.toMicros(lastMinSojournNanos)
+					+ " us, admission rate " + admissionRate + ", shed requests " + shedRequests.get());
+		}
+	}
+
+	/**
+	 * The fraction of the new requests currently admitted, between 0.01 and 1.
+	 */
+	public double getAdmissionRate() {
+		return admissionRate;
+	}
+
+	/**
+	 * The fraction of the new requests currently shed, INVITE and REGISTER are shed at twice this rate.
+	 */
+	public double getShedProbability() {
+		return 1.0 - admissionRate;
+	}
+
+	/**
+	 * True if the minimum queue sojourn time of the last interval was above the target delay.
+	 */
+	public boolean isCongested() {
+		return congested;
+	}
+
+	/**
+	 * The minimum queue sojourn time of the last interval in microseconds.
+	 */
+	public long getLastMinSojournMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(lastMinSojournNanos);
+	}
+
+	/**
+	 * The number of requests shed by this valve, not counting the ones dropped by the checks
+	 * of CongestionControlMessageValve.
+	 */
+	public long getShedRequests() {
+		return shedRequests.get();
+	}
+
+	/**
+	 * The Retry-After in seconds sent in the 503 responses, from 1 second when few requests are
+	 * shed to CONGESTION_MAX_RETRY_AFTER when all are.
+	 */
+	public int getRetryAfter() {
+		return Math.max(1, (int) Math.ceil(maxRetryAfter * getShedProbability()));
+	}
+
+	public String toString() {
+		return "AdaptiveCongestionControlMessageValve [congested=" + congested
+				+ ", admissionRate=" + admissionRate
+				+ ", lastMinSojournMicros=" + getLastMinSojournMicros()
+				+ ", shedRequests=" + shedRequests.get()
+				+ ", retryAfter=" + getRetryAfter() + "]";
+	}
+}
@@ -0,0 +1,497 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package android.gov.nist.javax.sip.stack;
+
+import android.gov.nist.core.LogWriter;
+import android.gov.nist.javax.sip.header.CallID;
+import android.gov.nist.javax.sip.message.SIPMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import android.javax.sip.SipStack;
+import android.javax.sip.header.TimeStampHeader;
+
+/**
+ * Message trace logger that keeps the tracing off the transport threads. The
+ * ServerLog formats each message as XML and writes it to an autoflushed file
+ * under a lock on the thread sending or receiving the message. This logger
+ * only puts the bytes of the message in a lock-free ring buffer; a background
+ * thread takes the records from the buffer and appends them in a compact
+ * binary form to memory-mapped files. When the buffer is full the records are
+ * dropped and counted rather than slowing the stack down.
+ *
+ * The message is not encoded again on the transport thread: a message sent is
+ * traced with the bytes encodeAsBytes produced to send it, and a message
+ * received with the bytes it was parsed from, which the message channels keep
+ * while this logger is enabled (see SIPTransactionStack.setKeepReceivedBytes).
+ * Only a message that has neither, one sent without being encoded as bytes or
+ * received over SCTP for instance, is encoded on the calling thread.
+ *
+ * The trace is written to android.gov.nist.javax.sip.SERVER_LOG.0,
+ * android.gov.nist.javax.sip.SERVER_LOG.1, ... each file holding at most
+ * SERVER_LOG_FILE_SIZE bytes, the oldest file being overwritten once there are
+ * SERVER_LOG_FILE_COUNT files. BinaryServerLogReader renders them in the XML
+ * format of the ServerLog.
+ *
+ * To enable this logger, specify these properties:
+ * <ul>
+ * <li>android.gov.nist.javax.sip.SERVER_LOGGER=android.gov.nist.javax.sip.stack.BinaryServerLog</li>
+ * <li>android.gov.nist.javax.sip.SERVER_LOG = base name of the trace files</li>
+ * <li>android.gov.nist.javax.sip.SERVER_LOG_BUFFER_SIZE = number of records the ring buffer
+ * holds, default 65536</li>
+ * <li>android.gov.nist.javax.sip.SERVER_LOG_FILE_SIZE = size in bytes of each trace file,
+ * default 16777216</li>
+ * <li>android.gov.nist.javax.sip.SERVER_LOG_FILE_COUNT = number of trace files, default 8</li>
+ * </ul>
+ * TRACE_LEVEL and LOG_MESSAGE_CONTENT are honored as by the ServerLog.
+ *
+ * File format, big endian: the int MAGIC, the int VERSION, the stack name,
+ * IP address and auxiliary information as strings, then the records. A record
+ * is its length as an int followed by the time as a long, the value of the
+ * TimeStamp header as a long, a byte set to 1 if the stack sent the message,
+ * and the source, destination, first line, transaction id, Call-ID and the
+ * message as strings. A string is its length in UTF-8 bytes as an int, -1 for
+ * null, followed by the bytes. A record length of 0 ends the file.
+ *
+ * @since 2.0
+ */
+public class BinaryServerLog extends ServerLog {
+
+    public static final int MAGIC = 0x4A535442;
+
+    public static final int VERSION = 1;
+
+    private static final long WRITER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * A message to trace, captured on the thread that sent or received it:
+     * either the bytes of the message and of its content, or the message
+     * encoded as text when no bytes were at hand.
+     */
+    private static final class TraceRecord {
+        final byte[] bytes;
+        // length of the part of bytes to trace
+        final int length;
+        final byte[] content;
+        final String message;
+        final String from;
+        final String to;
+        final String firstLine;
+        final String tid;
+        final String callId;
+        final boolean sender;
+        final long time;
+        final long timeStampHeaderValue;
+
+        TraceRecord(byte[] bytes, int length, byte[] content, String message, String from,
+                String to, String firstLine, String tid, String callId, boolean sender, long time,
+                long timeStampHeaderValue) {
+            this.bytes = bytes;
+            this.length = length;
+            this.content = content;
+            this.message = message;
+            this.from = from;
+            this.to = to;
+            this.firstLine = firstLine;
+            this.tid = tid;
+            this.callId = callId;
+            this.sender = sender;
+            this.time = time;
+            this.timeStampHeaderValue = timeStampHeaderValue;
+        }
+    }
+
+    /**
+     * Bounded ring buffer with many producers and the writer thread as single
+     * consumer. A producer claims a sequence number with a CAS on the tail and
+     * publishes its record in the slot of that sequence; the writer empties
+     * the slots in sequence order.
+     */
+    private static final class RingBuffer {
+        private final AtomicReferenceArray<TraceRecord> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        // only written by the writer thread
+        private volatile long head;
+
+        RingBuffer(int size) {
+            int capacity = 1;
+            while (capacity < size) {
+                capacity <<= 1;
+            }
+            slots = new AtomicReferenceArray<TraceRecord>(capacity);
+            mask = capacity - 1;
+        }
+
+        boolean offer(TraceRecord record) {
+            long sequence;
+            do {
+                sequence = tail.get();
+                if (sequence - head > mask) {
+                    return false;
+                }
+            } while (!tail.compareAndSet(sequence, sequence + 1));
+            slots.lazySet((int) sequence & mask, record);
+            return true;
+        }
+
+        TraceRecord poll() {
+            long sequence = head;
+            int index = (int) sequence & mask;
+            TraceRecord record = slots.get(index);
+            if (record != null) {
+                // a claimed slot not published yet is read again on the next poll
+                slots.lazySet(index, null);
+                head = sequence + 1;
+            }
+            return record;
+        }
+    }
+
+    private RingBuffer ringBuffer;
+
+    private final AtomicLong droppedRecords = new AtomicLong();
+
+    private volatile boolean running;
+
+    private volatile boolean writerWaiting;
+
+    private Thread writerThread;
+
+    private boolean logContent;
+
+    private String stackName;
+
+    private String stackIpAddress;
+
+    private String auxInfo;
+
+    private int fileSize;
+
+    private int fileCount;
+
+    // state of the writer thread
+    private MappedByteBuffer currentFile;
+
+    private int currentFileIndex = -1;
+
+    private SIPTransactionStack sipStack;
+
+    public void setSipStack(SipStack sipStack) {
+        super.setSipStack(sipStack);
+        this.sipStack = (SIPTransactionStack) sipStack;
+    }
+
+    public void setStackProperties(Properties configurationProperties) {
+        super.setStackProperties(configurationProperties);
+        this.logContent = "true".equals(configurationProperties
+                .getProperty("android.gov.nist.javax.sip.LOG_MESSAGE_CONTENT"));
+        this.stackName = configurationProperties.getProperty("android.javax.sip.STACK_NAME");
+        this.stackIpAddress = configurationProperties.getProperty("android.javax.sip.IP_ADDRESS");
+        this.fileSize = Integer.parseInt(configurationProperties.getProperty(
+                "android.gov.nist.javax.sip.SERVER_LOG_FILE_SIZE", "16777216"));
+        this.fileCount = Integer.parseInt(configurationProperties.getProperty(
+                "android.gov.nist.javax.sip.SERVER_LOG_FILE_COUNT", "8"));
+        int bufferSize = Integer.parseInt(configurationProperties.getProperty(
+                "android.gov.nist.javax.sip.SERVER_LOG_BUFFER_SIZE", "65536"));
+        if (getLogFileName() != null && traceLevel >= TRACE_MESSAGES) {
+            ringBuffer = new RingBuffer(bufferSize);
+            running = true;
+            writerThread = new Thread(new Runnable() {
+                public void run() {
+                    writeRecords();
+                }
+            });
+            writerThread.setName("BinaryServerLogWriter");
+            writerThread.setDaemon(true);
+            writerThread.start();
+            if (sipStack != null) {
+                sipStack.setKeepReceivedBytes(true);
+            }
+        }
+    }
+
+    /**
+     * The XML trace file of the ServerLog is not used.
+     */
+    public void checkLogFile() {
+    }
+
+    public void setAuxInfo(String auxInfo) {
+        super.setAuxInfo(auxInfo);
+        this.auxInfo = auxInfo;
+    }
+
+    /**
+     * @return the number of records dropped because the ring buffer was full
+     *         or the record did not fit in a trace file.
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public void logMessage(SIPMessage message, String from, String to, boolean sender, long time) {
+        if (message.getFirstLine() == null)
+            return;
+        log(message, from, to, sender, time);
+    }
+
+    public void logMessage(SIPMessage message, String from, String to, String status,
+            boolean sender, long time) {
+        log(message, from, to, sender, time);
+    }
+
+    private void log(SIPMessage message, String from, String to, boolean sender, long time) {
+        RingBuffer buffer = ringBuffer;
+        if (buffer == null || !running) {
+            return;
+        }
+        CallID cid = message.peekCallId();
+        String callId = cid == null ? null : cid.getCallId();
+        TimeStampHeader tsHdr = (TimeStampHeader) message.peekHeader(TimeStampHeader.NAME);
+        long timeStampHeaderValue = tsHdr == null ? 0 : tsHdr.getTime();
+        byte[] bytes;
+        int length;
+        byte[] content = null;
+        if (sender) {
+            // the bytes just sent, content included
+            bytes = message.peekEncodedBytes();
+            length = bytes == null ? 0 : (logContent ? bytes.length : headersLength(bytes));
+        } else {
+            bytes = message.getReceivedBytes();
+            length = bytes == null ? 0 : Math.min(message.getSize(), bytes.length);
+            if (bytes != null && logContent) {
+                content = message.getRawContent();
+            }
+        }
+        TraceRecord record;
+        if (bytes != null) {
+            // the first line is read from the bytes by the writer thread
+            record = new TraceRecord(bytes, length, content, null, from, to, null,
+                    message.getTransactionId(), callId, sender, time, timeStampHeaderValue);
+        } else {
+            String encoded = logContent ? message.encode() : message.encodeMessage(new StringBuilder()).toString();
+            record = new TraceRecord(null, 0, null, encoded, from, to, message.getFirstLine().trim(),
+                    message.getTransactionId(), callId, sender, time, timeStampHeaderValue);
+        }
+        if (!buffer.offer(record)) {
+            droppedRecords.incrementAndGet();
+            return;
+        }
+        if (writerWaiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * Stops the writer thread once it wrote the records already in the ring buffer.
+     */
+    public void closeLogFile() {
+        Thread writer;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            writer = writerThread;
+        }
+        if (sipStack != null) {
+            sipStack.setKeepReceivedBytes(false);
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (droppedRecords.get() > 0) {
+            stackLogger.logWarning("BinaryServerLog dropped " + droppedRecords.get() + " records");
+        }
+    }
+
+    private void writeRecords() {
+        try {
+            while (true) {
+                TraceRecord record = ringBuffer.poll();
+                if (record != null) {
+                    write(record);
+                    continue;
+                }
+                if (!running) {
+                    // a last pass for the records published while stopping
+                    while ((record = ringBuffer.poll()) != null) {
+                        write(record);
+                    }
+                    break;
+                }
+                writerWaiting = true;
+                record = ringBuffer.poll();
+                if (record != null) {
+                    writerWaiting = false;
+                    write(record);
+                    continue;
+                }
+                LockSupport.parkNanos(WRITER_PARK_NANOS);
+                writerWaiting = false;
+            }
+        } catch (IOException e) {
+            running = false;
+            stackLogger.logError("BinaryServerLog could not write the trace, tracing stopped", e);
+        } finally {
+            if (currentFile != null) {
+                currentFile.force();
+                currentFile = null;
+            }
+        }
+    }
+
+    /**
+     * @return the length of the first line and headers of an encoded message,
+     *         the whole of it when there is no empty line.
+     */
+    private static int headersLength(byte[] bytes) {
+        for (int i = 3; i < bytes.length; i++) {
+            if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+
+    /**
+     * @return the first line of the message bytes, without its end of line.
+     */
+    private static byte[] firstLine(byte[] bytes, int length) {
+        int start = 0;
+        // leading CRLFs are allowed before a message
+        while (start < length && (bytes[start] == '\r' || bytes[start] == '\n')) {
+            start++;
+        }
+        int end = start;
+        while (end < length && bytes[end] != '\r' && bytes[end] != '\n') {
+            end++;
+        }
+        while (end > start && (bytes[end - 1] == ' ' || bytes[end - 1] == '\t')) {
+            end--;
+        }
+        return Arrays.copyOfRange(bytes, start, end);
+    }
+
+    private void write(TraceRecord record) throws IOException {
+        byte[] from = utf8(record.from);
+        byte[] to = utf8(record.to);
+        byte[] tid = utf8(record.tid);
+        byte[] callId = utf8(record.callId);
+        byte[] firstLine;
+        byte[] message;
+        if (record.bytes != null) {
+            firstLine = firstLine(record.bytes, record.length);
+            int contentLength = record.content == null ? 0 : record.content.length;
+            message = Arrays.copyOf(record.bytes, record.length + contentLength);
+            if (contentLength > 0) {
+                System.arraycopy(record.content, 0, message, record.length, contentLength);
+            }
+        } else {
+            firstLine = utf8(record.firstLine);
+            message = utf8(record.message);
+        }
+        int length = 8 + 8 + 1 + 6 * 4 + length(from) + length(to) + length(firstLine)
+                + length(tid) + length(callId) + length(message);
+        // the record, its length and the end of file marker
+        if (currentFile == null || currentFile.remaining() < length + 8) {
+            nextFile();
+            if (currentFile.remaining() < length + 8) {
+                droppedRecords.incrementAndGet();
+                return;
+            }
+        }
+        MappedByteBuffer file = currentFile;
+        file.putInt(length);
+        file.putLong(record.time);
+        file.putLong(record.timeStampHeaderValue);
+        file.put((byte) (record.sender ? 1 : 0));
+        put(file, from);
+        put(file, to);
+        put(file, firstLine);
+        put(file, tid);
+        put(file, callId);
+        put(file, message);
+    }
+
+    private void nextFile() throws IOException {
+        if (currentFile != null) {
+            currentFile.force();
+        }
+        currentFileIndex = (currentFileIndex + 1) % fileCount;
+        File file = new File(getLogFileName() + "." + currentFileIndex);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            // zero filled, so the end of the records reads as a length of 0
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(fileSize);
+            currentFile = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } finally {
+            randomAccessFile.close();
+        }
+        currentFile.putInt(MAGIC);
+        currentFile.putInt(VERSION);
+        put(currentFile, utf8(stackName));
+        put(currentFile, utf8(stackIpAddress));
+        put(currentFile, utf8(auxInfo));
+        if (stackLogger.isLoggingEnabled(LogWriter.TRACE_INFO)) {
+            stackLogger.logInfo("BinaryServerLog writing to " + file
+                    + (droppedRecords.get() > 0 ? ", " + droppedRecords.get() + " records dropped so far" : ""));
+        }
+    }
+
+    private static byte[] utf8(String value) throws UnsupportedEncodingException {
+        return value == null ? null : value.getBytes("UTF-8");
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void put(MappedByteBuffer file, byte[] value) {
+        if (value == null) {
+            file.putInt(-1);
+        } else {
+            file.putInt(value.length);
+            file.put(value);
+        }
+    }
+}
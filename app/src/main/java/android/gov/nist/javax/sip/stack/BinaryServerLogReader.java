@@ -0,0 +1,162 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package android.gov.nist.javax.sip.stack;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders the trace files written by BinaryServerLog in the XML format of the
+ * ServerLog, the files being taken in the order of their first record so a
+ * trace that wrapped around reads from the oldest file.
+ *
+ * Usage: java android.gov.nist.javax.sip.stack.BinaryServerLogReader file...
+ * The XML trace is written to the standard output.
+ *
+ * @since 2.0
+ */
+public class BinaryServerLogReader {
+
+    private static final DefaultMessageLogFactory logRecordFactory = new DefaultMessageLogFactory();
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java " + BinaryServerLogReader.class.getName() + " file...");
+            System.exit(1);
+        }
+        List<File> files = new ArrayList<File>();
+        for (String arg : args) {
+            files.add(new File(arg));
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, "UTF-8"));
+        render(files, out);
+        out.flush();
+    }
+
+    /**
+     * Writes the messages traced in the files as XML.
+     */
+    public static void render(List<File> files, PrintWriter out) throws IOException {
+        final Map<File, Long> firstTimes = new HashMap<File, Long>();
+        for (File file : files) {
+            firstTimes.put(file, Long.valueOf(firstRecordTime(file)));
+        }
+        List<File> sorted = new ArrayList<File>(files);
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return firstTimes.get(a).compareTo(firstTimes.get(b));
+            }
+        });
+        boolean description = false;
+        for (File file : sorted) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                String[] header = readHeader(in, file);
+                if (!description) {
+                    out.println("<description\n logDescription=\"" + header[0]
+                            + "\"\n name=\"" + header[0]
+                            + "\"\n auxInfo=\"" + header[2] + "\"/>\n ");
+                    description = true;
+                }
+                while (true) {
+                    int length;
+                    try {
+                        length = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (length == 0) {
+                        break;
+                    }
+                    long time = in.readLong();
+                    long timeStampHeaderValue = in.readLong();
+                    boolean sender = in.readByte() == 1;
+                    String from = readString(in);
+                    String to = readString(in);
+                    String firstLine = readString(in);
+                    String tid = readString(in);
+                    String callId = readString(in);
+                    String message = readString(in);
+                    out.println(logRecordFactory.createLogRecord(message, from, to, time, sender,
+                            firstLine, tid, callId, timeStampHeaderValue));
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * @return the time of the first record of the file, Long.MAX_VALUE if it has none.
+     */
+    private static long firstRecordTime(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readHeader(in, file);
+            return in.readInt() == 0 ? Long.MAX_VALUE : in.readLong();
+        } catch (EOFException e) {
+            return Long.MAX_VALUE;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the stack name, IP address and auxiliary information.
+     */
+    private static String[] readHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != BinaryServerLog.MAGIC) {
+            throw new IOException(file + " is not a BinaryServerLog trace");
+        }
+        int version = in.readInt();
+        if (version != BinaryServerLog.VERSION) {
+            throw new IOException(file + " has the unsupported version " + version);
+        }
+        return new String[] { readString(in), readString(in), readString(in) };
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
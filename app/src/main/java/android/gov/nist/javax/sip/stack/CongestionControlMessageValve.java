@@ -26,10 +26,12 @@
 package android.gov.nist.javax.sip.stack;
 
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.StackLogger;
 import android.gov.nist.javax.sip.SipStackImpl;
+import android.gov.nist.javax.sip.ThreadAffinityExecutor;
 import android.gov.nist.javax.sip.message.SIPRequest;
 import android.gov.nist.javax.sip.message.SIPResponse;
 
@@ -39,8 +41,9 @@ import android.javax.sip.message.Response;
 
 /**
  * This is just a simple reusable congestion control valve JSIP apps can use to stop traffic when the number of
- * server transactions reaches the limit specified in android.gov.nist.javax.sip.MAX_SERVER_TRANSACTIONS without breaking
- * existing dialogs.
+ * server transactions reaches the limit specified in android.gov.nist.javax.sip.MAX_SERVER_TRANSACTIONS, or when the
+ * thread processing the messages of the Call-ID is close to its android.gov.nist.javax.sip.THREAD_POOL_QUEUE_SIZE,
+ * without breaking existing dialogs.
  * 
  * The drop policy is specified in DROP_RESPONSE_STATUS where "0" means silent drop and any positive number will be
  * interpreted as the status code of the error response that will be generated.
@@ -73,7 +76,8 @@ public class CongestionControlMessageValve implements SIPMessageValve{
 		|| requestMethod.equals(Request.CANCEL);
 		
 		if(!undropableMethod) {
-			if(serverTransactionTableHighwaterMark <= sipStack.getServerTransactionTableSize()) {
+			if(serverTransactionTableHighwaterMark <= sipStack.getServerTransactionTableSize()
+					|| isExecutorOverloaded(request)) {
 				// Allow directly any subsequent requests
 				if(request.getToTag() != null) {
 					return true;
@@ -92,6 +96,16 @@ public class CongestionControlMessageValve implements SIPMessageValve{
 		return true; // OK, the processing of the request can continue
 	}
 
+	/**
+	 * True if the thread processing the messages of the Call-ID of the request has
+	 * reached 80% of android.gov.nist.javax.sip.THREAD_POOL_QUEUE_SIZE.
+	 */
+	protected boolean isExecutorOverloaded(SIPRequest request) {
+		ScheduledExecutorService executor = sipStack.getSelfRoutingThreadpoolExecutor();
+		return executor instanceof ThreadAffinityExecutor
+				&& ((ThreadAffinityExecutor) executor).isOverloaded(request.peekCallId().getCallId());
+	}
+
 	public boolean processResponse(Response response,
 			MessageChannel messageChannel) {
 		return true;
@@ -38,7 +38,6 @@ import android.gov.nist.javax.sip.SipStackImpl;
 import android.gov.nist.javax.sip.ThreadAffinityTask;
 import android.gov.nist.javax.sip.header.RetryAfter;
 import android.gov.nist.javax.sip.header.Via;
-import android.gov.nist.javax.sip.header.ViaList;
 import android.gov.nist.javax.sip.message.SIPMessage;
 import android.gov.nist.javax.sip.message.SIPRequest;
 import android.gov.nist.javax.sip.message.SIPResponse;
@@ -52,6 +51,8 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.text.ParseException;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 
 import android.javax.sip.ListeningPoint;
@@ -82,6 +83,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
 	
 	protected boolean isCached;
 
+    // null when the reader runs as a task of the stack's channel executor
     protected Thread mythread;    
 
     protected String myAddress;
@@ -112,6 +114,29 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
     		keepAliveSemaphore = new Semaphore(1);
     	}
 	}
+
+    /**
+     * Start reading the messages of this channel, on a dedicated daemon thread
+     * or as a task of the stack's channel executor when
+     * android.gov.nist.javax.sip.VIRTUAL_THREAD_CHANNELS is set.
+     */
+    protected void startReader(final String threadName) {
+        ExecutorService channelExecutor = sipStack.getChannelExecutor();
+        if (channelExecutor == null) {
+            mythread = new Thread(this);
+            mythread.setDaemon(true);
+            mythread.setName(threadName);
+            mythread.start();
+        } else {
+            mythread = null;
+            channelExecutor.execute(new Runnable() {
+                public void run() {
+                    Thread.currentThread().setName(threadName);
+                    ConnectionOrientedMessageChannel.this.run();
+                }
+            });
+        }
+    }
     
     /**
      * Returns "true" as this is a reliable transport.
@@ -171,7 +196,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
     public void sendMessage(final SIPMessage sipMessage) throws IOException {
 
         if ( logger.isLoggingEnabled(LogWriter.TRACE_DEBUG) && !sipMessage.isNullRequest() ) {
-            logger.logDebug("sendMessage:: " + sipMessage.getFirstLine() + " cseq method = " + sipMessage.getCSeq().getMethod());
+            logger.logDebug("sendMessage:: " + sipMessage.getFirstLine() + " cseq method = " + sipMessage.peekCSeq().getMethod());
         }
 
         for (MessageProcessor messageProcessor : getSIPStack()
@@ -199,11 +224,17 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
 
                     @Override
                     public Object getThreadHash() {
-                        return sipMessage.getCallId().getCallId();
+                        return sipMessage.peekCallId().getCallId();
                     }
                 };
-                getSIPStack().getSelfRoutingThreadpoolExecutor().execute(
-                        processMessageTask);
+                try {
+                    getSIPStack().getSelfRoutingThreadpoolExecutor().execute(
+                            processMessageTask);
+                } catch (RejectedExecutionException e) {
+                    // the thread of the Call-ID is saturated, the message is lost as if the network dropped it
+                    logger.logWarning("Dropping self routed message: " + e.getMessage());
+                    return;
+                }
 
                 if (logger.isLoggingEnabled(
                         LogWriter.TRACE_DEBUG))
@@ -223,7 +254,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
         if(peerPortAdvertisedInHeaders <= 0) {
         	if(sipMessage instanceof SIPResponse) {
         		SIPResponse sipResponse = (SIPResponse) sipMessage; 
-        		Via via = sipResponse.getTopmostVia();
+        		Via via = sipResponse.peekTopmostVia();
         		if(via.getRPort() > 0) {
 	            	if(via.getPort() <=0) {    
 	            		// if port is 0 we assume the default port for TCP
@@ -282,10 +313,10 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
      */
     public void processMessage(SIPMessage sipMessage) throws Exception {
         try {
-        	if (sipMessage.getFrom() == null || sipMessage.getTo() == null
-                    || sipMessage.getCallId() == null
-                    || sipMessage.getCSeq() == null
-                    || sipMessage.getViaHeaders() == null) {
+        	if (sipMessage.peekFrom() == null || sipMessage.peekTo() == null
+                    || sipMessage.peekCallId() == null
+                    || sipMessage.peekCSeq() == null
+                    || sipMessage.peekTopmostVia() == null) {
                 
                 if (logger.isLoggingEnabled()) {
                     String badmsg = sipMessage.encode();
@@ -303,13 +334,12 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
             sipMessage.setPeerPacketSourceAddress(this.peerAddress);
             sipMessage.setPeerPacketSourcePort(this.peerPort);
             
-            ViaList viaList = sipMessage.getViaHeaders();
             // For a request
             // first via header tells where the message is coming from.
             // For response, this has already been recorded in the outgoing
             // message.
             if (sipMessage instanceof SIPRequest) {
-                Via v = (Via) viaList.getFirst();
+                Via v = sipMessage.getTopmostViaForUpdate();
                 // the peer address and tag it appropriately.
                 Hop hop = sipStack.addressResolver.resolveAddress(v.getHop());
                 this.peerProtocol = v.getTransport();
@@ -459,7 +489,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
                 }
 
                 String method = ((SIPRequest) sipMessage).getMethod();
-                String cseqMethod = ((SIPRequest) sipMessage).getCSeqHeader()
+                String cseqMethod = ((SIPRequest) sipMessage).peekCSeq()
                         .getMethod();
 
                 if (!method.equalsIgnoreCase(cseqMethod)) {
@@ -618,6 +648,7 @@ public abstract class ConnectionOrientedMessageChannel extends MessageChannel im
                     }                    
                     
                     hispipe.write(msg, 0, nbytes);
+                    sipStack.getMetrics().bytesReceived(getTransport(), nbytes);
 
                 } catch (IOException ex) {
                     // Terminate the message.
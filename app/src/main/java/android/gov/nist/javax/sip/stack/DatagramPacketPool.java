@@ -0,0 +1,84 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ * .
+ *
+ */
+package android.gov.nist.javax.sip.stack;
+
+import java.net.DatagramPacket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of receive packets for the UDP message processor. Each packet
+ * owns a buffer of maxMessageSize bytes that is handed to the socket, queued for
+ * a UDPMessageChannel and parsed in place, then given back here once parsing
+ * completes. When the pool runs dry a fresh packet is allocated so reception is
+ * never blocked; packets released while the pool is full are dropped for the GC.
+ */
+public class DatagramPacketPool {
+	private final BlockingQueue<DatagramPacket> pool;
+	private final int bufferSize;
+
+	public DatagramPacketPool(int capacity, int bufferSize) {
+		this.pool = new ArrayBlockingQueue<DatagramPacket>(capacity);
+		this.bufferSize = bufferSize;
+		for (int i = 0; i < capacity; i++) {
+			pool.offer(newPacket());
+		}
+	}
+
+	/**
+	 * Take a packet out of the pool, or allocate one if the pool is exhausted.
+	 */
+	public DatagramPacket acquire() {
+		DatagramPacket packet = pool.poll();
+		if (packet == null) {
+			packet = newPacket();
+		}
+		return packet;
+	}
+
+	/**
+	 * Give a packet back to the pool. The caller must not touch the packet or
+	 * its buffer afterwards.
+	 */
+	public void release(DatagramPacket packet) {
+		if (packet == null || packet.getData().length != bufferSize) {
+			return;
+		}
+		packet.setData(packet.getData(), 0, bufferSize);
+		pool.offer(packet);
+	}
+
+	/**
+	 * Number of packets currently available in the pool.
+	 */
+	public int getAvailable() {
+		return pool.size();
+	}
+
+	private DatagramPacket newPacket() {
+		return new DatagramPacket(new byte[bufferSize], bufferSize);
+	}
+}
@@ -31,13 +31,19 @@ import java.net.DatagramPacket;
 public class DatagramQueuedMessageDispatch implements QueuedMessageDispatchBase {
 	public DatagramPacket packet;
 	long time;
+	// System.nanoTime() when queued, to measure the time spent in the queue
+	long queuedNanos;
 	public DatagramQueuedMessageDispatch(DatagramPacket packet, long time) {
 		this.time = time;
 		this.packet = packet;
+		this.queuedNanos = System.nanoTime();
 	}
 	public long getReceptionTime() {
 		return time;
 	}
+	public long getQueuedNanos() {
+		return queuedNanos;
+	}
 	public void run() {
 		// TODO Auto-generated method stub
 		
@@ -19,7 +19,8 @@
 package android.gov.nist.javax.sip.stack;
 
 import android.gov.nist.core.CommonLogger;
-import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.LogWriter;
+import android.gov.nist.core.StackLoggerExt;
 
 import java.io.IOException;
 import java.net.Socket;
@@ -30,7 +31,7 @@ import javax.net.ssl.HandshakeCompletedEvent;
 import javax.net.ssl.HandshakeCompletedListener;
 
 public class HandshakeCompletedListenerImpl implements HandshakeCompletedListener {
-	private static StackLogger logger = CommonLogger.getLogger(HandshakeCompletedListenerImpl.class);          
+	private static StackLoggerExt logger = CommonLogger.getLogger(HandshakeCompletedListenerImpl.class);          
 	
     private HandshakeCompletedEvent handshakeCompletedEvent;
     private final Object eventWaitObject = new Object();
@@ -92,7 +93,9 @@ public class HandshakeCompletedListenerImpl implements HandshakeCompletedListene
 
     public void startHandshakeWatchdog() {
         if (this.watchdog != null) {
-        	logger.logInfo("starting watchdog for socket " + watchdog.socket + " on sslhandshake " + sipStack.getSslHandshakeTimeout());
+        	if (logger.isLoggingEnabled(LogWriter.TRACE_INFO)) {
+        		logger.logInfo("starting watchdog for socket " + watchdog.socket + " on sslhandshake " + sipStack.getSslHandshakeTimeout());
+        	}
         	sipStack.getTimer().schedule(watchdog, sipStack.getSslHandshakeTimeout());
         }
     }
@@ -157,13 +160,13 @@ public class HandshakeCompletedListenerImpl implements HandshakeCompletedListene
     	
 		@Override
 		public void runTask() {
-			logger.logInfo("closing socket " + socket + " on sslhandshaketimeout");
+			logger.logInfo("closing socket {} on sslhandshaketimeout", socket);
 			 try {
                  socket.close();
              } catch (IOException ex) {
                  logger.logInfo("couldn't close socket on sslhandshaketimeout");
              }
-			 logger.logInfo("socket closed " + socket + " on sslhandshaketimeout");
+			 logger.logInfo("socket closed {} on sslhandshaketimeout", socket);
 		}
     	
     }
@@ -119,9 +119,21 @@ public class IOHandler {
      * A private function to write things out. This needs to be synchronized as
      * writes can occur from multiple threads. We write in chunks to allow the
      * other side to synchronize for large sized writes.
+     *
+     * When the channels run on virtual threads the message is written in a
+     * single call: the socket streams serialize each write with their own
+     * lock, which, unlike a monitor, does not pin the virtual thread to its
+     * carrier while the write blocks. The platform thread fallback keeps the
+     * chunked writes under the stream monitor.
      */
-    private void writeChunks(OutputStream outputStream, byte[] bytes, int length)
-            throws IOException {
+    private void writeChunks(OutputStream outputStream, byte[] bytes, int length,
+            String transport) throws IOException {
+        if (sipStack.isChannelVirtualThreads()) {
+            outputStream.write(bytes, 0, length);
+            outputStream.flush();
+            sipStack.getMetrics().bytesSent(transport, length);
+            return;
+        }
         // Chunk size is 16K - this hack is for large
         // writes over slow connections.
         synchronized (outputStream) {
@@ -133,6 +145,7 @@ public class IOHandler {
             }
         }
         outputStream.flush();
+        sipStack.getMetrics().bytesSent(transport, length);
     }
 
     /**
@@ -324,14 +337,14 @@ public class IOHandler {
                         }
                         OutputStream outputStream = clientSock
                                 .getOutputStream();
-                        writeChunks(outputStream, bytes, length);
+                        writeChunks(outputStream, bytes, length, transport);
                         putSocket(key, clientSock);
                         break;
                     } else {
                         try {
                             OutputStream outputStream = clientSock
                                     .getOutputStream();
-                            writeChunks(outputStream, bytes, length);
+                            writeChunks(outputStream, bytes, length, transport);
                             break;
                         } catch (IOException ex) {
                             if (logger
@@ -451,14 +464,14 @@ public class IOHandler {
                         }
                         OutputStream outputStream = clientSock
                                 .getOutputStream();
-                        writeChunks(outputStream, bytes, length);
+                        writeChunks(outputStream, bytes, length, transport);
                         putSocket(key, clientSock);
                         break;
                     } else {
                         try {
                             OutputStream outputStream = clientSock
                                     .getOutputStream();
-                            writeChunks(outputStream, bytes, length);
+                            writeChunks(outputStream, bytes, length, transport);
                             break;
                         } catch (IOException ex) {
                             if (logger.isLoggingEnabled())
@@ -501,6 +514,7 @@ public class IOHandler {
                     receiverAddress, contactPort);
             datagramSock.send(dgPacket);
             datagramSock.close();
+            sipStack.getMetrics().bytesSent(transport, length);
             return null;
         }
 
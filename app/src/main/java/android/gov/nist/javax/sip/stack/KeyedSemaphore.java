@@ -27,6 +27,7 @@ package android.gov.nist.javax.sip.stack;
 
 import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.StackLoggerExt;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentHashMap;
@@ -37,7 +38,7 @@ import java.util.concurrent.locks.ReentrantLock;
 public final class KeyedSemaphore {
 
     private final ConcurrentHashMap<String, ReentrantLock> map = new ConcurrentHashMap<String, ReentrantLock>();
-    private static final StackLogger logger = CommonLogger.getLogger(KeyedSemaphore.class);
+    private static final StackLoggerExt logger = CommonLogger.getLogger(KeyedSemaphore.class);
 
     public void leaveIOCriticalSection(String key) {
         Lock creationLock = map.get(key);
@@ -65,11 +66,11 @@ public final class KeyedSemaphore {
         if (myLock != null &&
                 !myLock.hasQueuedThreads() && myLock.isHeldByCurrentThread()) {
             map.remove(key);
-            logger.logDebug("sem removed:" + myLock);
+            logger.logDebug("sem removed:{}", myLock);
             //This lock is no longer reacheable
             //remove all locks since this thread wont be able to unlock those anymore.
             while (myLock.isHeldByCurrentThread() && myLock.getHoldCount() > 0) {
-                logger.logDebug("unlocking after remove:" + myLock);
+                logger.logDebug("unlocking after remove:{}", myLock);
                 myLock.unlock();
             }            
         }//if there are other threads waiting on this semaphore let them reuse it
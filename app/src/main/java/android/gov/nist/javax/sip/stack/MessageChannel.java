@@ -49,6 +49,7 @@ import android.gov.nist.javax.sip.message.SIPResponse;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.text.ParseException;
+import java.util.concurrent.RejectedExecutionException;
 
 import android.javax.sip.address.Hop;
 import android.javax.sip.header.CSeqHeader;
@@ -241,10 +242,16 @@ public abstract class MessageChannel {
                             }
                             
                             public Object getThreadHash() {
-                                return sipMessage.getCallId().getCallId();
+                                return sipMessage.peekCallId().getCallId();
                             }
                         };
-                        getSIPStack().getSelfRoutingThreadpoolExecutor().execute(processMessageTask);
+                        try {
+                            getSIPStack().getSelfRoutingThreadpoolExecutor().execute(processMessageTask);
+                        } catch (RejectedExecutionException e) {
+                            // the thread of the Call-ID is saturated, the message is lost as if the network dropped it
+                            logger.logWarning("Dropping self routed message: " + e.getMessage());
+                            return;
+                        }
 
                         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                             logger.logDebug("Self routing message");
@@ -53,7 +53,6 @@ import java.util.HashMap;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
-import javax.net.ssl.SSLException;
 import android.javax.sip.TransactionState;
 
 public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
@@ -66,7 +65,9 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 
         
         private static final int BUF_SIZE = 4096;        
-        private final ByteBuffer byteBuffer  = ByteBuffer.allocateDirect(BUF_SIZE);
+        // heap buffer so the parser can frame the messages in place in its array,
+        // the channel copies through its own temporary direct buffer anyway
+        private final ByteBuffer byteBuffer  = ByteBuffer.allocate(BUF_SIZE);
                 
 	public void readChannel() {
                 if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -87,26 +88,18 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 			if(nbytes == 0) 
 				throw new IOException("The socket is giving us empty TCP packets. " +
 					"This is usually an indication we are stuck and it is better to disconnect.");                        
+			sipStack.getMetrics().bytesReceived(getTransport(), nbytes);
                         
 			byteBuffer.flip();
-			byte[] msg = new byte[byteBuffer.remaining()];
-			byteBuffer.get(msg);
-			byteBuffer.clear();
-
-			// Otherwise just add the bytes to queue
-			addBytes(msg);
+			try {
+				// Otherwise just add the bytes to queue
+				addBytes(byteBuffer);
+			} finally {
+				byteBuffer.clear();
+			}
 			lastActivityTimeStamp = System.currentTimeMillis();
 
 		} catch (Exception ex) { // https://java.net/jira/browse/JSIP-464 make sure to close connections on all exceptions to avoid the stack to hang
-			// Terminate the message.
-			if(ex instanceof IOException && !(ex instanceof SSLException)) {
-				try {
-					nioParser.addBytes("\r\n\r\n".getBytes("UTF-8"));
-				} catch (Exception e) {
-					// InternalErrorHandler.handleException(e);
-				}
-			}
-
 			try {
 				if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
 					logger.logDebug("I/O Issue closing sock " + ex.getMessage() + "myAddress:myport " + myAddress + ":" + myPort + ", remoteAddress:remotePort " + peerAddress + ":" + peerPort);
@@ -127,6 +120,11 @@ public class NioTcpMessageChannel extends ConnectionOrientedMessageChannel {
 
 	}
 	
+	// TLS and WebSocket will override here to decrypt or decode the bytes first
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		nioParser.addBytes(buffer);
+	}
+
 	// TLS will override here to add decryption
 	protected void addBytes(byte[] bytes) throws Exception {
 		nioParser.addBytes(bytes);
@@ -37,6 +37,8 @@ import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * NIO implementation for TCP.
@@ -47,7 +49,10 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
     private static final int MAX_CHANGE_REQS = 10000;
     private static final int MAX_PENDING_DATA = 10000;
+    // Messages written at once by a gathering write
+    private static final int MAX_GATHERED_BUFFERS = 64;
     
+    // Selector and thread of the first selector task, the one accepting the connections
     protected Selector selector ;
     private static StackLogger logger = CommonLogger.getLogger(NioTcpMessageProcessor.class);
     protected Thread selectorThread;
@@ -55,11 +60,9 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 
     protected ServerSocketChannel channel;
 
-    // Cache the change request here, the selector thread will read it when it wakes up and execute the request
-    protected final Queue<ChangeRequest> changeRequests = new ConcurrentLinkedQueue<ChangeRequest> ();
-
-    // Data send over a socket is cached here before hand, the selector thread will take it later for physical send
-    private final Map<SocketChannel, Queue<PendingData>> pendingData = Collections.synchronizedMap(new WeakHashMap<SocketChannel, Queue<PendingData>>());
+    // One task per selector thread, sockets are spread across them by hash
+    protected ProcessorTask[] processorTasks;
+    protected Thread[] selectorThreads;
     
     
     public static class PendingData {
@@ -72,6 +75,16 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 		}
     }
     
+    /**
+     * The messages waiting to be written on a socket. The thread that sets
+     * flushing, either a thread sending a message or the selector thread, is
+     * the only one writing them out until it clears it.
+     */
+    static class PendingDataQueue extends ConcurrentLinkedQueue<PendingData> {
+        private static final long serialVersionUID = 1L;
+        final AtomicBoolean flushing = new AtomicBoolean();
+    }
+
     public static class ChangeRequest {
     	public static final int REGISTER = 1;
     	public static final int CHANGEOPS = 2;
@@ -115,9 +128,10 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	logger.logDebug("Blocking set to false now " + address);
       
 
-        changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_READ));
+        ProcessorTask processorTask = getProcessorTask(socketChannel);
+        processorTask.changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_READ));
 
-        selector.wakeup();
+        processorTask.selector.wakeup();
         return socketChannel;
     }
     
@@ -132,7 +146,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	logger.logDebug("Init connect " + address);     
         }
         socketChannel.connect(address);
-    	changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
+    	getProcessorTask(socketChannel).changeRequests.add(new ChangeRequest(socketChannel, ChangeRequest.REGISTER, SelectionKey.OP_CONNECT));
         //we don't wake the selector, wait for corresponding "send" operation to initiate the handshake
         return socketChannel;
     }
@@ -146,12 +160,36 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         }
     }
         
+    /**
+     * Get the selector task the socket is registered with.
+     */
+    protected ProcessorTask getProcessorTask(SocketChannel socket) {
+        ProcessorTask[] tasks = processorTasks;
+        if (tasks.length == 1) {
+            return tasks[0];
+        }
+        return tasks[(socket.hashCode() & Integer.MAX_VALUE) % tasks.length];
+    }
+
+    /**
+     * Wake up the selector thread the socket of the channel is registered with.
+     */
+    protected void wakeupSelector(NioTcpMessageChannel channel) {
+        SocketChannel socketChannel = channel.getSocketChannel();
+        if (socketChannel == null) {
+            selector.wakeup();
+        } else {
+            getProcessorTask(socketChannel).selector.wakeup();
+        }
+    }
+
     public void send(SocketChannel socket, byte[] data) throws IOException  {
     	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
     		logger.logDebug("Sending data " + data.length + " bytes on socket " + socket);
     	
-    	
-        Queue<PendingData> queue = this.pendingData.get(socket);
+    	ProcessorTask processorTask = getProcessorTask(socket);
+    	Map<SocketChannel, PendingDataQueue> pendingData = processorTask.pendingData;
+        PendingDataQueue queue = pendingData.get(socket);
         //this condition optimizes in case the socket has an already existing
         //queue. Contention will be avoided
         if (queue == null) {
@@ -160,10 +198,10 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
             synchronized (socket) {
                 //this condition is necessary to ensure consistency
                 if (!pendingData.containsKey(socket)) {
-                    queue = new ConcurrentLinkedQueue<PendingData>();
-                    this.pendingData.put(socket, queue);
+                    queue = new PendingDataQueue();
+                    pendingData.put(socket, queue);
                 } else {
-                    queue = this.pendingData.get(socket);
+                    queue = pendingData.get(socket);
                 }
             }
         }    	
@@ -172,21 +210,97 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         queue.add(pData);
         
         if (socket.isConnected()) {
+            if (!queue.flushing.compareAndSet(false, true)) {
+                // the messages queued before are being written, this one goes out with them
+                return;
+            }
+            // nobody is writing on this socket, try to write straight away
+            boolean flushed;
+            do {
+                try {
+                    flushed = flush(socket, queue);
+                } catch (IOException e) {
+                    processorTask.writeFailed(socket, queue, e);
+                    return;
+                }
+            } while (flushed && releaseFlushing(queue));
+            if (flushed) {
+                return;
+            }
             if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                logger.logDebug("Connected. lets set WRITE ops.");        
+                logger.logDebug("Socket buffer full. lets set WRITE ops.");        
             }  	        	
-            this.changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
+            processorTask.changeRequests.add(new ChangeRequest(socket, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
         }//if not the selector will change to WRITe mode after connect
         
     	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
     		logger.logDebug("Waking up selector thread");
-    	this.selector.wakeup();
+    	processorTask.selector.wakeup();
+    }
+
+    /**
+     * Write out the pending messages of the socket, several at a time with a
+     * gathering write, until they are all written or the socket send buffer is
+     * full. The caller must own the flushing flag of the queue.
+     *
+     * @return true if all the pending messages were written.
+     */
+    private boolean flush(SocketChannel socketChannel, Queue<PendingData> queue) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+        int written = 0;
+        while (written < MAX_PENDING_DATA) {
+            int count = 0;
+            for (PendingData pData : queue) {
+                buffers[count++] = pData.buffer;
+                if (count == buffers.length) {
+                    break;
+                }
+            }
+            if (count == 0) {
+                return true;
+            }
+            long bytes = socketChannel.write(buffers, 0, count);
+            sipStack.getMetrics().bytesSent(getTransport(), bytes);
+            for (int i = 0; i < count; i++) {
+                if (buffers[i].hasRemaining()) {
+                    // ... or the socket's buffer fills up
+                    if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+                        logger.logDebug("Socket buffer filled and more is remaining " + buffers[i].remaining());
+                    return false;
+                }
+                //now that buffer is completely sent, we may remove it 
+                //form the queue
+                queue.remove();
+                written++;
+            }
+        }
+        return queue.isEmpty();
+    }
+
+    /**
+     * Clear the flushing flag of the queue once it was found empty, and take
+     * it back if a message was queued by another thread meanwhile.
+     *
+     * @return true if there are messages to write again, the flag being set.
+     */
+    private static boolean releaseFlushing(PendingDataQueue queue) {
+        queue.flushing.set(false);
+        return !queue.isEmpty() && queue.flushing.compareAndSet(false, true);
     }
     
-    // This will be our selector thread, only one thread for all sockets. If you want to understand the overall design decisions read this first http://rox-xmlrpc.sourceforge.net/niotut/
+    // This will be our selector thread, by default only one thread for all sockets, see NIO_SELECTOR_THREADS. If you want to understand the overall design decisions read this first http://rox-xmlrpc.sourceforge.net/niotut/
     class ProcessorTask implements Runnable {
 
-        public ProcessorTask() {
+        protected final Selector selector;
+
+        // Cache the change request here, the selector thread will read it when it wakes up and execute the request
+        protected final Queue<ChangeRequest> changeRequests = new ConcurrentLinkedQueue<ChangeRequest> ();
+
+        // Data send over a socket is cached here before hand, the selector thread will take it later for physical send
+        private final Map<SocketChannel, PendingDataQueue> pendingData = Collections.synchronizedMap(new WeakHashMap<SocketChannel, PendingDataQueue>());
+
+        public ProcessorTask(Selector selector) {
+            this.selector = selector;
         }
         
         public void read(SelectionKey selectionKey) {
@@ -223,16 +337,14 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
             	return;
             }
           	
-            Queue<PendingData> queue = pendingData.get(socketChannel);
-            if (queue == null || queue.isEmpty())
+            // the selector thread owns the flushing flag of the queue as long as WRITE is set
+            PendingDataQueue queue = pendingData.get(socketChannel);
+            if (queue == null)
             {
                 if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                 {
                         logger.logDebug("The queue was empty on write.");
                 }
-                if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
-                    logger.logDebug("We wrote away all data. Setting READ interest. Queue is emtpy now size =" + queue.size());
-                }
                 selectionKey.interestOps(SelectionKey.OP_READ);                
                 return;
             }
@@ -240,51 +352,45 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
             {
                     logger.logDebug("Queued items for writing " + queue.size());
             }
-            int i = 0;
-            while (queue.peek() != null &&  i < MAX_PENDING_DATA) {
-                    //do not remove the buffer form the queue, until actual
-                    //write operation is confirmed
-            		PendingData pData = queue.peek();
-                    ByteBuffer buf = pData.buffer;
-
-                    try {
-                                    socketChannel.write(buf);
-                            } catch (IOException e) {
-                                    if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
-                            logger.logDebug("Dead socketChannel" + socketChannel + " socket " + socketChannel.socket().getInetAddress() + ":"+socketChannel.socket().getPort() + " : error message " + e.getMessage());
-                                    nioTcpMessageChannel.close();
-                                    // Shall we perform a retry mechanism in case the remote host connection was closed due to a TCP RST ?
-                                    // https://java.net/jira/browse/JSIP-475 in the meanwhile remove the data from the hashmap
-                                    queue.remove();
-                                    pendingData.remove(socketChannel);                                    
-                                    return;
-                            }
-
-                    int remain = buf.remaining();
-
-                    if (remain > 0) {
-                            // ... or the socket's buffer fills up
-                            if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
-                                    logger.logDebug("Socket buffer filled and more is remaining" + queue.size() + " remain = " + remain);
-                            break;
-                    } else {
-                        //now that buffer is completely sent, we may remove it 
-                        //form the queue
-                        queue.remove();                        
-                    }
-                    i++;
+            boolean flushed;
+            try {
+                flushed = flush(socketChannel, queue);
+            } catch (IOException e) {
+                writeFailed(socketChannel, queue, e);
+                return;
             }
 
-            if (queue.isEmpty()) {
+            if (flushed) {
                     if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                             logger.logDebug("We wrote away all data. Setting READ interest. Queue is emtpy now size =" + queue.size());
                     selectionKey.interestOps(SelectionKey.OP_READ);
+                    if (releaseFlushing(queue)) {
+                        // queued while we were writing
+                        selectionKey.interestOps(SelectionKey.OP_WRITE);
+                    }
             }
 
         	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
         		logger.logDebug("Done writing");
         }
         
+        /**
+         * The socket failed while its pending messages were written, drop them
+         * and close the channel.
+         */
+        protected void writeFailed(SocketChannel socketChannel, Queue<PendingData> queue, IOException e) {
+            if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+                logger.logDebug("Dead socketChannel" + socketChannel + " socket " + socketChannel.socket().getInetAddress() + ":"+socketChannel.socket().getPort() + " : error message " + e.getMessage());
+            NioTcpMessageChannel nioTcpMessageChannel = nioHandler.getMessageChannel(socketChannel);
+            if (nioTcpMessageChannel != null) {
+                nioTcpMessageChannel.close();
+            }
+            // Shall we perform a retry mechanism in case the remote host connection was closed due to a TCP RST ?
+            // https://java.net/jira/browse/JSIP-475 in the meanwhile remove the data from the hashmap
+            queue.clear();
+            pendingData.remove(socketChannel);
+        }
+
         public void connect(SelectionKey selectionKey) throws IOException {
         	final SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
             final NioTcpMessageChannel nioTcpMessageChannel = nioHandler.getMessageChannel(socketChannel);
@@ -302,16 +408,21 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
                     logger.logDebug("Connected Succesfully");        
                 }        		
     			if(sipStack.getSelfRoutingThreadpoolExecutor() != null) {
-    				sipStack.getSelfRoutingThreadpoolExecutor().execute(new Runnable() {
-    					public void run() {
-    						nioTcpMessageChannel.triggerConnectSuccess();
-    					}
-    				});    				
+    				try {
+    					sipStack.getSelfRoutingThreadpoolExecutor().execute(new Runnable() {
+    						public void run() {
+    							nioTcpMessageChannel.triggerConnectSuccess();
+    						}
+    					});
+    				} catch (RejectedExecutionException e) {
+    					// the queued messages wait for this notification, it cannot be dropped
+    					nioTcpMessageChannel.triggerConnectSuccess();
+    				}
     			} else {
     				nioTcpMessageChannel.triggerConnectSuccess();
     			}
-                if (pendingData.get(socketChannel) != null &&
-                		pendingData.get(socketChannel).size() > 0) {
+                PendingDataQueue queue = pendingData.get(socketChannel);
+                if (queue != null && !queue.isEmpty() && queue.flushing.compareAndSet(false, true)) {
                     if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                         logger.logDebug("Pending Data Available, setting WRITE opts.");        
                     }                  	
@@ -323,11 +434,15 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
                 }
                 selectionKey.cancel();
     			if(sipStack.getSelfRoutingThreadpoolExecutor() != null) {
-    				sipStack.getSelfRoutingThreadpoolExecutor().execute(new Runnable() {
-    					public void run() {
-    						nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));
-    					}
-    				});
+    				try {
+    					sipStack.getSelfRoutingThreadpoolExecutor().execute(new Runnable() {
+    						public void run() {
+    							nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));
+    						}
+    					});
+    				} catch (RejectedExecutionException ree) {
+    					nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));
+    				}
     			} else {
     				nioTcpMessageChannel.triggerConnectFailure(pendingData.get(socketChannel));                                           
     			}
@@ -348,9 +463,15 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
         	 
         	 createMessageChannel(NioTcpMessageProcessor.this, client);
         	 
+        	 ProcessorTask processorTask = getProcessorTask(client);
         	 if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
-        		 logger.logDebug("Adding to selector " + client);
-        	 client.register(selector, SelectionKey.OP_READ);
+        		 logger.logDebug("Adding to selector " + client + " selector = " + processorTask.selector);
+        	 if (processorTask == this) {
+        		 client.register(selector, SelectionKey.OP_READ);
+        	 } else {
+        		 processorTask.changeRequests.add(new ChangeRequest(client, ChangeRequest.REGISTER, SelectionKey.OP_READ));
+        		 processorTask.selector.wakeup();
+        	 }
         	 
         }
         @Override
@@ -530,7 +651,7 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
                         logger.logDebug("Creating " + retval);
                 }
                 if (this.sipStack.nioMode.equals(NIOMode.BLOCKING)) {
-                	selector.wakeup();
+                	wakeupSelector((NioTcpMessageChannel) retval);
                 }
         }  		
         return retval;      
@@ -576,7 +697,10 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
     	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug(Thread.currentThread() + " removing " + ((NioTcpMessageChannel)messageChannel).getSocketChannel() + " from processor " + getIpAddress()+ ":" + getPort() + "/" + getTransport());
         }
-    	pendingData.remove(((NioTcpMessageChannel)messageChannel).getSocketChannel());
+    	SocketChannel socketChannel = ((NioTcpMessageChannel)messageChannel).getSocketChannel();
+    	if (socketChannel != null) {
+    		getProcessorTask(socketChannel).pendingData.remove(socketChannel);
+    	}
     	super.remove(messageChannel);
     }
     
@@ -594,26 +718,38 @@ public class NioTcpMessageProcessor extends ConnectionOrientedMessageProcessor {
 
     @Override
     public void start() throws IOException {
-        selector = Selector.open();
+        int selectorThreadCount = Math.max(1, sipStack.getNioSelectorThreads());
+        processorTasks = new ProcessorTask[selectorThreadCount];
+        for (int i = 0; i < selectorThreadCount; i++) {
+            processorTasks[i] = createProcessorTask(Selector.open());
+        }
+        selector = processorTasks[0].selector;
         channel = ServerSocketChannel.open();
         channel.configureBlocking(false);
         InetSocketAddress isa  = new InetSocketAddress(super.getIpAddress(), super.getPort());
         channel.socket().bind(isa);
         channel.register(selector, SelectionKey.OP_ACCEPT);
-        selectorThread = new Thread(createProcessorTask());
-        selectorThread.start();
-        selectorThread.setName("NioSelector-" + getTransport() + '-' + getIpAddress().getHostAddress() + '/' + getPort());
+        selectorThreads = new Thread[selectorThreadCount];
+        for (int i = 0; i < selectorThreadCount; i++) {
+            selectorThreads[i] = new Thread(processorTasks[i]);
+            selectorThreads[i].start();
+            selectorThreads[i].setName("NioSelector-" + getTransport() + '-' + getIpAddress().getHostAddress() + '/' + getPort()
+                    + (i == 0 ? "" : "-" + i));
+        }
+        selectorThread = selectorThreads[0];
     }
     
-    protected ProcessorTask createProcessorTask() {
-    	return new ProcessorTask();
+    protected ProcessorTask createProcessorTask(Selector selector) {
+    	return new ProcessorTask(selector);
     }
 
     @Override
     public void stop() {
     	try {
-    		if(selector.isOpen())
-    			selector.close();
+    		for (ProcessorTask processorTask : processorTasks) {
+    			if(processorTask.selector.isOpen())
+    				processorTask.selector.close();
+    		}
     		
     		nioHandler.stop();    		
     	} catch (Exception ex) {
@@ -28,7 +28,8 @@ package android.gov.nist.javax.sip.stack;
 import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.LogLevels;
 import android.gov.nist.core.LogWriter;
-import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.StackLoggerExt;
+import android.gov.nist.core.StackLoggerExt.MessageSupplier;
 import android.gov.nist.javax.sip.SipStackImpl;
 import android.gov.nist.javax.sip.stack.SSLStateMachine.MessageSendCallback;
 
@@ -40,14 +41,17 @@ import javax.net.ssl.SSLSocket;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.Charset;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.security.cert.CertificateException;
 
 public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTlsChannelInterface{
 
-	private static StackLogger logger = CommonLogger
+	private static StackLoggerExt logger = CommonLogger
 			.getLogger(NioTlsMessageChannel.class);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
 	
 	SSLStateMachine sslStateMachine;
 	// Added for https://java.net/jira/browse/JSIP-483
@@ -198,6 +202,13 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 		}
 	}
 	
+	@Override
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		addBytes(bytes);
+	}
+
 	@Override
 	protected void addBytes(byte[] bytes) throws Exception {
 		if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -214,16 +225,15 @@ public class NioTlsMessageChannel extends NioTcpMessageChannel implements NioTls
 	}
 
 	@Override
-	public void onNewSocket(byte[] message) {
+	public void onNewSocket(final byte[] message) {
 		super.onNewSocket(message);
 		try {
-			if(logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
-				String last = null;
-				if(message != null) {
-					last = new String(message, "UTF-8");
+			logger.logDebug(new MessageSupplier() {
+				public String getMessage() {
+					String last = message == null ? null : new String(message, UTF_8);
+					return "New socket for " + NioTlsMessageChannel.this + " last message = " + last;
 				}
-				logger.logDebug("New socket for " + this + " last message = " + last);
-			}
+			});
 			init(true);
 			createBuffers();
 			sendMessage(message, false);
@@ -29,7 +29,8 @@ import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.LogLevels;
 import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.ServerLogger;
-import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.StackLoggerExt;
+import android.gov.nist.core.StackLoggerExt.MessageSupplier;
 import android.gov.nist.javax.sip.SipStackImpl;
 import static android.gov.nist.javax.sip.SipStackImpl.DEFAULT_CIPHERS;
 import android.gov.nist.javax.sip.message.SIPMessage;
@@ -41,6 +42,7 @@ import javax.net.ssl.SSLContext;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.Charset;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.security.cert.CertificateException;
@@ -48,9 +50,11 @@ import java.util.Arrays;
 
 public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel implements NioTlsChannelInterface {
 
-	private static StackLogger logger = CommonLogger
+	private static StackLoggerExt logger = CommonLogger
 			.getLogger(NioTlsWebSocketMessageChannel.class);
 
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	SSLStateMachine sslStateMachine;
 
 	private int appBufferMax;
@@ -350,16 +354,15 @@ public class NioTlsWebSocketMessageChannel extends NioWebSocketMessageChannel im
 	}
 
 	@Override
-	public void onNewSocket(byte[] message) {
+	public void onNewSocket(final byte[] message) {
 		super.onNewSocket(message);
 		try {
-			if(logger.isLoggingEnabled(LogLevels.TRACE_DEBUG)) {
-				String last = null;
-				if(message != null) {
-					last = new String(message, "UTF-8");
+			logger.logDebug(new MessageSupplier() {
+				public String getMessage() {
+					String last = message == null ? null : new String(message, UTF_8);
+					return "New socket for " + NioTlsWebSocketMessageChannel.this + " last message = " + last;
 				}
-				logger.logDebug("New socket for " + this + " last message = " + last);
-			}
+			});
 			init(true);
 			createBuffers();
 			sendMessage(message, false);
@@ -95,7 +95,7 @@ public class NioTlsWebSocketMessageProcessor extends NioWebSocketMessageProcesso
     				logger.logDebug("key " + key);
     				logger.logDebug("Creating " + retval);
     			}
-    			selector.wakeup();
+    			wakeupSelector(retval);
     			return retval;
 
     		}
@@ -114,7 +114,7 @@ public class NioTlsWebSocketMessageProcessor extends NioWebSocketMessageProcesso
         } else {
         	NioTlsWebSocketMessageChannel retval = new NioTlsWebSocketMessageChannel(targetHost, port, sipStack, this);
             
-            selector.wakeup();
+            wakeupSelector(retval);
  //           retval.getSocketChannel().register(selector, SelectionKey.OP_READ);
             this.messageChannels.put(key, retval);
             retval.isCached = true;
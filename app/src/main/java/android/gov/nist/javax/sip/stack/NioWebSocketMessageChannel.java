@@ -29,7 +29,7 @@ import android.gov.nist.core.CommonLogger;
 import android.gov.nist.core.Host;
 import android.gov.nist.core.HostPort;
 import android.gov.nist.core.LogWriter;
-import android.gov.nist.core.StackLogger;
+import android.gov.nist.core.StackLoggerExt;
 import android.gov.nist.javax.sip.header.RecordRoute;
 import android.gov.nist.javax.sip.message.SIPMessage;
 import android.gov.nist.javax.sip.message.SIPRequest;
@@ -53,7 +53,7 @@ import android.javax.sip.message.Request;
 
 public class NioWebSocketMessageChannel extends NioTcpMessageChannel{
 
-	private static StackLogger logger = CommonLogger
+	private static StackLoggerExt logger = CommonLogger
 			.getLogger(NioWebSocketMessageChannel.class);
 	
 	private WebSocketCodec codec = new WebSocketCodec(true, true);
@@ -191,6 +191,13 @@ public class NioWebSocketMessageChannel extends NioTcpMessageChannel{
 		this.codec = new WebSocketCodec(false, true);
 	}
 	
+	@Override
+	protected void addBytes(ByteBuffer buffer) throws Exception {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		addBytes(bytes);
+	}
+
 	@Override
 	protected void addBytes(byte[] bytes) throws Exception {
 		String s = new String(bytes);
@@ -213,7 +220,7 @@ public class NioWebSocketMessageChannel extends NioTcpMessageChannel{
 					byte[] response = new WebSocketHttpHandshake().createHttpResponse(s);
 					sendNonWebSocketMessage(response, false);
 				} else {
-					logger.logDebug("HTTP Response. We are websocket client.\n" + httpInput);
+					logger.logDebug("HTTP Response. We are websocket client.\n{}", httpInput);
 				}
 			}
 			if(remaining != null) addBytes(remaining);
@@ -237,7 +244,9 @@ public class NioWebSocketMessageChannel extends NioTcpMessageChannel{
 					return; // the codec can't parse a full websocket frame, we will try again when have more data
 				}
 				nioParser.addBytes(decodedMsg);
-				logger.logDebug("Nio websocket bytes were added " + decodedMsg.length);
+				if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+					logger.logDebug("Nio websocket bytes were added " + decodedMsg.length);
+				}
 
 			} while (decodedMsg != null);
 			
@@ -31,7 +31,6 @@ import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.NameValueList;
 import android.gov.nist.core.StackLogger;
 import android.gov.nist.javax.sip.ReleaseReferencesStrategy;
-import android.gov.nist.javax.sip.SIPConstants;
 import android.gov.nist.javax.sip.SipProviderImpl;
 import android.gov.nist.javax.sip.SipStackImpl;
 import android.gov.nist.javax.sip.Utils;
@@ -244,7 +243,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       if (isTerminated()) {
 
         try {
-          sipStack.getTimer().cancel(this);
+          cancelTransactionTimer(this);
 
         } catch (IllegalStateException ex) {
           if (!sipStack.isAlive())
@@ -267,7 +266,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -300,7 +299,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -319,7 +318,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
   {
     super(newSIPStack, newChannelToUse);
     // Create a random branch parameter for this transaction
-    setBranch(Utils.getInstance().generateBranchId());
+    setBranch(newSIPStack.getIdGenerator().generateBranchId());
     this.setEncapsulatedChannel(newChannelToUse);
     this.notifyOnRetransmit = false;
     this.timeoutIfStillInCallingState = false;
@@ -366,22 +365,20 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
   public boolean isMessagePartOfTransaction(SIPMessage messageToTest) {
 
     // List of Via headers in the message to test
-    Via topMostViaHeader = messageToTest.getTopmostVia();
+    Via topMostViaHeader = messageToTest.peekTopmostVia();
     // Flags whether the select message is part of this transaction
     boolean transactionMatches;
     String messageBranch = topMostViaHeader.getBranch();
     boolean rfc3261Compliant = getBranch() != null
                                && messageBranch != null
-                               && getBranch().toLowerCase()
-                                             .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)
-                               && messageBranch.toLowerCase()
-                                               .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE);
+                               && Utils.isRFC3261Branch(getBranch())
+                               && Utils.isRFC3261Branch(messageBranch);
 
     transactionMatches = false;
     if (TransactionState._COMPLETED == this.getInternalState()) {
       if (rfc3261Compliant) {
         transactionMatches = getBranch().equalsIgnoreCase(topMostViaHeader.getBranch())
-                             && getMethod().equals(messageToTest.getCSeq().getMethod());
+                             && getMethod().equals(messageToTest.peekCSeq().getMethod());
       } else {
         transactionMatches = getBranch().equals(messageToTest.getTransactionId());
       }
@@ -391,7 +388,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
           // If the branch parameter is the
           // same as this transaction and the method is the same,
           if (getBranch().equalsIgnoreCase(topMostViaHeader.getBranch())) {
-            transactionMatches = getMethod().equals(messageToTest.getCSeq().getMethod());
+            transactionMatches = getMethod().equals(messageToTest.peekCSeq().getMethod());
 
           }
         }
@@ -424,7 +421,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       transactionRequest = (SIPRequest) messageToSend;
 
       // Set the branch id for the top via header.
-      Via topVia = (Via) transactionRequest.getTopmostVia();
+      Via topVia = transactionRequest.getTopmostViaForUpdate();
       // Tack on a branch identifier to match responses.
       try {
         topVia.setBranch(getBranch());
@@ -697,7 +694,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
     if (transactionTimer != null && timerKStarted.compareAndSet(false, true)) {
       synchronized (transactionTimerLock) {
         if (!transactionTimerCancelled) {
-          sipStack.getTimer().cancel(transactionTimer);
+          cancelTransactionTimer(transactionTimer);
           transactionTimer = null;
           if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug("starting TransactionTimerK() : " + getTransactionId() + " time "
@@ -717,7 +714,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
             public Object getThreadHash() {
                 Request request = getRequest();
                 if (request != null && request instanceof SIPRequest) {
-                    return ((SIPRequest)request).getCallIdHeader().getCallId();
+                    return ((SIPRequest)request).peekCallId().getCallId();
                 } else {
                     return null;
                 }
@@ -800,8 +797,8 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
     if (TransactionState._TERMINATED == this.getInternalState()) {
       boolean ackAlreadySent = false;
       // if (dialog != null && dialog.isAckSeen() && dialog.getLastAckSent() != null)
-      if (dialog != null && dialog.isAckSent(transactionResponse.getCSeq().getSeqNumber())) {
-        if (dialog.getLastAckSentCSeq().getSeqNumber() == transactionResponse.getCSeq()
+      if (dialog != null && dialog.isAckSent(transactionResponse.peekCSeq().getSeqNumber())) {
+        if (dialog.getLastAckSentCSeq().getSeqNumber() == transactionResponse.peekCSeq()
                                                                                    .getSeqNumber()
             && transactionResponse.getFromTag().equals(dialog.getLastAckSentFromTag()))
         {
@@ -811,7 +808,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       }
       // retransmit the ACK for this response.
       if (dialog != null && ackAlreadySent
-          && transactionResponse.getCSeq().getMethod().equals(dialog.getMethod()))
+          && transactionResponse.peekCSeq().getMethod().equals(dialog.getMethod()))
       {
         try {
           // Found the dialog - resend the ACK and
@@ -1052,7 +1049,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
           throw new SipException("Cannot cancel non-invite requests RFC 3261 9.1");
         }
       } else if (this.getMethod().equals(Request.BYE) || this.getMethod().equals(Request.NOTIFY)) {
-        SIPDialog dialog = sipStack.getDialog(this.getOriginalRequest().getDialogId(false));
+        SIPDialog dialog = sipStack.getDialog(this.getOriginalRequest(), false);
         // I want to behave like a user agent so send the BYE using the
         // Dialog
         if (this.getSipProvider().isAutomaticDialogSupportEnabled() && dialog != null) {
@@ -1140,7 +1137,14 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
             }
             lastRequest.setHeader(timeStamp);
           }
-          super.sendMessage(lastRequest);
+          // A retransmission is a copy of the request as sent the first time.
+          lastRequest.setReuseEncodedBytes(true);
+          try {
+            super.sendMessage(lastRequest);
+          } finally {
+            lastRequest.setReuseEncodedBytes(false);
+          }
+          sipStack.getMetrics().retransmissionSent();
           if (this.notifyOnRetransmit) {
             TimeoutEvent txTimeout = new TimeoutEvent(this.getSipProvider(),
                                                       this,
@@ -1363,7 +1367,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       }
       throw new SipException("Cannot ACK a provisional response!");
     }
-    return originalRequest.createErrorAck((To) lastResponse.getTo());
+    return originalRequest.createErrorAck(lastResponse.peekTo());
   }
 
   /**
@@ -1457,9 +1461,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
         synchronized (transactionTimerLock) {
           if (!transactionTimerCancelled) {
             transactionTimer = new TransactionTimer();
-            sipStack.getTimer().scheduleWithFixedDelay(transactionTimer,
-                                                       baseTimerInterval,
-                                                       baseTimerInterval);
+            scheduleTransactionTimer(transactionTimer);
           }
         }
       }
@@ -1511,13 +1513,13 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
   public boolean checkFromTag(SIPResponse sipResponse) {
     String originalFromTag = getOriginalRequestFromTag();
     if (this.defaultDialog != null) {
-      if (originalFromTag == null ^ sipResponse.getFrom().getTag() == null) {
+      if (originalFromTag == null ^ sipResponse.peekFrom().getTag() == null) {
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
           logger.logDebug("From tag mismatch -- dropping response");
         return false;
       }
       if (originalFromTag != null
-          && !originalFromTag.equalsIgnoreCase(sipResponse.getFrom().getTag()))
+          && !originalFromTag.equalsIgnoreCase(sipResponse.peekFrom().getTag()))
       {
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
           logger.logDebug("From tag mismatch -- dropping response");
@@ -1555,11 +1557,14 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
       logger.logDebug("marking response as retransmission " + isRetransmission + " for ctx " + this);
     }
     sipResponse.setRetransmission(isRetransmission);
+    if (isRetransmission) {
+      sipStack.getMetrics().retransmissionReceived();
+    }
 
     // If a dialog has already been created for this response,
     // pass it up.
     SIPDialog dialog = null;
-    String method = sipResponse.getCSeq().getMethod();
+    String method = sipResponse.peekCSeq().getMethod();
     String dialogId = sipResponse.getDialogId(false);
     if (method.equals(Request.CANCEL) && lastRequest != null) {
       // JvB for CANCEL: use invite CT in CANCEL request to get dialog
@@ -1832,7 +1837,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
             && !getMethod().equalsIgnoreCase(Request.CANCEL))
         {
           originalRequestFromTag = originalRequest.getFromTag();
-          originalRequestCallId = originalRequest.getCallId().getCallId();
+          originalRequestCallId = originalRequest.peekCallId().getCallId();
           originalRequestEventHeader = (Event) originalRequest.getHeader("Event");
           originalRequestContact = originalRequest.getContactHeader();
           originalRequestScheme = originalRequest.getRequestURI().getScheme();
@@ -1996,7 +2001,7 @@ public class SIPClientTransactionImpl extends SIPTransactionImpl implements SIPC
     if (originalRequest == null) {
       return originalRequestCallId;
     }
-    return originalRequest.getCallId().getCallId();
+    return originalRequest.peekCallId().getCallId();
   }
 
   /**
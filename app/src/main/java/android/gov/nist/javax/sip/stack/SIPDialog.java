@@ -40,7 +40,6 @@ import android.gov.nist.javax.sip.ReleaseReferencesStrategy;
 import android.gov.nist.javax.sip.SipListenerExt;
 import android.gov.nist.javax.sip.SipProviderImpl;
 import android.gov.nist.javax.sip.SipStackImpl;
-import android.gov.nist.javax.sip.Utils;
 import android.gov.nist.javax.sip.address.AddressImpl;
 import android.gov.nist.javax.sip.address.SipUri;
 import android.gov.nist.javax.sip.header.Authorization;
@@ -779,7 +778,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         this(transaction.getSipProvider());
 
         SIPRequest sipRequest = (SIPRequest) transaction.getRequest();
-        this.callIdHeader = sipRequest.getCallId();
+        this.callIdHeader = (CallIdHeader) sipRequest.peekCallId().clone();
         this.earlyDialogId = sipRequest.getDialogId(false);
         if (transaction == null)
             throw new NullPointerException("Null tx");
@@ -828,15 +827,15 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         this(sipProvider);
         this.sipStack = (SIPTransactionStack) sipProvider.getSipStack();
         this.setLastResponse(null, sipResponse);
-        this.localSequenceNumber = sipResponse.getCSeq().getSeqNumber();
+        this.localSequenceNumber = sipResponse.peekCSeq().getSeqNumber();
         this.originalLocalSequenceNumber = localSequenceNumber;
-        this.localParty = sipResponse.getFrom().getAddress();
-        this.remoteParty = sipResponse.getTo().getAddress();
-        this.method = sipResponse.getCSeq().getMethod();
-        this.callIdHeader = sipResponse.getCallId();
+        this.localParty = (Address) sipResponse.peekFrom().getAddress().clone();
+        this.remoteParty = (Address) sipResponse.peekTo().getAddress().clone();
+        this.method = sipResponse.peekCSeq().getMethod();
+        this.callIdHeader = (CallIdHeader) sipResponse.peekCallId().clone();
         this.serverTransactionFlag = false;
-        this.setLocalTag(sipResponse.getFrom().getTag());
-        this.setRemoteTag(sipResponse.getTo().getTag());
+        this.setLocalTag(sipResponse.peekFrom().getTag());
+        this.setRemoteTag(sipResponse.peekTo().getTag());
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug("Creating a dialog : " + this);
             logger.logStackTrace();
@@ -874,7 +873,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         terminateOnBye = false;
         localSequenceNumber = subscribeTx.getCSeq();
         SIPRequest not = (SIPRequest) notifyST.getRequest();
-        remoteSequenceNumber = not.getCSeq().getSeqNumber();
+        remoteSequenceNumber = not.peekCSeq().getSeqNumber();
         setDialogId(not.getDialogId(true));
         setLocalTag(not.getToTag());
         setRemoteTag(not.getFromTag());
@@ -883,8 +882,8 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         setLastResponse(subscribeTx, subscribeTx.getLastResponse());
 
         // Dont use setLocal / setRemote here, they make other assumptions
-        localParty = not.getTo().getAddress();
-        remoteParty = not.getFrom().getAddress();
+        localParty = (Address) not.peekTo().getAddress().clone();
+        remoteParty = (Address) not.peekFrom().getAddress().clone();
 
         // initialize d's route set based on the NOTIFY. Any proxies must have
         // Record-Routed
@@ -997,9 +996,9 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
         if (!isServer()) {
 
-            this.remoteParty = sipMessage.getTo().getAddress();
+            this.remoteParty = (Address) sipMessage.peekTo().getAddress().clone();
         } else {
-            this.remoteParty = sipMessage.getFrom().getAddress();
+            this.remoteParty = (Address) sipMessage.peekFrom().getAddress().clone();
 
         }
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -1133,7 +1132,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                 if (sipResponse.getStatusCode() / 100 == 2 && !this.isServer()) {
                     ContactList contactList = sipResponse.getContactHeaders();
                     if (contactList != null
-                            && SIPRequest.isTargetRefresh(sipResponse.getCSeq()
+                            && SIPRequest.isTargetRefresh(sipResponse.peekCSeq()
                                     .getMethod())) {
                         this.setRemoteTarget((ContactHeader) contactList
                                 .getFirst());
@@ -1152,7 +1151,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                         .getState() != DialogState.TERMINATED)
                         || this.pendingRouteUpdateOn202Response) {
                     RecordRouteList rrlist = sipResponse
-                            .getRecordRouteHeaders();
+                            .peekRecordRouteHeaders();
                     // Add the route set from the incoming response in reverse
                     // order for record route headers.
                     if (rrlist != null) {
@@ -1253,14 +1252,14 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         }
 
         if (!this.getCallId().getCallId().equals(
-                ((SIPRequest) request).getCallId().getCallId())) {
+                ((SIPRequest) request).peekCallId().getCallId())) {
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                 logger
                         .logError("CallID " + this.getCallId());
                 logger
                         .logError(
                                 "RequestCallID = "
-                                        + ackRequest.getCallId().getCallId());
+                                        + ackRequest.peekCallId().getCallId());
                 logger.logError("dialog =  " + this);
             }
             throw new SipException("Bad call ID in request");
@@ -1284,7 +1283,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         }
 
         boolean releaseAckSem = false;
-        long cseqNo = ((SIPRequest) request).getCSeq().getSeqNumber();
+        long cseqNo = ((SIPRequest) request).peekCSeq().getSeqNumber();
         if (!this.isAckSent(cseqNo)) {
             releaseAckSem = true;
         }
@@ -1298,7 +1297,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             this.isAcknowledged = true;
             this.highestSequenceNumberAcknowledged = Math.max(
                     this.highestSequenceNumberAcknowledged,
-                    ((SIPRequest) ackRequest).getCSeq().getSeqNumber());
+                    ((SIPRequest) ackRequest).peekCSeq().getSeqNumber());
             if (releaseAckSem && this.isBackToBackUserAgent) {
                 this.releaseAckSem();
             } else {
@@ -1503,7 +1502,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
         // JvB: Acceptable iff remoteCSeq < cseq. remoteCSeq==-1
         // when not defined yet, so that works too
-        return remoteSequenceNumber < dialogRequest.getCSeq().getSeqNumber();
+        return remoteSequenceNumber < dialogRequest.peekCSeq().getSeqNumber();
     }
 
     /**
@@ -1795,7 +1794,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             return;
 
         // Incoming Request has the route list
-        RecordRouteList rrlist = sipRequest.getRecordRouteHeaders();
+        RecordRouteList rrlist = sipRequest.peekRecordRouteHeaders();
         // Add the route set from the incoming response in reverse
         // order
         if (rrlist != null) {
@@ -1947,12 +1946,12 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             }
 
             if (transaction instanceof SIPServerTransaction) {
-                this.hisTag = sipRequest.getFrom().getTag();
+                this.hisTag = sipRequest.peekFrom().getTag();
                 // My tag is assigned when sending response
             } else {
-                setLocalSequenceNumber(sipRequest.getCSeq().getSeqNumber());
+                setLocalSequenceNumber(sipRequest.peekCSeq().getSeqNumber());
                 this.originalLocalSequenceNumber = getLocalSeqNumber();
-                this.setLocalTag(sipRequest.getFrom().getTag());
+                this.setLocalTag(sipRequest.peekFrom().getTag());
                 if (myTag == null)
                     if (logger.isLoggingEnabled())
                         logger
@@ -1985,7 +1984,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             firstTransaction = transaction;
         }
         if (transaction instanceof SIPServerTransaction) {
-            setRemoteSequenceNumber(sipRequest.getCSeq().getSeqNumber());
+            setRemoteSequenceNumber(sipRequest.peekCSeq().getSeqNumber());
         }
 
         // If this is a server transaction record the remote
@@ -2012,7 +2011,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                  * (the number from the CSeq header field value) of the REFER this NOTIFY is associated with. 
                  * This id parameter MAY be included in NOTIFYs to the first REFER a UA receives in a given dialog 
                  */
-        		long lastReferCSeq = ((SIPRequest) transaction.getRequest()).getCSeq().getSeqNumber();
+        		long lastReferCSeq = ((SIPRequest) transaction.getRequest()).peekCSeq().getSeqNumber();
         		this.eventHeader = new Event();
         		this.eventHeader.setEventType("refer");
         		if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -2274,7 +2273,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
      * set the call id header for this dialog.
      */
     private void setCallId(SIPRequest sipRequest) {
-        this.callIdHeader = sipRequest.getCallId();
+        this.callIdHeader = (CallIdHeader) sipRequest.peekCallId().clone();
     }
 
     /*
@@ -2300,9 +2299,9 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
     protected void setLocalParty(SIPMessage sipMessage) {
         if (!isServer()) {
-            this.localParty = sipMessage.getFrom().getAddress();
+            this.localParty = (Address) sipMessage.peekFrom().getAddress().clone();
         } else {
-            this.localParty = sipMessage.getTo().getAddress();
+            this.localParty = (Address) sipMessage.peekTo().getAddress().clone();
         }
     }
 
@@ -2626,7 +2625,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                 branch = lastResponseTopMostVia.getBranch(); // non-2xx ACK uses
                 // same branch
             } else {
-                branch = Utils.getInstance().generateBranchId(); // 2xx ACK gets
+                branch = sipStack.getIdGenerator().generateBranchId(); // 2xx ACK gets
                 // new branch
             }
         } else if (method.equals(Request.CANCEL)) {
@@ -2697,20 +2696,20 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             throw new SipException("Cannot send request; BYE already sent");
         }
 
-        if (dialogRequest.getTopmostVia() == null) {
+        if (dialogRequest.peekTopmostVia() == null) {
             Via via = ((SIPClientTransaction) clientTransaction)
                     .getOutgoingViaHeader();
             dialogRequest.addHeader(via);
         }
         if (!this.getCallId().getCallId().equalsIgnoreCase(
-                dialogRequest.getCallId().getCallId())) {
+                dialogRequest.peekCallId().getCallId())) {
 
             if (logger.isLoggingEnabled()) {
                 logger
                         .logError("CallID " + this.getCallId());
                 logger.logError(
                         "SIPDialog::sendRequest:RequestCallID = "
-                                + dialogRequest.getCallId().getCallId());
+                                + dialogRequest.peekCallId().getCallId());
                 logger.logError("dialog =  " + this);
             }
             throw new SipException("Bad call ID in request");
@@ -2854,7 +2853,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
         try {
             // Increment before setting!!
-        	long cseqNumber = dialogRequest.getCSeq() == null?getLocalSeqNumber():dialogRequest.getCSeq().getSeqNumber();
+        	long cseqNumber = dialogRequest.peekCSeq() == null?getLocalSeqNumber():dialogRequest.peekCSeq().getSeqNumber();
         	if(cseqNumber > getLocalSeqNumber()) {
         		setLocalSequenceNumber(cseqNumber);
         	} else {
@@ -2935,6 +2934,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                 }
             }
             this.sendAck(lastAckSentParsed, false);
+            sipStack.getMetrics().retransmissionSent();
         } else {
         	if(logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)){
         		logger.logDebug("SIPDialog::resendAck:lastAck sent is NULL hence not resending ACK");
@@ -3040,13 +3040,13 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
         try {
             SIPResponse sipResponse = (SIPResponse) relResponse;
             SIPRequest sipRequest = this.createRequest(Request.PRACK,
-                    sipResponse.getTopmostVia().getTransport());
-            String toHeaderTag = sipResponse.getTo().getTag();
+                    sipResponse.peekTopmostVia().getTransport());
+            String toHeaderTag = sipResponse.peekTo().getTag();
             sipRequest.setToTag(toHeaderTag);
             RAck rack = new RAck();
             RSeq rseq = (RSeq) relResponse.getHeader(RSeqHeader.NAME);
-            rack.setMethod(sipResponse.getCSeq().getMethod());
-            rack.setCSequenceNumber((int) sipResponse.getCSeq().getSeqNumber());
+            rack.setMethod(sipResponse.peekCSeq().getMethod());
+            rack.setCSequenceNumber((int) sipResponse.peekCSeq().getSeqNumber());
             rack.setRSequenceNumber(rseq.getSeqNumber());
             sipRequest.setHeader(rack);
             if (this.proxyAuthorizationHeader != null) {
@@ -3236,16 +3236,16 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             }
             via.removeParameters();
             if (originalRequest != null
-                    && originalRequest.getTopmostVia() != null) {
+                    && originalRequest.peekTopmostVia() != null) {
                 NameValueList originalRequestParameters = originalRequest
-                        .getTopmostVia().getParameters();
+                        .peekTopmostVia().getParameters();
                 if (originalRequestParameters != null
                         && originalRequestParameters.size() > 0) {
                     via.setParameters((NameValueList) originalRequestParameters
                             .clone());
                 }
             }
-            via.setBranch(Utils.getInstance().generateBranchId()); // new branch
+            via.setBranch(sipStack.getIdGenerator().generateBranchId()); // new branch
             vias.add(via);
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                 logger.logDebug("Adding via to the ACK we are creating : " + via + " lastResponseTopMostVia " + lastResponseTopMostVia);
@@ -3348,7 +3348,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
      */
     public void setLastResponse(SIPTransaction transaction,
             SIPResponse sipResponse) {
-        this.callIdHeader = sipResponse.getCallId();
+        this.callIdHeader = sipResponse.peekCallId();
         final int statusCode = sipResponse.getStatusCode();
         if (statusCode == 100) {
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
@@ -3366,10 +3366,10 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
             this.lastResponseStatusCode = Integer.valueOf(statusCode);
             // Issue 378 : http://java.net/jira/browse/JSIP-378
             // Cloning the via header to avoid race condition and be modified
-            this.lastResponseTopMostVia = (Via) sipResponse.getTopmostVia().clone();            
-            String cseqMethod = sipResponse.getCSeqHeader().getMethod();
+            this.lastResponseTopMostVia = (Via) sipResponse.peekTopmostVia().clone();            
+            String cseqMethod = sipResponse.peekCSeq().getMethod();
             this.lastResponseMethod = cseqMethod;
-            long responseCSeqNumber = sipResponse.getCSeq().getSeqNumber();
+            long responseCSeqNumber = sipResponse.peekCSeq().getSeqNumber();
             
             boolean is100ClassResponse = statusCode / 100 == 1;
             boolean is200ClassResponse = statusCode / 100 == 2;
@@ -3610,10 +3610,10 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
                     boolean doPutDialog = false;
 
                     if (getLocalTag() == null
-                            && sipResponse.getTo().getTag() != null
+                            && sipResponse.peekTo().getTag() != null
                             && SIPTransactionStack.isDialogCreated(cseqMethod)
                             && cseqMethod.equals(getMethod())) {
-                        setLocalTag(sipResponse.getTo().getTag());
+                        setLocalTag(sipResponse.peekTo().getTag());
                         doPutDialog = true;
                     }
 
@@ -3684,7 +3684,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
             }
         } finally {
-            if (sipResponse.getCSeq().getMethod().equals(Request.INVITE) &&
+            if (sipResponse.peekCSeq().getMethod().equals(Request.INVITE) &&
                     transaction != null && transaction instanceof ClientTransaction && this.getState() != DialogState.TERMINATED) {
                 this.acquireTimerTaskSem();
                 try {
@@ -3851,7 +3851,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
          * Route headers copied over but reliable provisional responses do. See
          * RFC 3262 Table 2.
          */
-        RecordRouteList rrl = request.getRecordRouteHeaders();
+        RecordRouteList rrl = request.peekRecordRouteHeaders();
         if (rrl != null) {
             RecordRouteList rrlclone = (RecordRouteList) rrl.clone();
             response.setHeader(rrlclone);
@@ -4301,7 +4301,7 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
     public void setPendingRouteUpdateOn202Response(SIPRequest sipRequest) {
         this.pendingRouteUpdateOn202Response = true;
         // Issue 374 : patch from ivan dubrov : get the from tag instead of to tag
-        String fromTag = sipRequest.getFromHeader().getTag();
+        String fromTag = sipRequest.peekFrom().getTag();
         if (fromTag != null) {
             this.setRemoteTag(fromTag);
         }
@@ -4462,8 +4462,8 @@ public class SIPDialog implements android.javax.sip.Dialog, DialogExt {
 
     public void checkRetransmissionForForking(SIPResponse response) {
         final int statusCode = response.getStatusCode();
-        final String responseMethod = response.getCSeqHeader().getMethod();
-        final long responseCSeqNumber = response.getCSeq().getSeqNumber();
+        final String responseMethod = response.peekCSeq().getMethod();
+        final long responseCSeqNumber = response.peekCSeq().getSeqNumber();
         /*From RFC3262, 1 Introduction: Each provisional response is given a sequence number, carried in the
         RSeq header field in the response.  The PRACK messages contain an
         RAck header field, which indicates the sequence number of the
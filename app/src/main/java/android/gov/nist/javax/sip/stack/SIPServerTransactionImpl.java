@@ -32,7 +32,6 @@ import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.ServerLogger;
 import android.gov.nist.core.StackLogger;
 import android.gov.nist.javax.sip.ReleaseReferencesStrategy;
-import android.gov.nist.javax.sip.SIPConstants;
 import android.gov.nist.javax.sip.SipProviderImpl;
 import android.gov.nist.javax.sip.Utils;
 import android.gov.nist.javax.sip.header.Expires;
@@ -266,7 +265,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -327,7 +326,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -375,7 +374,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -399,7 +398,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                 // Note that the transaction record is actually removed in
                 // the connection linger timer.
                 try {
-                       sipStack.getTimer().cancel(this);
+                       cancelTransactionTimer(this);
                 } catch (IllegalStateException ex) {
                     if (!sipStack.isAlive())
                         return;
@@ -433,7 +432,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -473,7 +472,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
             	//should open new channel based on via header
                 getMessageChannel().sendMessage(transactionResponse);
             } else {
-                Via via = transactionResponse.getTopmostVia();
+                Via via = transactionResponse.peekTopmostVia();
                 String transport = via.getTransport();
                 if (transport == null)
                     throw new IOException("missing transport!");
@@ -598,7 +597,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
 
         // Flags whether the select message is part of this transaction
         boolean transactionMatches = false;
-        final String method = messageToTest.getCSeq().getMethod();
+        final String method = messageToTest.peekCSeq().getMethod();
         SIPRequest origRequest = getOriginalRequest();
         // Invite Server transactions linger in the terminated state in the
         // transaction
@@ -607,7 +606,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         if (isInviteTransaction() || !isTerminated()) {
 
             // Get the topmost Via header and its branch parameter
-            final Via topViaHeader = messageToTest.getTopmostVia();
+            final Via topViaHeader = messageToTest.peekTopmostVia();
             if (topViaHeader != null) {
 
 //                topViaHeader = (Via) viaHeaders.getFirst();
@@ -617,8 +616,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
 
                     // If the branch parameter exists but
                     // does not start with the magic cookie,
-                    if (!messageBranch.toLowerCase().startsWith(
-                            SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
+                    if (!Utils.isRFC3261Branch(messageBranch)) {
 
                         // Flags this as old
                         // (RFC2543-compatible) client
@@ -638,7 +636,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                         transactionMatches = this.getMethod().equals(Request.CANCEL)
                                 && getBranch().equalsIgnoreCase(messageBranch)
                                 && topViaHeader.getSentBy().equals(
-                                         origRequest.getTopmostVia()
+                                         origRequest.peekTopmostVia()
                                                 .getSentBy());
 
                     } else {
@@ -647,7 +645,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                         if(origRequest != null) {
                             transactionMatches = getBranch().equalsIgnoreCase(messageBranch)
                                 && topViaHeader.getSentBy().equals(
-                                          origRequest.getTopmostVia()
+                                          origRequest.peekTopmostVia()
                                                 .getSentBy());
                         } else {
                             transactionMatches = getBranch().equalsIgnoreCase(messageBranch)
@@ -670,34 +668,34 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                     // to be part of an otherwise-matching INVITE transaction.
                     String originalFromTag = origRequest.getFromTag();
 
-                    String thisFromTag = messageToTest.getFrom().getTag();
+                    String thisFromTag = messageToTest.getFromTag();
 
                     boolean skipFrom = (originalFromTag == null || thisFromTag == null);
 
                     String originalToTag = origRequest.getToTag();
 
-                    String thisToTag = messageToTest.getTo().getTag();
+                    String thisToTag = messageToTest.getToTag();
 
                     boolean skipTo = (originalToTag == null || thisToTag == null);
                     boolean isResponse = (messageToTest instanceof SIPResponse);
                     // Issue #96: special case handling for a CANCEL request -
                     // the CSeq method of the original request must
                     // be CANCEL for it to have a chance at matching.
-                    if (messageToTest.getCSeq().getMethod().equalsIgnoreCase(Request.CANCEL)
-                            && !origRequest.getCSeq().getMethod().equalsIgnoreCase(
+                    if (messageToTest.peekCSeq().getMethod().equalsIgnoreCase(Request.CANCEL)
+                            && !origRequest.peekCSeq().getMethod().equalsIgnoreCase(
                                     Request.CANCEL)) {
                         transactionMatches = false;
                     } else if ((isResponse || origRequest.getRequestURI().equals(
                             ((SIPRequest) messageToTest).getRequestURI()))
                             && (skipFrom || originalFromTag != null && originalFromTag.equalsIgnoreCase(thisFromTag))
                             && (skipTo || originalToTag != null && originalToTag.equalsIgnoreCase(thisToTag))
-                            && origRequest.getCallId().getCallId().equalsIgnoreCase(
-                                    messageToTest.getCallId().getCallId())
-                            && origRequest.getCSeq().getSeqNumber() == messageToTest
-                                    .getCSeq().getSeqNumber()
-                            && ((!messageToTest.getCSeq().getMethod().equals(Request.CANCEL)) ||
-                                    getMethod().equals(messageToTest.getCSeq().getMethod()))
-                            && topViaHeader.equals(origRequest.getTopmostVia())) {
+                            && origRequest.peekCallId().getCallId().equalsIgnoreCase(
+                                    messageToTest.peekCallId().getCallId())
+                            && origRequest.peekCSeq().getSeqNumber() == messageToTest
+                                    .peekCSeq().getSeqNumber()
+                            && ((!messageToTest.peekCSeq().getMethod().equals(Request.CANCEL)) ||
+                                    getMethod().equals(messageToTest.peekCSeq().getMethod()))
+                            && topViaHeader.equals(origRequest.peekTopmostVia())) {
 
                         transactionMatches = true;
                     }
@@ -821,6 +819,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                 if (TransactionState._PROCEEDING == getRealState()
                         || TransactionState._COMPLETED == getRealState()) {
                     this.semRelease();
+                    sipStack.getMetrics().retransmissionReceived();
                     // Resend the last response to
                     // the client
                     // Send the message to the client
@@ -870,7 +869,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                     if (thisDialog == null || !thisDialog.ackProcessed) {
                         // Filter out duplicate acks
                         if (thisDialog != null) {
-                            thisDialog.ackReceived(transactionRequest.getCSeq().getSeqNumber());
+                            thisDialog.ackReceived(transactionRequest.peekCSeq().getSeqNumber());
                             thisDialog.ackProcessed = true;
                         }
                         requestOf.processRequest(transactionRequest, encapsulatedChannel);
@@ -925,14 +924,14 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                 // the
                 // outgoing via.
                 if (originalRequestBranch != null)
-                    transactionResponse.getTopmostVia().setBranch(this.getBranch());
+                    transactionResponse.getTopmostViaForUpdate().setBranch(this.getBranch());
                 else
-                    transactionResponse.getTopmostVia().removeParameter(ParameterNames.BRANCH);
+                    transactionResponse.getTopmostViaForUpdate().removeParameter(ParameterNames.BRANCH);
 
                 // Make the topmost via headers match identically for the
                 // transaction rsponse.
                 if (!originalRequestHasPort)
-                    transactionResponse.getTopmostVia().removePort();
+                    transactionResponse.getTopmostViaForUpdate().removePort();
             } catch (ParseException ex) {
                logger.logError("UnexpectedException",ex);
                throw new IOException("Unexpected exception");
@@ -940,7 +939,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
 
             // Method of the response does not match the request used to
             // create the transaction - transaction state does not change.
-            if (!transactionResponse.getCSeq().getMethod().equals(
+            if (!transactionResponse.peekCSeq().getMethod().equals(
                     getMethod())) {
                 sendResponse(transactionResponse);
                 return;
@@ -1202,11 +1201,20 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
     @Override
     public void resendLastResponseAsBytes() throws IOException {
 
+        if(lastResponse != null || lastResponseAsBytes != null) {
+            sipStack.getMetrics().retransmissionSent();
+        }
         if(lastResponse != null) {
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                 logger.logDebug("resend last response " + lastResponse);
             }
-            sendMessage(lastResponse);
+            // A retransmission is a copy of the response as sent the first time.
+            lastResponse.setReuseEncodedBytes(true);
+            try {
+                sendMessage(lastResponse);
+            } finally {
+                lastResponse.setReuseEncodedBytes(false);
+            }
         } else if (lastResponseAsBytes != null) {
             // Send the message to the client
 //                if(!checkStateTimers(lastResponseStatusCode)) {
@@ -1390,7 +1398,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         }
 
         // check for meaningful response.
-        final String responseMethod = sipResponse.getCSeq().getMethod();
+        final String responseMethod = sipResponse.peekCSeq().getMethod();
         if (!responseMethod.equals(this.getMethod())) {
             throw new IllegalTransactionStateException(
                     "CSeq method does not match Request method of request that created the tx.", Reason.UnmatchingCSeq);
@@ -1484,7 +1492,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                         // to
                         // tag on the response -- be nice and assign the tag for
                         // the user.
-                        sipResponse.getTo().setTag(Utils.getInstance().generateTag());
+                        sipResponse.getTo().setTag(sipStack.getIdGenerator().generateTag());
                     } else if (dialog.getLocalTag() != null && sipResponse.getToTag() == null) {
                         if ( logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                             logger.logDebug("assigning toTag : serverTransaction = " + this + " dialog "
@@ -1499,7 +1507,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                     }
                 }
 
-                if (!sipResponse.getCallId().getCallId().equals(dialog.getCallId().getCallId())) {
+                if (!sipResponse.peekCallId().getCallId().equals(dialog.getCallId().getCallId())) {
                     throw new SipException("Dialog mismatch!");
                 }
             }
@@ -1516,8 +1524,8 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
             if (fromTag != null && sipResponse.getFromTag() != null
                     && !sipResponse.getFromTag().equals(fromTag)) {
                 throw new SipException("From tag of request does not match response from tag");
-            } else if (fromTag != null) {
-                sipResponse.getFrom().setTag(fromTag);
+            } else if (fromTag != null && sipResponse.getFromTag() == null) {
+                sipResponse.setFromTag(fromTag);
             } else {
                 if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                     logger.logDebug("WARNING -- Null From tag in request!!");
@@ -1628,7 +1636,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                     SIPStackTimerTask myTimer = new TransactionTimer();
                     // Do not schedule when the stack is not alive.
                     if (sipStack.getTimer() != null && sipStack.getTimer().isStarted() ) {
-                        sipStack.getTimer().scheduleWithFixedDelay(myTimer, baseTimerInterval, baseTimerInterval);
+                        scheduleTransactionTimer(myTimer);
                     }
                     myTimer = null;
                 }
@@ -1664,7 +1672,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                         public Object getThreadHash() {
                             Request request = getRequest();
                             if (request != null && request instanceof SIPRequest) {
-                                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                                return ((SIPRequest)request).peekCallId().getCallId();
                             } else {
                                 return null;
                             }
@@ -1779,8 +1787,8 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
         } else {
             SIPResponse reliableResponse = (SIPResponse) relResponse;
             this.pendingReliableResponseAsBytes = reliableResponse.encodeAsBytes(this.getTransport());
-            this.pendingReliableResponseMethod = reliableResponse.getCSeq().getMethod();
-            this.pendingReliableCSeqNumber = reliableResponse.getCSeq().getSeqNumber();
+            this.pendingReliableResponseMethod = reliableResponse.peekCSeq().getMethod();
+            this.pendingReliableCSeqNumber = reliableResponse.peekCSeq().getSeqNumber();
         }
         /*
          * In addition, it MUST contain a Require header field containing the option tag 100rel,
@@ -2098,7 +2106,7 @@ public class SIPServerTransactionImpl extends SIPTransactionImpl implements SIPS
                 originalRequest.setInviteTransaction(null);
                 if(!getMethod().equalsIgnoreCase(Request.INVITE)) {
                     if(originalRequestSentBy == null) {
-                        originalRequestSentBy = originalRequest.getTopmostVia().getSentBy();
+                        originalRequestSentBy = originalRequest.peekTopmostVia().getSentBy();
                     }
                     if(originalRequestFromTag == null) {
                         originalRequestFromTag = originalRequest.getFromTag();
@@ -32,7 +32,7 @@ import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.ServerLogger;
 import android.gov.nist.core.StackLogger;
 import android.gov.nist.javax.sip.ReleaseReferencesStrategy;
-import android.gov.nist.javax.sip.SIPConstants;
+import android.gov.nist.javax.sip.Utils;
 import android.gov.nist.javax.sip.SipProviderImpl;
 import android.gov.nist.javax.sip.SipStackImpl;
 import android.gov.nist.javax.sip.ThreadAffinityTask;
@@ -55,6 +55,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -168,6 +169,25 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
     // Number of ticks before the transaction times out
     protected int timeoutTimerTicksLeft;
 
+    // Times (see nanoClock) at which the timeout and retransmission timers are
+    // due when the transaction timers are event driven, -1 if the timer is disabled
+    private transient volatile long timeoutTimerDeadline = -1;
+
+    private transient volatile long retransmissionTimerDeadline = -1;
+
+    // Task run at the next deadline when the transaction timers are event
+    // driven, the one shot task scheduled to run it and the time it is
+    // scheduled for. The scheduled task is null when none is pending.
+    private transient volatile SIPStackTimerTask transactionTimerTask;
+
+    private transient ScheduledTransactionTimer scheduledTransactionTimer;
+
+    private transient long transactionTimerDeadline;
+
+    private static final long NANO_CLOCK_ORIGIN = System.nanoTime();
+
+    private transient Object transactionTimerTaskLock = new Object();
+
     // List of event listeners for this transaction
     private transient Set<SIPTransactionEventListener> eventListeners;
 
@@ -294,7 +314,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -334,7 +354,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         public Object getThreadHash() {
             Request request = getRequest();
             if (request != null && request instanceof SIPRequest) {
-                return ((SIPRequest)request).getCallIdHeader().getCallId();
+                return ((SIPRequest)request).peekCallId().getCallId();
             } else {
                 return null;
             }
@@ -404,8 +424,8 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         // This will be cleared later.
 
         this.originalRequest = newOriginalRequest;
-        this.originalRequestCSeqNumber = newOriginalRequest.getCSeq().getSeqNumber();
-        final Via topmostVia = newOriginalRequest.getTopmostVia();
+        this.originalRequestCSeqNumber = newOriginalRequest.peekCSeq().getSeqNumber();
+        final Via topmostVia = newOriginalRequest.peekTopmostVia();
         this.originalRequestBranch = topmostVia.getBranch();
         this.originalRequestHasPort = topmostVia.hasPort();
         int originalRequestViaPort = topmostVia.getPort();
@@ -579,6 +599,11 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         if(newState == TransactionState._COMPLETED) {
         	enableTimeoutTimer(TIMER_H); // timer H must be started around now
         }
+        if (newState == TransactionState._TERMINATED
+                && sipStack.isEventDrivenTransactionTimers()) {
+            // no tick will notice the termination, wake the timer task up
+            scheduleNextTransactionTimer();
+        }
         
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug("Transaction:setState " + newState
@@ -633,6 +658,11 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
                     getTimerT2());
         }
         retransmissionTimerLastTickCount = retransmissionTimerTicksLeft;
+        if (sipStack.isEventDrivenTransactionTimers()) {
+            retransmissionTimerDeadline = nanoClock() + TimeUnit.MILLISECONDS.toNanos(
+                    (long) retransmissionTimerTicksLeft * baseTimerInterval);
+            scheduleNextTransactionTimer();
+        }
     }
 
 
@@ -642,6 +672,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
     @Override
     public void disableRetransmissionTimer() {
         retransmissionTimerTicksLeft = -1;
+        retransmissionTimerDeadline = -1;
     }
 
     /**
@@ -658,6 +689,11 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
                     + timeoutTimerTicksLeft);
 
         timeoutTimerTicksLeft = tickCount;
+        if (sipStack.isEventDrivenTransactionTimers()) {
+            timeoutTimerDeadline = nanoClock() + TimeUnit.MILLISECONDS.toNanos(
+                    (long) tickCount * baseTimerInterval);
+            scheduleNextTransactionTimer();
+        }
     }
 
 
@@ -668,6 +704,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
     public void disableTimeoutTimer() {
     	if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) logger.logDebug("disableTimeoutTimer " + this);
         timeoutTimerTicksLeft = -1;
+        timeoutTimerDeadline = -1;
     }
     
 
@@ -676,6 +713,10 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
      */
     @Override
     public void fireTimer() {
+        if (sipStack.isEventDrivenTransactionTimers()) {
+            fireDueTimers();
+            return;
+        }
         // If the timeout timer is enabled,
 
         if (timeoutTimerTicksLeft != -1) {
@@ -698,6 +739,154 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
         } 
     }
 
+    /**
+     * Fires the event driven timers whose deadline has passed and schedules
+     * the transaction timer task at the next deadline.
+     */
+    private void fireDueTimers() {
+        long now = nanoClock();
+        long deadline = timeoutTimerDeadline;
+        if (deadline != -1 && deadline <= now) {
+            timeoutTimerDeadline = -1;
+            fireTimeoutTimer();
+        }
+        deadline = retransmissionTimerDeadline;
+        if (deadline != -1 && deadline <= now) {
+            // Enable this timer to fire again after
+            // twice the original time
+            enableRetransmissionTimer(retransmissionTimerLastTickCount * 2);
+            fireRetransmissionTimer();
+        }
+        scheduleNextTransactionTimer();
+    }
+
+    /**
+     * Registers the task that runs the transaction timers. By default it is
+     * run every base timer interval. When the transaction timers are event
+     * driven, it is run once at the earliest deadline of the timeout and
+     * retransmission timers, and after the transaction has terminated so that
+     * it can clean up, and is run again at the next deadline each time.
+     *
+     * @param task
+     *            task calling fireTimer(), or cleaning up the transaction once
+     *            terminated.
+     */
+    protected void scheduleTransactionTimer(SIPStackTimerTask task) {
+        if (!sipStack.isEventDrivenTransactionTimers()) {
+            sipStack.getTimer().scheduleWithFixedDelay(task, baseTimerInterval,
+                    baseTimerInterval);
+            return;
+        }
+        synchronized (transactionTimerTaskLock) {
+            transactionTimerTask = task;
+        }
+        scheduleNextTransactionTimer();
+    }
+
+    /**
+     * Cancels the task registered with scheduleTransactionTimer.
+     */
+    protected void cancelTransactionTimer(SIPStackTimerTask task) {
+        if (!sipStack.isEventDrivenTransactionTimers()) {
+            sipStack.getTimer().cancel(task);
+            return;
+        }
+        synchronized (transactionTimerTaskLock) {
+            if (transactionTimerTask == task) {
+                transactionTimerTask = null;
+                if (scheduledTransactionTimer != null) {
+                    sipStack.getTimer().cancel(scheduledTransactionTimer);
+                    scheduledTransactionTimer = null;
+                }
+            }
+        }
+        // as the timer does when a task it runs is cancelled
+        task.cleanUpBeforeCancel();
+    }
+
+    /**
+     * Schedules the event driven transaction timer task at the next deadline,
+     * unless it is already scheduled to run earlier.
+     */
+    private void scheduleNextTransactionTimer() {
+        synchronized (transactionTimerTaskLock) {
+            if (transactionTimerTask == null) {
+                // not started yet, the deadlines are picked up when it is
+                return;
+            }
+            long now = nanoClock();
+            long deadline;
+            if (isTerminated()) {
+                deadline = now + TimeUnit.MILLISECONDS.toNanos(baseTimerInterval);
+            } else {
+                deadline = timeoutTimerDeadline;
+                long retransmissionDeadline = retransmissionTimerDeadline;
+                if (deadline == -1 || (retransmissionDeadline != -1
+                        && retransmissionDeadline < deadline)) {
+                    deadline = retransmissionDeadline;
+                }
+                if (deadline == -1) {
+                    return;
+                }
+            }
+            if (scheduledTransactionTimer != null) {
+                if (transactionTimerDeadline <= deadline) {
+                    return;
+                }
+                // The one shot task is ours, cancelling it does not clean up
+                // the transaction timer task.
+                sipStack.getTimer().cancel(scheduledTransactionTimer);
+                scheduledTransactionTimer = null;
+            }
+            ScheduledTransactionTimer timer = new ScheduledTransactionTimer();
+            // round up, so that the timers are due when it runs
+            long delay = (Math.max(0, deadline - now) + 999999) / 1000000;
+            try {
+                sipStack.getTimer().schedule(timer, delay);
+                scheduledTransactionTimer = timer;
+                transactionTimerDeadline = deadline;
+            } catch (IllegalStateException ex) {
+                // the stack is shutting down
+            }
+        }
+    }
+
+    /**
+     * Monotonic time in nanoseconds the event driven timer deadlines are
+     * expressed in. Unlike the wall clock it does not step, and unlike
+     * System.nanoTime() itself it is never negative.
+     */
+    private static long nanoClock() {
+        return System.nanoTime() - NANO_CLOCK_ORIGIN;
+    }
+
+    /**
+     * One shot task running the registered transaction timer task at the
+     * next deadline, when the transaction timers are event driven.
+     */
+    private class ScheduledTransactionTimer extends SIPStackTimerTask {
+
+        public void runTask() {
+            SIPStackTimerTask task;
+            synchronized (transactionTimerTaskLock) {
+                if (scheduledTransactionTimer != this) {
+                    // cancelled or replaced while it was about to run
+                    return;
+                }
+                scheduledTransactionTimer = null;
+                task = transactionTimerTask;
+            }
+            if (task != null) {
+                task.runTask();
+            }
+        }
+
+        public Object getThreadHash() {
+            SIPStackTimerTask task = transactionTimerTask;
+            return task != null ? task.getThreadHash() : null;
+        }
+    }
+
     /**
      * @see android.gov.nist.javax.sip.stack.SIPTransaction#isTerminated()
      */
@@ -850,11 +1039,13 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
             					}
                                                 
                                                 public Object getThreadHash() {
-                                                    return messageToSend.getCallId().getCallId();
+                                                    return messageToSend.peekCallId().getCallId();
                                                 }
             				};
             				getSIPStack().getSelfRoutingThreadpoolExecutor().execute(processMessageTask);
 
+            			} catch (RejectedExecutionException e) {
+            				logger.logWarning("Dropping self routed message: " + e.getMessage());
             			} catch (Exception e) {
 
             				logger.logError("Error passing message in self routing TCP", e);
@@ -882,11 +1073,13 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
             					}
                                                 
                                                 public Object getThreadHash() {
-                                                    return messageToSend.getCallId().getCallId();
+                                                    return messageToSend.peekCallId().getCallId();
                                                 }
             				};
             				getSIPStack().getSelfRoutingThreadpoolExecutor().execute(processMessageTask);
 
+            			} catch (RejectedExecutionException e) {
+            				logger.logWarning("Dropping self routed message: " + e.getMessage());
             			} catch (Exception e) {
             				logger.logError("Error passing message in TLS self routing", e);
             			}
@@ -910,10 +1103,12 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
     							}
                                                         
                                                         public Object getThreadHash() {
-                                                            return messageToSend.getCallId().getCallId();
+                                                            return messageToSend.peekCallId().getCallId();
                                                         }
     						};
     						getSIPStack().getSelfRoutingThreadpoolExecutor().execute(processMessageTask);
+						} catch (RejectedExecutionException e) {
+							logger.logWarning("Dropping self routed message: " + e.getMessage());
 						} catch (Exception e) {
 							logger.logError("Error passing message in self routing", e);
 						}
@@ -1112,7 +1307,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
                 || this.getMethod().equals(Request.CANCEL))
             return false;
         // Get the topmost Via header and its branch parameter
-        topViaHeader = requestToTest.getTopmostVia();
+        topViaHeader = requestToTest.peekTopmostVia();
         if (topViaHeader != null) {
 
 //            topViaHeader = (Via) viaHeaders.getFirst();
@@ -1121,7 +1316,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
 
                 // If the branch parameter exists but
                 // does not start with the magic cookie,
-                if (!messageBranch.toLowerCase().startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
+                if (!Utils.isRFC3261Branch(messageBranch)) {
 
                     // Flags this as old
                     // (RFC2543-compatible) client
@@ -1139,7 +1334,7 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
                 // this message,
                 if (getBranch().equalsIgnoreCase(messageBranch)
                         && topViaHeader.getSentBy().equals(
-                                origRequest.getTopmostVia().getSentBy())) {
+                                origRequest.peekTopmostVia().getSentBy())) {
                     transactionMatches = true;
                     if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                         logger.logDebug("returning  true");
@@ -1156,15 +1351,15 @@ public abstract class SIPTransactionImpl implements SIPTransaction {
 
                 if (origRequest.getRequestURI().equals(
                         requestToTest.getRequestURI())
-                        && origRequest.getTo().equals(
-                                requestToTest.getTo())
-                        && origRequest.getFrom().equals(
-                                requestToTest.getFrom())
-                        && origRequest.getCallId().getCallId().equals(
-                                requestToTest.getCallId().getCallId())
-                        && origRequest.getCSeq().getSeqNumber() == requestToTest
-                                .getCSeq().getSeqNumber()
-                        && topViaHeader.equals(origRequest.getTopmostVia())) {
+                        && origRequest.peekTo().equals(
+                                requestToTest.peekTo())
+                        && origRequest.peekFrom().equals(
+                                requestToTest.peekFrom())
+                        && origRequest.peekCallId().getCallId().equals(
+                                requestToTest.peekCallId().getCallId())
+                        && origRequest.peekCSeq().getSeqNumber() == requestToTest
+                                .peekCSeq().getSeqNumber()
+                        && topViaHeader.equals(origRequest.peekTopmostVia())) {
 
                     transactionMatches = true;
                 }
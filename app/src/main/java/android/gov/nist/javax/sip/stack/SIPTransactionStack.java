@@ -39,6 +39,7 @@ import android.gov.nist.javax.sip.message.SIPMessage;
 import android.gov.nist.javax.sip.message.SIPRequest;
 import android.gov.nist.javax.sip.message.SIPResponse;
 import android.gov.nist.javax.sip.parser.MessageParserFactory;
+import android.gov.nist.javax.sip.stack.metrics.SipStackMetrics;
 import android.gov.nist.javax.sip.stack.timers.SipTimer;
 
 import android.javax.sip.*;
@@ -102,10 +103,10 @@ public abstract class SIPTransactionStack implements
     protected ConcurrentHashMap<String, SIPServerTransaction> retransmissionAlertTransactions;
 
     // Table of early dialogs ( to keep identity mapping )
-    protected ConcurrentHashMap<String, SIPDialog> earlyDialogTable;
+    protected StripedIdentifierTable<SIPDialog> earlyDialogTable;
 
     // Table of dialogs.
-    protected ConcurrentHashMap<String, SIPDialog> dialogTable;
+    protected StripedIdentifierTable<SIPDialog> dialogTable;
 
     // Table of server dialogs ( for loop detection)
     protected ConcurrentHashMap<String, SIPDialog> serverDialogMergeTestTable;
@@ -121,7 +122,11 @@ public abstract class SIPTransactionStack implements
     private ConcurrentHashMap<String, SIPServerTransaction> pendingTransactions;
 
     // hashtable for fast lookup
-    protected ConcurrentHashMap<String, SIPClientTransaction> clientTransactionTable;
+    protected StripedIdentifierTable<SIPClientTransaction> clientTransactionTable;
+
+    // Monitor the threads creating client transactions wait on when the
+    // client transaction table is full
+    private final Object clientTransactionTableMonitor = new Object();
 
     // Set to false if you want hiwat and lowat to be consulted.
     protected boolean unlimitedServerTransactionTableSize = true;
@@ -148,7 +153,7 @@ public abstract class SIPTransactionStack implements
     private AtomicInteger activeClientTransactionCount = new AtomicInteger(0);
 
     // Hashtable for server transactions.
-    protected ConcurrentHashMap<String, SIPServerTransaction> serverTransactionTable;
+    protected StripedIdentifierTable<SIPServerTransaction> serverTransactionTable;
 
     // A table of ongoing transactions indexed by mergeId ( for detecting merged
     // requests.
@@ -328,6 +333,9 @@ public abstract class SIPTransactionStack implements
     // the stack
     protected ThreadAuditor threadAuditor = null;
 
+    // Runtime metrics of the stack, see SipStackMetrics
+    protected final SipStackMetrics metrics = new SipStackMetrics(this);
+
     protected LogRecordFactory logRecordFactory;
 
     // Set to true if the client CANCEL transaction should be checked before
@@ -348,6 +356,21 @@ public abstract class SIPTransactionStack implements
 
     private int stackCongestionControlTimeout = 0;
 
+    // Number of pooled UDP receive buffers, 0 disables pooling
+    protected int udpBufferPoolSize = 0;
+
+    // Read UDP datagrams through a DatagramChannel instead of the socket
+    protected boolean udpDatagramChannelEnabled = false;
+
+    // Number of sockets (and reader threads) bound to each UDP listening point
+    protected int udpReaderThreads = 1;
+
+    // Keep the headers the stack does not need unparsed until accessed
+    protected boolean lazyHeaderParsing = false;
+
+    // Schedule the transaction timers at their deadlines rather than polling every tick
+    protected boolean eventDrivenTransactionTimers = false;
+
     protected boolean isBackToBackUserAgent = false;
 
     protected boolean checkBranchId;
@@ -392,11 +415,31 @@ public abstract class SIPTransactionStack implements
     public MessageParserFactory messageParserFactory;
     // factory used to create MessageProcessor objects
     public MessageProcessorFactory messageProcessorFactory;
+    // generator of the Call-IDs, tags and branch identifiers
+    protected UtilsExt idGenerator = Utils.getInstance();
     
     public long nioSocketMaxIdleTime;
     
     public NIOMode nioMode = NIOMode.BLOCKING;
 
+    // Number of selector threads of each NIO TCP, TLS and WebSocket message processor
+    protected int nioSelectorThreads = 1;
+
+    // Run the readers of the blocking TCP and TLS channels as tasks of the
+    // channel executor, on virtual threads where available
+    protected boolean virtualThreadChannels = false;
+
+    private ExecutorService channelExecutor;
+
+    // Set once the channel executor runs its tasks on virtual threads
+    private volatile boolean channelVirtualThreads;
+
+    // Tasks each thread of the self routing executor holds before rejecting
+    // the messages, 0 for no limit
+    protected int threadPoolQueueSize = 0;
+
+    protected ThreadAffinityExecutor.RejectionPolicy threadPoolRejectionPolicy = ThreadAffinityExecutor.RejectionPolicy.ABORT;
+
     private ReleaseReferencesStrategy releaseReferencesStrategy = ReleaseReferencesStrategy.None;
 
     public List<SIPMessageValve> sipMessageValves;
@@ -426,14 +469,19 @@ public abstract class SIPTransactionStack implements
     
     private boolean sslRenegotiationEnabled = false;
 
+    // Set by the message trace when it records the messages as received, see SIPMessage.setReceivedBytes
+    private volatile boolean keepReceivedBytes;
+
     
     public ScheduledExecutorService getSelfRoutingThreadpoolExecutor() {
         if(selfRoutingThreadpoolExecutor == null) {
             if(this.threadPoolSize<=0) {
                 
-                selfRoutingThreadpoolExecutor = new ThreadAffinityExecutor(16);
+                selfRoutingThreadpoolExecutor = new ThreadAffinityExecutor(16,
+                        threadPoolQueueSize, threadPoolRejectionPolicy);
             } else {
-                selfRoutingThreadpoolExecutor = new ThreadAffinityExecutor(this.threadPoolSize);
+                selfRoutingThreadpoolExecutor = new ThreadAffinityExecutor(this.threadPoolSize,
+                        threadPoolQueueSize, threadPoolRejectionPolicy);
             }
         }
         return selfRoutingThreadpoolExecutor;
@@ -562,12 +610,12 @@ public abstract class SIPTransactionStack implements
         // Create the transaction collections
 
         // Dialog dable.
-        this.dialogTable = new ConcurrentHashMap<String, SIPDialog>();
-        this.earlyDialogTable = new ConcurrentHashMap<String, SIPDialog>();
+        this.dialogTable = new StripedIdentifierTable<SIPDialog>();
+        this.earlyDialogTable = new StripedIdentifierTable<SIPDialog>();
         this.serverDialogMergeTestTable = new ConcurrentHashMap<String, SIPDialog>();
 
-        clientTransactionTable = new ConcurrentHashMap<String, SIPClientTransaction>();
-        serverTransactionTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+        clientTransactionTable = new StripedIdentifierTable<SIPClientTransaction>();
+        serverTransactionTable = new StripedIdentifierTable<SIPServerTransaction>();
         this.terminatedServerTransactionsPendingAck = new ConcurrentHashMap<String, SIPServerTransaction>();
         mergeTable = new ConcurrentHashMap<String, SIPServerTransaction>();
         retransmissionAlertTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
@@ -593,13 +641,13 @@ public abstract class SIPTransactionStack implements
         // Handle IO for this process.
         this.ioHandler = new IOHandler(this);
         pendingTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
-        clientTransactionTable = new ConcurrentHashMap<String, SIPClientTransaction>();
-        serverTransactionTable = new ConcurrentHashMap<String, SIPServerTransaction>();
+        clientTransactionTable = new StripedIdentifierTable<SIPClientTransaction>();
+        serverTransactionTable = new StripedIdentifierTable<SIPServerTransaction>();
         retransmissionAlertTransactions = new ConcurrentHashMap<String, SIPServerTransaction>();
         mergeTable = new ConcurrentHashMap<String, SIPServerTransaction>();
         // Dialog dable.
-        this.dialogTable = new ConcurrentHashMap<String, SIPDialog>();
-        this.earlyDialogTable = new ConcurrentHashMap<String, SIPDialog>();
+        this.dialogTable = new StripedIdentifierTable<SIPDialog>();
+        this.earlyDialogTable = new StripedIdentifierTable<SIPDialog>();
         this.serverDialogMergeTestTable = new ConcurrentHashMap<String, SIPDialog>();
         this.terminatedServerTransactionsPendingAck = new ConcurrentHashMap<String,SIPServerTransaction>();
         this.forkedClientTransactionTable = new ConcurrentHashMap<String,SIPClientTransaction>();
@@ -1006,6 +1054,30 @@ public abstract class SIPTransactionStack implements
 		}
 	}
     
+    /**
+     * Return the dialog of a message, as getDialog(sipMessage.getDialogId(isServer))
+     * does, but looked up from the Call-ID and tags of the message without
+     * building its dialog id.
+     *
+     * @param sipMessage
+     *            the message to find the dialog of.
+     * @param isServer
+     *            true if the message was received, the To tag being then the
+     *            local tag.
+     */
+    public SIPDialog getDialog(SIPMessage sipMessage, boolean isServer) {
+        String callId = sipMessage.peekCallId().getCallId();
+        String fromTag = sipMessage.getFromTag();
+        String toTag = sipMessage.getToTag();
+        SIPDialog sipDialog = isServer ? dialogTable.getDialog(callId, toTag, fromTag)
+                : dialogTable.getDialog(callId, fromTag, toTag);
+        if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+            logger.logDebug("getDialog(" + sipMessage.getDialogId(isServer) + ") : returning "
+                    + sipDialog);
+        }
+        return sipDialog;
+    }
+
     /**
      * Return the dialog for a given dialog ID. If compatibility is enabled then
      * we do not assume the presence of tags and hence need to add a flag to
@@ -1080,7 +1152,7 @@ public abstract class SIPTransactionStack implements
                         + clientTransactionTable.size());
             }
 
-            String thisToTag = notifyMessage.getTo().getTag();
+            String thisToTag = notifyMessage.peekTo().getTag();
             if (thisToTag == null) {
                 return retval;
             }
@@ -1121,7 +1193,7 @@ public abstract class SIPTransactionStack implements
                 if (  fromTag.equalsIgnoreCase(thisToTag)
                       && hisEvent != null
                       && eventHdr.match(hisEvent)
-                      && notifyMessage.getCallId().getCallId().equalsIgnoreCase(
+                      && notifyMessage.peekCallId().getCallId().equalsIgnoreCase(
                                 ct.getOriginalRequestCallId())) {
                     if (!this.isDeliverUnsolicitedNotify() ) {
                         ct.acquireSem();
@@ -1161,7 +1233,7 @@ public abstract class SIPTransactionStack implements
      */
     public void addTransactionPendingAck(SIPServerTransaction serverTransaction) {
         String branchId = ((SIPRequest) serverTransaction.getRequest())
-                .getTopmostVia().getBranch();
+                .peekTopmostVia().getBranch();
         if ( branchId != null ) {
             this.terminatedServerTransactionsPendingAck.put(branchId,
                     serverTransaction);
@@ -1178,7 +1250,7 @@ public abstract class SIPTransactionStack implements
      */
     public SIPServerTransaction findTransactionPendingAck(SIPRequest ackMessage) {
         return this.terminatedServerTransactionsPendingAck.get(ackMessage
-                .getTopmostVia().getBranch());
+                .peekTopmostVia().getBranch());
     }
 
     /**
@@ -1210,7 +1282,7 @@ public abstract class SIPTransactionStack implements
     public boolean isTransactionPendingAck(
             SIPServerTransaction serverTransaction) {
         String branchId = ((SIPRequest) serverTransaction.getRequest())
-                .getTopmostVia().getBranch();
+                .peekTopmostVia().getBranch();
         return this.terminatedServerTransactionsPendingAck.contains(branchId);
     }
 
@@ -1231,8 +1303,21 @@ public abstract class SIPTransactionStack implements
         SIPTransaction retval = null;
         try {
             if (isServer) {
-                Via via = sipMessage.getTopmostVia();
-                if (via.getBranch() != null) {
+                Via via = sipMessage.peekTopmostVia();
+                String branch = via.getBranch();
+                if (branch != null) {
+                    if (Utils.isRFC3261Branch(branch)) {
+                        // the branch identifies the transaction, look it up as is
+                        retval = serverTransactionTable.getTransaction(branch,
+                                Request.CANCEL.equals(sipMessage.peekCSeq().getMethod()));
+                        if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+                            logger
+                                    .logDebug(
+                                            "serverTx: looking for key " + sipMessage.getTransactionId()
+                                                    + " existing="
+                                    + serverTransactionTable);
+                        return retval;
+                    }
                     String key = sipMessage.getTransactionId();
 
                     retval = (SIPTransaction) serverTransactionTable.get(key);
@@ -1242,10 +1327,6 @@ public abstract class SIPTransactionStack implements
                                         "serverTx: looking for key " + key
                                                 + " existing="
                                 + serverTransactionTable);
-                    if (key
-                            .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
-                        return retval;
-                    }
 
                 }
                 // Need to scan the table for old style transactions (RFC 2543
@@ -1263,17 +1344,22 @@ public abstract class SIPTransactionStack implements
                 }
 
             } else {
-                Via via = sipMessage.getTopmostVia();
-                if (via.getBranch() != null) {
+                Via via = sipMessage.peekTopmostVia();
+                String branch = via.getBranch();
+                if (branch != null) {
+                    if (Utils.isRFC3261Branch(branch)) {
+                        if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
+                            logger.logDebug(
+                                    "clientTx: looking for key " + sipMessage.getTransactionId());
+                        // the branch identifies the transaction, look it up as is
+                        return clientTransactionTable.getTransaction(branch,
+                                Request.CANCEL.equals(sipMessage.peekCSeq().getMethod()));
+                    }
                     String key = sipMessage.getTransactionId();
                     if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG))
                         logger.logDebug(
                                 "clientTx: looking for key " + key);
                     retval = (SIPTransaction) clientTransactionTable.get(key);
-                    if (key
-                            .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
-                        return retval;
-                    }
 
                 }
                 // Need to scan the table for old style transactions (RFC 2543
@@ -1522,6 +1608,8 @@ public abstract class SIPTransactionStack implements
 
         requestReceived.setMessageChannel(requestMessageChannel);
 
+        metrics.requestReceived(requestReceived.getMethod());
+
         if(sipMessageValves.size() != 0) {
         	// https://java.net/jira/browse/JSIP-511
         	// catching all exceptions so it doesn't make JAIN SIP to fail
@@ -1561,8 +1649,7 @@ public abstract class SIPTransactionStack implements
 
             // Loop through all server transactions
             currentTransaction = null;
-            if (!key.toLowerCase().startsWith(
-                    SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE)) {
+            if (!Utils.isRFC3261Branch(key)) {
                 Iterator<SIPServerTransaction> transactionIterator = serverTransactionTable.values().iterator();
                 while (transactionIterator.hasNext()
                         && currentTransaction == null) {
@@ -1610,7 +1697,7 @@ public abstract class SIPTransactionStack implements
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug("newSIPServerRequest( "
                     + requestReceived.getMethod() + ":"
-                    + requestReceived.getTopmostVia().getBranch() + "):"
+                    + requestReceived.peekTopmostVia().getBranch() + "):"
                     + currentTransaction);
         }
 
@@ -1666,6 +1753,8 @@ public abstract class SIPTransactionStack implements
         // Transaction to handle this request
         SIPClientTransaction currentTransaction;
 
+        metrics.responseReceived(responseReceived.getStatusCode());
+
         if(sipMessageValves.size() != 0) {
         	// https://java.net/jira/browse/JSIP-511
         	// catching all exceptions so it doesn't make JAIN SIP to fail
@@ -1700,8 +1789,8 @@ public abstract class SIPTransactionStack implements
 
         if (currentTransaction == null
                 || (!currentTransaction
-                        .isMessagePartOfTransaction(responseReceived) && !key
-                        .startsWith(SIPConstants.BRANCH_MAGIC_COOKIE_LOWER_CASE))) {
+                        .isMessagePartOfTransaction(responseReceived) && !Utils
+                        .isRFC3261Branch(key))) {
             // Loop through all client transactions
 
             transactionIterator = clientTransactionTable.values().iterator();
@@ -1860,6 +1949,24 @@ public abstract class SIPTransactionStack implements
         return this.serverTransactionTable.size();
     }
 
+    /**
+     * Get the size of the dialog table.
+     *
+     * @return -- number of established dialogs.
+     */
+    public int getDialogTableSize() {
+        return this.dialogTable.size();
+    }
+
+    /**
+     * Get the size of the early dialog table.
+     *
+     * @return -- number of early dialogs.
+     */
+    public int getEarlyDialogTableSize() {
+        return this.earlyDialogTable.size();
+    }
+
     /**
      * Add a new client transaction to the set of existing transactions. Add it
      * to the top of the list so an incoming response has less work to do in
@@ -2003,8 +2110,8 @@ public abstract class SIPTransactionStack implements
             if (!this.unlimitedClientTransactionTableSize) {
                 if (this.activeClientTransactionCount.get() > clientTransactionTableHiwaterMark) {
                     try {
-                        synchronized (this.clientTransactionTable) {
-                            this.clientTransactionTable.wait();
+                        synchronized (this.clientTransactionTableMonitor) {
+                            this.clientTransactionTableMonitor.wait();
                             this.activeClientTransactionCount.incrementAndGet();
                         }
 
@@ -2055,9 +2162,9 @@ public abstract class SIPTransactionStack implements
 
         if (this.activeClientTransactionCount.decrementAndGet() <= this.clientTransactionTableLowaterMark
                 && !this.unlimitedClientTransactionTableSize) {
-            synchronized (this.clientTransactionTable) {
+            synchronized (this.clientTransactionTableMonitor) {
 
-                clientTransactionTable.notify();
+                clientTransactionTableMonitor.notify();
 
             }
         }
@@ -2150,14 +2257,22 @@ public abstract class SIPTransactionStack implements
         synchronized (this) {
             this.notifyAll();
         }
-        synchronized (this.clientTransactionTable) {
-            clientTransactionTable.notifyAll();
+        synchronized (this.clientTransactionTableMonitor) {
+            clientTransactionTableMonitor.notifyAll();
         }
+        metrics.unregisterMBean();
         
         if(selfRoutingThreadpoolExecutor != null && selfRoutingThreadpoolExecutor instanceof ExecutorService) {
         	((ExecutorService)selfRoutingThreadpoolExecutor).shutdown();
         }
         selfRoutingThreadpoolExecutor = null;
+        synchronized (this) {
+            if (channelExecutor != null) {
+                // readers still running end with their sockets
+                channelExecutor.shutdown();
+                channelExecutor = null;
+            }
+        }
 
         // Threads must periodically check this flag.
         MessageProcessor[] processorList;
@@ -2265,6 +2380,25 @@ public abstract class SIPTransactionStack implements
         return this.serverLogger;
     }
 
+    /**
+     * @return true if the message channels keep the bytes the received messages
+     *         were parsed from, see SIPMessage.setReceivedBytes.
+     * @since 2.0
+     */
+    public boolean isKeepReceivedBytes() {
+        return keepReceivedBytes;
+    }
+
+    /**
+     * Have the message channels keep the bytes the received messages were
+     * parsed from, for the ServerLogger to trace them without encoding them.
+     *
+     * @since 2.0
+     */
+    public void setKeepReceivedBytes(boolean keepReceivedBytes) {
+        this.keepReceivedBytes = keepReceivedBytes;
+    }
+
     /**
      * Maximum size of a single TCP message. Limiting the size of a single TCP
      * message prevents flooding attacks.
@@ -2659,6 +2793,15 @@ public abstract class SIPTransactionStack implements
         return this.threadAuditor;
     }
 
+    /**
+     * get the runtime metrics of the stack
+     *
+     * @return -- the metrics of the stack, never null
+     */
+    public SipStackMetrics getMetrics() {
+        return this.metrics;
+    }
+
     // /
     // / Stack Audit methods
     // /
@@ -2773,7 +2916,7 @@ public abstract class SIPTransactionStack implements
      *
      * @return Audit report, null if no transaction leaks were found
      */
-    private String auditTransactions(ConcurrentHashMap transactionsMap,
+    private String auditTransactions(Map<String, ? extends SIPTransaction> transactionsMap,
             long a_nLeakedTransactionTimer) {
         String auditReport = "  Leaked transactions:\n";
         int leakedTransactions = 0;
@@ -2782,12 +2925,12 @@ public abstract class SIPTransactionStack implements
         // Make a shallow copy of the transaction list.
         // This copy will remain intact as leaked transactions are removed by
         // the stack.
-        LinkedList transactionsList = new LinkedList(transactionsMap.values());
+        LinkedList<SIPTransaction> transactionsList = new LinkedList<SIPTransaction>(transactionsMap.values());
 
         // Iterate through our copy
-        Iterator it = transactionsList.iterator();
+        Iterator<SIPTransaction> it = transactionsList.iterator();
         while (it.hasNext()) {
-            SIPTransaction sipTransaction = (SIPTransaction) it.next();
+            SIPTransaction sipTransaction = it.next();
             if (sipTransaction != null) {
                 if (sipTransaction.getAuditTag() == 0) {
                     // First time we see this transaction. Mark it as audited.
@@ -3043,6 +3186,200 @@ public abstract class SIPTransactionStack implements
         this.sendUdpBufferSize = sendUdpBufferSize;
     }
 
+    /**
+     * Number of receive buffers kept in the pool of each UDP message processor.
+     * 0 means a new buffer is allocated for every datagram.
+     *
+     * @return the udpBufferPoolSize
+     */
+    public int getUdpBufferPoolSize() {
+        return udpBufferPoolSize;
+    }
+
+    /**
+     * @param udpBufferPoolSize the udpBufferPoolSize to set
+     */
+    public void setUdpBufferPoolSize(int udpBufferPoolSize) {
+        this.udpBufferPoolSize = udpBufferPoolSize;
+    }
+
+    /**
+     * Whether UDP message processors read datagrams through a DatagramChannel.
+     *
+     * @return the udpDatagramChannelEnabled
+     */
+    public boolean isUdpDatagramChannelEnabled() {
+        return udpDatagramChannelEnabled;
+    }
+
+    /**
+     * @param udpDatagramChannelEnabled the udpDatagramChannelEnabled to set
+     */
+    public void setUdpDatagramChannelEnabled(boolean udpDatagramChannelEnabled) {
+        this.udpDatagramChannelEnabled = udpDatagramChannelEnabled;
+    }
+
+    /**
+     * Number of sockets opened with SO_REUSEPORT on each UDP listening point,
+     * each one read by its own thread.
+     *
+     * @return the udpReaderThreads
+     */
+    public int getUdpReaderThreads() {
+        return udpReaderThreads;
+    }
+
+    /**
+     * @param udpReaderThreads the udpReaderThreads to set
+     */
+    public void setUdpReaderThreads(int udpReaderThreads) {
+        this.udpReaderThreads = udpReaderThreads;
+    }
+
+    /**
+     * Number of selector threads of each NIO connection oriented message
+     * processor, the connections being spread across them.
+     *
+     * @return the nioSelectorThreads
+     */
+    public int getNioSelectorThreads() {
+        return nioSelectorThreads;
+    }
+
+    /**
+     * @param nioSelectorThreads the nioSelectorThreads to set
+     */
+    public void setNioSelectorThreads(int nioSelectorThreads) {
+        this.nioSelectorThreads = nioSelectorThreads;
+    }
+
+    /**
+     * True if the readers of the blocking TCP and TLS channels run as tasks
+     * of the channel executor rather than on a dedicated platform thread each.
+     *
+     * @return the virtualThreadChannels
+     */
+    public boolean isVirtualThreadChannels() {
+        return virtualThreadChannels;
+    }
+
+    /**
+     * @param virtualThreadChannels the virtualThreadChannels to set
+     */
+    public void setVirtualThreadChannels(boolean virtualThreadChannels) {
+        this.virtualThreadChannels = virtualThreadChannels;
+    }
+
+    /**
+     * @return the number of tasks each thread of the self routing executor
+     *         holds before rejecting messages, 0 for no limit
+     */
+    public int getThreadPoolQueueSize() {
+        return threadPoolQueueSize;
+    }
+
+    /**
+     * @param threadPoolQueueSize the threadPoolQueueSize to set
+     */
+    public void setThreadPoolQueueSize(int threadPoolQueueSize) {
+        this.threadPoolQueueSize = threadPoolQueueSize;
+    }
+
+    /**
+     * @return what the self routing executor does with the messages once the
+     *         queue of a thread is full
+     */
+    public ThreadAffinityExecutor.RejectionPolicy getThreadPoolRejectionPolicy() {
+        return threadPoolRejectionPolicy;
+    }
+
+    /**
+     * @param threadPoolRejectionPolicy the threadPoolRejectionPolicy to set
+     */
+    public void setThreadPoolRejectionPolicy(ThreadAffinityExecutor.RejectionPolicy threadPoolRejectionPolicy) {
+        this.threadPoolRejectionPolicy = threadPoolRejectionPolicy;
+    }
+
+    /**
+     * Executor running the readers of the blocking TCP and TLS channels, one
+     * virtual thread per task when the platform supports them (Java 21+),
+     * otherwise a pool reusing daemon platform threads.
+     *
+     * @return the executor or null if the channel readers get a dedicated
+     *         thread each.
+     */
+    public synchronized ExecutorService getChannelExecutor() {
+        if (!virtualThreadChannels) {
+            return null;
+        }
+        if (channelExecutor == null) {
+            try {
+                // looked up reflectively, the stack also runs on platforms without virtual threads
+                channelExecutor = (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                channelVirtualThreads = true;
+            } catch (Exception ex) {
+                if (logger.isLoggingEnabled(LogWriter.TRACE_WARN)) {
+                    logger.logWarning("Virtual threads are not available, using a pool of platform threads for the channel readers");
+                }
+                channelExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger threadCount = new AtomicInteger();
+
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "TCPMessageChannelThread-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+        return channelExecutor;
+    }
+
+    /**
+     * True if the channel executor runs the channel readers on virtual
+     * threads, false before it is created or when it fell back to platform
+     * threads.
+     */
+    public boolean isChannelVirtualThreads() {
+        return channelVirtualThreads;
+    }
+
+    /**
+     * True if the message parsers are asked to leave the headers that the
+     * stack does not need unparsed until they are accessed.
+     *
+     * @return the lazyHeaderParsing
+     */
+    public boolean isLazyHeaderParsing() {
+        return lazyHeaderParsing;
+    }
+
+    /**
+     * @param lazyHeaderParsing the lazyHeaderParsing to set
+     */
+    public void setLazyHeaderParsing(boolean lazyHeaderParsing) {
+        this.lazyHeaderParsing = lazyHeaderParsing;
+    }
+
+    /**
+     * True if the transactions schedule a one shot timer task at the next
+     * deadline of their timers instead of running a task every
+     * BASE_TIMER_INTERVAL.
+     *
+     * @return the eventDrivenTransactionTimers
+     */
+    public boolean isEventDrivenTransactionTimers() {
+        return eventDrivenTransactionTimers;
+    }
+
+    /**
+     * @param eventDrivenTransactionTimers the eventDrivenTransactionTimers to set
+     */
+    public void setEventDrivenTransactionTimers(boolean eventDrivenTransactionTimers) {
+        this.eventDrivenTransactionTimers = eventDrivenTransactionTimers;
+    }
+
      /**
       * Flag that reqests checking of branch IDs on responses.
       *
@@ -3228,6 +3565,22 @@ public abstract class SIPTransactionStack implements
         return messageProcessorFactory;
     }
 
+    /**
+     * @return the generator of the Call-IDs, tags and branch identifiers
+     * @since 2.0
+     */
+    public UtilsExt getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * @param idGenerator the generator of the Call-IDs, tags and branch identifiers to set
+     * @since 2.0
+     */
+    public void setIdGenerator(UtilsExt idGenerator) {
+        this.idGenerator = idGenerator;
+    }
+
     /**
      * @param aggressiveCleanup the aggressiveCleanup to set
      */
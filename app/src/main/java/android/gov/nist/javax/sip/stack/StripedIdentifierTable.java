@@ -0,0 +1,462 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Table of transactions or dialogs keyed by their lower case identifier
+ * (transaction id or dialog id).
+ *
+ * The hash of a key ignores the case and can be computed from the parts the
+ * identifier is made of, so a transaction can be looked up from the branch of
+ * the topmost Via and a dialog from the Call-ID and tags of a message, as
+ * parsed, without building and lower casing the identifier first.
+ *
+ * Reads take no lock: the buckets are chains of immutable entries published
+ * through a volatile array. Writes lock one of the segments the table is split
+ * into, so concurrent writes of different keys seldom contend. Iterators are
+ * weakly consistent, as with ConcurrentHashMap. Null keys and values are not
+ * allowed.
+ *
+ * @since 2.0
+ */
+public class StripedIdentifierTable<V> extends AbstractMap<String, V> implements ConcurrentMap<String, V> {
+
+    private static final int SEGMENT_SHIFT = 5;
+
+    private static final int SEGMENTS = 1 << SEGMENT_SHIFT;
+
+    private static final int INITIAL_SEGMENT_CAPACITY = 16;
+
+    private static final char SEPARATOR = ':';
+
+    private static final class Entry<V> implements Map.Entry<String, V> {
+        final String key;
+        final int hash;
+        volatile V value;
+        final Entry<V> next;
+
+        Entry(String key, int hash, V value, Entry<V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static final class Segment<V> {
+        volatile Entry<V>[] table = newTable(INITIAL_SEGMENT_CAPACITY);
+        volatile int count;
+
+        Entry<V> first(int hash) {
+            Entry<V>[] tab = table;
+            return tab[hash & (tab.length - 1)];
+        }
+
+        V valueOf(Entry<V> e) {
+            V value = e.value;
+            // an entry seen before its construction is visible, the lock orders it
+            return value != null ? value : readValueUnderLock(e);
+        }
+
+        private synchronized V readValueUnderLock(Entry<V> e) {
+            return e.value;
+        }
+
+        synchronized V put(String key, int hash, V value, boolean onlyIfAbsent) {
+            Entry<V>[] tab = table;
+            int index = hash & (tab.length - 1);
+            for (Entry<V> e = tab[index]; e != null; e = e.next) {
+                if (e.hash == hash && e.key.equals(key)) {
+                    V old = e.value;
+                    if (!onlyIfAbsent) {
+                        e.value = value;
+                    }
+                    return old;
+                }
+            }
+            if (count + 1 > tab.length - (tab.length >>> 2)) {
+                tab = rehash(tab);
+                index = hash & (tab.length - 1);
+            }
+            tab[index] = new Entry<V>(key, hash, value, tab[index]);
+            // the volatile writes publish the new entry to the readers
+            table = tab;
+            count = count + 1;
+            return null;
+        }
+
+        synchronized V remove(Object key, int hash, Object expectedValue) {
+            Entry<V>[] tab = table;
+            int index = hash & (tab.length - 1);
+            Entry<V> first = tab[index];
+            Entry<V> e = first;
+            while (e != null && !(e.hash == hash && e.key.equals(key))) {
+                e = e.next;
+            }
+            if (e == null || (expectedValue != null && !expectedValue.equals(e.value))) {
+                return null;
+            }
+            // entries are immutable, copy the ones preceding the removed one
+            Entry<V> newFirst = e.next;
+            for (Entry<V> p = first; p != e; p = p.next) {
+                newFirst = new Entry<V>(p.key, p.hash, p.value, newFirst);
+            }
+            tab[index] = newFirst;
+            table = tab;
+            count = count - 1;
+            return e.value;
+        }
+
+        synchronized boolean replace(String key, int hash, V expectedValue, V value) {
+            for (Entry<V> e = first(hash); e != null; e = e.next) {
+                if (e.hash == hash && e.key.equals(key)) {
+                    if (expectedValue != null && !expectedValue.equals(e.value)) {
+                        return false;
+                    }
+                    e.value = value;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized void clear() {
+            table = newTable(INITIAL_SEGMENT_CAPACITY);
+            count = 0;
+        }
+
+        private Entry<V>[] rehash(Entry<V>[] oldTable) {
+            Entry<V>[] newTable = newTable(oldTable.length << 1);
+            int mask = newTable.length - 1;
+            for (Entry<V> head : oldTable) {
+                for (Entry<V> e = head; e != null; e = e.next) {
+                    int index = e.hash & mask;
+                    newTable[index] = new Entry<V>(e.key, e.hash, e.value, newTable[index]);
+                }
+            }
+            return newTable;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> Entry<V>[] newTable(int capacity) {
+            return (Entry<V>[]) new Entry<?>[capacity];
+        }
+    }
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings("unchecked")
+    public StripedIdentifierTable() {
+        segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<V>();
+        }
+    }
+
+    /**
+     * Find the transaction with the given branch, the branch of the topmost
+     * Via of its messages.
+     *
+     * @param branch the branch, compared ignoring the case.
+     * @param cancel true to look for the CANCEL transaction of the branch.
+     * @return the transaction or null if there is none.
+     */
+    public V getTransaction(String branch, boolean cancel) {
+        return get(branch, cancel ? "cancel" : null, null);
+    }
+
+    /**
+     * Find the dialog with the given Call-ID and tags.
+     *
+     * @param callId the Call-ID, compared ignoring the case.
+     * @param firstTag the first tag of the dialog id or null.
+     * @param secondTag the second tag of the dialog id or null.
+     * @return the dialog or null if there is none.
+     */
+    public V getDialog(String callId, String firstTag, String secondTag) {
+        return get(callId, firstTag, secondTag);
+    }
+
+    /**
+     * Find the value whose key is made of the given parts separated by a
+     * colon, the null parts being left out.
+     */
+    private V get(CharSequence first, CharSequence second, CharSequence third) {
+        int hash = hash(0, first);
+        if (second != null) {
+            hash = hash(31 * hash + SEPARATOR, second);
+        }
+        if (third != null) {
+            hash = hash(31 * hash + SEPARATOR, third);
+        }
+        hash = spread(hash);
+        Segment<V> segment = segmentFor(hash);
+        for (Entry<V> e = segment.first(hash); e != null; e = e.next) {
+            if (e.hash == hash && matches(e.key, first, second, third)) {
+                return segment.valueOf(e);
+            }
+        }
+        return null;
+    }
+
+    private static boolean matches(String key, CharSequence first, CharSequence second, CharSequence third) {
+        int length = first.length() + (second != null ? second.length() + 1 : 0)
+                + (third != null ? third.length() + 1 : 0);
+        if (key.length() != length) {
+            return false;
+        }
+        int offset = regionMatches(key, 0, first);
+        if (offset >= 0 && second != null) {
+            offset = key.charAt(offset) == SEPARATOR ? regionMatches(key, offset + 1, second) : -1;
+        }
+        if (offset >= 0 && third != null) {
+            offset = key.charAt(offset) == SEPARATOR ? regionMatches(key, offset + 1, third) : -1;
+        }
+        return offset >= 0;
+    }
+
+    /**
+     * @return the offset following the matching region of the key, -1 if it
+     *         does not match.
+     */
+    private static int regionMatches(String key, int offset, CharSequence part) {
+        for (int i = 0; i < part.length(); i++) {
+            if (key.charAt(offset + i) != toLowerCase(part.charAt(i))) {
+                return -1;
+            }
+        }
+        return offset + part.length();
+    }
+
+    private static char toLowerCase(char c) {
+        if (c < 128) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(c);
+    }
+
+    private static int hash(int hash, CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            hash = 31 * hash + toLowerCase(s.charAt(i));
+        }
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        hash += (hash << 15) ^ 0xffffcd7d;
+        hash ^= (hash >>> 10);
+        hash += (hash << 3);
+        hash ^= (hash >>> 6);
+        hash += (hash << 2) + (hash << 14);
+        return hash ^ (hash >>> 16);
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[hash >>> (32 - SEGMENT_SHIFT)];
+    }
+
+    private static int hashOf(Object key) {
+        return spread(hash(0, (String) key));
+    }
+
+    public V get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int hash = hashOf(key);
+        Segment<V> segment = segmentFor(hash);
+        for (Entry<V> e = segment.first(hash); e != null; e = e.next) {
+            if (e.hash == hash && e.key.equals(key)) {
+                return segment.valueOf(e);
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    public V put(String key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int hash = hashOf(key);
+        return segmentFor(hash).put(key, hash, value, false);
+    }
+
+    public V putIfAbsent(String key, V value) {
+        if (value == null) {
+            throw new NullPointerException();
+        }
+        int hash = hashOf(key);
+        return segmentFor(hash).put(key, hash, value, true);
+    }
+
+    public V remove(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        int hash = hashOf(key);
+        return segmentFor(hash).remove(key, hash, null);
+    }
+
+    public boolean remove(Object key, Object value) {
+        if (!(key instanceof String) || value == null) {
+            return false;
+        }
+        int hash = hashOf(key);
+        return segmentFor(hash).remove(key, hash, value) != null;
+    }
+
+    public boolean replace(String key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        int hash = hashOf(key);
+        return segmentFor(hash).replace(key, hash, oldValue, newValue);
+    }
+
+    public V replace(String key, V value) {
+        V old = get(key);
+        if (old != null && replace(key, old, value)) {
+            return old;
+        }
+        return null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for (Segment<V> segment : segments) {
+            if (segment.count != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            public int size() {
+                return StripedIdentifierTable.this.size();
+            }
+
+            public void clear() {
+                StripedIdentifierTable.this.clear();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Map.Entry<String, V>> {
+        private int segmentIndex = 0;
+        private Entry<V>[] table;
+        private int bucket = -1;
+        private Entry<V> next;
+        private Entry<V> last;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            if (next != null) {
+                next = next.next;
+            }
+            while (next == null) {
+                if (table != null && ++bucket < table.length) {
+                    next = table[bucket];
+                } else if (segmentIndex < segments.length) {
+                    table = segments[segmentIndex++].table;
+                    bucket = -1;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<String, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            advance();
+            return last;
+        }
+
+        public void remove() {
+            if (last == null) {
+                throw new IllegalStateException();
+            }
+            StripedIdentifierTable.this.remove(last.key);
+            last = null;
+        }
+    }
+}
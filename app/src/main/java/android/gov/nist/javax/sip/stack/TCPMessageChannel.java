@@ -108,9 +108,6 @@ public class TCPMessageChannel extends ConnectionOrientedMessageChannel {
         myAddress = msgProcessor.getIpAddress().getHostAddress();
         myClientInputStream = mySock.getInputStream();
         myClientOutputStream = mySock.getOutputStream();
-        mythread = new Thread(this);
-        mythread.setDaemon(true);
-        mythread.setName(threadName);
         this.peerPort = mySock.getPort();
         this.key = MessageChannel.getKey(peerAddress, peerPort, "TCP");
 
@@ -118,7 +115,7 @@ public class TCPMessageChannel extends ConnectionOrientedMessageChannel {
         // Bug report by Vishwashanti Raj Kadiayl
         super.messageProcessor = msgProcessor;
         // Can drop this after response is sent potentially.
-        mythread.start();
+        startReader(threadName);
     }
 
     /**
@@ -297,10 +294,7 @@ public class TCPMessageChannel extends ConnectionOrientedMessageChannel {
 	            mySock = sock;
 	            this.myClientInputStream = mySock.getInputStream();
 	            this.myClientOutputStream = mySock.getOutputStream();
-	            Thread thread = new Thread(this);
-	            thread.setDaemon(true);
-	            thread.setName("TCPMessageChannelThread");
-	            thread.start();
+	            startReader("TCPMessageChannelThread");
        	} else {
        		if(logger.isLoggingEnabled(LogWriter.TRACE_WARN)) {
        			logger.logWarning(
@@ -405,10 +399,7 @@ public class TCPMessageChannel extends ConnectionOrientedMessageChannel {
 	            this.myClientInputStream = mySock.getInputStream();
 	            this.myClientOutputStream = mySock.getOutputStream();
 	            // start a new reader on this end of the pipe.
-	            Thread mythread = new Thread(this);
-	            mythread.setDaemon(true);
-	            mythread.setName("TCPMessageChannelThread");
-	            mythread.start();
+	            startReader("TCPMessageChannelThread");
             } else {
             	if(logger.isLoggingEnabled(LogWriter.TRACE_WARN)) {
             		logger.logWarning(
@@ -120,9 +120,6 @@ public class TLSMessageChannel extends ConnectionOrientedMessageChannel {
         myAddress = msgProcessor.getIpAddress().getHostAddress();
         myClientInputStream = mySock.getInputStream();
 
-        mythread = new Thread(this);
-        mythread.setDaemon(true);
-        mythread.setName(threadName);
 
         this.myPort = msgProcessor.getPort();
         this.peerPort = mySock.getPort();
@@ -130,7 +127,7 @@ public class TLSMessageChannel extends ConnectionOrientedMessageChannel {
         // Bug report by Vishwashanti Raj Kadiayl
         super.messageProcessor = msgProcessor;
         // Can drop this after response is sent potentially.
-        mythread.start();
+        startReader(threadName);
     }
 
     /**
@@ -286,10 +283,7 @@ public class TLSMessageChannel extends ConnectionOrientedMessageChannel {
           		}
    	            mySock = sock;
    	            this.myClientInputStream = mySock.getInputStream();
-   	            Thread thread = new Thread(this);
-   	            thread.setDaemon(true);
-   	            thread.setName("TCPMessageChannelThread");
-   	            thread.start();
+   	            startReader("TCPMessageChannelThread");
           	} else {
           		if(logger.isLoggingEnabled(LogWriter.TRACE_WARN)) {
           			logger.logWarning(
@@ -394,10 +388,7 @@ public class TLSMessageChannel extends ConnectionOrientedMessageChannel {
 	            mySock = sock;
 	            this.myClientInputStream = mySock.getInputStream();
 	            // start a new reader on this end of the pipe.
-	            Thread mythread = new Thread(this);
-	            mythread.setDaemon(true);
-	            mythread.setName("TCPMessageChannelThread");
-	            mythread.start();
+	            startReader("TCPMessageChannelThread");
             } else {
             	if(logger.isLoggingEnabled(LogWriter.TRACE_WARN)) {
             		logger.logWarning(
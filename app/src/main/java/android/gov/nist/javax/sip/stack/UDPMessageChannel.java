@@ -50,7 +50,9 @@ import android.gov.nist.javax.sip.message.SIPMessage;
 import android.gov.nist.javax.sip.message.SIPRequest;
 import android.gov.nist.javax.sip.message.SIPResponse;
 import android.gov.nist.javax.sip.parser.MessageParser;
+import android.gov.nist.javax.sip.parser.MessageParserExt;
 import android.gov.nist.javax.sip.parser.ParseExceptionListener;
+import android.gov.nist.javax.sip.stack.metrics.SipStackMetrics;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -61,8 +63,10 @@ import java.net.Socket;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
+import android.javax.sip.ListeningPoint;
 import android.javax.sip.address.Hop;
 import android.javax.sip.message.Response;
 
@@ -137,8 +141,16 @@ public class UDPMessageChannel extends MessageChannel implements
 
     private long receptionTime;
 
+    // Time the message being processed waited in the queue of the processor.
+    private long queueSojournNanos;
+
     private Thread mythread = null;
 
+    /**
+     * Queue this pooled channel takes its work from.
+     */
+    private BlockingQueue<DatagramQueuedMessageDispatch> workQueue;
+
     /*
      * A table that keeps track of when the last pingback was sent to a given
      * remote IP address and port. This is for NAT compensation. This stays in
@@ -185,7 +197,27 @@ public class UDPMessageChannel extends MessageChannel implements
      */
     protected UDPMessageChannel(SIPTransactionStack stack,
             UDPMessageProcessor messageProcessor, String threadName) {
+        this(stack, messageProcessor, threadName, messageProcessor.messageQueue);
+    }
+
+    /**
+     * Constructor - same as above but the channel takes its packets from the
+     * given queue instead of the shared queue of the message processor.
+     *
+     * @param stack
+     *            is the shared SIPStack structure
+     * @param messageProcessor
+     *            is the creating message processor.
+     * @param threadName
+     *            name that will be affected to the underlying thread
+     * @param workQueue
+     *            queue of incoming packets for this channel
+     */
+    protected UDPMessageChannel(SIPTransactionStack stack,
+            UDPMessageProcessor messageProcessor, String threadName,
+            BlockingQueue<DatagramQueuedMessageDispatch> workQueue) {
         super.messageProcessor = messageProcessor;
+        this.workQueue = workQueue;
         this.sipStack = stack;
 
         // jeand : Create a new string message parser to parse the list of
@@ -297,10 +329,10 @@ public class UDPMessageChannel extends MessageChannel implements
                 	// adding condition to avoid looping and taking too much CPU if the 
                 	// auditing is not enabled
                 	if (threadHandle != null && sipStack.getThreadAuditor() !=null && sipStack.getThreadAuditor().isEnabled()) {
-                		work = udpMessageProcessor.messageQueue.poll(threadHandle
+                		work = workQueue.poll(threadHandle
 	                        .getPingIntervalInMillisecs(), TimeUnit.MILLISECONDS);
                 	} else {
-                		work = udpMessageProcessor.messageQueue.take();
+                		work = workQueue.take();
                 	}
 	                if (!udpMessageProcessor.isRunning) {
 	                    return;
@@ -309,7 +341,9 @@ public class UDPMessageChannel extends MessageChannel implements
 	                	continue;
 	                } else {
 	                	packet = work.packet;
-		                this.incomingPacket = work.packet;						
+		                this.incomingPacket = work.packet;
+		                this.queueSojournNanos = System.nanoTime() - work.getQueuedNanos();
+		                sipStack.getMetrics().recordQueueWait(queueSojournNanos);						
 	                }	                	
                 } catch (InterruptedException ex) {
 					if (!udpMessageProcessor.isRunning) {
@@ -327,6 +361,10 @@ public class UDPMessageChannel extends MessageChannel implements
 
                 logger.logError(
                         "Error while processing incoming UDP packet" + Arrays.toString(packet.getData()), e);
+            } finally {
+                // the message has been parsed, the buffer can be reused
+                this.incomingPacket = null;
+                udpMessageProcessor.releasePacket(packet);
             }
 
             if (sipStack.threadPoolSize == -1) {
@@ -335,6 +373,15 @@ public class UDPMessageChannel extends MessageChannel implements
         }
     }
 
+    /**
+     * @return the time in nanoseconds the message being processed waited in
+     *         the queue of the UDPMessageProcessor before a thread of the pool
+     *         took it, 0 when each message gets its own thread.
+     */
+    public long getQueueSojournNanos() {
+        return queueSojournNanos;
+    }
+
     /**
      * Process an incoming datagram
      *
@@ -345,10 +392,10 @@ public class UDPMessageChannel extends MessageChannel implements
             throws Exception {
         this.peerAddress = packet.getAddress();
         int packetLength = packet.getLength();
-        // Read bytes and put it in a eueue.
+        // The packet buffer may be a pooled one bigger than the message,
+        // only the [offset, offset + length) region belongs to this datagram.
         byte[] bytes = packet.getData();
-        byte[] msgBytes = new byte[packetLength];
-        System.arraycopy(bytes, 0, msgBytes, 0, packetLength);
+        int packetOffset = packet.getOffset();
 
         // Do debug logging.
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
@@ -360,9 +407,23 @@ public class UDPMessageChannel extends MessageChannel implements
         }
 
         SIPMessage sipMessage = null;
+        SipStackMetrics metrics = sipStack.getMetrics();
+        metrics.bytesReceived(ListeningPoint.UDP, packetLength);
         try {
             this.receptionTime = System.currentTimeMillis();
-            sipMessage = myParser.parseSIPMessage(msgBytes, true, false, this);
+            long parseStart = System.nanoTime();
+            if (myParser instanceof MessageParserExt) {
+                sipMessage = ((MessageParserExt) myParser).parseSIPMessage(bytes, packetOffset, packetLength, true, false, this);
+            } else {
+                byte[] msgBytes = new byte[packetLength];
+                System.arraycopy(bytes, packetOffset, msgBytes, 0, packetLength);
+                sipMessage = myParser.parseSIPMessage(msgBytes, true, false, this);
+            }
+            metrics.recordParseTime(System.nanoTime() - parseStart);
+            if (sipMessage != null && sipStack.isKeepReceivedBytes()) {
+                sipMessage.setReceivedBytes(Arrays.copyOfRange(bytes, packetOffset,
+                        packetOffset + sipMessage.getSize()));
+            }
             /*@see Issue 292 */
             if (sipMessage instanceof SIPRequest) {
                 String sipVersion = ((SIPRequest)sipMessage).getRequestLine().getSipVersion();
@@ -372,7 +433,7 @@ public class UDPMessageChannel extends MessageChannel implements
                      return;
                 }
                 String method = ((SIPRequest) sipMessage).getMethod();
-                String cseqMethod = ((SIPRequest) sipMessage).getCSeqHeader()
+                String cseqMethod = ((SIPRequest) sipMessage).peekCSeq()
                         .getMethod();
 
                 if (!method.equalsIgnoreCase(cseqMethod)) {
@@ -390,12 +451,12 @@ public class UDPMessageChannel extends MessageChannel implements
             // myParser = null; // let go of the parser reference.
             if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
                 this.logger.logDebug(
-                        "Rejecting message !  " + new String(msgBytes) + " " + ex.getMessage());
+                        "Rejecting message !  " + new String(bytes, packetOffset, packetLength) + " " + ex.getMessage());
             }
 
             // JvB: send a 400 response for requests (except ACK)
             // Currently only UDP, @todo also other transports
-            String msgString = new String(msgBytes, 0, packetLength);
+            String msgString = new String(bytes, packetOffset, packetLength);
             if (!msgString.startsWith("SIP/") && !msgString.startsWith("ACK ")) {
 
                 String badReqRes = createBadReqRes(msgString, ex);
@@ -450,12 +511,12 @@ public class UDPMessageChannel extends MessageChannel implements
             }
             return;
         }
-        Via topMostVia = sipMessage.getTopmostVia();
+        Via topMostVia = sipMessage.getTopmostViaForUpdate();
         // Check for the required headers.
-        if (sipMessage.getFrom() == null || sipMessage.getTo() == null
-                || sipMessage.getCallId() == null
-                || sipMessage.getCSeq() == null || topMostVia == null) {
-            String badmsg = new String(msgBytes);
+        if (sipMessage.peekFrom() == null || sipMessage.peekTo() == null
+                || sipMessage.peekCallId() == null
+                || sipMessage.peekCSeq() == null || topMostVia == null) {
+            String badmsg = new String(bytes, packetOffset, packetLength);
             if (logger.isLoggingEnabled()) {
                 this.logger
                         .logError("bad message " + badmsg);
@@ -756,7 +817,7 @@ public class UDPMessageChannel extends MessageChannel implements
                             }
                             
                             public Object getThreadHash() {
-                                return sipMessage.getCallId().getCallId();
+                                return sipMessage.peekCallId().getCallId();
                             }
                         };
                         getSIPStack().getSelfRoutingThreadpoolExecutor()
@@ -858,6 +919,7 @@ public class UDPMessageChannel extends MessageChannel implements
                 created = true;
             }
             sock.send(reply);
+            sipStack.getMetrics().bytesSent(ListeningPoint.UDP, msg.length);
             if (created)
                 sock.close();
         } catch (IOException ex) {
@@ -918,6 +980,7 @@ public class UDPMessageChannel extends MessageChannel implements
                                     + peerPort + "\n" + new String(msg));
                 }
                 sock.send(reply);
+                sipStack.getMetrics().bytesSent(ListeningPoint.UDP, msg.length);
                 if (!sipStack.udpFlag)
                     sock.close();
             } catch (IOException ex) {
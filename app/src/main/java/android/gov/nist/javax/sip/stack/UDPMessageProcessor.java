@@ -33,15 +33,22 @@ import android.gov.nist.core.HostPort;
 import android.gov.nist.core.LogWriter;
 import android.gov.nist.core.StackLogger;
 import android.gov.nist.core.ThreadAuditor;
+import android.gov.nist.core.net.DefaultNetworkLayer;
+import android.gov.nist.core.net.SslNetworkLayer;
 import android.gov.nist.javax.sip.SipStackImpl;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.LinkedList;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -100,6 +107,38 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
 
     protected DatagramSocket sock;
 
+    /**
+     * Channel backing sock when the DatagramChannel reader is enabled, null
+     * otherwise.
+     */
+    protected DatagramChannel datagramChannel;
+
+    /**
+     * Pool of receive packets, null if buffer pooling is disabled.
+     */
+    protected DatagramPacketPool packetPool;
+
+    /**
+     * Additional channels bound to the same port with SO_REUSEPORT, each one
+     * read by its own thread. Empty unless several UDP reader threads are
+     * configured and the platform supports SO_REUSEPORT.
+     */
+    protected DatagramChannel[] readerChannels = new DatagramChannel[0];
+
+    /**
+     * One queue per UDPMessageChannel thread when several reader threads are
+     * configured. Datagrams are spread on these by the hash of their Call-ID
+     * so that messages of a call are always handled by the same thread, in the
+     * order they were received. null in the default mode where all channels
+     * share messageQueue.
+     */
+    protected BlockingQueue<DatagramQueuedMessageDispatch>[] partitionQueues;
+
+    /**
+     * Auditors of partitionQueues (messageQueue is partitionQueues[0]).
+     */
+    private BlockingQueueDispatchAuditor[] partitionAuditors;
+
     /**
      * A flag that is set to false to exit the message processor (suggestion by
      * Jeff Keyser).
@@ -113,6 +152,28 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
     private int maxMessageSize = SipStackImpl.MAX_DATAGRAM_SIZE;
     private int exceptionsReportedCounter;
     private static final int MAX_EXCEPTIONS_TO_REPORT = 10;
+
+    /*
+     * SO_REUSEPORT only exists from Java 9 (and is not available on older
+     * Android releases), look it up reflectively so the stack still loads
+     * everywhere.
+     */
+    private static final Object SO_REUSEPORT;
+    private static final Method SET_OPTION_METHOD;
+    static {
+        Object option = null;
+        Method setOption = null;
+        try {
+            option = Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+            setOption = Class.forName("java.nio.channels.NetworkChannel").getMethod("setOption",
+                    Class.forName("java.net.SocketOption"), Object.class);
+        } catch (Throwable t) {
+            option = null;
+            setOption = null;
+        }
+        SO_REUSEPORT = option;
+        SET_OPTION_METHOD = setOption;
+    }
     
     /**
      * Constructor.
@@ -131,21 +192,54 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
         if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
             logger.logDebug("Max Message size is " + maxMessageSize);
         }
-        this.messageQueue = new LinkedBlockingQueue<DatagramQueuedMessageDispatch>();
-        // Contribution for https://github.com/Mobicents/jain-sip/issues/39
-        if(sipStack.getStackCongestionControlTimeout()>0) {
-        	this.congestionAuditor = new BlockingQueueDispatchAuditor(this.messageQueue);
-        	this.congestionAuditor.setTimeout(sipStack.getStackCongestionControlTimeout());
-        	this.congestionAuditor.start(2000);
+        int readerThreads = sipStack.getUdpReaderThreads();
+        if (readerThreads > 1 && sipStack.threadPoolSize > 0) {
+            createPartitionQueues(sipStack.threadPoolSize);
+        } else {
+            this.messageQueue = new LinkedBlockingQueue<DatagramQueuedMessageDispatch>();
+            // Contribution for https://github.com/Mobicents/jain-sip/issues/39
+            if(sipStack.getStackCongestionControlTimeout()>0) {
+            	this.congestionAuditor = new BlockingQueueDispatchAuditor(this.messageQueue);
+            	this.congestionAuditor.setTimeout(sipStack.getStackCongestionControlTimeout());
+            	this.congestionAuditor.start(2000);
+            }
+        }
+
+        if (sipStack.getUdpBufferPoolSize() > 0) {
+            this.packetPool = new DatagramPacketPool(sipStack.getUdpBufferPoolSize(), maxMessageSize);
         }
 
         this.port = port;
         try {
-            this.sock = sipStack.getNetworkLayer().createDatagramSocket(port,
-                    ipAddress);
-            // Create a new datagram socket.
-            sock.setReceiveBufferSize(sipStack.getReceiveUdpBufferSize());
-            sock.setSendBufferSize(sipStack.getSendUdpBufferSize());
+            if (readerThreads > 1) {
+                if (!isDefaultNetworkLayer()) {
+                    logger.logWarning("UDP_READER_THREADS is ignored with a custom NETWORK_LAYER, "
+                            + "using a single UDP reader thread on port " + port);
+                } else {
+                    this.datagramChannel = openReusePortChannel(ipAddress, port);
+                    if (this.datagramChannel == null) {
+                        logger.logWarning("SO_REUSEPORT is not supported on this platform, "
+                                + "using a single UDP reader thread on port " + port);
+                    }
+                }
+            }
+            if (this.datagramChannel != null) {
+                this.sock = datagramChannel.socket();
+            } else if (sipStack.isUdpDatagramChannelEnabled()) {
+                // The channel is left in blocking mode so its socket adaptor
+                // can still be used by the message channels to send.
+                this.datagramChannel = DatagramChannel.open();
+                this.sock = datagramChannel.socket();
+                sock.setReceiveBufferSize(sipStack.getReceiveUdpBufferSize());
+                sock.setSendBufferSize(sipStack.getSendUdpBufferSize());
+                sock.bind(new InetSocketAddress(ipAddress, port));
+            } else {
+                this.sock = sipStack.getNetworkLayer().createDatagramSocket(port,
+                        ipAddress);
+                // Create a new datagram socket.
+                sock.setReceiveBufferSize(sipStack.getReceiveUdpBufferSize());
+                sock.setSendBufferSize(sipStack.getSendUdpBufferSize());
+            }
 
             /**
              * If the thread auditor is enabled, define a socket timeout value in order to
@@ -164,12 +258,99 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
                 super.setIpAddress( sock.getLocalAddress() );
 
             }
+            if (readerThreads > 1 && this.datagramChannel != null) {
+                // bind to the port actually used in case we were given 0
+                this.readerChannels = new DatagramChannel[readerThreads - 1];
+                for (int i = 0; i < readerChannels.length; i++) {
+                    readerChannels[i] = openReusePortChannel(ipAddress, sock.getLocalPort());
+                }
+            }
         } catch (Exception ex) {
-        	if(this.congestionAuditor != null) this.congestionAuditor.stop();
+        	stopAuditors();
+        	if(this.datagramChannel != null) this.datagramChannel.close();
+        	for (DatagramChannel channel : readerChannels) {
+        		if (channel != null) channel.close();
+        	}
             throw new IOException(ex);
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private void createPartitionQueues(int partitions) {
+        this.partitionQueues = (BlockingQueue<DatagramQueuedMessageDispatch>[]) new BlockingQueue<?>[partitions];
+        this.partitionAuditors = new BlockingQueueDispatchAuditor[partitions];
+        for (int i = 0; i < partitions; i++) {
+            partitionQueues[i] = new LinkedBlockingQueue<DatagramQueuedMessageDispatch>();
+            if (sipStack.getStackCongestionControlTimeout() > 0) {
+                partitionAuditors[i] = new BlockingQueueDispatchAuditor(partitionQueues[i]);
+                partitionAuditors[i].setTimeout(sipStack.getStackCongestionControlTimeout());
+                partitionAuditors[i].start(2000);
+            }
+        }
+        this.messageQueue = partitionQueues[0];
+        this.congestionAuditor = partitionAuditors[0];
+    }
+
+    private void stopAuditors() {
+        if (partitionAuditors != null) {
+            for (BlockingQueueDispatchAuditor auditor : partitionAuditors) {
+                if (auditor != null) auditor.stop();
+            }
+        } else if (congestionAuditor != null) {
+            congestionAuditor.stop();
+        }
+    }
+
+    /**
+     * The SO_REUSEPORT channels are opened directly, which is only equivalent
+     * to going through the network layer when it is one of the stack's own
+     * (they create plain datagram sockets). A custom NETWORK_LAYER may need to
+     * protect or tag its sockets, so it always gets to create the single one.
+     */
+    private boolean isDefaultNetworkLayer() {
+        Class<?> networkLayerClass = sipStack.getNetworkLayer().getClass();
+        return networkLayerClass == DefaultNetworkLayer.class
+                || networkLayerClass == SslNetworkLayer.class;
+    }
+
+    /**
+     * Open a channel bound to the given address and port with SO_REUSEPORT
+     * set, so that several of them can share the port and the kernel spreads
+     * the incoming datagrams across them.
+     *
+     * @return the bound channel or null if SO_REUSEPORT is not available.
+     */
+    private DatagramChannel openReusePortChannel(InetAddress ipAddress, int port)
+            throws IOException {
+        if (SET_OPTION_METHOD == null) {
+            return null;
+        }
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            try {
+                SET_OPTION_METHOD.invoke(channel, SO_REUSEPORT, Boolean.TRUE);
+            } catch (Exception ex) {
+                if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+                    logger.logDebug("Could not set SO_REUSEPORT " + ex);
+                }
+                channel.close();
+                return null;
+            }
+            DatagramSocket socket = channel.socket();
+            socket.setReceiveBufferSize(sipStack.getReceiveUdpBufferSize());
+            socket.setSendBufferSize(sipStack.getSendUdpBufferSize());
+            socket.bind(new InetSocketAddress(ipAddress, port));
+            if (sipStack.getThreadAuditor() != null && sipStack.getThreadAuditor().isEnabled()) {
+                socket.setSoTimeout((int) sipStack.getThreadAuditor().getPingIntervalInMillisecs());
+            }
+            return channel;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+
 
 
     /**
@@ -207,13 +388,36 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
         // infinity.
         if (sipStack.threadPoolSize != -1) {
             for (int i = 0; i < sipStack.threadPoolSize; i++) {
+                BlockingQueue<DatagramQueuedMessageDispatch> queue = partitionQueues != null ?
+                        partitionQueues[i] : messageQueue;
                 UDPMessageChannel channel = new UDPMessageChannel(sipStack,
-                        this, ((SipStackImpl)sipStack).getStackName() + "-UDPMessageChannelThread-" + i);
+                        this, ((SipStackImpl)sipStack).getStackName() + "-UDPMessageChannelThread-" + i, queue);
                 this.messageChannels.add(channel);
 
             }
         }
 
+        for (int i = 0; i < readerChannels.length; i++) {
+            final DatagramChannel channel = readerChannels[i];
+            Thread thread = new Thread() {
+                public void run() {
+                    receiveLoop(channel.socket(), channel);
+                }
+            };
+            thread.setDaemon(true);
+            thread.setName("MessageProcessorThread-UDP-" + getIpAddress().getHostAddress() + '/' + getPort() + '-' + (i + 1));
+            thread.setPriority(sipStack.getThreadPriority());
+            thread.start();
+        }
+
+        receiveLoop(sock, datagramChannel);
+    }
+
+    /**
+     * Read datagrams from the given socket (through the channel if not null)
+     * and queue them for the message channels until the processor is stopped.
+     */
+    private void receiveLoop(DatagramSocket sock, DatagramChannel datagramChannel) {
         // Ask the auditor to monitor this thread
         ThreadAuditor.ThreadHandle threadHandle = null;
         // Contribution for https://github.com/Mobicents/jain-sip/issues/39
@@ -229,10 +433,7 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
             	if(threadHandle != null)
             		threadHandle.ping();
 
-                int bufsize = this.maxMessageSize;
-                byte message[] = new byte[bufsize];
-                DatagramPacket packet = new DatagramPacket(message, bufsize);
-                sock.receive(packet);
+                DatagramPacket packet = receivePacket(sock, datagramChannel);
                 
                 // Count of # of packets in process.
                 // this.useCount++;
@@ -243,7 +444,12 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
                     // condition you will have to call notifyAll instead of
                     // notify below.
 
-                    this.messageQueue.offer(new DatagramQueuedMessageDispatch(packet, System.currentTimeMillis()));                 
+                    DatagramQueuedMessageDispatch dispatch = new DatagramQueuedMessageDispatch(packet, System.currentTimeMillis());
+                    if (partitionQueues != null) {
+                        partitionQueues[partitionIndex(packet)].offer(dispatch);
+                    } else {
+                        this.messageQueue.offer(dispatch);
+                    }
 
                 } else {
                     new UDPMessageChannel(sipStack, this, packet);
@@ -265,6 +471,13 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
             	}
             }
             catch (IOException ex) {
+            	if( !isRunning ) {
+            		// the channel reader ends with a ClosedChannelException on stop
+					if (logger.isLoggingEnabled(LogWriter.TRACE_DEBUG)) {
+	                    logger.logDebug("UDPMessageProcessor: Stopping");
+					}
+                    return;
+            	}
         		reportSockeException(ex);		// report exception but try to continue to receive data ...
             }
             catch (Exception ex) {
@@ -273,6 +486,129 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
         }
     }
     
+    /**
+     * Block until the next datagram arrives. The packet comes from the pool when
+     * pooling is enabled and must then be handed back through releasePacket once
+     * it has been parsed.
+     */
+    private DatagramPacket receivePacket(DatagramSocket sock, DatagramChannel datagramChannel) throws IOException {
+        DatagramPacket packet;
+        if (packetPool != null) {
+            packet = packetPool.acquire();
+        } else {
+            int bufsize = this.maxMessageSize;
+            byte message[] = new byte[bufsize];
+            packet = new DatagramPacket(message, bufsize);
+        }
+        // The channel ignores SO_TIMEOUT, keep going through the socket when
+        // the thread auditor needs us to wake up periodically.
+        if (datagramChannel != null && sock.getSoTimeout() == 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), 0, packet.getData().length);
+            SocketAddress from;
+            try {
+                from = datagramChannel.receive(buffer);
+            } catch (IOException ex) {
+                releasePacket(packet);
+                throw ex;
+            }
+            packet.setLength(buffer.position());
+            packet.setSocketAddress(from);
+        } else {
+            try {
+                sock.receive(packet);
+            } catch (IOException ex) {
+                releasePacket(packet);
+                throw ex;
+            }
+        }
+        return packet;
+    }
+
+    /**
+     * Give a packet obtained from the receive loop back to the pool. No-op when
+     * pooling is disabled.
+     */
+    protected void releasePacket(DatagramPacket packet) {
+        if (packetPool != null) {
+            packetPool.release(packet);
+        }
+    }
+
+    /**
+     * Pick the partition queue of a datagram from its Call-ID, falling back on
+     * the source address for datagrams without one (keep alives).
+     */
+    private int partitionIndex(DatagramPacket packet) {
+        int hash = callIdHash(packet.getData(), packet.getOffset(), packet.getLength());
+        if (hash == 0) {
+            hash = packet.getPort();
+        }
+        return (hash & Integer.MAX_VALUE) % partitionQueues.length;
+    }
+
+    /**
+     * Hash the value of the Call-ID header (long or compact form) straight from
+     * the raw bytes of a message, without parsing or decoding it.
+     *
+     * @return the hash or 0 if the message has no Call-ID header.
+     */
+    static int callIdHash(byte[] buffer, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        while (true) {
+            // move to the start of the next line, the first one is the
+            // request or status line
+            while (i < end && buffer[i] != '\n')
+                i++;
+            i++;
+            if (i >= end || buffer[i] == '\r' || buffer[i] == '\n') {
+                // end of the headers
+                return 0;
+            }
+            int nameStart = i;
+            while (i < end && buffer[i] != ':' && buffer[i] != '\n')
+                i++;
+            if (i >= end) {
+                return 0;
+            }
+            if (buffer[i] == '\n') {
+                // not a header line
+                continue;
+            }
+            int nameEnd = i;
+            while (nameEnd > nameStart && (buffer[nameEnd - 1] == ' ' || buffer[nameEnd - 1] == '\t'))
+                nameEnd--;
+            if (isCallIdName(buffer, nameStart, nameEnd - nameStart)) {
+                i++;
+                while (i < end && (buffer[i] == ' ' || buffer[i] == '\t'))
+                    i++;
+                int hash = 0;
+                while (i < end && buffer[i] > ' ') {
+                    hash = 31 * hash + buffer[i];
+                    i++;
+                }
+                return hash;
+            }
+        }
+    }
+
+    private static final byte[] CALL_ID_LOWER = { 'c', 'a', 'l', 'l', '-', 'i', 'd' };
+
+    private static boolean isCallIdName(byte[] buffer, int start, int length) {
+        if (length == 1) {
+            return (buffer[start] | 0x20) == 'i';
+        }
+        if (length != CALL_ID_LOWER.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((buffer[start + i] | 0x20) != CALL_ID_LOWER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void reportSockeException(Exception e) {
 		if( exceptionsReportedCounter < MAX_EXCEPTIONS_TO_REPORT ) {
 			exceptionsReportedCounter++;
@@ -313,13 +649,20 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
     public void stop() {
             this.isRunning = false;
             sock.close();        
+            for (DatagramChannel channel : readerChannels) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    logger.logException(ex);
+                }
+            }
           // closing the channels
           for (Object messageChannel : messageChannels) {
 			((MessageChannel)messageChannel).close();
           }
           // Contribution for https://github.com/Mobicents/jain-sip/issues/39
-          if(sipStack.getStackCongestionControlTimeout() > 0 && congestionAuditor != null) {
-          	this.congestionAuditor.stop();
+          if(sipStack.getStackCongestionControlTimeout() > 0) {
+          	stopAuditors();
           }
     }
 
@@ -380,6 +723,12 @@ public class UDPMessageProcessor extends MessageProcessor implements Runnable {
      * Return true if there are any messages in use.
      */
     public boolean inUse() {
+    	if (partitionQueues != null) {
+    		for (BlockingQueue<DatagramQueuedMessageDispatch> queue : partitionQueues) {
+    			if (!queue.isEmpty()) return true;
+    		}
+    		return false;
+    	}
     	return !messageQueue.isEmpty();
     }
 
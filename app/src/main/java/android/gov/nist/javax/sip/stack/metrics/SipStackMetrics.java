@@ -0,0 +1,457 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack.metrics;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import android.gov.nist.core.CommonLogger;
+import android.gov.nist.core.LogWriter;
+import android.gov.nist.core.StackLogger;
+import android.gov.nist.javax.sip.stack.SIPTransactionStack;
+
+/**
+ * Runtime metrics of a stack, cheap enough to be left on under full load:
+ * counters are StripedCounters, durations go to LatencyHistograms and neither
+ * allocates once the method, status and transport in use have been seen.
+ *
+ * The metrics are read with the getters of this class or all at once with
+ * getSnapshot(). On a JVM they can also be registered as an MBean in the
+ * platform MBean server, see the android.gov.nist.javax.sip.METRICS_JMX_NAME
+ * property of SipStackImpl.
+ *
+ * Recording is disabled with android.gov.nist.javax.sip.METRICS_ENABLED=false,
+ * the stack then only pays for a volatile read and a call to System.nanoTime()
+ * around the timed operations.
+ *
+ * @since 2.0
+ */
+public class SipStackMetrics implements SipStackMetricsMBean {
+
+    private static StackLogger logger = CommonLogger.getLogger(SipStackMetrics.class);
+
+    // Extension methods beyond this number are counted together, so a peer
+    // cannot grow the method table without bounds.
+    private static final int MAX_METHODS = 32;
+    private static final String OTHER_METHODS = "OTHER";
+
+    private final SIPTransactionStack sipStack;
+
+    private volatile boolean enabled = true;
+
+    private final LatencyHistogram parseTime = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram listenerTime = new LatencyHistogram();
+
+    private final StripedCounter retransmissionsSent = new StripedCounter();
+    private final StripedCounter retransmissionsReceived = new StripedCounter();
+
+    private final ConcurrentHashMap<String, StripedCounter> requestsReceived =
+            new ConcurrentHashMap<String, StripedCounter>();
+    // the counter of the methods past MAX_METHODS, created up front so that
+    // counting them never allocates
+    private final StripedCounter otherMethods = new StripedCounter();
+    // indexed by status code - 100
+    private final AtomicReferenceArray<StripedCounter> responsesReceived =
+            new AtomicReferenceArray<StripedCounter>(600);
+
+    private final ConcurrentHashMap<String, StripedCounter> bytesReceived =
+            new ConcurrentHashMap<String, StripedCounter>();
+    private final ConcurrentHashMap<String, StripedCounter> bytesSent =
+            new ConcurrentHashMap<String, StripedCounter>();
+
+    // the MBeanServer and ObjectName, kept as Object as JMX is not available on Android
+    private Object mbeanServer;
+    private Object mbeanName;
+
+    public SipStackMetrics(SIPTransactionStack sipStack) {
+        this.sipStack = sipStack;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Records the time taken to parse a message.
+     */
+    public void recordParseTime(long nanos) {
+        if (enabled) {
+            parseTime.record(nanos);
+        }
+    }
+
+    /**
+     * Records the time a received message waited before a thread of the
+     * stack started processing it.
+     */
+    public void recordQueueWait(long nanos) {
+        if (enabled) {
+            queueWait.record(nanos);
+        }
+    }
+
+    /**
+     * Records the time the SipListener took to process a request or a response.
+     */
+    public void recordListenerTime(long nanos) {
+        if (enabled) {
+            listenerTime.record(nanos);
+        }
+    }
+
+    public void requestReceived(String method) {
+        if (enabled) {
+            methodCounter(method).increment();
+        }
+    }
+
+    public void responseReceived(int statusCode) {
+        if (enabled && statusCode >= 100 && statusCode < 700) {
+            StripedCounter counter = responsesReceived.get(statusCode - 100);
+            if (counter == null) {
+                responsesReceived.compareAndSet(statusCode - 100, null, new StripedCounter());
+                counter = responsesReceived.get(statusCode - 100);
+            }
+            counter.increment();
+        }
+    }
+
+    public void retransmissionSent() {
+        if (enabled) {
+            retransmissionsSent.increment();
+        }
+    }
+
+    public void retransmissionReceived() {
+        if (enabled) {
+            retransmissionsReceived.increment();
+        }
+    }
+
+    public void bytesReceived(String transport, long bytes) {
+        if (enabled) {
+            counter(bytesReceived, transport).add(bytes);
+        }
+    }
+
+    public void bytesSent(String transport, long bytes) {
+        if (enabled) {
+            counter(bytesSent, transport).add(bytes);
+        }
+    }
+
+    private StripedCounter methodCounter(String method) {
+        StripedCounter counter = requestsReceived.get(method);
+        if (counter == null && requestsReceived.size() >= MAX_METHODS) {
+            requestsReceived.putIfAbsent(OTHER_METHODS, otherMethods);
+            return otherMethods;
+        }
+        return counter != null ? counter : counter(requestsReceived, method);
+    }
+
+    private static StripedCounter counter(ConcurrentHashMap<String, StripedCounter> counters,
+            String name) {
+        StripedCounter counter = counters.get(name);
+        if (counter == null) {
+            counter = new StripedCounter();
+            StripedCounter existing = counters.putIfAbsent(name, counter);
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    public LatencyHistogram getParseTime() {
+        return parseTime;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getListenerTime() {
+        return listenerTime;
+    }
+
+    public long getParseTimeMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(parseTime.getMean());
+    }
+
+    public long getParseTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(parseTime.getPercentile(99));
+    }
+
+    public long getQueueWaitMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(queueWait.getMean());
+    }
+
+    public long getQueueWaitP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(queueWait.getPercentile(99));
+    }
+
+    public long getListenerTimeMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(listenerTime.getMean());
+    }
+
+    public long getListenerTimeP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(listenerTime.getPercentile(99));
+    }
+
+    public int getServerTransactionTableSize() {
+        return sipStack.getServerTransactionTableSize();
+    }
+
+    public int getClientTransactionTableSize() {
+        return sipStack.getClientTransactionTableSize();
+    }
+
+    public int getDialogTableSize() {
+        return sipStack.getDialogTableSize();
+    }
+
+    public long getRetransmissionsSent() {
+        return retransmissionsSent.sum();
+    }
+
+    public long getRetransmissionsReceived() {
+        return retransmissionsReceived.sum();
+    }
+
+    /**
+     * @return the number of requests received with this method, extension
+     *         methods past the 32 first ones seen are counted as "OTHER".
+     */
+    public long getRequestsReceived(String method) {
+        StripedCounter counter = requestsReceived.get(method);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getRequestsReceived() {
+        return sum(requestsReceived);
+    }
+
+    public long getResponsesReceived(int statusCode) {
+        if (statusCode < 100 || statusCode >= 700) {
+            return 0;
+        }
+        StripedCounter counter = responsesReceived.get(statusCode - 100);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getResponsesReceived() {
+        long sum = 0;
+        for (int i = 0; i < responsesReceived.length(); i++) {
+            StripedCounter counter = responsesReceived.get(i);
+            if (counter != null) {
+                sum += counter.sum();
+            }
+        }
+        return sum;
+    }
+
+    public long getBytesReceived(String transport) {
+        return sumIgnoreCase(bytesReceived, transport);
+    }
+
+    public long getBytesReceived() {
+        return sum(bytesReceived);
+    }
+
+    public long getBytesSent(String transport) {
+        return sumIgnoreCase(bytesSent, transport);
+    }
+
+    public long getBytesSent() {
+        return sum(bytesSent);
+    }
+
+    private static long sum(Map<String, StripedCounter> counters) {
+        long sum = 0;
+        for (StripedCounter counter : counters.values()) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    // the transports are named in lower or upper case depending on the caller
+    private static long sumIgnoreCase(Map<String, StripedCounter> counters, String transport) {
+        long sum = 0;
+        for (Entry<String, StripedCounter> entry : counters.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(transport)) {
+                sum += entry.getValue().sum();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns every metric by name, durations in microseconds:
+     * <ul>
+     * <li>parseTime, queueWait and listenerTime followed by .count, .meanMicros,
+     * .p50Micros, .p99Micros and .maxMicros</li>
+     * <li>serverTransactions, clientTransactions, dialogs and earlyDialogs, the
+     * sizes of the tables</li>
+     * <li>retransmissions.sent and retransmissions.received</li>
+     * <li>requests.received.&lt;method&gt; and responses.received.&lt;status code&gt;</li>
+     * <li>bytes.received.&lt;transport&gt; and bytes.sent.&lt;transport&gt;</li>
+     * </ul>
+     */
+    public Map<String, Number> getSnapshot() {
+        Map<String, Number> snapshot = new TreeMap<String, Number>();
+        addHistogram(snapshot, "parseTime", parseTime);
+        addHistogram(snapshot, "queueWait", queueWait);
+        addHistogram(snapshot, "listenerTime", listenerTime);
+        snapshot.put("serverTransactions", Integer.valueOf(sipStack.getServerTransactionTableSize()));
+        snapshot.put("clientTransactions", Integer.valueOf(sipStack.getClientTransactionTableSize()));
+        snapshot.put("dialogs", Integer.valueOf(sipStack.getDialogTableSize()));
+        snapshot.put("earlyDialogs", Integer.valueOf(sipStack.getEarlyDialogTableSize()));
+        snapshot.put("retransmissions.sent", Long.valueOf(retransmissionsSent.sum()));
+        snapshot.put("retransmissions.received", Long.valueOf(retransmissionsReceived.sum()));
+        for (Entry<String, StripedCounter> entry : requestsReceived.entrySet()) {
+            snapshot.put("requests.received." + entry.getKey(), Long.valueOf(entry.getValue().sum()));
+        }
+        for (int i = 0; i < responsesReceived.length(); i++) {
+            StripedCounter counter = responsesReceived.get(i);
+            if (counter != null) {
+                snapshot.put("responses.received." + (i + 100), Long.valueOf(counter.sum()));
+            }
+        }
+        addTransports(snapshot, "bytes.received.", bytesReceived);
+        addTransports(snapshot, "bytes.sent.", bytesSent);
+        return snapshot;
+    }
+
+    private static void addHistogram(Map<String, Number> snapshot, String name, LatencyHistogram histogram) {
+        snapshot.put(name + ".count", Long.valueOf(histogram.getCount()));
+        snapshot.put(name + ".meanMicros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(histogram.getMean())));
+        snapshot.put(name + ".p50Micros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(50))));
+        snapshot.put(name + ".p99Micros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(99))));
+        snapshot.put(name + ".maxMicros", Long.valueOf(TimeUnit.NANOSECONDS.toMicros(histogram.getMax())));
+    }
+
+    private static void addTransports(Map<String, Number> snapshot, String prefix,
+            Map<String, StripedCounter> counters) {
+        for (Entry<String, StripedCounter> entry : counters.entrySet()) {
+            String name = prefix + entry.getKey().toUpperCase();
+            Number previous = snapshot.get(name);
+            long sum = entry.getValue().sum() + (previous == null ? 0 : previous.longValue());
+            snapshot.put(name, Long.valueOf(sum));
+        }
+    }
+
+    public void reset() {
+        parseTime.reset();
+        queueWait.reset();
+        listenerTime.reset();
+        retransmissionsSent.reset();
+        retransmissionsReceived.reset();
+        for (StripedCounter counter : requestsReceived.values()) {
+            counter.reset();
+        }
+        for (int i = 0; i < responsesReceived.length(); i++) {
+            StripedCounter counter = responsesReceived.get(i);
+            if (counter != null) {
+                counter.reset();
+            }
+        }
+        for (StripedCounter counter : bytesReceived.values()) {
+            counter.reset();
+        }
+        for (StripedCounter counter : bytesSent.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server. JMX is looked up
+     * by reflection as it does not exist on Android, where this only logs a
+     * warning.
+     *
+     * @param objectName the JMX ObjectName, for instance
+     *            android.gov.nist.javax.sip:type=SipStackMetrics,name=mystack
+     */
+    public synchronized void registerMBean(String objectName) {
+        try {
+            Class<?> mbeanServerClass = Class.forName("javax.management.MBeanServer");
+            Class<?> objectNameClass = Class.forName("javax.management.ObjectName");
+            Object server = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getPlatformMBeanServer").invoke(null);
+            Object name = objectNameClass.getConstructor(String.class).newInstance(objectName);
+            mbeanServerClass.getMethod("registerMBean", Object.class, objectNameClass)
+                    .invoke(server, this, name);
+            mbeanServer = server;
+            mbeanName = name;
+            if (logger.isLoggingEnabled(LogWriter.TRACE_INFO)) {
+                logger.logInfo("Registered the stack metrics as " + objectName);
+            }
+        } catch (Exception e) {
+            logger.logWarning("Could not register the stack metrics as " + objectName + " : " + e);
+        }
+    }
+
+    /**
+     * Unregisters these metrics from the platform MBean server if they were
+     * registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            Class<?> mbeanServerClass = Class.forName("javax.management.MBeanServer");
+            Class<?> objectNameClass = Class.forName("javax.management.ObjectName");
+            mbeanServerClass.getMethod("unregisterMBean", objectNameClass).invoke(mbeanServer, mbeanName);
+        } catch (Exception e) {
+            logger.logWarning("Could not unregister the stack metrics " + mbeanName + " : " + e);
+        } finally {
+            mbeanServer = null;
+            mbeanName = null;
+        }
+    }
+
+    public String toString() {
+        StringBuilder retval = new StringBuilder("SipStackMetrics [");
+        for (Iterator<Entry<String, Number>> it = getSnapshot().entrySet().iterator(); it.hasNext();) {
+            Entry<String, Number> entry = it.next();
+            retval.append(entry.getKey()).append('=').append(entry.getValue());
+            if (it.hasNext()) {
+                retval.append(", ");
+            }
+        }
+        return retval.append(']').toString();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of SipStackMetrics, following the standard MBean naming
+ * convention so that, on a JVM providing JMX, the metrics of a stack can be
+ * registered as they are in the platform MBean server. Durations are in
+ * microseconds.
+ *
+ * @since 2.0
+ */
+public interface SipStackMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Sets all the counters and histograms back to 0.
+     */
+    void reset();
+
+    /**
+     * @return every metric by name, see SipStackMetrics#getSnapshot()
+     */
+    Map<String, Number> getSnapshot();
+
+    long getParseTimeMeanMicros();
+
+    long getParseTimeP99Micros();
+
+    long getQueueWaitMeanMicros();
+
+    long getQueueWaitP99Micros();
+
+    long getListenerTimeMeanMicros();
+
+    long getListenerTimeP99Micros();
+
+    int getServerTransactionTableSize();
+
+    int getClientTransactionTableSize();
+
+    int getDialogTableSize();
+
+    long getRetransmissionsSent();
+
+    long getRetransmissionsReceived();
+
+    long getRequestsReceived();
+
+    long getResponsesReceived();
+
+    long getBytesReceived();
+
+    long getBytesSent();
+}
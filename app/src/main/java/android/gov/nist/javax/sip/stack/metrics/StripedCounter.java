@@ -0,0 +1,96 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter updated by many threads at once, spread over several cells so the
+ * threads do not all contend on the same cache line. Reading it sums the cells,
+ * so it is meant to be written often and read rarely.
+ *
+ * It plays the part of java.util.concurrent.atomic.LongAdder, which is not
+ * available on all the Android versions supported by the stack.
+ *
+ * @since 2.0
+ */
+public class StripedCounter {
+
+    // longs per cell, so that two cells never share a 64 bytes cache line
+    private static final int PADDING = 8;
+
+    static final int STRIPES;
+
+    static {
+        int stripes = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors && stripes < 16) {
+            stripes <<= 1;
+        }
+        STRIPES = stripes;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long value) {
+        cells.getAndAdd(stripe() * PADDING, value);
+    }
+
+    /**
+     * @return the stripe of the current thread, between 0 and STRIPES - 1.
+     */
+    static int stripe() {
+        // the same thread always updates the same cell
+        int hash = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return (hash >>> 16) & (STRIPES - 1);
+    }
+
+    /**
+     * @return the sum of the cells, not an atomic snapshot when the counter is
+     *         updated concurrently.
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
@@ -0,0 +1,417 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack.timers;
+
+import android.gov.nist.core.CommonLogger;
+import android.gov.nist.core.NamingThreadFactory;
+import android.gov.nist.core.StackLogger;
+import android.gov.nist.javax.sip.SipStackImpl;
+import android.gov.nist.javax.sip.stack.SIPStackTimerTask;
+
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementation of the SIP Timer based on a hashed timing wheel (Varghese and Lauck).
+ * Scheduling and cancelling a task are O(1): tasks are hashed into a ring of buckets by
+ * their deadline, each bucket being a doubly linked list, and a single thread walks the
+ * wheel, running the tasks of the bucket of the current tick that are due. Tasks further
+ * away than one turn of the wheel stay in their bucket and are skipped until their turn.
+ *
+ * Scheduling and cancelling from other threads only enqueue to lock free queues drained by
+ * the wheel thread, so they never contend with it. Tasks run on the wheel thread, as they
+ * do on the java.util.Timer thread of DefaultSipTimer.
+ *
+ * The tick only sets how the tasks are spread across the buckets, not when they fire: the
+ * wheel thread parks until the earliest deadline of the bucket of the current tick, or until
+ * the next bucket holding a task when that one is empty, found from a bitmap of the buckets
+ * holding a task rather than by looking at every bucket, so tasks fire as close to their
+ * deadline as the other timers do, and the thread does not wake up at all while no task is
+ * scheduled. A shorter tick means fewer tasks to look at per wake up, a larger wheel fewer
+ * turns to wait for the long SIP timers.
+ *
+ * The tick duration and the number of buckets can be set through the
+ * android.gov.nist.javax.sip.timers.WHEEL_TICK_DURATION (ms, default 1) and
+ * android.gov.nist.javax.sip.timers.WHEEL_SIZE (rounded up to a power of 2, default 4096)
+ * stack properties.
+ *
+ * @since 2.0
+ */
+public class HashedWheelSipTimer implements SipTimer {
+	private static StackLogger logger = CommonLogger.getLogger(HashedWheelSipTimer.class);
+
+	private static final int ST_INIT = 0;
+	private static final int ST_CANCELLED = 1;
+	private static final int ST_EXPIRED = 2;
+
+	private static final long NO_WAKEUP = Long.MAX_VALUE;
+
+	protected SipStackImpl sipStackImpl;
+
+	private long tickDuration;
+	private Bucket[] wheel;
+	private int mask;
+	// One bit per bucket, set while the bucket holds a task. Only accessed by the wheel thread.
+	private long[] occupied;
+
+	private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+	private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<WheelTimeout>();
+
+	private volatile boolean started;
+	private Thread workerThread;
+	private long startTime;
+
+	// Time (since startTime) the wheel thread is parked until, NO_WAKEUP when it waits for a
+	// task to be scheduled. A task due before then unparks it.
+	private volatile long wakeupTime;
+
+	public HashedWheelSipTimer() {
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#start(android.gov.nist.javax.sip.SipStackImpl, java.util.Properties)
+	 */
+	public void start(SipStackImpl sipStack, Properties configurationProperties) {
+		sipStackImpl = sipStack;
+		long tickMillis = 1;
+		int wheelSize = 4096;
+		if (configurationProperties != null) {
+			tickMillis = Long.parseLong(configurationProperties.getProperty(
+					"android.gov.nist.javax.sip.timers.WHEEL_TICK_DURATION", "1"));
+			wheelSize = Integer.parseInt(configurationProperties.getProperty(
+					"android.gov.nist.javax.sip.timers.WHEEL_SIZE", "4096"));
+		}
+		if (tickMillis <= 0 || wheelSize <= 0) {
+			throw new IllegalArgumentException("The timer wheel tick duration and size must be positive");
+		}
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		wheel = new Bucket[size];
+		occupied = new long[(size + 63) >>> 6];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket(i, occupied);
+		}
+		mask = size - 1;
+		tickDuration = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		startTime = System.nanoTime();
+		wakeupTime = NO_WAKEUP;
+		started = true;
+		workerThread = new NamingThreadFactory("jain_sip_wheel_timer").newThread(new Worker());
+		workerThread.start();
+		if(logger.isLoggingEnabled(StackLogger.TRACE_INFO)) {
+			logger.logInfo("the sip stack timer " + this.getClass().getName() + " has been started");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#stop()
+	 */
+	public void stop() {
+		started = false;
+		if (workerThread != null) {
+			LockSupport.unpark(workerThread);
+		}
+		pendingTimeouts.clear();
+		cancelledTimeouts.clear();
+		logger.logStackTrace(StackLogger.TRACE_DEBUG);
+		if(logger.isLoggingEnabled(StackLogger.TRACE_INFO)) {
+			logger.logInfo("the sip stack timer " + this.getClass().getName() + " has been stopped");
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#schedule(android.gov.nist.javax.sip.stack.SIPStackTimerTask, long)
+	 */
+	public boolean schedule(SIPStackTimerTask task, long delay) {
+		return scheduleWithFixedDelay(task, delay, 0);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#scheduleWithFixedDelay(android.gov.nist.javax.sip.stack.SIPStackTimerTask, long, long)
+	 */
+	public boolean scheduleWithFixedDelay(SIPStackTimerTask task, long delay,
+			long period) {
+		if(!started) {
+			throw new IllegalStateException("The SIP Stack Timer has been stopped, no new tasks can be scheduled !");
+		}
+		WheelTimeout timeout = new WheelTimeout(task, TimeUnit.MILLISECONDS.toNanos(period));
+		timeout.deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0));
+		task.setSipTimerTask(timeout);
+		pendingTimeouts.add(timeout);
+		if (timeout.deadline < wakeupTime) {
+			LockSupport.unpark(workerThread);
+		}
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#cancel(android.gov.nist.javax.sip.stack.SIPStackTimerTask)
+	 */
+	public boolean cancel(SIPStackTimerTask task) {
+		Object sipTimerTask = task.getSipTimerTask();
+		if (!(sipTimerTask instanceof WheelTimeout)) {
+			return false;
+		}
+		WheelTimeout timeout = (WheelTimeout) sipTimerTask;
+		task.cleanUpBeforeCancel();
+		task.setSipTimerTask(null);
+		if (!timeout.state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+			return false;
+		}
+		// The wheel thread unlinks it from its bucket.
+		cancelledTimeouts.add(timeout);
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.gov.nist.javax.sip.stack.timers.SipTimer#isStarted()
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * A scheduled task, linked in the bucket of its deadline.
+	 */
+	private static final class WheelTimeout {
+		final SIPStackTimerTask task;
+		final long period;
+		final AtomicInteger state = new AtomicInteger(ST_INIT);
+		// Deadline in nanoseconds since the timer started.
+		long deadline;
+		WheelTimeout next;
+		WheelTimeout prev;
+		Bucket bucket;
+
+		WheelTimeout(SIPStackTimerTask task, long period) {
+			this.task = task;
+			this.period = period;
+		}
+	}
+
+	/**
+	 * Doubly linked list of the timeouts hashed to one slot of the wheel. Only accessed by the
+	 * wheel thread.
+	 */
+	private static final class Bucket {
+		private final int index;
+		private final long[] occupied;
+		private WheelTimeout head;
+		private WheelTimeout tail;
+
+		Bucket(int index, long[] occupied) {
+			this.index = index;
+			this.occupied = occupied;
+		}
+
+		void add(WheelTimeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+				occupied[index >>> 6] |= 1L << index;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		WheelTimeout remove(WheelTimeout timeout) {
+			WheelTimeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+				if (head == null) {
+					occupied[index >>> 6] &= ~(1L << index);
+				}
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			return next;
+		}
+	}
+
+	private class Worker implements Runnable {
+		// Tick of the bucket looked at last, the buckets of the earlier ticks have no task
+		// due before their next turn.
+		private long tick;
+
+		public void run() {
+			while (started) {
+				long now = System.nanoTime() - startTime;
+				removeCancelledTimeouts();
+				transferPendingTimeouts();
+				long currentTick = now / tickDuration;
+				if (currentTick - tick >= wheel.length) {
+					// Late by more than a turn, every bucket is looked at once below.
+					tick = currentTick - wheel.length + 1;
+				}
+				while (tick < currentTick) {
+					expireTimeouts(wheel[(int) (tick & mask)], now, NO_WAKEUP);
+					tick++;
+				}
+				long nextWakeup = expireTimeouts(wheel[(int) (tick & mask)], now,
+						tickDuration * (tick + 1));
+				if (nextWakeup == NO_WAKEUP) {
+					nextWakeup = nextBucketStart();
+				}
+				waitUntil(nextWakeup);
+			}
+		}
+
+		/**
+		 * Park until the given time, or until a task due earlier is scheduled.
+		 */
+		private void waitUntil(long nextWakeup) {
+			wakeupTime = nextWakeup;
+			if (!pendingTimeouts.isEmpty() || !started) {
+				// Scheduled while we were looking at the wheel.
+				wakeupTime = 0;
+				return;
+			}
+			if (nextWakeup == NO_WAKEUP) {
+				LockSupport.park(this);
+			} else {
+				long parkTime = nextWakeup - (System.nanoTime() - startTime);
+				if (parkTime > 0) {
+					LockSupport.parkNanos(this, parkTime);
+				}
+			}
+			wakeupTime = 0;
+		}
+
+		/**
+		 * @return the start of the tick of the next bucket holding a task, NO_WAKEUP if the
+		 *         wheel is empty.
+		 */
+		private long nextBucketStart() {
+			int start = (int) ((tick + 1) & mask);
+			int word = start >>> 6;
+			long bits = occupied[word] & (-1L << start);
+			// one more word than the bitmap holds, for the buckets before start in its word
+			for (int i = 0; i <= occupied.length; i++) {
+				if (bits != 0) {
+					int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+					return tickDuration * (tick + 1 + ((index - start) & mask));
+				}
+				word = word + 1 == occupied.length ? 0 : word + 1;
+				bits = occupied[word];
+			}
+			return NO_WAKEUP;
+		}
+
+		private void removeCancelledTimeouts() {
+			WheelTimeout timeout;
+			while ((timeout = cancelledTimeouts.poll()) != null) {
+				if (timeout.bucket != null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		private void transferPendingTimeouts() {
+			WheelTimeout timeout;
+			while ((timeout = pendingTimeouts.poll()) != null) {
+				if (timeout.state.get() == ST_CANCELLED) {
+					continue;
+				}
+				// Already due: put it in the current bucket.
+				long ticks = Math.max(timeout.deadline / tickDuration, tick);
+				wheel[(int) (ticks & mask)].add(timeout);
+			}
+		}
+
+		/**
+		 * Run the tasks of the bucket that are due.
+		 *
+		 * @param bucketEnd end of the tick of the bucket in its current turn.
+		 * @return the earliest deadline before bucketEnd of the tasks left, NO_WAKEUP if none.
+		 */
+		private long expireTimeouts(Bucket bucket, long now, long bucketEnd) {
+			long nextWakeup = NO_WAKEUP;
+			WheelTimeout timeout = bucket.head;
+			while (timeout != null) {
+				if (timeout.state.get() == ST_CANCELLED) {
+					timeout = bucket.remove(timeout);
+				} else if (timeout.deadline <= now) {
+					WheelTimeout next = bucket.remove(timeout);
+					runTimeout(timeout);
+					timeout = next;
+				} else {
+					if (timeout.deadline < bucketEnd && timeout.deadline < nextWakeup) {
+						nextWakeup = timeout.deadline;
+					}
+					timeout = timeout.next;
+				}
+			}
+			return nextWakeup;
+		}
+
+		private void runTimeout(WheelTimeout timeout) {
+			if (timeout.period <= 0) {
+				if (!timeout.state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+					return;
+				}
+			} else if (timeout.state.get() != ST_INIT) {
+				return;
+			}
+			try {
+				timeout.task.runTask();
+			} catch (Exception e) {
+				logger.logError("SIP stack timer task failed due to exception", e);
+			} catch (Throwable e) {
+				// Keep the wheel thread alive, the other tasks still have to run.
+				logger.logError("SIP stack timer task failed due to error " + e);
+			}
+			if (timeout.period > 0 && timeout.state.get() == ST_INIT) {
+				// Fixed delay: counted from the end of this run.
+				timeout.deadline = System.nanoTime() - startTime + timeout.period;
+				pendingTimeouts.add(timeout);
+			}
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package android.gov.nist.core;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The enabled level CommonLogger caches is the one of the current legacy
+ * logger, however that logger was set.
+ */
+public class CommonLoggerTest {
+
+    private final StackLoggerExt logger = CommonLogger.getLogger(CommonLoggerTest.class);
+
+    @After
+    public void tearDown() {
+        CommonLogger.setLegacyLogger(null);
+    }
+
+    @Test
+    public void testLevelFollowsTheLegacyLogger() {
+        LogWriter writer = new LogWriter();
+        CommonLogger.setLegacyLogger(writer);
+        writer.disableLogging();
+        assertFalse(logger.isLoggingEnabled());
+        assertFalse(logger.isLoggingEnabled(LogLevels.TRACE_FATAL));
+        writer.enableLogging();
+        assertTrue(logger.isLoggingEnabled());
+        assertEquals(writer.isLoggingEnabled(LogLevels.TRACE_DEBUG), logger.isLoggingEnabled(LogLevels.TRACE_DEBUG));
+    }
+
+    @Test
+    public void testLevelOfAnotherLoggerIgnored() {
+        LogWriter writer = new LogWriter();
+        LogWriter other = new LogWriter();
+        CommonLogger.setLegacyLogger(writer);
+        writer.disableLogging();
+        other.enableLogging();
+        other.disableLogging();
+        writer.enableLogging();
+        assertTrue(logger.isLoggingEnabled());
+    }
+
+    @Test
+    public void testLegacyLoggerAssignedDirectly() {
+        LogWriter writer = new LogWriter();
+        LogWriter other = new LogWriter();
+        CommonLogger.setLegacyLogger(writer);
+        writer.disableLogging();
+        other.enableLogging();
+        assertFalse(logger.isLoggingEnabled());
+
+        // without setLegacyLogger, the level cached for the previous logger is not used
+        CommonLogger.legacyLogger = other;
+        assertTrue(logger.isLoggingEnabled());
+        assertEquals(other.isLoggingEnabled(LogLevels.TRACE_INFO), logger.isLoggingEnabled(LogLevels.TRACE_INFO));
+        other.disableLogging();
+        assertFalse(logger.isLoggingEnabled());
+        assertFalse(logger.isLoggingEnabled(LogLevels.TRACE_FATAL));
+    }
+}
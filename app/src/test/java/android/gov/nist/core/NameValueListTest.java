@@ -0,0 +1,226 @@
+package android.gov.nist.core;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A NameValueList keeps a few entries in arrays and moves them to a map when
+ * it grows or when a Map view is asked for, either form behaves the same.
+ */
+public class NameValueListTest {
+
+    private static NameValueList list(int size) {
+        NameValueList list = new NameValueList();
+        for (int i = 0; i < size; i++) {
+            list.set("p" + i, String.valueOf(i));
+        }
+        return list;
+    }
+
+    private static String encoded(int from, int to) {
+        StringBuilder buffer = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (buffer.length() > 0)
+                buffer.append(';');
+            buffer.append("p").append(i).append('=').append(i);
+        }
+        return buffer.toString();
+    }
+
+    @Test
+    public void testCompactKeepsInsertionOrder() {
+        NameValueList list = list(3);
+        assertEquals(encoded(0, 3), list.encode());
+        assertEquals(3, list.size());
+        assertEquals("1", list.getParameter("P1"));
+        assertTrue(list.hasNameValue("P2"));
+        assertNull(list.getNameValue("p3"));
+    }
+
+    @Test
+    public void testReplaceKeepsThePosition() {
+        NameValueList list = list(3);
+        NameValue previous = list.getNameValue("p1");
+        assertSame(previous, list.put("p1", new NameValue("p1", "x")));
+        assertEquals("p0=0;p1=x;p2=2", list.encode());
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void testGrowingPastTheCompactSize() {
+        for (int size = 7; size <= 10; size++) {
+            NameValueList list = list(size);
+            assertEquals(size, list.size());
+            assertEquals(encoded(0, size), list.encode());
+            for (int i = 0; i < size; i++) {
+                assertEquals(String.valueOf(i), list.getParameter("p" + i));
+            }
+            assertTrue(list.delete("P0"));
+            assertFalse(list.delete("p0"));
+            assertEquals(size - 1, list.size());
+            assertEquals(encoded(1, size), list.encode());
+        }
+    }
+
+    @Test
+    public void testMapViewSwitchesToTheMap() {
+        NameValueList list = list(3);
+        assertEquals(3, list.keySet().size());
+        list.set("p3", "3");
+        assertEquals(encoded(0, 4), list.encode());
+        assertTrue(list.remove("P1") != null);
+        assertEquals(3, list.values().size());
+        assertFalse(list.containsKey("p1"));
+    }
+
+    @Test
+    public void testRemoveInTheMiddle() {
+        NameValueList list = list(4);
+        assertEquals("1", list.remove("p1").getValueAsObject());
+        assertNull(list.remove("p1"));
+        assertEquals("p0=0;p2=2;p3=3", list.encode());
+        list.set("p1", "1");
+        assertEquals("p0=0;p2=2;p3=3;p1=1", list.encode());
+    }
+
+    @Test
+    public void testIteratorsInInsertionOrder() {
+        NameValueList list = list(3);
+        Iterator<String> names = list.getNames();
+        Iterator<NameValue> values = list.iterator();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(names.hasNext());
+            assertEquals("p" + i, names.next());
+            assertEquals("p" + i, values.next().getName());
+        }
+        assertFalse(names.hasNext());
+        assertFalse(values.hasNext());
+        try {
+            names.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        NameValueList list = list(4);
+        Iterator<NameValue> it = list.iterator();
+        try {
+            it.remove();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        while (it.hasNext()) {
+            NameValue nv = it.next();
+            if (nv.getName().equals("p1") || nv.getName().equals("p2")) {
+                it.remove();
+            }
+        }
+        assertEquals("p0=0;p3=3", list.encode());
+        assertEquals(2, list.size());
+    }
+
+    @Test
+    public void testIteratorFailsOnceMovedToTheMap() {
+        NameValueList list = list(2);
+        Iterator<String> names = list.getNames();
+        names.next();
+        list.keySet();
+        assertTrue(names.hasNext());
+        try {
+            names.next();
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+
+    @Test
+    public void testEqualsAcrossForms() {
+        NameValueList compact = list(3);
+        NameValueList map = list(3);
+        map.entrySet();
+        NameValueList reordered = new NameValueList();
+        reordered.set("p2", "2");
+        reordered.set("p0", "0");
+        reordered.set("p1", "1");
+        assertTrue(compact.equals(map));
+        assertTrue(map.equals(compact));
+        assertTrue(compact.equals(reordered));
+        assertEquals(compact.hashCode(), map.hashCode());
+        reordered.set("p1", "x");
+        assertFalse(compact.equals(reordered));
+    }
+
+    @Test
+    public void testEqualsComparesTheSizes() {
+        for (int size : new int[] { 2, 8 }) {
+            NameValueList list = list(size);
+            NameValueList superset = list(size + 1);
+            assertTrue(list.equals(list));
+            assertFalse(list.equals(superset));
+            assertFalse(superset.equals(list));
+            assertFalse(list.equals(null));
+        }
+    }
+
+    @Test
+    public void testEqualsIgnoresTheCase() {
+        NameValueList list = new NameValueList();
+        list.set("transport", "udp");
+        list.set("lr", "");
+        NameValueList other = new NameValueList();
+        other.set("LR", "");
+        other.set("Transport", "UDP");
+        assertTrue(list.equals(other));
+        assertEquals(list.hashCode(), other.hashCode());
+        other.entrySet();
+        assertEquals(list.hashCode(), other.hashCode());
+    }
+
+    @Test
+    public void testCloneIsDeep() {
+        for (int size : new int[] { 3, 9 }) {
+            NameValueList list = list(size);
+            NameValueList clone = (NameValueList) list.clone();
+            assertEquals(list, clone);
+            assertNotSame(list.getNameValue("p0"), clone.getNameValue("p0"));
+            clone.set("p0", "x");
+            clone.set("extra", "1");
+            assertEquals(encoded(0, size), list.encode());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        NameValueList list = list(3);
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals("", list.encode());
+        assertFalse(list.getNames().hasNext());
+        list.set("p0", "0");
+        assertEquals(encoded(0, 1), list.encode());
+    }
+
+    @Test
+    public void testSynchronizedListUsesTheMap() {
+        NameValueList list = new NameValueList(true);
+        list.set("p0", "0");
+        list.set("p1", "1");
+        assertEquals(2, list.size());
+        assertEquals("1", list.getParameter("P1"));
+        assertTrue(list.delete("p0"));
+        assertEquals(encoded(1, 2), list.encode());
+    }
+}
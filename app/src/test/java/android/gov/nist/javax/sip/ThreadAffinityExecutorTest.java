@@ -0,0 +1,109 @@
+package android.gov.nist.javax.sip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreadAffinityExecutorTest {
+
+    private ThreadAffinityExecutor executor;
+
+    private static class AffinityTask implements Runnable, ThreadAffinityIdentifier {
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        public Object getThreadHash() {
+            return "call-id";
+        }
+
+        public void run() {
+            ran.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        executor = new ThreadAffinityExecutor(1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testErrorDoesNotStopTheWorker() throws Exception {
+        executor.execute(new AffinityTask() {
+            public void run() {
+                throw new AssertionError("failing task");
+            }
+        });
+        AffinityTask task = new AffinityTask();
+        executor.execute(task);
+        assertTrue(task.ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFixedDelayStartsAfterTheRunIsOver() throws Exception {
+        final List<Long> starts = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch runs = new CountDownLatch(3);
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                starts.add(System.nanoTime());
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                }
+                runs.countDown();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        assertTrue(runs.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        for (int i = 1; i < 3; i++) {
+            long gap = starts.get(i) - starts.get(i - 1);
+            assertTrue("runs " + gap + " ns apart", gap >= TimeUnit.MILLISECONDS.toNanos(60));
+        }
+    }
+
+    @Test
+    public void testCancelledFixedDelayTaskDoesNotRun() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        // hold the only worker so that the first run of the task waits in its lane
+        executor.execute(new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        ScheduledFuture<?> future = executor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 0, 10, TimeUnit.MILLISECONDS);
+        Thread.sleep(50);
+        assertTrue(future.cancel(false));
+        assertFalse(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        release.countDown();
+        Thread.sleep(50);
+        assertEquals(0, runs.get());
+    }
+}
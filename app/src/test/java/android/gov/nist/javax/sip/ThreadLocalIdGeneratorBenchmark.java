@@ -0,0 +1,82 @@
+/*
+ * Conditions Of Use
+ *
+ * This software was developed by employees of the National Institute of
+ * Standards and Technology (NIST), an agency of the Federal Government.
+ * Pursuant to title 15 Untied States Code Section 105, works of NIST
+ * employees are not subject to copyright protection in the United States
+ * and are considered to be in the public domain.  As a result, a formal
+ * license is not needed to use the software.
+ *
+ * This software is provided by NIST as a service and is expressly
+ * provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+ * OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+ * AND DATA ACCURACY.  NIST does not warrant or make any representations
+ * regarding the use of the software or the results thereof, including but
+ * not limited to the correctness, accuracy, reliability or usefulness of
+ * the software.
+ *
+ * Permission to use this software is contingent upon your acceptance
+ * of the terms of this agreement
+ *
+ *
+ */
+package android.gov.nist.javax.sip;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ThreadLocalIdGeneratorBenchmark {
+
+    // defeats dead code elimination
+    private static final AtomicLong sink = new AtomicLong();
+
+    /**
+     * Compares the throughput of this generator with the one of Utils.
+     *
+     * Usage: ThreadLocalIdGeneratorBenchmark [threads] [ids per thread]
+     */
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        UtilsExt[] generators = { Utils.getInstance(), ThreadLocalIdGenerator.getInstance() };
+        // first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            for (UtilsExt generator : generators) {
+                System.out.println(generator.getClass().getSimpleName() + " "
+                        + benchmark(generator, threads, count) + " ns per call-id+tag+branch with "
+                        + threads + " threads");
+            }
+        }
+    }
+
+    private static long benchmark(final UtilsExt generator, int threads, final int count)
+            throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    int length = 0;
+                    for (int i = 0; i < count; i++) {
+                        length += generator.generateCallIdentifier("127.0.0.1").length();
+                        length += generator.generateTag().length();
+                        length += generator.generateBranchId().length();
+                    }
+                    sink.addAndGet(length);
+                    done.countDown();
+                }
+            }.start();
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        return (System.nanoTime() - startTime) / ((long) threads * count);
+    }
+}
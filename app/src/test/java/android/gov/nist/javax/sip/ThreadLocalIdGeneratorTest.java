@@ -0,0 +1,65 @@
+package android.gov.nist.javax.sip;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The identifiers have the shape of the ones of Utils and do not repeat,
+ * within a thread nor across threads.
+ */
+public class ThreadLocalIdGeneratorTest {
+
+    private final ThreadLocalIdGenerator generator = ThreadLocalIdGenerator.getInstance();
+
+    @Test
+    public void testShape() {
+        String callId = generator.generateCallIdentifier("127.0.0.1");
+        assertTrue(callId, callId.matches("[0-9a-f]{32}@127\\.0\\.0\\.1"));
+        String tag = generator.generateTag();
+        assertTrue(tag, tag.matches("[0-9a-f]{8}"));
+        String branch = generator.generateBranchId();
+        assertTrue(branch, branch.startsWith(SIPConstants.BRANCH_MAGIC_COOKIE + "-" + Utils.getSignature() + "-"));
+        assertTrue(branch, branch.substring(branch.length() - 32).matches("[0-9a-f]{32}"));
+    }
+
+    @Test
+    public void testNoRepeatAcrossThreads() throws Exception {
+        final Set<String> branches = Collections.synchronizedSet(new HashSet<String>());
+        final int count = 10000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    // more than one batch of keystream per thread
+                    for (int i = 0; i < count; i++) {
+                        branches.add(generator.generateBranchId());
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(threads.length * count, branches.size());
+    }
+
+    @Test
+    public void testBitsBalanced() {
+        // a broken keystream, all zero or repeating, shows as a skewed count of ones
+        long ones = 0;
+        int draws = 4096;
+        for (int i = 0; i < draws; i++) {
+            String tag = generator.generateTag();
+            ones += Long.bitCount(Long.parseLong(tag, 16));
+        }
+        double expected = draws * 32 / 2.0;
+        assertEquals(expected, ones, expected * 0.02);
+    }
+}
@@ -0,0 +1,64 @@
+package android.gov.nist.javax.sip.address;
+
+import android.javax.sip.address.AddressFactory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SIP URIs compare as RFC 3261 section 19.1.4 says, and equal URIs have the
+ * same hash code.
+ */
+public class SipUriTest {
+
+    private final AddressFactory addressFactory = new AddressFactoryImpl();
+
+    private void assertEqualUris(String uri, String equalUri) throws Exception {
+        SipUri first = (SipUri) addressFactory.createURI(uri);
+        SipUri second = (SipUri) addressFactory.createURI(equalUri);
+        assertTrue(uri, first.equals(second));
+        assertTrue(uri, second.equals(first));
+        assertEquals(uri, first.hashCode(), second.hashCode());
+    }
+
+    private void assertDifferentUris(String uri, String otherUri) throws Exception {
+        assertFalse(uri, addressFactory.createURI(uri).equals(addressFactory.createURI(otherUri)));
+        assertFalse(uri, addressFactory.createURI(otherUri).equals(addressFactory.createURI(uri)));
+    }
+
+    @Test
+    public void testEqualUris() throws Exception {
+        // the examples of RFC 3261 section 19.1.4
+        assertEqualUris("sip:%61lice@atlanta.com;transport=TCP", "sip:alice@AtLanTa.CoM;Transport=tcp");
+        assertEqualUris("sip:carol@chicago.com", "sip:carol@chicago.com;newparam=5");
+        assertEqualUris("sip:carol@chicago.com", "sip:carol@chicago.com;security=on");
+        assertEqualUris("sip:biloxi.com;transport=tcp;method=REGISTER?to=sip:bob%40biloxi.com",
+                "sip:biloxi.com;method=REGISTER;transport=tcp?to=sip:bob%40biloxi.com");
+        assertEqualUris("sip:alice@atlanta.com?subject=project%20x&priority=urgent",
+                "sip:alice@atlanta.com?priority=urgent&subject=project%20x");
+    }
+
+    @Test
+    public void testDifferentUris() throws Exception {
+        assertDifferentUris("SIP:ALICE@AtLanTa.CoM;Transport=udp", "sip:alice@AtLanTa.CoM;Transport=UDP");
+        assertDifferentUris("sip:bob@biloxi.com", "sip:bob@biloxi.com:5060");
+        assertDifferentUris("sip:bob@biloxi.com", "sip:bob@biloxi.com;transport=udp");
+        assertDifferentUris("sip:bob@biloxi.com", "sip:bob@biloxi.com:6000;transport=tcp");
+        assertDifferentUris("sip:carol@chicago.com", "sip:carol@chicago.com?Subject=next%20meeting");
+        assertDifferentUris("sip:bob@phone21.boxesbybob.com", "sip:bob@192.0.2.4");
+        assertDifferentUris("sip:alice@atlanta.com", "sips:alice@atlanta.com");
+    }
+
+    @Test
+    public void testCloneIsEqual() throws Exception {
+        SipUri uri = (SipUri) addressFactory.createURI("sip:alice@atlanta.com:5070;transport=tcp;lr");
+        SipUri clone = (SipUri) uri.clone();
+        assertTrue(uri.equals(clone));
+        assertEquals(uri.hashCode(), clone.hashCode());
+        clone.setUser("bob");
+        assertFalse(uri.equals(clone));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.header;
+
+import android.gov.nist.core.NameValue;
+import android.gov.nist.javax.sip.address.SipUri;
+import android.gov.nist.javax.sip.message.SIPResponse;
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import android.javax.sip.header.Header;
+import android.javax.sip.header.HeaderFactory;
+
+/**
+ * Micro benchmark of equals and hashCode of the headers and URIs compared
+ * when a provisional response is retransmitted, and of the equals of two
+ * parsed 180 responses as SIPClientTransactionImpl.processResponse does it.
+ * Each pair of objects is parsed separately, so equals compares the fields
+ * and does not stop on identity.
+ *
+ * Usage: java android.gov.nist.javax.sip.header.HeaderEqualsBenchmark [iterations]
+ * By default each operation is run 1000000 times.
+ *
+ * @since 2.0
+ */
+public class HeaderEqualsBenchmark {
+
+    private static final String RESPONSE = "SIP/2.0 180 Ringing\r\n"
+            + "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds;received=192.0.2.1\r\n"
+            + "Record-Route: <sip:proxy.biloxi.com;lr>\r\n"
+            + "To: Bob <sip:bob@biloxi.com>;tag=a6c85cf\r\n"
+            + "From: Alice <sip:alice@atlanta.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710@pc33.atlanta.com\r\n"
+            + "CSeq: 314159 INVITE\r\n"
+            + "Contact: <sip:bob@192.0.2.4>\r\n"
+            + "Require: 100rel\r\n"
+            + "RSeq: 988789\r\n"
+            + "Allow: INVITE\r\n"
+            + "Supported: timer\r\n"
+            + "Expires: 3600\r\n"
+            + "Server: HomeServer/2.0\r\n"
+            + "User-Agent: Softphone/Beta1.5\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    private static final String[][] HEADERS = {
+        { "Allow", "INVITE" },
+        { "Expires", "3600" },
+        { "RSeq", "988789" },
+        { "Require", "100rel" },
+        { "Supported", "timer" },
+        { "Server", "HomeServer/2.0" },
+        { "User-Agent", "Softphone/Beta1.5" },
+        { "Via", "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds;received=192.0.2.1" },
+        { "CSeq", "314159 INVITE" },
+        { "Call-ID", "a84b4c76e66710@pc33.atlanta.com" },
+        { "From", "Alice <sip:alice@atlanta.com>;tag=1928301774" },
+        { "Record-Route", "<sip:proxy.biloxi.com;lr>" },
+    };
+
+    // defeats dead code elimination
+    private static int sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        HeaderFactory headerFactory = new HeaderFactoryImpl();
+        for (int round = 0; round < 2; round++) {
+            // first round is the warm up
+            boolean print = round > 0;
+            for (String[] header : HEADERS) {
+                Header first = headerFactory.createHeader(header[0], header[1]);
+                Header second = headerFactory.createHeader(header[0], header[1]);
+                run(header[0], first, second, iterations, print);
+            }
+            SIPResponse first = parse();
+            SIPResponse second = parse();
+            run("StatusLine", first.getStatusLine(), second.getStatusLine(), iterations, print);
+            run("Protocol", first.getTopmostVia().getSentProtocol(), second.getTopmostVia().getSentProtocol(),
+                    iterations, print);
+            run("SipUri", (SipUri) first.getFrom().getAddress().getURI(),
+                    (SipUri) second.getFrom().getAddress().getURI(), iterations, print);
+            run("NameValue", new NameValue("branch", "z9hG4bK776asdhds"),
+                    new NameValue("branch", "z9hG4bK776asdhds"), iterations, print);
+            run("SIPResponse", first, second, iterations / 10, print);
+        }
+    }
+
+    private static SIPResponse parse() throws Exception {
+        return (SIPResponse) new StringMsgParser().parseSIPMessage(RESPONSE.getBytes("UTF-8"), true, false, null);
+    }
+
+    private static void run(String name, Object first, Object second, int iterations, boolean print) {
+        if (!first.equals(second) || first.hashCode() != second.hashCode()) {
+            throw new IllegalStateException(name + " equal objects compare or hash differently");
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (first.equals(second)) {
+                sink++;
+            }
+        }
+        long equalsTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += first.hashCode();
+        }
+        long hashCodeTime = System.nanoTime() - start;
+
+        if (print) {
+            System.out.println(name + ": equals " + equalsTime / iterations + " ns"
+                    + ", hashCode " + hashCodeTime / iterations + " ns");
+        }
+    }
+}
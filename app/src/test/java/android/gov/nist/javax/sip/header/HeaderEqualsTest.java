@@ -0,0 +1,140 @@
+package android.gov.nist.javax.sip.header;
+
+import android.gov.nist.javax.sip.message.SIPResponse;
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import android.javax.sip.header.Header;
+import android.javax.sip.header.HeaderFactory;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Headers compare their fields, the tokens SIP defines as case insensitive
+ * ignoring the case, and equal headers have the same hash code.
+ */
+public class HeaderEqualsTest {
+
+    private final HeaderFactory headerFactory = new HeaderFactoryImpl();
+
+    private Header header(String name, String value) throws Exception {
+        return headerFactory.createHeader(name, value);
+    }
+
+    private void assertEqualHeaders(String name, String value, String equalValue) throws Exception {
+        Header header = header(name, value);
+        Header equal = header(name, equalValue);
+        assertTrue(name, header.equals(equal));
+        assertTrue(name, equal.equals(header));
+        assertEquals(name, header.hashCode(), equal.hashCode());
+        assertTrue(name, header.equals(header));
+        assertTrue(name, header.equals(((SIPHeader) header).clone()));
+        assertEquals(name, header.hashCode(), ((SIPHeader) header).clone().hashCode());
+    }
+
+    private void assertDifferentHeaders(String name, String value, String otherValue) throws Exception {
+        Header header = header(name, value);
+        Header other = header(name, otherValue);
+        assertFalse(name, header.equals(other));
+        assertFalse(name, other.equals(header));
+    }
+
+    @Test
+    public void testProvisionalResponseHeaders() throws Exception {
+        assertEqualHeaders("Allow", "INVITE", "INVITE");
+        assertDifferentHeaders("Allow", "INVITE", "ACK");
+        assertEqualHeaders("Expires", "3600", "3600");
+        assertDifferentHeaders("Expires", "3600", "60");
+        assertEqualHeaders("RSeq", "988789", "988789");
+        assertDifferentHeaders("RSeq", "988789", "988790");
+        assertEqualHeaders("Require", "100rel", "100rel");
+        assertDifferentHeaders("Require", "100rel", "timer");
+        assertEqualHeaders("Supported", "100rel", "100rel");
+        assertDifferentHeaders("Supported", "100rel", "timer");
+        assertEqualHeaders("Server", "HomeServer/2.0 (Linux)", "HomeServer/2.0 (Linux)");
+        assertDifferentHeaders("Server", "HomeServer/2.0", "HomeServer/2.1");
+        assertEqualHeaders("User-Agent", "Softphone/Beta1.5", "Softphone/Beta1.5");
+        assertDifferentHeaders("User-Agent", "Softphone/Beta1.5", "Softphone/Beta1.6");
+        assertFalse(header("Allow", "INVITE").equals(header("Supported", "INVITE")));
+    }
+
+    @Test
+    public void testCSeqAndCallId() throws Exception {
+        assertEqualHeaders("CSeq", "314159 INVITE", "314159 INVITE");
+        assertDifferentHeaders("CSeq", "314159 INVITE", "314160 INVITE");
+        assertDifferentHeaders("CSeq", "314159 INVITE", "314159 BYE");
+        assertEqualHeaders("Call-ID", "a84b4c76e66710@pc33.atlanta.com", "A84B4C76E66710@PC33.ATLANTA.COM");
+        assertDifferentHeaders("Call-ID", "a84b4c76e66710@pc33", "a84b4c76e66711@pc33");
+    }
+
+    @Test
+    public void testViaIgnoresTheCaseOfTokensHostAndParameters() throws Exception {
+        assertEqualHeaders("Via", "SIP/2.0/UDP pc33.atlanta.com:5060;branch=z9hG4bK776asdhds;received=192.0.2.1",
+                "sip/2.0/udp PC33.Atlanta.COM:5060;received=192.0.2.1;BRANCH=z9hG4bK776ASDHDS");
+        assertDifferentHeaders("Via", "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK1",
+                "SIP/2.0/TCP pc33.atlanta.com;branch=z9hG4bK1");
+        assertDifferentHeaders("Via", "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK1",
+                "SIP/2.0/UDP pc33.atlanta.com:5070;branch=z9hG4bK1");
+        assertDifferentHeaders("Via", "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK1",
+                "SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK2");
+    }
+
+    @Test
+    public void testProtocol() {
+        Protocol protocol = new Protocol();
+        protocol.setTransport("tcp");
+        Protocol other = new Protocol();
+        other.setProtocolName("sip");
+        other.setTransport("TCP");
+        assertTrue(protocol.equals(other));
+        assertEquals(protocol.hashCode(), other.hashCode());
+        other.setTransport("TLS");
+        assertFalse(protocol.equals(other));
+    }
+
+    @Test
+    public void testAddressHeaders() throws Exception {
+        assertEqualHeaders("From", "\"Alice\" <sip:alice@ATLANTA.com;transport=UDP>;tag=1928301774",
+                "<sip:alice@atlanta.com;Transport=udp>;TAG=1928301774");
+        assertDifferentHeaders("From", "<sip:alice@atlanta.com>;tag=1928301774", "<sip:alice@atlanta.com>;tag=1");
+        assertEqualHeaders("To", "<sip:bob@biloxi.com:5060>", "<sip:bob@BILOXI.COM:5060>");
+        assertDifferentHeaders("To", "<sip:bob@biloxi.com>", "<sip:Bob@biloxi.com>");
+        assertEqualHeaders("Contact", "<sip:bob@192.0.2.4;lr;maddr=239.255.255.1>",
+                "<sip:bob@192.0.2.4;maddr=239.255.255.1;lr>");
+        assertEqualHeaders("Route", "<sip:proxy.atlanta.com;lr>", "<sip:PROXY.atlanta.com;LR>");
+        assertEqualHeaders("Record-Route", "<sip:proxy.atlanta.com;lr>", "<sip:proxy.atlanta.com;lr>");
+        assertDifferentHeaders("Record-Route", "<sip:p1.atlanta.com;lr>", "<sip:p2.atlanta.com;lr>");
+    }
+
+    @Test
+    public void testStatusLine() throws Exception {
+        String response = "SIP/2.0 180 Ringing\r\n"
+                + "Via: SIP/2.0/UDP pc33.atlanta.com;branch=z9hG4bK776asdhds\r\n"
+                + "To: <sip:bob@biloxi.com>;tag=a6c85cf\r\n"
+                + "From: <sip:alice@atlanta.com>;tag=1928301774\r\n"
+                + "Call-ID: a84b4c76e66710\r\n"
+                + "CSeq: 314159 INVITE\r\n"
+                + "Require: 100rel\r\n"
+                + "RSeq: 988789\r\n"
+                + "Allow: INVITE, ACK, BYE\r\n"
+                + "Server: HomeServer/2.0\r\n"
+                + "Content-Length: 0\r\n\r\n";
+        SIPResponse first = parse(response);
+        SIPResponse second = parse(response);
+        assertTrue(first.getStatusLine().equals(second.getStatusLine()));
+        assertEquals(first.getStatusLine().hashCode(), second.getStatusLine().hashCode());
+        assertTrue(first.equals(second));
+        SIPResponse ok = parse(response.replace("180 Ringing", "200 OK"));
+        assertFalse(first.getStatusLine().equals(ok.getStatusLine()));
+        assertFalse(first.equals(ok));
+        SIPResponse next = parse(response.replace("RSeq: 988789", "RSeq: 988790"));
+        assertFalse(first.equals(next));
+    }
+
+    private static SIPResponse parse(String response) throws Exception {
+        return (SIPResponse) new StringMsgParser().parseSIPMessage(response.getBytes("UTF-8"), true, false, null);
+    }
+}
@@ -0,0 +1,89 @@
+package android.gov.nist.javax.sip.message;
+
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import android.javax.sip.header.ToHeader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The bytes kept by encodeAsBytes are only handed back while reuse is enabled
+ * and the message was not modified through its setters.
+ */
+public class EncodedBytesTest {
+
+    private static final String REQUEST = "OPTIONS sip:bob@example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@example.com>\r\n"
+            + "From: <sip:alice@example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710\r\n"
+            + "CSeq: 1 OPTIONS\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    private static SIPRequest parse() throws Exception {
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(REQUEST.getBytes("UTF-8"), true, false, null);
+    }
+
+    @Test
+    public void testEncodeMatchesText() throws Exception {
+        SIPRequest request = parse();
+        assertEquals(request.encode(), new String(request.encodeAsBytes("UDP"), "UTF-8"));
+    }
+
+    @Test
+    public void testInPlaceChangeIsEncoded() throws Exception {
+        SIPRequest request = parse();
+        request.encodeAsBytes("UDP");
+        ((ToHeader) request.getHeader(ToHeader.NAME)).setTag("changed");
+        String encoded = new String(request.encodeAsBytes("UDP"), "UTF-8");
+        assertTrue(encoded, encoded.contains("tag=changed"));
+    }
+
+    @Test
+    public void testReuseHandsBackTheSameBytes() throws Exception {
+        SIPRequest request = parse();
+        byte[] sent = request.encodeAsBytes("UDP");
+        request.setReuseEncodedBytes(true);
+        try {
+            assertSame(sent, request.encodeAsBytes("UDP"));
+            assertNotSame(sent, request.encodeAsBytes("TCP"));
+        } finally {
+            request.setReuseEncodedBytes(false);
+        }
+        assertNotSame(sent, request.encodeAsBytes("UDP"));
+        assertArrayEquals(sent, request.encodeAsBytes("UDP"));
+    }
+
+    @Test
+    public void testSetterDropsTheBytes() throws Exception {
+        SIPRequest request = parse();
+        request.encodeAsBytes("UDP");
+        request.setReuseEncodedBytes(true);
+        try {
+            request.setToTag("changed");
+            String encoded = new String(request.encodeAsBytes("UDP"), "UTF-8");
+            assertTrue(encoded, encoded.contains("tag=changed"));
+        } finally {
+            request.setReuseEncodedBytes(false);
+        }
+    }
+
+    @Test
+    public void testNoFirstLine() throws Exception {
+        SIPRequest request = parse();
+        SIPResponse response = request.createResponse(200);
+        request.setRequestLine(null);
+        assertEquals(0, request.encodeAsBytes("UDP").length);
+
+        response.setStatusLine(null);
+        String encoded = new String(response.encodeAsBytes("UDP"), "UTF-8");
+        assertTrue(encoded, encoded.startsWith("CSeq: "));
+    }
+}
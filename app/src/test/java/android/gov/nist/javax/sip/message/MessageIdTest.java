@@ -0,0 +1,129 @@
+package android.gov.nist.javax.sip.message;
+
+import android.gov.nist.javax.sip.header.CSeq;
+import android.gov.nist.javax.sip.header.To;
+import android.gov.nist.javax.sip.header.Via;
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import android.javax.sip.header.CSeqHeader;
+import android.javax.sip.header.ToHeader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * The transaction and dialog identifiers are memoised, and computed again
+ * once a header they derive from changed, whether in place or replaced.
+ */
+public class MessageIdTest {
+
+    private static final String REQUEST = "INVITE sip:bob@example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@example.com>\r\n"
+            + "From: <sip:alice@example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    private static SIPRequest parse() throws Exception {
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(REQUEST.getBytes("UTF-8"), true, false, null);
+    }
+
+    @Test
+    public void testIdentifiersMemoised() throws Exception {
+        SIPRequest request = parse();
+        String transactionId = request.getTransactionId();
+        assertEquals("z9hg4bk776asdhds", transactionId);
+        assertSame(transactionId, request.getTransactionId());
+        String dialogId = request.getDialogId(false);
+        assertEquals("a84b4c76e66710:1928301774", dialogId);
+        assertSame(dialogId, request.getDialogId(false));
+    }
+
+    @Test
+    public void testToTagInvalidatesTheDialogId() throws Exception {
+        SIPRequest request = parse();
+        assertEquals("a84b4c76e66710:1928301774", request.getDialogId(false));
+        assertEquals("a84b4c76e66710:1928301774", request.getDialogId(true));
+
+        ToHeader to = request.getTo();
+        to.setTag("A6C85CF");
+        assertEquals("a84b4c76e66710:1928301774:a6c85cf", request.getDialogId(false));
+        assertEquals("a84b4c76e66710:a6c85cf:1928301774", request.getDialogId(true));
+
+        // an equal tag in a new String still gives the right identifier
+        to.setTag(new String("A6C85CF"));
+        assertEquals("a84b4c76e66710:1928301774:a6c85cf", request.getDialogId(false));
+        to.setTag("other");
+        assertEquals("a84b4c76e66710:1928301774:other", request.getDialogId(false));
+        ((To) to).removeTag();
+        assertEquals("a84b4c76e66710:1928301774", request.getDialogId(false));
+    }
+
+    @Test
+    public void testFromTagAndCallIdInvalidateTheDialogId() throws Exception {
+        SIPRequest request = parse();
+        assertEquals("a84b4c76e66710:1928301774", request.getDialogId(false));
+        request.getFrom().setTag("changed");
+        assertEquals("a84b4c76e66710:changed", request.getDialogId(false));
+        request.setCallId("Other-Call");
+        assertEquals("other-call:changed", request.getDialogId(false));
+    }
+
+    @Test
+    public void testViaBranchInvalidatesTheTransactionId() throws Exception {
+        SIPRequest request = parse();
+        assertEquals("z9hg4bk776asdhds", request.getTransactionId());
+
+        // changed in place through a reference taken before
+        Via via = (Via) request.getViaHeaders().getFirst();
+        via.setBranch("z9hG4bKchanged");
+        assertEquals("z9hg4bkchanged", request.getTransactionId());
+
+        request.getTopmostViaForUpdate().setBranch("z9hG4bKupdated");
+        assertEquals("z9hg4bkupdated", request.getTransactionId());
+
+        // a new topmost Via
+        Via other = new Via();
+        other.setHost("10.0.0.2");
+        other.setTransport("UDP");
+        other.setBranch("z9hG4bKtop");
+        request.addFirst(other);
+        assertEquals("z9hg4bktop", request.getTransactionId());
+    }
+
+    @Test
+    public void testCSeqReplacementInvalidatesTheTransactionId() throws Exception {
+        SIPRequest request = parse();
+        assertEquals("z9hg4bk776asdhds", request.getTransactionId());
+
+        request.setCSeq(new CSeq(1, "CANCEL"));
+        assertEquals("z9hg4bk776asdhds:cancel", request.getTransactionId());
+
+        request.setHeader(new CSeq(2, "INVITE"));
+        assertEquals("z9hg4bk776asdhds", request.getTransactionId());
+
+        // changed in place
+        ((CSeqHeader) request.getHeader(CSeqHeader.NAME)).setMethod("CANCEL");
+        assertEquals("z9hg4bk776asdhds:cancel", request.getTransactionId());
+    }
+
+    @Test
+    public void testIdentifiersOfADerivedMessage() throws Exception {
+        SIPRequest request = parse();
+        String transactionId = request.getTransactionId();
+        SIPResponse response = request.createResponse(200);
+        response.getTo().setTag("response-tag");
+        assertEquals(transactionId, response.getTransactionId());
+        assertEquals("a84b4c76e66710:1928301774:response-tag", response.getDialogId(false));
+        // the request keeps its own
+        assertEquals("a84b4c76e66710:1928301774", request.getDialogId(false));
+
+        SIPRequest cancel = request.createCancelRequest();
+        assertEquals(transactionId + ":cancel", cancel.getTransactionId());
+        assertEquals(transactionId, request.getTransactionId());
+    }
+}
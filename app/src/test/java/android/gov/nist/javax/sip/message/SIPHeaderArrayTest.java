@@ -0,0 +1,153 @@
+package android.gov.nist.javax.sip.message;
+
+import android.gov.nist.javax.sip.header.CSeq;
+import android.gov.nist.javax.sip.header.CallID;
+import android.gov.nist.javax.sip.header.MaxForwards;
+import android.gov.nist.javax.sip.header.SIPHeader;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The iterators of a SIPHeaderArray go through the headers present when they
+ * were created, whatever is added, replaced or removed meanwhile.
+ */
+public class SIPHeaderArrayTest {
+
+    private final SIPHeader first = new CallID();
+    private final SIPHeader second = new CSeq();
+    private final SIPHeader third = new MaxForwards();
+
+    private SIPHeaderArray array() {
+        SIPHeaderArray array = new SIPHeaderArray();
+        array.add(first);
+        array.add(second);
+        array.add(third);
+        return array;
+    }
+
+    private static void assertHeaders(Iterator<SIPHeader> it, SIPHeader... expected) {
+        for (SIPHeader header : expected) {
+            assertTrue(it.hasNext());
+            assertSame(header, it.next());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testAddKeepsTheOrder() {
+        SIPHeaderArray array = new SIPHeaderArray();
+        assertTrue(array.isEmpty());
+        for (int i = 0; i < 40; i++) {
+            array.add(i % 2 == 0 ? first : second);
+        }
+        assertEquals(40, array.size());
+        Iterator<SIPHeader> it = array.iterator();
+        for (int i = 0; i < 40; i++) {
+            assertSame(i % 2 == 0 ? first : second, it.next());
+        }
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void testAddNullFails() {
+        try {
+            array().add(null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void testIteratorIgnoresLaterAdds() {
+        SIPHeaderArray array = array();
+        Iterator<SIPHeader> it = array.iterator();
+        array.add(new CallID());
+        assertHeaders(it, first, second, third);
+        assertEquals(4, array.size());
+    }
+
+    @Test
+    public void testReplaceKeepsThePosition() {
+        SIPHeaderArray array = array();
+        Iterator<SIPHeader> before = array.iterator();
+        SIPHeader replacement = new CSeq();
+        assertTrue(array.replace(second, replacement));
+        assertFalse(array.replace(second, replacement));
+        assertFalse(array.replace(new CSeq(), replacement));
+        assertHeaders(array.iterator(), first, replacement, third);
+        assertHeaders(before, first, second, third);
+    }
+
+    @Test
+    public void testReplaceWithNullRemoves() {
+        SIPHeaderArray array = array();
+        Iterator<SIPHeader> before = array.iterator();
+        assertTrue(array.replace(first, null));
+        assertEquals(2, array.size());
+        assertHeaders(array.iterator(), second, third);
+        assertHeaders(before, first, second, third);
+        array.add(first);
+        assertHeaders(array.iterator(), second, third, first);
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        SIPHeaderArray array = array();
+        Iterator<SIPHeader> it = array.iterator();
+        try {
+            it.remove();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        it.next();
+        it.next();
+        it.remove();
+        try {
+            it.remove();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertHeaders(it, third);
+        assertHeaders(array.iterator(), first, third);
+    }
+
+    @Test
+    public void testIteratorRemoveOfAHeaderAlreadyGone() {
+        SIPHeaderArray array = array();
+        Iterator<SIPHeader> it = array.iterator();
+        it.next();
+        array.replace(first, null);
+        it.remove();
+        assertHeaders(array.iterator(), second, third);
+    }
+
+    @Test
+    public void testToArrayAndClear() {
+        SIPHeaderArray array = array();
+        assertArrayEquals(new Object[] { first, second, third }, array.toArray());
+        SIPHeader[] larger = new SIPHeader[] { third, third, third, third, third };
+        assertSame(larger, array.toArray(larger));
+        assertArrayEquals(new SIPHeader[] { first, second, third, null, third }, larger);
+        assertEquals(3, array.toArray(new SIPHeader[0]).length);
+        Iterator<SIPHeader> before = array.iterator();
+        array.clear();
+        assertTrue(array.isEmpty());
+        assertFalse(array.iterator().hasNext());
+        assertHeaders(before, first, second, third);
+    }
+}
@@ -0,0 +1,190 @@
+package android.gov.nist.javax.sip.message;
+
+import android.gov.nist.javax.sip.header.SIPHeader;
+import android.gov.nist.javax.sip.header.Via;
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import android.javax.sip.header.CSeqHeader;
+import android.javax.sip.header.RecordRouteHeader;
+import android.javax.sip.header.RouteHeader;
+import android.javax.sip.header.ToHeader;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The messages derived from a request share its headers: a change made
+ * through either message must not show in the other one.
+ */
+public class SharedHeadersTest {
+
+    private static final String REQUEST = "INVITE sip:bob@example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "Route: <sip:proxy.example.com;lr>\r\n"
+            + "Record-Route: <sip:proxy.example.com;lr>\r\n"
+            + "To: <sip:bob@example.com>\r\n"
+            + "From: <sip:alice@example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    private static SIPRequest parse() throws Exception {
+        return (SIPRequest) new StringMsgParser().parseSIPMessage(REQUEST.getBytes("UTF-8"), true, false, null);
+    }
+
+    /**
+     * Reads and updates the request as the message channels do on reception.
+     */
+    private static void validate(SIPRequest request) throws Exception {
+        assertNotNull(request.peekFrom());
+        assertNotNull(request.peekTo());
+        assertNotNull(request.peekCallId());
+        assertNotNull(request.peekCSeq());
+        assertEquals(request.getMethod(), request.peekCSeq().getMethod());
+        Via via = request.getTopmostViaForUpdate();
+        via.setParameter(Via.RECEIVED, "192.0.2.1");
+        via.setParameter(Via.RPORT, "5070");
+    }
+
+    @Test
+    public void testHeadersSharedAfterReception() throws Exception {
+        SIPRequest request = parse();
+        validate(request);
+        SIPResponse response = request.createResponse(180);
+
+        assertSame(request.peekFrom(), response.peekFrom());
+        assertSame(request.peekTo(), response.peekTo());
+        assertSame(request.peekCallId(), response.peekCallId());
+        assertSame(request.peekCSeq(), response.peekCSeq());
+        assertSame(request.peekTopmostVia(), response.peekTopmostVia());
+        assertSame(request.peekRecordRouteHeaders(), response.peekRecordRouteHeaders());
+        assertTrue(response.encode().contains("received=192.0.2.1"));
+
+        // the final response shares them too once the provisional one was sent
+        response.setToTag("response-tag");
+        response.encodeAsBytes("UDP");
+        SIPResponse ok = request.createResponse(200);
+        assertSame(request.peekCallId(), ok.peekCallId());
+        assertSame(request.peekTopmostVia(), ok.peekTopmostVia());
+        assertTrue(ok.encode().contains("received=192.0.2.1"));
+        assertFalse(request.encode().contains("response-tag"));
+    }
+
+    @Test
+    public void testSharedHeaderCopiedOnUpdate() throws Exception {
+        SIPRequest request = parse();
+        SIPResponse response = request.createResponse(100);
+        String encoded = request.encode();
+        response.getTopmostViaForUpdate().setParameter(Via.RECEIVED, "192.0.2.1");
+        response.encodeAsBytes("TCP");
+
+        assertEquals(encoded, request.encode());
+        assertSame(request.peekFrom(), response.peekFrom());
+        assertNotSame(request.peekTopmostVia(), response.peekTopmostVia());
+        assertFalse(request.peekTopmostVia().isExposed());
+    }
+
+    @Test
+    public void testOriginalChangedAfterCreateResponse() throws Exception {
+        SIPRequest request = parse();
+        SIPResponse response = request.createResponse(200);
+        String encoded = response.encode();
+
+        request.getTo().setTag("request-tag");
+        ((Via) request.getViaHeaders().getFirst()).setBranch("z9hG4bKchanged");
+        request.getCSeq().setSeqNumber(2);
+        Iterator<SIPHeader> recordRoutes = request.getHeaders(RecordRouteHeader.NAME);
+        ((RecordRouteHeader) request.getRecordRouteHeaders().getFirst()).setParameter("changed", "1");
+
+        assertTrue(recordRoutes.hasNext());
+        assertEquals(encoded, response.encode());
+        assertTrue(request.encode().contains("tag=request-tag"));
+    }
+
+    @Test
+    public void testResponseChangedAfterCreateResponse() throws Exception {
+        SIPRequest request = parse();
+        String encoded = request.encode();
+        SIPResponse response = request.createResponse(200);
+
+        response.getTo().setTag("response-tag");
+        ((Via) response.getViaHeaders().getFirst()).setReceived("192.0.2.1");
+        ((RecordRouteHeader) response.getRecordRouteHeaders().getFirst()).setParameter("changed", "1");
+
+        assertEquals(encoded, request.encode());
+        assertTrue(response.encode().contains("tag=response-tag"));
+    }
+
+    @Test
+    public void testOriginalChangedAfterCreateCancel() throws Exception {
+        SIPRequest request = parse();
+        SIPRequest cancel = request.createCancelRequest();
+        String encoded = cancel.encode();
+
+        request.getTo().setTag("request-tag");
+        request.getFrom().setTag("changed");
+        request.getMaxForwards().decrementMaxForwards();
+        ((RouteHeader) request.getRouteHeaders().getFirst()).setParameter("changed", "1");
+        ((RouteHeader) request.getHeaders(RouteHeader.NAME).next()).setParameter("other", "1");
+
+        assertEquals(encoded, cancel.encode());
+    }
+
+    @Test
+    public void testReferenceTakenBeforeDerivation() throws Exception {
+        SIPRequest request = parse();
+        ToHeader to = request.getTo();
+        Via via = (Via) request.getViaHeaders().getFirst();
+        CSeqHeader cseq = (CSeqHeader) request.getHeader(CSeqHeader.NAME);
+        SIPMessage copy = request.shallowClone();
+        SIPResponse response = request.createResponse(200);
+        String copyEncoded = copy.encode();
+        String responseEncoded = response.encode();
+
+        to.setTag("request-tag");
+        via.setBranch("z9hG4bKchanged");
+        cseq.setSeqNumber(2);
+
+        assertEquals(copyEncoded, copy.encode());
+        assertEquals(responseEncoded, response.encode());
+        assertTrue(request.encode().contains("tag=request-tag"));
+    }
+
+    @Test
+    public void testIteratedHeadersAreNotShared() throws Exception {
+        SIPRequest request = parse();
+        Iterator<SIPHeader> headers = request.getHeaders();
+        SIPMessage copy = request.shallowClone();
+        String encoded = copy.encode();
+        while (headers.hasNext()) {
+            SIPHeader header = headers.next();
+            if (header instanceof ToHeader) {
+                ((ToHeader) header).setTag("request-tag");
+            }
+        }
+        assertEquals(encoded, copy.encode());
+    }
+
+    @Test
+    public void testShallowCloneChangedEitherWay() throws Exception {
+        SIPRequest request = parse();
+        SIPRequest copy = (SIPRequest) request.shallowClone();
+        String encoded = request.encode();
+
+        copy.getTo().setTag("copy-tag");
+        assertEquals(encoded, request.encode());
+
+        request.getFrom().setTag("changed");
+        assertFalse(copy.encode().contains("tag=changed"));
+        assertTrue(copy.encode().contains("tag=copy-tag"));
+    }
+}
@@ -0,0 +1,160 @@
+package android.gov.nist.javax.sip.parser;
+
+import android.gov.nist.javax.sip.header.Expires;
+import android.gov.nist.javax.sip.header.RouteList;
+import android.gov.nist.javax.sip.header.Subject;
+import android.gov.nist.javax.sip.message.SIPMessage;
+import android.gov.nist.javax.sip.message.SIPRequest;
+
+import android.javax.sip.header.RouteHeader;
+
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Headers left unparsed by the ByteMsgParser must end up, once accessed, in
+ * the same state as when the message is parsed eagerly.
+ */
+public class LazyHeaderParsingTest {
+
+    private static final String MESSAGE = "INVITE sip:bob@example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "Route: <sip:p1.example.com;lr>\r\n"
+            + "To: <sip:bob@example.com>\r\n"
+            + "From: <sip:alice@example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710\r\n"
+            + "CSeq: 314159 INVITE\r\n"
+            + "Subject:   lunch  \r\n"
+            + "Route: <sip:p2.example.com;lr>,<sip:p3.example.com;lr>\r\n"
+            + "Expires: %s\r\n"
+            + "Content-Length: 0\r\n\r\n";
+
+    /**
+     * Records the failures and keeps the header text, like the message channels do.
+     */
+    private static class RecordingListener implements ParseExceptionListener {
+        final List<Class<?>> headerClasses = new ArrayList<Class<?>>();
+        final List<String> headerTexts = new ArrayList<String>();
+        final boolean reject;
+
+        RecordingListener(boolean reject) {
+            this.reject = reject;
+        }
+
+        @SuppressWarnings("rawtypes")
+        public void handleException(ParseException ex, SIPMessage sipMessage,
+                Class headerClass, String headerText, String messageText) throws ParseException {
+            headerClasses.add(headerClass);
+            headerTexts.add(headerText);
+            if (reject) {
+                throw ex;
+            }
+            sipMessage.addUnparsed(headerText);
+        }
+    }
+
+    private static SIPMessage parse(boolean lazy, String expires, ParseExceptionListener listener)
+            throws ParseException {
+        byte[] bytes = String.format(MESSAGE, expires).getBytes();
+        return new ByteMsgParser(lazy).parseSIPMessage(bytes, 0, bytes.length, true, false, listener);
+    }
+
+    private static List<String> unrecognized(SIPMessage message) {
+        List<String> result = new ArrayList<String>();
+        for (ListIterator<String> it = message.getUnrecognizedHeaders(); it.hasNext();) {
+            result.add(it.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void testUnaccessedHeadersEncodeVerbatim() throws Exception {
+        SIPMessage message = parse(true, "3600", null);
+        String encoded = message.encode();
+        assertTrue(encoded, encoded.contains("Subject:   lunch\r\n"));
+        assertTrue(encoded, encoded.contains("Route: <sip:p2.example.com;lr>,<sip:p3.example.com;lr>\r\n"));
+    }
+
+    @Test
+    public void testAccessedHeadersMatchEagerParse() throws Exception {
+        SIPMessage lazy = parse(true, "3600", null);
+        SIPMessage eager = parse(false, "3600", null);
+
+        assertTrue(lazy.getHeader(Subject.NAME) instanceof Subject);
+        assertEquals(eager.getHeader(Subject.NAME), lazy.getHeader(Subject.NAME));
+        assertEquals(eager.getHeader(Expires.NAME), lazy.getHeader(Expires.NAME));
+
+        RouteList lazyRoutes = ((SIPRequest) lazy).getRouteHeaders();
+        assertEquals(3, lazyRoutes.size());
+        assertEquals(((SIPRequest) eager).getRouteHeaders(), lazyRoutes);
+        assertEquals(eager.encode(), lazy.encode());
+    }
+
+    @Test
+    public void testMaterialisedHeaderKeepsItsPosition() throws Exception {
+        SIPMessage message = parse(true, "3600", null);
+        message.getHeader(Subject.NAME);
+        List<String> names = new ArrayList<String>();
+        for (Iterator<?> it = message.getHeaderNames(); it.hasNext();) {
+            names.add((String) it.next());
+        }
+        assertTrue(names.toString(), names.indexOf(Subject.NAME) < names.indexOf(Expires.NAME));
+        assertTrue(names.toString(), names.indexOf(RouteHeader.NAME) < names.indexOf("To"));
+    }
+
+    @Test
+    public void testParseFailureIsReportedToTheListener() throws Exception {
+        RecordingListener eagerListener = new RecordingListener(false);
+        SIPMessage eager = parse(false, "soon", eagerListener);
+        RecordingListener lazyListener = new RecordingListener(false);
+        SIPMessage lazy = parse(true, "soon", lazyListener);
+
+        // Nothing is reported before the header is accessed.
+        assertTrue(lazyListener.headerTexts.isEmpty());
+        assertNull(lazy.getHeader(Expires.NAME));
+
+        assertEquals(eagerListener.headerTexts, lazyListener.headerTexts);
+        assertSame(Expires.class, lazyListener.headerClasses.get(0));
+        assertEquals(unrecognized(eager), unrecognized(lazy));
+        lazy.getHeaders();
+        assertEquals(eager.encode(), lazy.encode());
+
+        // Reported once only.
+        assertNull(lazy.getHeader(Expires.NAME));
+        assertEquals(1, lazyListener.headerTexts.size());
+    }
+
+    @Test
+    public void testRejectingListenerDropsTheHeader() throws Exception {
+        RecordingListener listener = new RecordingListener(true);
+        SIPMessage lazy = parse(true, "soon", listener);
+
+        assertNull(lazy.getHeader(Expires.NAME));
+        assertEquals(1, listener.headerTexts.size());
+        assertFalse(lazy.encode().contains("soon"));
+        assertNotNull(lazy.getHeader(Subject.NAME));
+    }
+
+    @Test
+    public void testParseFailureWithoutListenerDropsTheHeader() throws Exception {
+        SIPMessage lazy = parse(true, "soon", null);
+        SIPMessage eager = parse(false, "soon", null);
+
+        assertNull(lazy.getHeader(Expires.NAME));
+        lazy.getHeaders();
+        assertEquals(eager.encode(), lazy.encode());
+    }
+}
@@ -0,0 +1,202 @@
+package android.gov.nist.javax.sip.stack;
+
+import android.gov.nist.javax.sip.SipStackImpl;
+import android.gov.nist.javax.sip.message.SIPRequest;
+import android.gov.nist.javax.sip.message.SIPResponse;
+import android.gov.nist.javax.sip.parser.StringMsgParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The messages traced by the BinaryServerLog read back with the
+ * BinaryServerLogReader, including once the trace wrapped around its files.
+ */
+public class BinaryServerLogTest {
+
+    private static final String REQUEST = "INVITE sip:bob@example.com SIP/2.0\r\n"
+            + "Via: SIP/2.0/UDP 10.0.0.1:5060;branch=z9hG4bK776asdhds\r\n"
+            + "Max-Forwards: 70\r\n"
+            + "To: <sip:bob@example.com>\r\n"
+            + "From: <sip:alice@example.com>;tag=1928301774\r\n"
+            + "Call-ID: a84b4c76e66710\r\n"
+            + "CSeq: 1 INVITE\r\n"
+            + "Content-Type: application/sdp\r\n"
+            + "Content-Length: 10\r\n\r\n"
+            + "v=0\r\no=x\r\n";
+
+    private static final Pattern RECORD = Pattern.compile(
+            "<message\nfrom=\"([^\"]*)\" \nto=\"([^\"]*)\" \ntime=\"(\\d+)\"\nisSender=\"(\\w+)\" "
+                    + "\ntransactionId=\"([^\"]*)\" \ncallId=\"([^\"]*)\" \nfirstLine=\"([^\"]*)\" \n>\n"
+                    + "<!\\[CDATA\\[(.*?)\\]\\]>\n</message>", Pattern.DOTALL);
+
+    private File directory;
+
+    private SipStackImpl sipStack;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("BinaryServerLogTest", "");
+        directory.delete();
+        directory.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        if (sipStack != null) {
+            sipStack.stop();
+        }
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private BinaryServerLog start(boolean logContent, int fileSize, int fileCount) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("android.javax.sip.STACK_NAME", "BinaryServerLogTest");
+        properties.setProperty("android.gov.nist.javax.sip.SERVER_LOGGER", BinaryServerLog.class.getName());
+        properties.setProperty("android.gov.nist.javax.sip.SERVER_LOG", new File(directory, "trace").getPath());
+        properties.setProperty("android.gov.nist.javax.sip.TRACE_LEVEL", "INFO");
+        properties.setProperty("android.gov.nist.javax.sip.LOG_MESSAGE_CONTENT", String.valueOf(logContent));
+        properties.setProperty("android.gov.nist.javax.sip.SERVER_LOG_FILE_SIZE", String.valueOf(fileSize));
+        properties.setProperty("android.gov.nist.javax.sip.SERVER_LOG_FILE_COUNT", String.valueOf(fileCount));
+        sipStack = new SipStackImpl(properties);
+        assertTrue(sipStack.isKeepReceivedBytes());
+        return (BinaryServerLog) sipStack.getServerLogger();
+    }
+
+    /**
+     * @return the request as the message channels hand it over.
+     */
+    private static SIPRequest receive(String callId) throws Exception {
+        byte[] bytes = REQUEST.replace("a84b4c76e66710", callId).getBytes("UTF-8");
+        SIPRequest request = (SIPRequest) new StringMsgParser().parseSIPMessage(bytes, true, false, null);
+        request.setReceivedBytes(bytes);
+        return request;
+    }
+
+    private List<String[]> read() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (File file : directory.listFiles()) {
+            files.add(file);
+        }
+        StringWriter writer = new StringWriter();
+        PrintWriter out = new PrintWriter(writer);
+        BinaryServerLogReader.render(files, out);
+        out.flush();
+        List<String[]> records = new ArrayList<String[]>();
+        Matcher matcher = RECORD.matcher(writer.toString());
+        while (matcher.find()) {
+            String[] record = new String[8];
+            for (int i = 0; i < record.length; i++) {
+                record[i] = matcher.group(i + 1);
+            }
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BinaryServerLog log = start(true, 65536, 2);
+        SIPRequest request = receive("a84b4c76e66710");
+        log.logMessage(request, "10.0.0.1:5060", "10.0.0.2:5060", false, 1000);
+        SIPResponse ringing = request.createResponse(180);
+        ringing.encodeAsBytes("UDP");
+        log.logMessage(ringing, "10.0.0.2:5060", "10.0.0.1:5060", true, 1001);
+        // neither sent as bytes nor received, so encoded when traced
+        SIPResponse ok = request.createResponse(200);
+        log.logMessage(ok, "10.0.0.2:5060", "10.0.0.1:5060", "200", true, 1002);
+        sipStack.stop();
+        sipStack = null;
+
+        List<String[]> records = read();
+        assertEquals(3, records.size());
+        String[] received = records.get(0);
+        assertEquals("10.0.0.1:5060", received[0]);
+        assertEquals("10.0.0.2:5060", received[1]);
+        assertEquals("1000", received[2]);
+        assertEquals("false", received[3]);
+        assertEquals(request.getTransactionId(), received[4]);
+        assertEquals("a84b4c76e66710", received[5]);
+        assertEquals("INVITE sip:bob@example.com SIP/2.0", received[6]);
+        assertEquals(REQUEST, received[7]);
+
+        String[] sent = records.get(1);
+        assertEquals("true", sent[3]);
+        assertEquals("SIP/2.0 180 Ringing", sent[6]);
+        assertEquals(ringing.encode(), sent[7]);
+
+        String[] encoded = records.get(2);
+        assertEquals("1002", encoded[2]);
+        assertEquals("SIP/2.0 200 OK", encoded[6]);
+        assertEquals(ok.encode(), encoded[7]);
+        assertEquals(0, log.getDroppedRecords());
+    }
+
+    @Test
+    public void testContentLeftOut() throws Exception {
+        BinaryServerLog log = start(false, 65536, 2);
+        SIPRequest request = receive("a84b4c76e66710");
+        log.logMessage(request, "10.0.0.1:5060", "10.0.0.2:5060", false, 1000);
+        SIPRequest sent = receive("a84b4c76e66711");
+        sent.encodeAsBytes("UDP");
+        log.logMessage(sent, "10.0.0.2:5060", "10.0.0.3:5060", true, 1001);
+        sipStack.stop();
+        sipStack = null;
+
+        List<String[]> records = read();
+        assertEquals(2, records.size());
+        String headers = REQUEST.substring(0, REQUEST.indexOf("\r\n\r\n") + 4);
+        assertEquals(headers, records.get(0)[7]);
+        String sentEncoded = sent.encode();
+        assertEquals(sentEncoded.substring(0, sentEncoded.indexOf("\r\n\r\n") + 4), records.get(1)[7]);
+        assertFalse(records.get(1)[7].contains("v=0"));
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+        // a few records per file, the first files being overwritten
+        BinaryServerLog log = start(true, 2048, 3);
+        int count = 100;
+        for (int i = 0; i < count; i++) {
+            SIPRequest request = receive("call" + i);
+            log.logMessage(request, "10.0.0.1:5060", "10.0.0.2:5060", false, 1000 + i);
+        }
+        sipStack.stop();
+        sipStack = null;
+
+        File[] files = directory.listFiles();
+        assertEquals(3, files.length);
+        for (File file : files) {
+            assertEquals(2048, file.length());
+        }
+        List<String[]> records = read();
+        assertTrue(records.size() > 3);
+        assertTrue(records.size() < count);
+        // the oldest file first, then the records in the order they were traced
+        int first = count - records.size();
+        for (int i = 0; i < records.size(); i++) {
+            String[] record = records.get(i);
+            assertEquals(String.valueOf(1000 + first + i), record[2]);
+            assertEquals("call" + (first + i), record[5]);
+            assertEquals(REQUEST.replace("a84b4c76e66710", "call" + (first + i)), record[7]);
+        }
+        assertEquals(0, log.getDroppedRecords());
+    }
+}
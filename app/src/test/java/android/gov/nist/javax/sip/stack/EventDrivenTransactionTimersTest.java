@@ -0,0 +1,148 @@
+package android.gov.nist.javax.sip.stack;
+
+import android.gov.nist.javax.sip.ClientTransactionExt;
+
+import android.javax.sip.ClientTransaction;
+import android.javax.sip.DialogTerminatedEvent;
+import android.javax.sip.IOExceptionEvent;
+import android.javax.sip.ListeningPoint;
+import android.javax.sip.RequestEvent;
+import android.javax.sip.ResponseEvent;
+import android.javax.sip.SipFactory;
+import android.javax.sip.SipListener;
+import android.javax.sip.SipProvider;
+import android.javax.sip.SipStack;
+import android.javax.sip.TimeoutEvent;
+import android.javax.sip.TransactionState;
+import android.javax.sip.TransactionTerminatedEvent;
+import android.javax.sip.address.AddressFactory;
+import android.javax.sip.address.SipURI;
+import android.javax.sip.header.HeaderFactory;
+import android.javax.sip.header.ViaHeader;
+import android.javax.sip.message.MessageFactory;
+import android.javax.sip.message.Request;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Retransmission and timeout of a client transaction sent to a peer that
+ * never answers, with EVENT_DRIVEN_TRANSACTION_TIMERS enabled.
+ */
+public class EventDrivenTransactionTimersTest {
+
+    private SipStack sipStack;
+    private SipProvider sipProvider;
+    private DatagramSocket peer;
+
+    private final CountDownLatch timedOut = new CountDownLatch(1);
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("android.javax.sip.STACK_NAME", "EventDrivenTransactionTimersTest");
+        properties.setProperty("android.gov.nist.javax.sip.EVENT_DRIVEN_TRANSACTION_TIMERS", "true");
+        SipFactory sipFactory = SipFactory.getInstance();
+        sipFactory.setPathName("android.gov.nist");
+        sipStack = sipFactory.createSipStack(properties);
+        peer = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        // The stack does not take port 0, so borrow a free one.
+        DatagramSocket free = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        int port = free.getLocalPort();
+        free.close();
+        ListeningPoint listeningPoint = sipStack.createListeningPoint("127.0.0.1", port, ListeningPoint.UDP);
+        sipProvider = sipStack.createSipProvider(listeningPoint);
+        sipProvider.addSipListener(new SipListener() {
+            public void processRequest(RequestEvent requestEvent) {
+            }
+
+            public void processResponse(ResponseEvent responseEvent) {
+            }
+
+            public void processTimeout(TimeoutEvent timeoutEvent) {
+                timedOut.countDown();
+            }
+
+            public void processIOException(IOExceptionEvent exceptionEvent) {
+            }
+
+            public void processTransactionTerminated(TransactionTerminatedEvent transactionTerminatedEvent) {
+                terminated.countDown();
+            }
+
+            public void processDialogTerminated(DialogTerminatedEvent dialogTerminatedEvent) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (peer != null) {
+            peer.close();
+        }
+        sipStack.stop();
+    }
+
+    private Request createRequest() throws Exception {
+        SipFactory sipFactory = SipFactory.getInstance();
+        AddressFactory addressFactory = sipFactory.createAddressFactory();
+        HeaderFactory headerFactory = sipFactory.createHeaderFactory();
+        MessageFactory messageFactory = sipFactory.createMessageFactory();
+        ListeningPoint listeningPoint = sipProvider.getListeningPoint(ListeningPoint.UDP);
+
+        SipURI requestURI = addressFactory.createSipURI("bob", "127.0.0.1");
+        requestURI.setPort(peer.getLocalPort());
+        SipURI fromURI = addressFactory.createSipURI("alice", "127.0.0.1");
+        List<ViaHeader> viaHeaders = new ArrayList<ViaHeader>();
+        viaHeaders.add(headerFactory.createViaHeader("127.0.0.1", listeningPoint.getPort(),
+                ListeningPoint.UDP, null));
+        return messageFactory.createRequest(requestURI, Request.MESSAGE,
+                sipProvider.getNewCallId(), headerFactory.createCSeqHeader(1L, Request.MESSAGE),
+                headerFactory.createFromHeader(addressFactory.createAddress(fromURI), "12345"),
+                headerFactory.createToHeader(addressFactory.createAddress(requestURI), null),
+                viaHeaders, headerFactory.createMaxForwardsHeader(70));
+    }
+
+    @Test
+    public void testRetransmissionsThenTimeout() throws Exception {
+        ClientTransaction clientTransaction = sipProvider.getNewClientTransaction(createRequest());
+        // Timer F is then 64 * 20 ms and T2 8 * 20 ms.
+        ((ClientTransactionExt) clientTransaction).setRetransmitTimer(20);
+        long start = System.nanoTime();
+        clientTransaction.sendRequest();
+
+        int received = 0;
+        peer.setSoTimeout(100);
+        byte[] buffer = new byte[4096];
+        while (timedOut.getCount() > 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10)) {
+            try {
+                peer.receive(new DatagramPacket(buffer, buffer.length));
+                received++;
+            } catch (SocketTimeoutException ex) {
+            }
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("no timeout", timedOut.await(0, TimeUnit.SECONDS));
+        assertTrue("timed out after " + elapsed + " ms", elapsed >= 64 * 20);
+        // 20, 40, 80 then every 160 ms until timer F fires.
+        assertTrue("sent " + received + " times", received >= 8);
+        assertEquals(TransactionState.TERMINATED, clientTransaction.getState());
+        assertTrue("not terminated", terminated.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,140 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Micro benchmark of the transaction and dialog lookups, comparing a
+ * ConcurrentHashMap looked up with the lower cased identifier built for each
+ * message, as getTransactionId() and getDialogId() do, with a
+ * StripedIdentifierTable looked up from the branch, Call-ID and tags as they
+ * were received (mixed case).
+ *
+ * Usage: java android.gov.nist.javax.sip.stack.StripedIdentifierTableBenchmark [entries]...
+ * By default the tables are filled with 10000, 100000 and 1000000 entries.
+ *
+ * @since 2.0
+ */
+public class StripedIdentifierTableBenchmark {
+
+    private static final int LOOKUPS = 2000000;
+
+    // defeats dead code elimination
+    private static int found;
+
+    public static void main(String[] args) {
+        int[] sizes = { 10000, 100000, 1000000 };
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int round = 0; round < 2; round++) {
+            // first round is the warm up
+            for (int size : sizes) {
+                run(size, round > 0);
+            }
+        }
+    }
+
+    private static void run(int size, boolean print) {
+        Random random = new Random(42);
+        String[] branches = new String[size];
+        String[] callIds = new String[size];
+        String[] fromTags = new String[size];
+        String[] toTags = new String[size];
+        Map<String, Object> transactionMap = new ConcurrentHashMap<String, Object>();
+        Map<String, Object> dialogMap = new ConcurrentHashMap<String, Object>();
+        StripedIdentifierTable<Object> transactionTable = new StripedIdentifierTable<Object>();
+        StripedIdentifierTable<Object> dialogTable = new StripedIdentifierTable<Object>();
+        for (int i = 0; i < size; i++) {
+            branches[i] = "z9hG4bK" + Long.toHexString(random.nextLong()).toUpperCase() + "-" + i;
+            callIds[i] = Long.toHexString(random.nextLong()) + "@Host-" + i + ".Example.com";
+            fromTags[i] = Integer.toHexString(random.nextInt()).toUpperCase();
+            toTags[i] = "as" + Integer.toHexString(random.nextInt());
+            Object value = Integer.valueOf(i);
+            transactionMap.put(branches[i].toLowerCase(), value);
+            transactionTable.put(branches[i].toLowerCase(), value);
+            String dialogId = (callIds[i] + ":" + fromTags[i] + ":" + toTags[i]).toLowerCase();
+            dialogMap.put(dialogId, value);
+            dialogTable.put(dialogId, value);
+        }
+
+        int[] order = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            order[i] = random.nextInt(size);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (transactionMap.get(branches[order[i]].toLowerCase()) != null) {
+                found++;
+            }
+        }
+        long transactionMapTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (transactionTable.getTransaction(branches[order[i]], false) != null) {
+                found++;
+            }
+        }
+        long transactionTableTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            int j = order[i];
+            StringBuffer dialogId = new StringBuffer(callIds[j]);
+            dialogId.append(':').append(fromTags[j]).append(':').append(toTags[j]);
+            if (dialogMap.get(dialogId.toString().toLowerCase()) != null) {
+                found++;
+            }
+        }
+        long dialogMapTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            int j = order[i];
+            if (dialogTable.getDialog(callIds[j], fromTags[j], toTags[j]) != null) {
+                found++;
+            }
+        }
+        long dialogTableTime = System.nanoTime() - start;
+
+        if (print) {
+            System.out.println(size + " entries:"
+                    + " transaction lookup ConcurrentHashMap " + transactionMapTime / LOOKUPS + " ns"
+                    + ", StripedIdentifierTable " + transactionTableTime / LOOKUPS + " ns"
+                    + "; dialog lookup ConcurrentHashMap " + dialogMapTime / LOOKUPS + " ns"
+                    + ", StripedIdentifierTable " + dialogTableTime / LOOKUPS + " ns"
+                    + " (" + found + " found)");
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package android.gov.nist.javax.sip.stack;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The table behaves as a ConcurrentMap of lower case identifiers, and finds
+ * transactions and dialogs from the parts of their identifier whatever the
+ * case of these parts.
+ */
+public class StripedIdentifierTableTest {
+
+    @Test
+    public void testPutGetRemove() {
+        StripedIdentifierTable<String> table = new StripedIdentifierTable<String>();
+        assertTrue(table.isEmpty());
+        assertNull(table.put("z9hg4bk1", "a"));
+        assertEquals("a", table.put("z9hg4bk1", "b"));
+        assertEquals("b", table.get("z9hg4bk1"));
+        assertEquals(1, table.size());
+        assertEquals("b", table.putIfAbsent("z9hg4bk1", "c"));
+        assertNull(table.putIfAbsent("z9hg4bk2", "c"));
+        assertEquals(2, table.size());
+        assertTrue(table.containsKey("z9hg4bk2"));
+        assertNull(table.get(Integer.valueOf(1)));
+
+        assertFalse(table.remove("z9hg4bk1", "a"));
+        assertTrue(table.remove("z9hg4bk1", "b"));
+        assertNull(table.remove("z9hg4bk1"));
+        assertEquals("c", table.remove("z9hg4bk2"));
+        assertTrue(table.isEmpty());
+        try {
+            table.put("z9hg4bk1", null);
+            fail();
+        } catch (NullPointerException expected) {
+        }
+    }
+
+    @Test
+    public void testReplace() {
+        StripedIdentifierTable<String> table = new StripedIdentifierTable<String>();
+        assertNull(table.replace("key", "a"));
+        table.put("key", "a");
+        assertFalse(table.replace("key", "x", "b"));
+        assertTrue(table.replace("key", "a", "b"));
+        assertEquals("b", table.replace("key", "c"));
+        assertEquals("c", table.get("key"));
+    }
+
+    @Test
+    public void testRemoveFromTheMiddleOfABucket() {
+        // enough keys for the segments to hold chains of several entries
+        StripedIdentifierTable<String> table = new StripedIdentifierTable<String>();
+        for (int i = 0; i < 2000; i++) {
+            table.put("key" + i, "v" + i);
+        }
+        for (int i = 0; i < 2000; i += 3) {
+            assertEquals("v" + i, table.remove("key" + i));
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(i % 3 == 0 ? null : "v" + i, table.get("key" + i));
+        }
+        assertEquals(2000 - 667, table.size());
+    }
+
+    @Test
+    public void testRehashKeepsTheEntries() {
+        StripedIdentifierTable<Integer> table = new StripedIdentifierTable<Integer>();
+        Map<String, Integer> expected = new HashMap<String, Integer>();
+        for (int i = 0; i < 50000; i++) {
+            String key = "z9hg4bk" + Integer.toHexString(i * 7919);
+            table.put(key, i);
+            expected.put(key, i);
+            if (i % 5000 == 0) {
+                for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+                    assertEquals(entry.getValue(), table.get(entry.getKey()));
+                }
+            }
+        }
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected, new HashMap<String, Integer>(table));
+        table.clear();
+        assertTrue(table.isEmpty());
+        assertNull(table.get("z9hg4bk0"));
+    }
+
+    @Test
+    public void testEntrySetIteration() {
+        StripedIdentifierTable<Integer> table = new StripedIdentifierTable<Integer>();
+        for (int i = 0; i < 100; i++) {
+            table.put("key" + i, i);
+        }
+        assertEquals(100, table.entrySet().size());
+        int sum = 0;
+        for (Map.Entry<String, Integer> entry : table.entrySet()) {
+            assertEquals("key" + entry.getValue(), entry.getKey());
+            sum += entry.getValue();
+        }
+        assertEquals(99 * 100 / 2, sum);
+
+        Map.Entry<String, Integer> entry = table.entrySet().iterator().next();
+        try {
+            entry.setValue(1);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        Iterator<Map.Entry<String, Integer>> it = table.entrySet().iterator();
+        try {
+            it.remove();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        while (it.hasNext()) {
+            if (it.next().getValue() % 2 == 0) {
+                it.remove();
+            }
+        }
+        assertEquals(50, table.size());
+        assertNull(table.get("key0"));
+        assertEquals(Integer.valueOf(1), table.get("key1"));
+        assertEquals(50, table.keySet().size());
+
+        table.entrySet().clear();
+        it = table.entrySet().iterator();
+        assertFalse(it.hasNext());
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void testIteratorIsWeaklyConsistent() {
+        StripedIdentifierTable<Integer> table = new StripedIdentifierTable<Integer>();
+        for (int i = 0; i < 100; i++) {
+            table.put("key" + i, i);
+        }
+        int count = 0;
+        for (Iterator<String> it = table.keySet().iterator(); it.hasNext(); it.next()) {
+            // neither the removals nor the growth make the iteration fail
+            table.remove("key" + count);
+            table.put("other" + count, count);
+            count++;
+        }
+        assertTrue(count > 0);
+        assertEquals(100 - Math.min(count, 100) + count, table.size());
+    }
+
+    @Test
+    public void testTransactionLookupIgnoresTheCase() {
+        StripedIdentifierTable<String> table = new StripedIdentifierTable<String>();
+        // the transaction ids of getTransactionId
+        table.put("z9hg4bk776asdhds", "invite");
+        table.put("z9hg4bk776asdhds:cancel", "cancel");
+
+        assertEquals("invite", table.getTransaction("z9hG4bK776asdhds", false));
+        assertEquals("invite", table.getTransaction("Z9HG4BK776ASDHDS", false));
+        assertEquals("cancel", table.getTransaction("z9hG4bK776asdhds", true));
+        assertNull(table.getTransaction("z9hG4bK776asdhd", false));
+        assertNull(table.getTransaction("z9hG4bK776asdhdsx", true));
+        // the map methods take the lower case identifier
+        assertNull(table.get("z9hG4bK776asdhds"));
+    }
+
+    @Test
+    public void testDialogLookupIgnoresTheCase() {
+        StripedIdentifierTable<String> table = new StripedIdentifierTable<String>();
+        // the dialog ids of getDialogId
+        table.put("a84b4c76e66710@pc33:1928301774:a6c85cf", "dialog");
+        table.put("a84b4c76e66710@pc33:1928301774", "early");
+
+        assertEquals("dialog", table.getDialog("A84B4C76E66710@PC33", "1928301774", "A6C85CF"));
+        assertEquals("early", table.getDialog("a84b4c76e66710@pc33", "1928301774", null));
+        assertNull(table.getDialog("a84b4c76e66710@pc33", "a6c85cf", "1928301774"));
+        // the same key as the identifier joining the parts
+        assertEquals("dialog", table.getDialog("a84b4c76e66710@pc33:1928301774", "a6c85cf", null));
+        assertNull(table.getDialog("a84b4c76e66710", "pc33", "1928301774"));
+    }
+
+    @Test
+    public void testConcurrentPutAndRemove() throws Exception {
+        final StripedIdentifierTable<Integer> table = new StripedIdentifierTable<Integer>();
+        final int threads = 8;
+        final int keys = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int round = 0; round < 3; round++) {
+                            for (int i = 0; i < keys; i++) {
+                                assertNull(table.put("t" + id + "-" + i, i));
+                            }
+                            for (int i = 0; i < keys; i++) {
+                                assertEquals(Integer.valueOf(i), table.get("t" + id + "-" + i));
+                                if (i % 2 == 0 || round < 2) {
+                                    assertEquals(Integer.valueOf(i), table.remove("t" + id + "-" + i));
+                                }
+                            }
+                            if (round < 2) {
+                                continue;
+                            }
+                            for (int i = 1; i < keys; i += 2) {
+                                assertEquals(Integer.valueOf(i), table.getTransaction("T" + id + "-" + i, false));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertEquals(threads * keys / 2, table.size());
+        int count = 0;
+        for (Map.Entry<String, Integer> entry : table.entrySet()) {
+            assertSame(entry.getValue(), table.get(entry.getKey()));
+            assertEquals(1, entry.getValue() % 2);
+            count++;
+        }
+        assertEquals(threads * keys / 2, count);
+    }
+}
@@ -0,0 +1,104 @@
+package android.gov.nist.javax.sip.stack.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The buckets of a LatencyHistogram cover every value once, each within
+ * 1/16th of its upper bound, whichever thread records it.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testSmallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucketOf(value));
+            assertEquals(value, LatencyHistogram.highestValueOf(value));
+        }
+    }
+
+    @Test
+    public void testBucketsAreContiguous() {
+        int last = LatencyHistogram.bucketOf((1L << 40) - 1);
+        assertEquals(37 * 16 - 1, last);
+        long lowest = 0;
+        for (int bucket = 0; bucket <= last; bucket++) {
+            long highest = LatencyHistogram.highestValueOf(bucket);
+            assertTrue(highest >= lowest);
+            assertEquals(bucket, LatencyHistogram.bucketOf(lowest));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            assertEquals(bucket + 1, LatencyHistogram.bucketOf(highest + 1));
+            // the relative precision is kept at every magnitude
+            assertTrue(highest - lowest <= Math.max(0, highest / 16));
+            lowest = highest + 1;
+        }
+        assertEquals(1L << 40, lowest);
+    }
+
+    @Test
+    public void testPowersOfTwo() {
+        for (int bit = 4; bit < 40; bit++) {
+            long value = 1L << bit;
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertEquals((bit - 3) * 16, bucket);
+            assertEquals(value - 1, LatencyHistogram.highestValueOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean());
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(1002, histogram.getCount());
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        long p50 = histogram.getPercentile(50);
+        assertTrue(p50 >= 500000 && p50 <= 500000 + 500000 / 16);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p99 >= 990000 && p99 <= 990000 + 990000 / 16);
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testRecordFromManyThreads() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(100);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, histogram.getCount());
+        assertEquals(100, histogram.getMean());
+        // the bucket of 100 goes up to 103, the percentiles are capped by the max
+        assertEquals(100, histogram.getPercentile(1));
+        assertEquals(100, histogram.getPercentile(99));
+    }
+}
@@ -0,0 +1,70 @@
+package android.gov.nist.javax.sip.stack.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The request counters are kept per method up to 32 methods, the others being
+ * counted together as OTHER.
+ */
+public class SipStackMetricsTest {
+
+    @Test
+    public void testExtensionMethodsPastTheCapAreCountedTogether() {
+        SipStackMetrics metrics = new SipStackMetrics(null);
+        for (int i = 0; i < 32; i++) {
+            metrics.requestReceived("M" + i);
+        }
+        metrics.requestReceived("M0");
+        assertEquals(2, metrics.getRequestsReceived("M0"));
+        assertEquals(0, metrics.getRequestsReceived("OTHER"));
+
+        for (int i = 32; i < 100; i++) {
+            metrics.requestReceived("M" + i);
+        }
+        assertEquals(0, metrics.getRequestsReceived("M32"));
+        assertEquals(68, metrics.getRequestsReceived("OTHER"));
+        assertEquals(101, metrics.getRequestsReceived());
+        // the methods seen before the cap keep their own counter
+        metrics.requestReceived("M31");
+        assertEquals(2, metrics.getRequestsReceived("M31"));
+        assertEquals(68, metrics.getRequestsReceived("OTHER"));
+    }
+
+    @Test
+    public void testDisabledMetricsRecordNothing() {
+        SipStackMetrics metrics = new SipStackMetrics(null);
+        metrics.setEnabled(false);
+        metrics.requestReceived("INVITE");
+        metrics.responseReceived(200);
+        metrics.bytesSent("udp", 100);
+        metrics.recordParseTime(1000);
+        assertEquals(0, metrics.getRequestsReceived());
+        assertEquals(0, metrics.getResponsesReceived());
+        assertEquals(0, metrics.getBytesSent());
+        assertEquals(0, metrics.getParseTime().getCount());
+    }
+
+    @Test
+    public void testCountersByStatusAndTransport() {
+        SipStackMetrics metrics = new SipStackMetrics(null);
+        metrics.responseReceived(180);
+        metrics.responseReceived(200);
+        metrics.responseReceived(200);
+        metrics.responseReceived(99);
+        metrics.responseReceived(700);
+        metrics.bytesReceived("udp", 100);
+        metrics.bytesReceived("UDP", 50);
+        metrics.bytesReceived("tcp", 10);
+        assertEquals(2, metrics.getResponsesReceived(200));
+        assertEquals(3, metrics.getResponsesReceived());
+        assertEquals(0, metrics.getResponsesReceived(700));
+        assertEquals(150, metrics.getBytesReceived("Udp"));
+        assertEquals(160, metrics.getBytesReceived());
+
+        metrics.reset();
+        assertEquals(0, metrics.getResponsesReceived(200));
+        assertEquals(0, metrics.getBytesReceived());
+    }
+}
@@ -0,0 +1,152 @@
+package android.gov.nist.javax.sip.stack.timers;
+
+import android.gov.nist.javax.sip.stack.SIPStackTimerTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HashedWheelSipTimerTest {
+
+    private HashedWheelSipTimer timer;
+
+    private static class Task extends SIPStackTimerTask {
+        final AtomicInteger runs = new AtomicInteger();
+        final CountDownLatch fired;
+        volatile long firedAt;
+
+        Task(int expectedRuns) {
+            fired = new CountDownLatch(expectedRuns);
+        }
+
+        public void runTask() {
+            firedAt = System.nanoTime();
+            runs.incrementAndGet();
+            fired.countDown();
+        }
+
+        public Object getThreadHash() {
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Properties properties = new Properties();
+        // A small wheel, so that the tests also cover tasks due after more than one turn.
+        properties.setProperty("android.gov.nist.javax.sip.timers.WHEEL_TICK_DURATION", "1");
+        properties.setProperty("android.gov.nist.javax.sip.timers.WHEEL_SIZE", "8");
+        timer = new HashedWheelSipTimer();
+        timer.start(null, properties);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testTaskFiresAfterItsDelay() throws Exception {
+        Task task = new Task(1);
+        long start = System.nanoTime();
+        timer.schedule(task, 50);
+        assertTrue(task.fired.await(5, TimeUnit.SECONDS));
+        assertTrue(task.firedAt - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        Thread.sleep(30);
+        assertEquals(1, task.runs.get());
+    }
+
+    @Test
+    public void testTasksFireInDeadlineOrder() throws Exception {
+        Task late = new Task(1);
+        Task early = new Task(1);
+        timer.schedule(late, 40);
+        timer.schedule(early, 20);
+        assertTrue(late.fired.await(5, TimeUnit.SECONDS));
+        assertTrue(early.fired.await(5, TimeUnit.SECONDS));
+        assertTrue(early.firedAt <= late.firedAt);
+    }
+
+    @Test
+    public void testEarlierTaskWakesTheParkedWheel() throws Exception {
+        timer.schedule(new Task(1), 10000);
+        Thread.sleep(20);
+        Task task = new Task(1);
+        long start = System.nanoTime();
+        timer.schedule(task, 5);
+        assertTrue(task.fired.await(5, TimeUnit.SECONDS));
+        assertTrue(task.firedAt - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testNextBucketFoundAcrossTheWheel() throws Exception {
+        // tasks in buckets of several bitmap words, and one a turn away
+        timer.stop();
+        Properties properties = new Properties();
+        properties.setProperty("android.gov.nist.javax.sip.timers.WHEEL_SIZE", "256");
+        timer = new HashedWheelSipTimer();
+        timer.start(null, properties);
+        long[] delays = { 300, 30, 100, 200, 170 };
+        Task[] tasks = new Task[delays.length];
+        long start = System.nanoTime();
+        for (int i = 0; i < delays.length; i++) {
+            tasks[i] = new Task(1);
+            timer.schedule(tasks[i], delays[i]);
+        }
+        for (int i = 0; i < delays.length; i++) {
+            assertTrue(tasks[i].fired.await(5, TimeUnit.SECONDS));
+            long elapsed = tasks[i].firedAt - start;
+            assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(delays[i]));
+            assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(delays[i] + 500));
+        }
+        assertTrue(tasks[1].firedAt <= tasks[2].firedAt);
+        assertTrue(tasks[4].firedAt <= tasks[3].firedAt);
+        assertTrue(tasks[3].firedAt <= tasks[0].firedAt);
+    }
+
+    @Test
+    public void testCancelledTaskDoesNotFire() throws Exception {
+        Task task = new Task(1);
+        timer.schedule(task, 20);
+        assertTrue(timer.cancel(task));
+        assertFalse(task.fired.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(timer.cancel(task));
+    }
+
+    @Test
+    public void testFixedDelayRepeatsUntilCancelled() throws Exception {
+        Task task = new Task(3);
+        timer.scheduleWithFixedDelay(task, 5, 5);
+        assertTrue(task.fired.await(5, TimeUnit.SECONDS));
+        timer.cancel(task);
+        Thread.sleep(20);
+        int runs = task.runs.get();
+        Thread.sleep(50);
+        assertEquals(runs, task.runs.get());
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTheWheel() throws Exception {
+        timer.schedule(new SIPStackTimerTask() {
+            public void runTask() {
+                throw new IllegalStateException("failing task");
+            }
+
+            public Object getThreadHash() {
+                return null;
+            }
+        }, 1);
+        Task task = new Task(1);
+        timer.schedule(task, 10);
+        assertTrue(task.fired.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,164 @@
+/*
+* Conditions Of Use
+*
+* This software was developed by employees of the National Institute of
+* Standards and Technology (NIST), an agency of the Federal Government.
+* Pursuant to title 15 Untied States Code Section 105, works of NIST
+* employees are not subject to copyright protection in the United States
+* and are considered to be in the public domain.  As a result, a formal
+* license is not needed to use the software.
+*
+* This software is provided by NIST as a service and is expressly
+* provided "AS IS."  NIST MAKES NO WARRANTY OF ANY KIND, EXPRESS, IMPLIED
+* OR STATUTORY, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTY OF
+* MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE, NON-INFRINGEMENT
+* AND DATA ACCURACY.  NIST does not warrant or make any representations
+* regarding the use of the software or the results thereof, including but
+* not limited to the correctness, accuracy, reliability or usefulness of
+* the software.
+*
+* Permission to use this software is contingent upon your acceptance
+* of the terms of this agreement
+*
+* .
+*
+*/
+package android.gov.nist.javax.sip.stack.timers;
+
+import android.gov.nist.javax.sip.SipStackImpl;
+import android.gov.nist.javax.sip.stack.SIPStackTimerTask;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro benchmark of the SipTimer implementations, reproducing the way the stack uses its
+ * timer: many long timeouts (timer B, F, H...) that are nearly all cancelled when the
+ * transaction completes, a fixed delay timer per live transaction, and short timers that do
+ * fire (retransmissions).
+ *
+ * Usage: java android.gov.nist.javax.sip.stack.timers.SipTimerBenchmark [tasks] [timer class]...
+ * By default 100000 tasks are used against DefaultSipTimer, ScheduledExecutorSipTimer and
+ * HashedWheelSipTimer.
+ *
+ * @since 2.0
+ */
+public class SipTimerBenchmark {
+
+	private static class CountingTask extends SIPStackTimerTask {
+		private final AtomicLong runs;
+		private final CountDownLatch fired;
+		private final long expectedTime;
+		private final AtomicLong lateness;
+
+		CountingTask(AtomicLong runs, CountDownLatch fired, long expectedTime, AtomicLong lateness) {
+			this.runs = runs;
+			this.fired = fired;
+			this.expectedTime = expectedTime;
+			this.lateness = lateness;
+		}
+
+		public void runTask() {
+			runs.incrementAndGet();
+			if (lateness != null) {
+				lateness.addAndGet(System.nanoTime() - expectedTime);
+			}
+			if (fired != null) {
+				fired.countDown();
+			}
+		}
+
+		public Object getThreadHash() {
+			return null;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int tasks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		String[] timerClasses = { DefaultSipTimer.class.getName(),
+				ScheduledExecutorSipTimer.class.getName(), HashedWheelSipTimer.class.getName() };
+		if (args.length > 1) {
+			timerClasses = new String[args.length - 1];
+			System.arraycopy(args, 1, timerClasses, 0, timerClasses.length);
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("android.javax.sip.STACK_NAME", "SipTimerBenchmark");
+		SipStackImpl sipStack = new SipStackImpl(properties);
+		try {
+			for (int round = 0; round < 2; round++) {
+				// first round is the warm up
+				for (String timerClass : timerClasses) {
+					SipTimer timer = (SipTimer) Class.forName(timerClass).newInstance();
+					timer.start(sipStack, properties);
+					try {
+						run(timer, tasks, round > 0);
+					} finally {
+						timer.stop();
+					}
+				}
+			}
+		} finally {
+			sipStack.stop();
+		}
+		// the event scanner of a stack without provider is never stopped
+		System.exit(0);
+	}
+
+	private static void run(SipTimer timer, int tasks, boolean print) throws InterruptedException {
+		Random random = new Random(42);
+		AtomicLong runs = new AtomicLong();
+
+		// Long timeouts, all cancelled before they expire.
+		SIPStackTimerTask[] longTasks = new SIPStackTimerTask[tasks];
+		long start = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			longTasks[i] = new CountingTask(runs, null, 0, null);
+			timer.schedule(longTasks[i], 32000 + random.nextInt(32000));
+		}
+		long scheduleTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			timer.cancel(longTasks[i]);
+		}
+		long cancelTime = System.nanoTime() - start;
+
+		// One fixed delay timer per transaction, ticking for two seconds.
+		SIPStackTimerTask[] periodicTasks = new SIPStackTimerTask[tasks];
+		start = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			periodicTasks[i] = new CountingTask(runs, null, 0, null);
+			timer.scheduleWithFixedDelay(periodicTasks[i], 500, 500);
+		}
+		long periodicScheduleTime = System.nanoTime() - start;
+		Thread.sleep(2000);
+		long periodicRuns = runs.get();
+		for (int i = 0; i < tasks; i++) {
+			timer.cancel(periodicTasks[i]);
+		}
+
+		// Short timers that all fire.
+		AtomicLong lateness = new AtomicLong();
+		CountDownLatch fired = new CountDownLatch(tasks);
+		start = System.nanoTime();
+		for (int i = 0; i < tasks; i++) {
+			long delay = random.nextInt(500);
+			timer.schedule(new CountingTask(runs, fired, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay), lateness), delay);
+		}
+		boolean allFired = fired.await(30, TimeUnit.SECONDS);
+		long fireTime = System.nanoTime() - start;
+
+		if (print) {
+			System.out.println(timer.getClass().getSimpleName() + ": "
+					+ tasks + " tasks, schedule " + TimeUnit.NANOSECONDS.toMillis(scheduleTime) + " ms"
+					+ ", cancel " + TimeUnit.NANOSECONDS.toMillis(cancelTime) + " ms"
+					+ ", fixed delay schedule " + TimeUnit.NANOSECONDS.toMillis(periodicScheduleTime) + " ms"
+					+ " (" + periodicRuns + " runs in 2 s)"
+					+ ", short timers " + (allFired ? "all fired in " + TimeUnit.NANOSECONDS.toMillis(fireTime) + " ms" : "did not all fire")
+					+ ", mean lateness " + TimeUnit.NANOSECONDS.toMicros(lateness.get() / tasks) + " us");
+		}
+	}
+}